@@ -0,0 +1,53 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.to2mbn.jmccc.mcdownloader.download.DownloaderService;
+import org.to2mbn.jmccc.mcdownloader.download.Http2Downloader;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+final class ApacheHttp2ClientFeature {
+
+    private ApacheHttp2ClientFeature() {
+    }
+
+    static DownloaderService createApacheHttp2Client(Executor executor, MinecraftDownloaderBuilder builder) {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setSoTimeout(builder.soTimeout, TimeUnit.MILLISECONDS)
+                .build();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(builder.connectTimeout, TimeUnit.MILLISECONDS)
+                .setResponseTimeout(builder.soTimeout, TimeUnit.MILLISECONDS)
+                .build();
+
+        H2AsyncClientBuilder http2ClientBuilder = H2AsyncClientBuilder.create()
+                .setH2Config(H2Config.custom()
+                        .setPushEnabled(false)
+                        .setMaxConcurrentStreams(builder.http2MaxConcurrentStreams)
+                        .build())
+                .setIOReactorConfig(ioReactorConfig)
+                .setDefaultRequestConfig(requestConfig);
+
+        // for the plain http URLs, since h2c is hardly supported
+        PoolingAsyncClientConnectionManagerBuilder connectionManager = PoolingAsyncClientConnectionManagerBuilder.create();
+        if (builder.maxConnections > 0) {
+            connectionManager.setMaxConnTotal(builder.maxConnections)
+                    .setMaxConnPerRoute(builder.maxConnectionsPerRouter == 0 ? builder.maxConnections : builder.maxConnectionsPerRouter);
+        }
+        HttpAsyncClientBuilder http1ClientBuilder = HttpAsyncClients.custom()
+                .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_1)
+                .setConnectionManager(connectionManager.build())
+                .setIOReactorConfig(ioReactorConfig)
+                .setDefaultRequestConfig(requestConfig);
+
+        return new Http2Downloader(http2ClientBuilder, http1ClientBuilder, executor);
+    }
+}
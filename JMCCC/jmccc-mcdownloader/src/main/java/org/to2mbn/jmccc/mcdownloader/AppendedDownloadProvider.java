@@ -79,6 +79,38 @@ class AppendedDownloadProvider implements MinecraftDownloadProvider {
         return result;
     }
 
+    /**
+     * Finds the provider which provides the download task of the given
+     * operation.
+     *
+     * @param provider the provider to search, can be an appended provider
+     * @param query    the operation
+     * @return the provider, null if no provider is available
+     */
+    static MinecraftDownloadProvider findProvider(MinecraftDownloadProvider provider, ProviderQuery query) {
+        if (provider instanceof AppendedDownloadProvider) {
+            AppendedDownloadProvider appended = (AppendedDownloadProvider) provider;
+            MinecraftDownloadProvider result = findProvider(appended.left, query);
+            if (result == null && appended.right != null) {
+                result = findProvider(appended.right, query);
+            }
+            return result;
+        }
+        return query.query(provider) == null ? null : provider;
+    }
+
+    interface ProviderQuery {
+
+        /**
+         * Creates the download task with the given provider.
+         *
+         * @param provider the provider
+         * @return the download task, null if the provider doesn't support it
+         */
+        Object query(MinecraftDownloadProvider provider);
+
+    }
+
     private void checkFinalResult(Object result) {
         if (result == null) {
             throw new IllegalArgumentException("No provider is available for this operation");
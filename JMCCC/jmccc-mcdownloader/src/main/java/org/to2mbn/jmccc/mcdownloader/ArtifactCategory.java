@@ -0,0 +1,12 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+/**
+ * The categories of the files in an {@link InstallPlan}.
+ */
+public enum ArtifactCategory {
+
+    GAME_JAR,
+    LIBRARY,
+    ASSET
+
+}
@@ -0,0 +1,379 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.mcdownloader.download.ResultProcessor;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadContext;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
+import org.to2mbn.jmccc.mcdownloader.util.VerifiedFileIndex;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.ChecksumUtils;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.AssetIndex;
+import org.to2mbn.jmccc.version.DownloadInfo;
+import org.to2mbn.jmccc.version.Library;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks the libraries and the assets in a minecraft directory, and downloads
+ * the missing or broken ones.
+ * <p>
+ * Shared by {@link IncrementallyDownloadTask}, {@link InstallPlanTask} and
+ * {@link BatchDownloadTask}.
+ */
+final class ArtifactInstaller {
+
+    private static final Logger LOGGER = Logger.getLogger(ArtifactInstaller.class.getCanonicalName());
+
+    /**
+     * The interval of saving the verified file index while checking, so the
+     * files checked before an interruption needn't be hashed again.
+     */
+    private static final long CHECKPOINT_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+
+    private final MinecraftDownloadProvider downloadProvider;
+    private final MinecraftDirectory mcdir;
+    private final boolean checkLibrariesHash;
+    private final boolean checkAssetsHash;
+    private final SharedObjectStore objectStore;
+    private final boolean useVerifiedFileIndex;
+
+    private volatile VerifiedFileIndex fileIndex;
+    private final AtomicLong lastCheckpoint = new AtomicLong();
+
+    ArtifactInstaller(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, boolean checkLibrariesHash, boolean checkAssetsHash, SharedObjectStore objectStore, boolean useVerifiedFileIndex) {
+        Objects.requireNonNull(downloadProvider);
+        Objects.requireNonNull(mcdir);
+        this.downloadProvider = downloadProvider;
+        this.mcdir = mcdir;
+        this.checkLibrariesHash = checkLibrariesHash;
+        this.checkAssetsHash = checkAssetsHash;
+        this.objectStore = objectStore;
+        this.useVerifiedFileIndex = useVerifiedFileIndex;
+    }
+
+    /**
+     * Loads the verified file index. Called before checking any file.
+     */
+    void open() throws IOException {
+        if (useVerifiedFileIndex && (checkLibrariesHash || checkAssetsHash)) {
+            fileIndex = VerifiedFileIndex.forDirectory(mcdir.getRoot());
+            lastCheckpoint.set(System.nanoTime());
+        } else {
+            fileIndex = null;
+        }
+    }
+
+    /**
+     * Saves the verified file indexes. Called after all the files are checked.
+     */
+    void close() {
+        if (fileIndex != null) {
+            try {
+                fileIndex.save();
+            } catch (IOException e) {
+                // the index only speeds up verifying, so don't fail the download
+                LOGGER.log(Level.WARNING, "Couldn't save the verified file index of " + mcdir, e);
+            }
+        }
+        if (objectStore != null) {
+            try {
+                objectStore.saveIndex();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Couldn't save the verified file index of " + objectStore.getRoot(), e);
+            }
+        }
+    }
+
+    void submitAssets(CombinedDownloadContext<?> context, Collection<Asset> assets) throws InterruptedException, IOException {
+        if (assets == null)
+            return;
+
+        Collection<Asset> uniqueAssets;
+        if (assets instanceof AssetIndex) {
+            uniqueAssets = ((AssetIndex) assets).getUniqueAssets();
+        } else {
+            Map<String, Asset> hashMapping = new HashMap<>();
+            for (Asset asset : assets) {
+                // put the assets into a map
+                // to remove the elements which has the same hash
+                hashMapping.put(asset.getHash(), asset);
+            }
+            uniqueAssets = hashMapping.values();
+        }
+
+        // the assets are not needed to launch the game, download them last
+        // the sounds are loaded lazily by the game, so the others go first
+        List<Asset> startupAssets = new ArrayList<>();
+        List<Asset> lazyAssets = new ArrayList<>();
+        for (Asset asset : uniqueAssets) {
+            if (isLoadedLazily(asset))
+                lazyAssets.add(asset);
+            else
+                startupAssets.add(asset);
+        }
+
+        AssetObjects objects = AssetObjects.scan(mcdir.getAssetObjects());
+        context.submit(downloadAssets(objects, startupAssets, Priority.lower(context.getPriority(), Priority.LOW)), null, true);
+        context.submit(downloadAssets(objects, lazyAssets, Priority.lower(context.getPriority(), Priority.LOWEST)), null, true);
+    }
+
+    void downloadLibraries(final CombinedDownloadContext<?> context, Collection<Library> libraries) throws InterruptedException, IOException, NoSuchAlgorithmException {
+        if (checkLibrariesHash)
+            for (final Library library : libraries)
+                context.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        if (isMissing(library) && !retrieveShared(library))
+                            context.submit(downloadLibrary(library), null, true);
+
+                        return null;
+                    }
+                }, null, true);
+
+        else
+            for (Library library : libraries)
+                if (isMissing(library) && !retrieveShared(library))
+                    context.submit(downloadLibrary(library), null, true);
+    }
+
+    /**
+     * Finds the missing or broken libraries, and adds them to
+     * <code>missing</code>, which must be thread-safe.
+     */
+    void findMissingLibraries(CombinedDownloadContext<?> context, Collection<Library> libraries, final Collection<Library> missing) throws InterruptedException, IOException, NoSuchAlgorithmException {
+        if (checkLibrariesHash)
+            for (final Library library : libraries)
+                context.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        if (isMissing(library))
+                            missing.add(library);
+
+                        return null;
+                    }
+                }, null, true);
+
+        else
+            for (Library library : libraries)
+                if (isMissing(library))
+                    missing.add(library);
+    }
+
+    /**
+     * Finds the missing or broken assets, and adds them to
+     * <code>missing</code>, which must be thread-safe.
+     */
+    void findMissingAssets(CombinedDownloadContext<?> context, Collection<Asset> assets, final Collection<Asset> missing) throws InterruptedException, IOException, NoSuchAlgorithmException {
+        List<Asset> suspect = new ArrayList<>();
+        classifyAssets(AssetObjects.scan(mcdir.getAssetObjects()), assets, missing, suspect);
+
+        for (final Asset asset : suspect)
+            context.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    if (isMissing(asset))
+                        missing.add(asset);
+
+                    return null;
+                }
+            }, null, true);
+    }
+
+    /**
+     * Checks whether the given library is missing or broken.
+     */
+    boolean isMissing(Library library) throws IOException, NoSuchAlgorithmException {
+        if (checkLibrariesHash)
+            return needDownload(mcdir.getLibrary(library), library.getDownloadInfo());
+        else
+            return library.isMissing(mcdir);
+    }
+
+    /**
+     * Checks whether the given asset is missing or broken.
+     */
+    boolean isMissing(Asset asset) throws IOException, NoSuchAlgorithmException {
+        if (checkAssetsHash)
+            return !verify(mcdir.getAsset(asset), asset.getHash(), asset.getSize());
+        else
+            return !mcdir.getAsset(asset).isFile();
+    }
+
+    /**
+     * Copies the given library from the shared object store.
+     *
+     * @return true if the library has been copied
+     */
+    boolean retrieveShared(Library library) throws IOException, NoSuchAlgorithmException {
+        return retrieveSharedLibrary(library, checkLibrariesHash);
+    }
+
+    /**
+     * Copies the given asset from the shared object store.
+     *
+     * @return true if the asset has been copied
+     */
+    boolean retrieveShared(Asset asset) throws IOException, NoSuchAlgorithmException {
+        return retrieveShared(asset.getHash(), asset.getSize(), mcdir.getAsset(asset), checkAssetsHash);
+    }
+
+    /**
+     * Classifies the assets by the listing of the asset objects, so only the
+     * suspect ones are checked one by one.
+     * <p>
+     * The assets which don't exist or whose sizes mismatch are added to
+     * <code>missing</code>. If the hashes are checked, the assets which
+     * haven't been verified with the same size and modification time are
+     * added to <code>suspect</code>, and need to be hashed.
+     */
+    private void classifyAssets(AssetObjects objects, Collection<Asset> assets, Collection<Asset> missing, Collection<Asset> suspect) {
+        VerifiedFileIndex index = fileIndex;
+        for (Asset asset : assets) {
+            AssetObjects.ObjectFile object = objects.get(asset);
+            if (object == null || object.size != asset.getSize())
+                missing.add(asset);
+            else if (checkAssetsHash && (index == null || !index.isVerified(mcdir.getAsset(asset), asset.getHash(), object.size, object.lastModified)))
+                suspect.add(asset);
+        }
+    }
+
+    private boolean isLoadedLazily(Asset asset) {
+        return asset.getVirtualPath().endsWith(".ogg");
+    }
+
+    private CombinedDownloadTask<Void> downloadAssets(final AssetObjects objects, final Collection<Asset> assets, Priority priority) {
+        return new CombinedDownloadTask<Void>() {
+
+            @Override
+            public void execute(final CombinedDownloadContext<Void> context) throws Exception {
+                downloadAssets(context, objects, assets);
+                context.awaitAllTasks(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        context.done(null);
+                        return null;
+                    }
+                });
+            }
+        }.withPriority(priority);
+    }
+
+    private void downloadAssets(final CombinedDownloadContext<Void> context, AssetObjects objects, Collection<Asset> assets) throws InterruptedException, IOException, NoSuchAlgorithmException {
+        List<Asset> missing = new ArrayList<>();
+        List<Asset> suspect = new ArrayList<>();
+        classifyAssets(objects, assets, missing, suspect);
+
+        // copying from the shared object store hashes the objects if the hashes are checked
+        if (objectStore != null && checkAssetsHash)
+            suspect.addAll(missing);
+        else
+            for (Asset asset : missing)
+                if (!retrieveShared(asset))
+                    context.submit(downloadAsset(asset), null, false);
+
+        for (final Asset asset : suspect)
+            context.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    if (isMissing(asset) && !retrieveShared(asset))
+                        context.submit(downloadAsset(asset), null, false);
+
+                    return null;
+                }
+            }, null, false);
+    }
+
+    CombinedDownloadTask<Void> downloadAsset(Asset asset) {
+        return storeShared(downloadProvider.asset(mcdir, asset), asset.getHash(), asset.getSize(), mcdir.getAsset(asset));
+    }
+
+    CombinedDownloadTask<Void> downloadLibrary(Library library) {
+        CombinedDownloadTask<Void> task = downloadProvider.library(mcdir, library);
+        DownloadInfo info = library.getDownloadInfo();
+        if (info == null || info.getChecksum() == null)
+            return task;
+
+        return storeShared(task, info.getChecksum(), info.getSize(), mcdir.getLibrary(library));
+    }
+
+    private boolean retrieveShared(String hash, long size, File target, boolean checkHash) throws IOException, NoSuchAlgorithmException {
+        return objectStore != null && objectStore.retrieve(hash, size, target, checkHash);
+    }
+
+    private boolean retrieveSharedLibrary(Library library, boolean checkHash) throws IOException, NoSuchAlgorithmException {
+        DownloadInfo info = library.getDownloadInfo();
+        if (info == null || info.getChecksum() == null)
+            return false;
+
+        return retrieveShared(info.getChecksum(), info.getSize(), mcdir.getLibrary(library), checkHash);
+    }
+
+    private CombinedDownloadTask<Void> storeShared(CombinedDownloadTask<Void> task, final String hash, final long size, final File target) {
+        if (objectStore == null)
+            return task;
+
+        return task.andThen(new ResultProcessor<Void, Void>() {
+
+            @Override
+            public Void process(Void arg) throws Exception {
+                // only the verified files are shared with other directories
+                if (verify(target, hash, size))
+                    objectStore.store(hash, target);
+
+                return null;
+            }
+        });
+    }
+
+    private boolean needDownload(File target, DownloadInfo info) throws NoSuchAlgorithmException, IOException {
+        if (info == null)
+            return !target.isFile();
+        else
+            return !verify(target, info.getChecksum(), info.getSize());
+    }
+
+    private boolean verify(File file, String hash, long size) throws NoSuchAlgorithmException, IOException {
+        VerifiedFileIndex index = fileIndex;
+        if (index == null || hash == null)
+            return ChecksumUtils.verify(file, hash, "SHA-1", size);
+        else {
+            boolean result = index.verify(file, hash, size);
+            checkpoint(index);
+            return result;
+        }
+    }
+
+    private void checkpoint(VerifiedFileIndex index) {
+        long last = lastCheckpoint.get();
+        long now = System.nanoTime();
+        // only one of the checking threads saves the index
+        if (now - last >= CHECKPOINT_INTERVAL && lastCheckpoint.compareAndSet(last, now)) {
+            try {
+                index.save();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Couldn't checkpoint the verified file index of " + mcdir, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.version.Asset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The asset objects present in a minecraft directory, listed by walking the
+ * <code>assets/objects</code> directory once.
+ * <p>
+ * The sizes and the modification times come with the listing, so thousands of
+ * assets can be checked without touching each of them on the disk.
+ */
+final class AssetObjects {
+
+    /**
+     * An asset object on the disk.
+     */
+    static final class ObjectFile {
+
+        final long size;
+        final long lastModified;
+
+        ObjectFile(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Lists the asset objects in the given directory.
+     * <p>
+     * The objects which can't be read are treated as missing.
+     *
+     * @param objectsDir the <code>assets/objects</code> directory
+     * @return the asset objects in the directory
+     * @throws IOException if an I/O error occurs
+     */
+    static AssetObjects scan(File objectsDir) throws IOException {
+        Objects.requireNonNull(objectsDir);
+        final Map<String, ObjectFile> objects = new HashMap<>();
+        // assets/objects/<2-character-prefix>/<hash>
+        Files.walkFileTree(objectsDir.toPath(), EnumSet.noneOf(FileVisitOption.class), 2, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String hash = file.getFileName().toString();
+                Path parent = file.getParent();
+                if (attrs.isRegularFile() && parent != null && hash.length() > 2 && hash.startsWith(parent.getFileName().toString())) {
+                    objects.put(hash, new ObjectFile(attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // includes the case that the directory doesn't exist
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new AssetObjects(objects);
+    }
+
+    private final Map<String, ObjectFile> objects;
+
+    private AssetObjects(Map<String, ObjectFile> objects) {
+        this.objects = objects;
+    }
+
+    /**
+     * Gets the object of the given asset.
+     *
+     * @param asset the asset
+     * @return the object of the asset, null if it doesn't exist
+     */
+    ObjectFile get(Asset asset) {
+        return objects.get(asset.getHash());
+    }
+
+}
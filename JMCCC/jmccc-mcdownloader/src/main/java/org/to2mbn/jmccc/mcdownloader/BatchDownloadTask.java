@@ -0,0 +1,260 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallbacks;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadContext;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAdapter;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads several minecraft versions incrementally as a whole.
+ * <p>
+ * The installation is planned with {@link InstallPlanTask} first, where the
+ * files shared by several versions appear only once, and then the plan is
+ * downloaded in one go.
+ * <p>
+ * If the install journal is enabled, the plan and the files which have been
+ * done are recorded in an {@link InstallJournal}. When the same versions are
+ * installed again after an interruption, the planning is skipped and only the
+ * remaining files are downloaded.
+ *
+ * @see InstallPlanListener
+ * @see InstallProgressListener
+ */
+public class BatchDownloadTask extends CombinedDownloadTask<Map<String, Version>> {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchDownloadTask.class.getCanonicalName());
+
+    private MinecraftDirectory mcdir;
+    private Collection<String> versions;
+    private MinecraftDownloadProvider downloadProvider;
+    private boolean checkLibrariesHash;
+    private boolean checkAssetsHash;
+    private SharedObjectStore objectStore;
+    private boolean useVerifiedFileIndex;
+    private InstallPlanListener planListener;
+    private InstallProgressListener progressListener;
+    private boolean useInstallJournal;
+
+    public BatchDownloadTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, Collection<String> versions, boolean checkLibrariesHash, boolean checkAssetsHash, SharedObjectStore objectStore, boolean useVerifiedFileIndex, InstallPlanListener planListener, InstallProgressListener progressListener) {
+        this(downloadProvider, mcdir, versions, checkLibrariesHash, checkAssetsHash, objectStore, useVerifiedFileIndex, planListener, progressListener, false);
+    }
+
+    public BatchDownloadTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, Collection<String> versions, boolean checkLibrariesHash, boolean checkAssetsHash, SharedObjectStore objectStore, boolean useVerifiedFileIndex, InstallPlanListener planListener, InstallProgressListener progressListener, boolean useInstallJournal) {
+        Objects.requireNonNull(mcdir);
+        Objects.requireNonNull(versions);
+        Objects.requireNonNull(downloadProvider);
+        for (String version : versions) {
+            Objects.requireNonNull(version);
+        }
+        this.mcdir = mcdir;
+        this.versions = versions;
+        this.downloadProvider = downloadProvider;
+        this.checkLibrariesHash = checkLibrariesHash;
+        this.checkAssetsHash = checkAssetsHash;
+        this.objectStore = objectStore;
+        this.useVerifiedFileIndex = useVerifiedFileIndex;
+        this.planListener = planListener;
+        this.progressListener = progressListener;
+        this.useInstallJournal = useInstallJournal;
+    }
+
+    @Override
+    public void execute(final CombinedDownloadContext<Map<String, Version>> context) throws Exception {
+        final ArtifactInstaller installer = new ArtifactInstaller(downloadProvider, mcdir, checkLibrariesHash, checkAssetsHash, objectStore, useVerifiedFileIndex);
+        installer.open();
+
+        final InstallJournal journal = useInstallJournal ? new InstallJournal(mcdir, versions) : null;
+        InstallPlan restored = restore(journal);
+        if (restored != null) {
+            downloadPlan(context, installer, journal, restored);
+            return;
+        }
+
+        context.submit(new InstallPlanTask(downloadProvider, mcdir, versions, installer, false), new CallbackAdapter<InstallPlan>() {
+
+            @Override
+            public void done(final InstallPlan plan) {
+                try {
+                    context.submit(new Callable<Void>() {
+
+                        @Override
+                        public Void call() throws Exception {
+                            begin(journal, plan);
+                            downloadPlan(context, installer, journal, plan);
+                            return null;
+                        }
+                    }, null, true);
+                } catch (InterruptedException e) {
+                    context.cancelled();
+                }
+            }
+
+        }, true);
+    }
+
+    private void downloadPlan(final CombinedDownloadContext<Map<String, Version>> context, final ArtifactInstaller installer, final InstallJournal journal, final InstallPlan plan) throws Exception {
+        if (planListener != null) {
+            planListener.planned(plan);
+        }
+
+        final InstallProgressTracker tracker = progressListener == null ? null : new InstallProgressTracker(plan, progressListener);
+
+        // the indexes of the files in the plan are recorded in the journal
+        int index = 0;
+        for (Version versionModel : plan.getGameJars())
+            context.submit(downloadProvider.gameJar(mcdir, versionModel), callback(tracker, InstallPlan.sizeOf(versionModel), journal, ArtifactCategory.GAME_JAR, index++), true);
+
+        // copying from the shared object store may verify the files, so do it in parallel
+        index = 0;
+        for (final Library library : plan.getLibraries()) {
+            final int libraryIndex = index++;
+            context.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    if (installer.retrieveShared(library)) {
+                        skipped(tracker, InstallPlan.sizeOf(library));
+                        journalDone(journal, ArtifactCategory.LIBRARY, libraryIndex);
+                    } else {
+                        context.submit(installer.downloadLibrary(library), callback(tracker, InstallPlan.sizeOf(library), journal, ArtifactCategory.LIBRARY, libraryIndex), true);
+                    }
+                    return null;
+                }
+            }, null, true);
+        }
+
+        // the assets are not needed to launch the game, download them last
+        final Priority assetsPriority = Priority.lower(context.getPriority(), Priority.LOW);
+        index = 0;
+        for (final Asset asset : plan.getAssets()) {
+            final int assetIndex = index++;
+            context.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    if (installer.retrieveShared(asset)) {
+                        skipped(tracker, InstallPlan.sizeOf(asset));
+                        journalDone(journal, ArtifactCategory.ASSET, assetIndex);
+                    } else {
+                        context.submit(installer.downloadAsset(asset).withPriority(assetsPriority), callback(tracker, InstallPlan.sizeOf(asset), journal, ArtifactCategory.ASSET, assetIndex), false);
+                    }
+                    return null;
+                }
+            }, null, false);
+        }
+
+        context.awaitAllTasks(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                installer.close();
+                // the tasks here have all terminated, but some of them may have failed,
+                // in which case the journal is kept to resume from the failed files
+                if (journal != null) {
+                    if (journal.isCompleted()) {
+                        journal.delete();
+                    } else {
+                        closeJournal(journal);
+                    }
+                }
+                if (tracker != null) {
+                    tracker.finish();
+                }
+                context.done(plan.getVersions());
+                return null;
+            }
+        });
+    }
+
+    private InstallPlan restore(InstallJournal journal) {
+        if (journal == null)
+            return null;
+
+        InstallPlan remaining;
+        try {
+            remaining = journal.restore();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't restore the install journal of " + versions + ", planning again", e);
+            return null;
+        }
+        if (remaining == null)
+            return null;
+
+        LOGGER.fine("Resuming the install of " + versions + " from the journal");
+        InstallPlan plan = InstallPlanTask.createPlan(downloadProvider, mcdir, remaining.getVersions(), remaining.getGameJars(), remaining.getLibraries(), remaining.getAssets());
+        begin(journal, plan);
+        return plan;
+    }
+
+    private void begin(InstallJournal journal, InstallPlan plan) {
+        if (journal == null)
+            return;
+
+        try {
+            journal.begin(plan);
+        } catch (IOException e) {
+            // the journal only speeds up resuming, so don't fail the download
+            LOGGER.log(Level.WARNING, "Couldn't write the install journal of " + versions, e);
+        }
+    }
+
+    private void journalDone(InstallJournal journal, ArtifactCategory category, int index) {
+        if (journal == null)
+            return;
+
+        try {
+            journal.done(category, index);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Couldn't write the install journal of " + versions, e);
+        }
+    }
+
+    private void closeJournal(InstallJournal journal) {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Couldn't close the install journal of " + versions, e);
+        }
+    }
+
+    private CombinedDownloadCallback<Void> callback(InstallProgressTracker tracker, long size, final InstallJournal journal, final ArtifactCategory category, final int index) {
+        CombinedDownloadCallback<Void> trackCallback = track(tracker, size);
+        if (journal == null)
+            return trackCallback;
+
+        CombinedDownloadCallback<Void> journalCallback = CombinedDownloadCallbacks.fromCallback(new CallbackAdapter<Void>() {
+
+            @Override
+            public void done(Void result) {
+                journalDone(journal, category, index);
+            }
+        });
+        return trackCallback == null ? journalCallback : CombinedDownloadCallbacks.group(trackCallback, journalCallback);
+    }
+
+    private static CombinedDownloadCallback<Void> track(InstallProgressTracker tracker, long size) {
+        return tracker == null ? null : tracker.track(size);
+    }
+
+    private static void skipped(InstallProgressTracker tracker, long size) {
+        if (tracker != null) {
+            tracker.skipped(size);
+        }
+    }
+
+}
@@ -1,21 +1,19 @@
 package org.to2mbn.jmccc.mcdownloader;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadContext;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAdapter;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
 import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
-import org.to2mbn.jmccc.util.ChecksumUtils;
-import org.to2mbn.jmccc.version.*;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.Version;
+import org.to2mbn.jmccc.version.Versions;
 
-import java.io.*;
-import java.security.NoSuchAlgorithmException;
-import java.util.*;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
 
@@ -24,11 +22,23 @@ public class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
     private MinecraftDownloadProvider downloadProvider;
     private boolean checkLibrariesHash;
     private boolean checkAssetsHash;
-
-    private Set<String> handledVersions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
-    private String resolvedVersion;
+    private SharedObjectStore objectStore;
+    private boolean useVerifiedFileIndex;
+    private LaunchableListener launchableListener;
 
     public IncrementallyDownloadTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, String version, boolean checkLibrariesHash, boolean checkAssetsHash) {
+        this(downloadProvider, mcdir, version, checkLibrariesHash, checkAssetsHash, null);
+    }
+
+    public IncrementallyDownloadTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, String version, boolean checkLibrariesHash, boolean checkAssetsHash, SharedObjectStore objectStore) {
+        this(downloadProvider, mcdir, version, checkLibrariesHash, checkAssetsHash, objectStore, true);
+    }
+
+    public IncrementallyDownloadTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, String version, boolean checkLibrariesHash, boolean checkAssetsHash, SharedObjectStore objectStore, boolean useVerifiedFileIndex) {
+        this(downloadProvider, mcdir, version, checkLibrariesHash, checkAssetsHash, objectStore, useVerifiedFileIndex, null);
+    }
+
+    public IncrementallyDownloadTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, String version, boolean checkLibrariesHash, boolean checkAssetsHash, SharedObjectStore objectStore, boolean useVerifiedFileIndex, LaunchableListener launchableListener) {
         Objects.requireNonNull(mcdir);
         Objects.requireNonNull(version);
         Objects.requireNonNull(downloadProvider);
@@ -37,42 +47,79 @@ public class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
         this.downloadProvider = downloadProvider;
         this.checkLibrariesHash = checkLibrariesHash;
         this.checkAssetsHash = checkAssetsHash;
+        this.objectStore = objectStore;
+        this.useVerifiedFileIndex = useVerifiedFileIndex;
+        this.launchableListener = launchableListener;
     }
 
     @Override
     public void execute(final CombinedDownloadContext<Version> context) throws Exception {
-        handledVersions.clear();
-        resolvedVersion = null;
+        final ArtifactInstaller installer = new ArtifactInstaller(downloadProvider, mcdir, checkLibrariesHash, checkAssetsHash, objectStore, useVerifiedFileIndex);
+        installer.open();
 
-        handleVersionJson(version, context, new Callable<Void>() {
+        context.submit(new VersionJsonTask(downloadProvider, mcdir, version), new CallbackAdapter<String>() {
 
             @Override
-            public Void call() throws Exception {
-                if (resolvedVersion == null) {
-                    resolvedVersion = version;
+            public void done(final String resolvedVersion) {
+                try {
+                    context.submit(new Callable<Void>() {
+
+                        @Override
+                        public Void call() throws Exception {
+                            final Version versionModel = Versions.resolveVersion(mcdir, resolvedVersion);
+
+                            context.submit(downloadLaunchRequirements(context, installer, versionModel), new CallbackAdapter<Void>() {
+
+                                @Override
+                                public void done(Void result) {
+                                    if (launchableListener != null) {
+                                        launchableListener.launchable(versionModel);
+                                    }
+                                }
+
+                            }, true);
+
+                            context.awaitAllTasks(new Callable<Void>() {
+
+                                @Override
+                                public Void call() throws Exception {
+                                    installer.close();
+                                    context.done(versionModel);
+                                    return null;
+                                }
+                            });
+                            return null;
+                        }
+                    }, null, true);
+                } catch (InterruptedException e) {
+                    context.cancelled();
                 }
+            }
 
-                final Version versionModel = Versions.resolveVersion(mcdir, resolvedVersion);
+        }, true);
+    }
+
+    // the game jar, the libraries and the asset index
+    // the assets are submitted to the parent context, so they don't delay the completion of this task
+    private CombinedDownloadTask<Void> downloadLaunchRequirements(final CombinedDownloadContext<Version> parent, final ArtifactInstaller installer, final Version versionModel) {
+        return new CombinedDownloadTask<Void>() {
 
+            @Override
+            public void execute(final CombinedDownloadContext<Void> context) throws Exception {
                 if (mcdir.getAssetIndex(versionModel).exists()) {
-                    downloadAssets(context, Versions.resolveAssets(mcdir, versionModel));
+                    installer.submitAssets(parent, Versions.resolveAssets(mcdir, versionModel));
 
                 } else {
-                    context.submit(downloadProvider.assetsIndex(mcdir, versionModel), new CallbackAdapter<Set<Asset>>() {
+                    context.submit(downloadProvider.assetsIndex(mcdir, versionModel).withPriority(Priority.lower(context.getPriority(), Priority.LOW)), new CallbackAdapter<Set<Asset>>() {
 
                         @Override
                         public void done(final Set<Asset> result) {
                             try {
-                                context.submit(new Callable<Void>() {
-
-                                    @Override
-                                    public Void call() throws Exception {
-                                        downloadAssets(context, result);
-                                        return null;
-                                    }
-                                }, null, true);
+                                installer.submitAssets(parent, result);
                             } catch (InterruptedException e) {
                                 context.cancelled();
+                            } catch (IOException e) {
+                                context.failed(e);
                             }
                         }
 
@@ -83,123 +130,18 @@ public class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
                     context.submit(downloadProvider.gameJar(mcdir, versionModel), null, true);
                 }
 
-                downloadLibraries(context, versionModel);
+                installer.downloadLibraries(context, versionModel.getLibraries());
 
                 context.awaitAllTasks(new Callable<Void>() {
 
                     @Override
                     public Void call() throws Exception {
-                        context.done(versionModel);
+                        context.done(null);
                         return null;
                     }
                 });
-                return null;
             }
-        });
-    }
-
-    private void handleVersionJson(final String currentVersion, final CombinedDownloadContext<Version> context, final Callable<Void> callback) throws Exception {
-        if (mcdir.getVersionJson(currentVersion).exists()) {
-            JSONObject versionjson = readJson(mcdir.getVersionJson(currentVersion));
-            String inheritsFrom = versionjson.optString("inheritsFrom", null);
-            handledVersions.add(currentVersion);
-            if (inheritsFrom == null) {
-                // end node
-                callback.call();
-            } else {
-                // intermediate node
-                if (handledVersions.contains(inheritsFrom)) {
-                    throw new IllegalStateException("loop inherits from: " + currentVersion + " to " + inheritsFrom);
-                }
-                handleVersionJson(inheritsFrom, context, callback);
-            }
-        } else {
-            context.submit(downloadProvider.gameVersionJson(mcdir, currentVersion), new CallbackAdapter<String>() {
-
-                @Override
-                public void done(final String currentResolvedVersion) {
-                    try {
-                        context.submit(new Callable<Void>() {
-
-                            @Override
-                            public Void call() throws Exception {
-                                if (version.equals(currentVersion)) {
-                                    resolvedVersion = currentResolvedVersion;
-                                }
-
-                                handleVersionJson(currentResolvedVersion, context, callback);
-                                return null;
-                            }
-                        }, null, true);
-                    } catch (InterruptedException e) {
-                        context.cancelled();
-                    }
-                }
-
-            }, true);
-        }
-    }
-
-    private void downloadAssets(final CombinedDownloadContext<Version> context, Set<Asset> assets) throws InterruptedException {
-        if (assets == null)
-            return;
-
-        Map<String, Asset> hashMapping = new HashMap<>();
-        for (Asset asset : assets) {
-            // put the assets into a map
-            // to remove the elements which has the same hash
-            hashMapping.put(asset.getHash(), asset);
-        }
-
-        if (checkAssetsHash)
-            for (final Asset asset : hashMapping.values())
-                context.submit(new Callable<Void>() {
-
-                    @Override
-                    public Void call() throws Exception {
-                        if (!asset.isValid(mcdir))
-                            context.submit(downloadProvider.asset(mcdir, asset), null, false);
-
-                        return null;
-                    }
-                }, null, false);
-
-        else
-            for (Asset asset : hashMapping.values())
-                if (!mcdir.getAsset(asset).isFile())
-                    context.submit(downloadProvider.asset(mcdir, asset), null, false);
-    }
-
-    private void downloadLibraries(final CombinedDownloadContext<Version> context, Version version) throws InterruptedException {
-        if (checkLibrariesHash)
-            for (final Library library : version.getLibraries())
-                context.submit(new Callable<Void>() {
-
-                    @Override
-                    public Void call() throws Exception {
-                        if (needDownload(mcdir.getLibrary(library), library.getDownloadInfo()))
-                            context.submit(downloadProvider.library(mcdir, library), null, true);
-
-                        return null;
-                    }
-                }, null, true);
-
-        else
-            for (Library library : version.getMissingLibraries(mcdir))
-                context.submit(downloadProvider.library(mcdir, library), null, true);
-    }
-
-    private boolean needDownload(File target, DownloadInfo info) throws NoSuchAlgorithmException, IOException {
-        if (info == null)
-            return !target.isFile();
-        else
-            return !ChecksumUtils.verify(target, info.getChecksum(), "SHA-1", info.getSize());
-    }
-
-    private JSONObject readJson(File file) throws IOException, JSONException {
-        try (Reader reader = new InputStreamReader(new BufferedInputStream(new FileInputStream(file)), "UTF-8")) {
-            return new JSONObject(new JSONTokener(reader));
-        }
+        };
     }
 
 }
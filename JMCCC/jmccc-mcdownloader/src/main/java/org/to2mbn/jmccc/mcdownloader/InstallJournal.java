@@ -0,0 +1,358 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.FileUtils;
+import org.to2mbn.jmccc.util.HexUtils;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Records the progress of an install, so an interrupted install can resume
+ * from the files which haven't been downloaded.
+ * <p>
+ * A journal consists of two files under
+ * <code>${mcdir}/.install-journals</code>: the plan file, which is written once
+ * when the install starts, and the log file, to which a record is appended
+ * when a file in the plan is done. There is one journal per set of versions.
+ * <p>
+ * When resuming, the files recorded as done are checked only by their sizes,
+ * and the others are downloaded without checking. The journal is discarded if
+ * any json in the version hierarchies has been modified since it was written.
+ * <p>
+ * The log file is kept open for appending until the journal is closed.
+ *
+ * @see BatchDownloadTask
+ */
+public class InstallJournal implements Closeable {
+
+    public static final String JOURNALS_DIR_NAME = ".install-journals";
+
+    private static final int MAGIC = 0x4a494a4c; // JIJL
+    private static final int FORMAT_VERSION = 2;
+    private static final int RECORD_LENGTH = 5;
+
+    private final MinecraftDirectory mcdir;
+    private final List<String> versions;
+    private final File planFile;
+    private final File logFile;
+
+    // guarded by this
+    private int filesCount;
+    // guarded by this
+    private BitSet[] done;
+    // guarded by this
+    private OutputStream logOut;
+
+    /**
+     * Constructs the journal of installing the given versions.
+     *
+     * @param mcdir    the minecraft directory
+     * @param versions the versions to install
+     * @throws NullPointerException if <code>mcdir==null || versions==null</code>
+     */
+    public InstallJournal(MinecraftDirectory mcdir, Collection<String> versions) {
+        Objects.requireNonNull(mcdir);
+        Objects.requireNonNull(versions);
+        this.mcdir = mcdir;
+        this.versions = new ArrayList<>(new TreeSet<>(versions));
+        File dir = new File(mcdir.getRoot(), JOURNALS_DIR_NAME);
+        String name = nameOf(this.versions);
+        this.planFile = new File(dir, name + ".plan");
+        this.logFile = new File(dir, name + ".log");
+    }
+
+    /**
+     * Gets the files of the interrupted install which haven't been done.
+     *
+     * @return the files which haven't been done, the providers are not set;
+     * null if there is no interrupted install, or the journal is outdated
+     * @throws IOException if an I/O error occurs
+     */
+    public InstallPlan restore() throws IOException {
+        Map<String, Version> versionModels;
+        List<Version> gameJars;
+        List<Library> libraries;
+        List<Asset> assets;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(planFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!versions.equals(in.readObject())) {
+                return null;
+            }
+            int jsonsCount = in.readInt();
+            for (int i = 0; i < jsonsCount; i++) {
+                File json = new File(mcdir.getRoot(), in.readUTF());
+                if (json.length() != in.readLong() || json.lastModified() != in.readLong()) {
+                    // the versions have been modified
+                    return null;
+                }
+            }
+            versionModels = readObject(in);
+            gameJars = readObject(in);
+            libraries = readObject(in);
+            assets = readObject(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Broken journal: " + planFile, e);
+        }
+
+        Map<ArtifactCategory, BitSet> done = readLog();
+
+        List<Version> remainingGameJars = new ArrayList<>();
+        for (int i = 0; i < gameJars.size(); i++) {
+            Version version = gameJars.get(i);
+            if (!isDone(done, ArtifactCategory.GAME_JAR, i, mcdir.getVersionJar(version), InstallPlan.sizeOf(version)))
+                remainingGameJars.add(version);
+        }
+        List<Library> remainingLibraries = new ArrayList<>();
+        for (int i = 0; i < libraries.size(); i++) {
+            Library library = libraries.get(i);
+            if (!isDone(done, ArtifactCategory.LIBRARY, i, mcdir.getLibrary(library), InstallPlan.sizeOf(library)))
+                remainingLibraries.add(library);
+        }
+        List<Asset> remainingAssets = new ArrayList<>();
+        for (int i = 0; i < assets.size(); i++) {
+            Asset asset = assets.get(i);
+            if (!isDone(done, ArtifactCategory.ASSET, i, mcdir.getAsset(asset), InstallPlan.sizeOf(asset)))
+                remainingAssets.add(asset);
+        }
+
+        return new InstallPlan(versionModels, remainingGameJars, remainingLibraries, remainingAssets, new EnumMap<ArtifactCategory, Set<MinecraftDownloadProvider>>(ArtifactCategory.class));
+    }
+
+    /**
+     * Starts a new journal with the given plan, replacing the old one.
+     * <p>
+     * The indexes in {@link #done(ArtifactCategory, int)} refer to the
+     * positions of the files in the plan.
+     *
+     * @param plan the files to install
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void begin(InstallPlan plan) throws IOException {
+        Objects.requireNonNull(plan);
+        File temp = new File(planFile.getParentFile(), planFile.getName() + ".tmp");
+        FileUtils.prepareWrite(temp);
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+                ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fileOut));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeObject(versions);
+
+                Set<File> jsons = new LinkedHashSet<>();
+                for (Version version : plan.getVersions().values()) {
+                    addHierarchy(jsons, version.getVersion());
+                }
+                out.writeInt(jsons.size());
+                for (File json : jsons) {
+                    out.writeUTF(mcdir.getRoot().toURI().relativize(json.toURI()).getPath());
+                    out.writeLong(json.length());
+                    out.writeLong(json.lastModified());
+                }
+
+                out.writeObject(new LinkedHashMap<>(plan.getVersions()));
+                out.writeObject(new ArrayList<>(plan.getGameJars()));
+                out.writeObject(new ArrayList<>(plan.getLibraries()));
+                out.writeObject(new ArrayList<>(plan.getAssets()));
+                out.flush();
+
+                // the plan must reach the disk before the old one is replaced
+                fileOut.getFD().sync();
+            }
+            closeLog();
+            logFile.delete();
+            Files.move(temp.toPath(), planFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            filesCount = plan.getFilesCount();
+            done = new BitSet[ArtifactCategory.values().length];
+            for (int i = 0; i < done.length; i++) {
+                done[i] = new BitSet();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Records that a file in the plan is done.
+     * <p>
+     * The record is not forced to the disk. If it's lost, the file is
+     * downloaded again when resuming.
+     *
+     * @param category the category of the file
+     * @param index    the position of the file in the plan
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void done(ArtifactCategory category, int index) throws IOException {
+        byte[] record = new byte[RECORD_LENGTH];
+        record[0] = (byte) category.ordinal();
+        record[1] = (byte) (index >>> 24);
+        record[2] = (byte) (index >>> 16);
+        record[3] = (byte) (index >>> 8);
+        record[4] = (byte) index;
+        if (logOut == null) {
+            logOut = new FileOutputStream(logFile, true);
+        }
+        try {
+            logOut.write(record);
+        } catch (IOException e) {
+            // reopened for the next record
+            closeLog();
+            throw e;
+        }
+        if (done != null) {
+            done[category.ordinal()].set(index);
+        }
+    }
+
+    /**
+     * Returns true if all the files in the plan passed to the last
+     * {@link #begin(InstallPlan)} have been recorded as done.
+     *
+     * @return true if all the files have been done
+     */
+    public synchronized boolean isCompleted() {
+        if (done == null) {
+            return false;
+        }
+        int doneCount = 0;
+        for (BitSet bits : done) {
+            doneCount += bits.cardinality();
+        }
+        return doneCount >= filesCount;
+    }
+
+    /**
+     * Closes the log file. The journal can still be used after closing, the
+     * log file is opened again when a file is recorded as done.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        OutputStream out = logOut;
+        logOut = null;
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    /**
+     * Closes and deletes the journal. Called when all the files have been done.
+     */
+    public synchronized void delete() {
+        closeLog();
+        logFile.delete();
+        planFile.delete();
+    }
+
+    // guarded by this
+    private void closeLog() {
+        try {
+            close();
+        } catch (IOException e) {
+            // the records written are kept by the system anyway
+        }
+    }
+
+    /**
+     * Adds the jsons of the given version and the versions it inherits from.
+     */
+    private void addHierarchy(Set<File> jsons, String version) throws IOException {
+        String current = version;
+        while (current != null) {
+            File json = mcdir.getVersionJson(current);
+            if (!jsons.add(json)) {
+                // has been added with another version
+                break;
+            }
+            try (Reader reader = new InputStreamReader(new BufferedInputStream(new FileInputStream(json)), "UTF-8")) {
+                current = new JSONObject(new JSONTokener(reader)).optString("inheritsFrom", null);
+            } catch (JSONException e) {
+                throw new IOException("Couldn't read the version json: " + json, e);
+            }
+        }
+    }
+
+    private Map<ArtifactCategory, BitSet> readLog() throws IOException {
+        Map<ArtifactCategory, BitSet> done = new EnumMap<>(ArtifactCategory.class);
+        for (ArtifactCategory category : ArtifactCategory.values()) {
+            done.put(category, new BitSet());
+        }
+        ArtifactCategory[] categories = ArtifactCategory.values();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            for (; ; ) {
+                int category = in.readUnsignedByte();
+                int index = in.readInt();
+                if (category < categories.length && index >= 0) {
+                    done.get(categories[category]).set(index);
+                }
+            }
+        } catch (FileNotFoundException | EOFException e) {
+            // no more records, the last one may be incomplete
+        }
+        return done;
+    }
+
+    private static boolean isDone(Map<ArtifactCategory, BitSet> done, ArtifactCategory category, int index, File file, long size) {
+        return done.get(category).get(index) && file.isFile() && (size < 0 || file.length() == size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        return (T) in.readObject();
+    }
+
+    private static String nameOf(List<String> versions) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String version : versions) {
+                digest.update(version.getBytes("UTF-8"));
+                digest.update((byte) '\n');
+            }
+            return HexUtils.bytesToHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.DownloadInfo;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Describes the files to download to install a batch of versions.
+ * <p>
+ * The plan is made by comparing the version jsons and the asset indexes with
+ * the files in the minecraft directory, so it only contains the missing or
+ * broken files. The files shared by several versions appear only once: the
+ * game jars and the libraries are identified by their locations, and the
+ * assets by their hashes. The files which can be copied from the
+ * {@link SharedObjectStore} are still in the plan.
+ *
+ * @see InstallPlanTask
+ * @see InstallPlanListener
+ */
+public class InstallPlan {
+
+    private final Map<String, Version> versions;
+    private final Collection<Version> gameJars;
+    private final Collection<Library> libraries;
+    private final Collection<Asset> assets;
+    private final Map<ArtifactCategory, Set<MinecraftDownloadProvider>> providers;
+
+    /**
+     * Constructor of InstallPlan.
+     *
+     * @param versions  the resolved versions, keyed by the requested version
+     *                  names
+     * @param gameJars  the versions whose game jars are to download
+     * @param libraries the libraries to download
+     * @param assets    the assets to download
+     * @param providers the providers which provide the files of each category
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public InstallPlan(Map<String, Version> versions, Collection<Version> gameJars, Collection<Library> libraries, Collection<Asset> assets, Map<ArtifactCategory, Set<MinecraftDownloadProvider>> providers) {
+        Objects.requireNonNull(versions);
+        Objects.requireNonNull(gameJars);
+        Objects.requireNonNull(libraries);
+        Objects.requireNonNull(assets);
+        Objects.requireNonNull(providers);
+        this.versions = Collections.unmodifiableMap(versions);
+        this.gameJars = Collections.unmodifiableCollection(gameJars);
+        this.libraries = Collections.unmodifiableCollection(libraries);
+        this.assets = Collections.unmodifiableCollection(assets);
+        this.providers = Collections.unmodifiableMap(new EnumMap<>(providers));
+    }
+
+    /**
+     * Gets the resolved versions, keyed by the requested version names.
+     *
+     * @return the resolved versions
+     */
+    public Map<String, Version> getVersions() {
+        return versions;
+    }
+
+    /**
+     * Gets the versions whose game jars are to download.
+     *
+     * @return the versions whose game jars are to download
+     */
+    public Collection<Version> getGameJars() {
+        return gameJars;
+    }
+
+    /**
+     * Gets the libraries to download.
+     *
+     * @return the libraries to download
+     */
+    public Collection<Library> getLibraries() {
+        return libraries;
+    }
+
+    /**
+     * Gets the assets to download.
+     *
+     * @return the assets to download
+     */
+    public Collection<Asset> getAssets() {
+        return assets;
+    }
+
+    /**
+     * Gets the providers which provide the files of the given category.
+     *
+     * @param category the category
+     * @return the providers, empty if there is no file of the category to
+     * download
+     */
+    public Set<MinecraftDownloadProvider> getProviders(ArtifactCategory category) {
+        Set<MinecraftDownloadProvider> result = providers.get(category);
+        return result == null ? Collections.<MinecraftDownloadProvider>emptySet() : Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Returns true if there is nothing to download.
+     *
+     * @return true if there is nothing to download
+     */
+    public boolean isEmpty() {
+        return getFilesCount() == 0;
+    }
+
+    /**
+     * Gets the total number of the files to download.
+     *
+     * @return the total number of the files
+     */
+    public int getFilesCount() {
+        return gameJars.size() + libraries.size() + assets.size();
+    }
+
+    /**
+     * Gets the number of the files of the given category to download.
+     *
+     * @param category the category
+     * @return the number of the files
+     */
+    public int getFilesCount(ArtifactCategory category) {
+        switch (category) {
+            case GAME_JAR:
+                return gameJars.size();
+            case LIBRARY:
+                return libraries.size();
+            case ASSET:
+                return assets.size();
+            default:
+                throw new IllegalArgumentException(String.valueOf(category));
+        }
+    }
+
+    /**
+     * Gets the total size of the files to download whose sizes are known.
+     *
+     * @return the total size in bytes
+     * @see #getUnknownSizeCount()
+     */
+    public long getTotalSize() {
+        long size = 0;
+        for (ArtifactCategory category : ArtifactCategory.values()) {
+            size += getTotalSize(category);
+        }
+        return size;
+    }
+
+    /**
+     * Gets the total size of the files of the given category whose sizes are
+     * known.
+     *
+     * @param category the category
+     * @return the total size in bytes
+     */
+    public long getTotalSize(ArtifactCategory category) {
+        long size = 0;
+        switch (category) {
+            case GAME_JAR:
+                for (Version version : gameJars) {
+                    size += Math.max(0, sizeOf(version));
+                }
+                break;
+            case LIBRARY:
+                for (Library library : libraries) {
+                    size += Math.max(0, sizeOf(library));
+                }
+                break;
+            case ASSET:
+                for (Asset asset : assets) {
+                    size += sizeOf(asset);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(String.valueOf(category));
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of the files to download whose sizes are unknown.
+     * <p>
+     * These files are not counted in {@link #getTotalSize()}.
+     *
+     * @return the number of the files whose sizes are unknown
+     */
+    public int getUnknownSizeCount() {
+        int count = 0;
+        for (Version version : gameJars) {
+            if (sizeOf(version) < 0) {
+                count++;
+            }
+        }
+        for (Library library : libraries) {
+            if (sizeOf(library) < 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the size of the game jar of the given version.
+     *
+     * @param version the version
+     * @return the size of the game jar, -1 if unknown
+     */
+    static long sizeOf(Version version) {
+        Map<String, DownloadInfo> downloads = version.getDownloads();
+        return sizeOf(downloads == null ? null : downloads.get("client"));
+    }
+
+    /**
+     * Gets the size of the given library.
+     *
+     * @param library the library
+     * @return the size of the library, -1 if unknown
+     */
+    static long sizeOf(Library library) {
+        return sizeOf(library.getDownloadInfo());
+    }
+
+    /**
+     * Gets the size of the given asset.
+     *
+     * @param asset the asset
+     * @return the size of the asset
+     */
+    static long sizeOf(Asset asset) {
+        return asset.getSize();
+    }
+
+    private static long sizeOf(DownloadInfo info) {
+        return info == null ? -1 : info.getSize();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[versions=").append(versions.keySet());
+        for (ArtifactCategory category : ArtifactCategory.values()) {
+            sb.append(", ").append(category).append("=[count=").append(getFilesCount(category))
+                    .append(", size=").append(getTotalSize(category))
+                    .append(", providers=[");
+            boolean first = true;
+            for (MinecraftDownloadProvider provider : getProviders(category)) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                String name = provider.getClass().getSimpleName();
+                sb.append(name.isEmpty() ? provider.getClass().getName() : name);
+                first = false;
+            }
+            sb.append("]]");
+        }
+        return sb.append("]").toString();
+    }
+
+}
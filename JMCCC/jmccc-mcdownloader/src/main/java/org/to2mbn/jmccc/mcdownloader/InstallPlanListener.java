@@ -0,0 +1,22 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+/**
+ * Listens for the install plan of a batch download.
+ * <p>
+ * If the callback passed to
+ * {@link MinecraftDownloader#downloadAllIncrementally(org.to2mbn.jmccc.option.MinecraftDirectory, java.util.Collection, org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallback)}
+ * implements this interface, it will be notified once the files to download
+ * have been found, before any of them is downloaded.
+ *
+ * @see BatchDownloadTask
+ */
+public interface InstallPlanListener {
+
+    /**
+     * Calls when the files to install have been planned.
+     *
+     * @param plan the install plan
+     */
+    void planned(InstallPlan plan);
+
+}
@@ -0,0 +1,235 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.mcdownloader.AppendedDownloadProvider.ProviderQuery;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadContext;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAdapter;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+import org.to2mbn.jmccc.version.Versions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plans the installation of several minecraft versions without downloading
+ * them.
+ * <p>
+ * Only the metadata is downloaded: the missing version jsons and asset
+ * indexes. Then the game jars, the libraries and the assets of all the versions
+ * are compared with the files in the minecraft directory, and the missing or
+ * broken ones make up the {@link InstallPlan}.
+ *
+ * @see MinecraftDownloader#planIncrementally(MinecraftDirectory, Collection, org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallback)
+ */
+public class InstallPlanTask extends CombinedDownloadTask<InstallPlan> {
+
+    private MinecraftDirectory mcdir;
+    private Set<String> versions;
+    private MinecraftDownloadProvider downloadProvider;
+    private ArtifactInstaller installer;
+    private boolean ownInstaller;
+
+    public InstallPlanTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, Collection<String> versions, boolean checkLibrariesHash, boolean checkAssetsHash, SharedObjectStore objectStore, boolean useVerifiedFileIndex) {
+        this(downloadProvider, mcdir, versions, new ArtifactInstaller(downloadProvider, mcdir, checkLibrariesHash, checkAssetsHash, objectStore, useVerifiedFileIndex), true);
+    }
+
+    /**
+     * @param installer    the installer to check the files with
+     * @param ownInstaller true if the installer should be opened and closed by
+     *                     this task
+     */
+    InstallPlanTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, Collection<String> versions, ArtifactInstaller installer, boolean ownInstaller) {
+        Objects.requireNonNull(mcdir);
+        Objects.requireNonNull(versions);
+        Objects.requireNonNull(downloadProvider);
+        Objects.requireNonNull(installer);
+        for (String version : versions) {
+            Objects.requireNonNull(version);
+        }
+        this.mcdir = mcdir;
+        this.versions = new LinkedHashSet<>(versions);
+        this.downloadProvider = downloadProvider;
+        this.installer = installer;
+        this.ownInstaller = ownInstaller;
+    }
+
+    @Override
+    public void execute(final CombinedDownloadContext<InstallPlan> context) throws Exception {
+        if (ownInstaller) {
+            installer.open();
+        }
+
+        final Map<String, String> resolvedVersions = new ConcurrentHashMap<>();
+        for (final String version : versions) {
+            context.submit(new VersionJsonTask(downloadProvider, mcdir, version), new CallbackAdapter<String>() {
+
+                @Override
+                public void done(String result) {
+                    resolvedVersions.put(version, result);
+                }
+
+            }, true);
+        }
+
+        context.awaitAllTasks(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                Map<String, Version> versionModels = new LinkedHashMap<>();
+                for (String version : versions) {
+                    versionModels.put(version, Versions.resolveVersion(mcdir, resolvedVersions.get(version)));
+                }
+                downloadAssetIndexes(context, versionModels);
+                return null;
+            }
+        });
+    }
+
+    private void downloadAssetIndexes(final CombinedDownloadContext<InstallPlan> context, final Map<String, Version> versionModels) throws Exception {
+        // the versions sharing the same assets share the same asset index
+        final Map<String, Set<Asset>> assetIndexes = new ConcurrentHashMap<>();
+        Set<String> handledAssets = new HashSet<>();
+        for (Version versionModel : versionModels.values()) {
+            final String assets = versionModel.getAssets();
+            if (!handledAssets.add(assets))
+                continue;
+
+            if (mcdir.getAssetIndex(versionModel).exists()) {
+                Set<Asset> result = Versions.resolveAssets(mcdir, versionModel);
+                if (result != null)
+                    assetIndexes.put(assets, result);
+
+            } else {
+                context.submit(downloadProvider.assetsIndex(mcdir, versionModel).withPriority(Priority.higher(context.getPriority(), Priority.HIGH)), new CallbackAdapter<Set<Asset>>() {
+
+                    @Override
+                    public void done(Set<Asset> result) {
+                        if (result != null)
+                            assetIndexes.put(assets, result);
+                    }
+
+                }, true);
+            }
+        }
+
+        context.awaitAllTasks(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                findMissingFiles(context, versionModels, assetIndexes.values());
+                return null;
+            }
+        });
+    }
+
+    private void findMissingFiles(final CombinedDownloadContext<InstallPlan> context, final Map<String, Version> versionModels, Collection<Set<Asset>> assetIndexes) throws Exception {
+        final Map<File, Version> gameJars = new LinkedHashMap<>();
+        final Map<File, Library> libraries = new LinkedHashMap<>();
+        final Map<String, Asset> assets = new LinkedHashMap<>();
+
+        for (Version versionModel : versionModels.values()) {
+            File jar = mcdir.getVersionJar(versionModel);
+            if (!gameJars.containsKey(jar) && !jar.exists())
+                gameJars.put(jar, versionModel);
+
+            for (Library library : versionModel.getLibraries()) {
+                File target = mcdir.getLibrary(library);
+                if (!libraries.containsKey(target))
+                    libraries.put(target, library);
+            }
+        }
+
+        for (Set<Asset> assetIndex : assetIndexes)
+            for (Asset asset : assetIndex)
+                if (!assets.containsKey(asset.getHash()))
+                    assets.put(asset.getHash(), asset);
+
+        final Set<Library> missingLibraries = Collections.newSetFromMap(new ConcurrentHashMap<Library, Boolean>());
+        final Set<Asset> missingAssets = Collections.newSetFromMap(new ConcurrentHashMap<Asset, Boolean>());
+        installer.findMissingLibraries(context, libraries.values(), missingLibraries);
+        installer.findMissingAssets(context, assets.values(), missingAssets);
+
+        context.awaitAllTasks(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                // keep the order of the versions
+                libraries.values().retainAll(missingLibraries);
+                assets.values().retainAll(missingAssets);
+
+                InstallPlan plan = createPlan(downloadProvider, mcdir, versionModels, new ArrayList<>(gameJars.values()), new ArrayList<>(libraries.values()), new ArrayList<>(assets.values()));
+                if (ownInstaller) {
+                    installer.close();
+                }
+                context.done(plan);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates a plan with the given files, and finds the providers of them.
+     */
+    static InstallPlan createPlan(MinecraftDownloadProvider downloadProvider, final MinecraftDirectory mcdir, Map<String, Version> versionModels, Collection<Version> gameJars, Collection<Library> libraries, Collection<Asset> assets) {
+        Map<ArtifactCategory, Set<MinecraftDownloadProvider>> providers = new EnumMap<>(ArtifactCategory.class);
+        providers.put(ArtifactCategory.GAME_JAR, new LinkedHashSet<MinecraftDownloadProvider>());
+        providers.put(ArtifactCategory.LIBRARY, new LinkedHashSet<MinecraftDownloadProvider>());
+        providers.put(ArtifactCategory.ASSET, new LinkedHashSet<MinecraftDownloadProvider>());
+
+        // creating download tasks is cheap, nothing is downloaded here
+        for (final Version version : gameJars) {
+            addProvider(downloadProvider, providers.get(ArtifactCategory.GAME_JAR), new ProviderQuery() {
+
+                @Override
+                public Object query(MinecraftDownloadProvider provider) {
+                    return provider.gameJar(mcdir, version);
+                }
+            });
+        }
+        for (final Library library : libraries) {
+            addProvider(downloadProvider, providers.get(ArtifactCategory.LIBRARY), new ProviderQuery() {
+
+                @Override
+                public Object query(MinecraftDownloadProvider provider) {
+                    return provider.library(mcdir, library);
+                }
+            });
+        }
+        for (final Asset asset : assets) {
+            addProvider(downloadProvider, providers.get(ArtifactCategory.ASSET), new ProviderQuery() {
+
+                @Override
+                public Object query(MinecraftDownloadProvider provider) {
+                    return provider.asset(mcdir, asset);
+                }
+            });
+        }
+
+        return new InstallPlan(versionModels, gameJars, libraries, assets, providers);
+    }
+
+    private static void addProvider(MinecraftDownloadProvider downloadProvider, Set<MinecraftDownloadProvider> providers, ProviderQuery query) {
+        MinecraftDownloadProvider provider = AppendedDownloadProvider.findProvider(downloadProvider, query);
+        if (provider != null) {
+            providers.add(provider);
+        }
+    }
+
+}
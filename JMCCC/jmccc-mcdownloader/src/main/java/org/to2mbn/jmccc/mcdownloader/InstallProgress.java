@@ -0,0 +1,100 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+/**
+ * A snapshot of the progress of executing an {@link InstallPlan}.
+ *
+ * @see InstallProgressListener
+ */
+public class InstallProgress {
+
+    private final long doneBytes;
+    private final long totalBytes;
+    private final int doneFiles;
+    private final int totalFiles;
+    private final long bytesPerSecond;
+    private final long remainingTime;
+
+    /**
+     * Constructor of InstallProgress.
+     *
+     * @param doneBytes      the bytes done
+     * @param totalBytes     the total bytes
+     * @param doneFiles      the number of the files done
+     * @param totalFiles     the total number of the files
+     * @param bytesPerSecond the download speed, -1 if unknown
+     * @param remainingTime  the estimated remaining time in milliseconds, -1 if
+     *                       unknown
+     */
+    public InstallProgress(long doneBytes, long totalBytes, int doneFiles, int totalFiles, long bytesPerSecond, long remainingTime) {
+        this.doneBytes = doneBytes;
+        this.totalBytes = totalBytes;
+        this.doneFiles = doneFiles;
+        this.totalFiles = totalFiles;
+        this.bytesPerSecond = bytesPerSecond;
+        this.remainingTime = remainingTime;
+    }
+
+    /**
+     * Gets the bytes done, including the files copied from the
+     * {@link SharedObjectStore}.
+     *
+     * @return the bytes done
+     */
+    public long getDoneBytes() {
+        return doneBytes;
+    }
+
+    /**
+     * Gets the total bytes to download.
+     * <p>
+     * It starts with {@link InstallPlan#getTotalSize()}, and grows when the
+     * sizes of the files whose sizes were unknown become known.
+     *
+     * @return the total bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Gets the number of the files done.
+     *
+     * @return the number of the files done
+     */
+    public int getDoneFiles() {
+        return doneFiles;
+    }
+
+    /**
+     * Gets the total number of the files to download.
+     *
+     * @return the total number of the files
+     */
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    /**
+     * Gets the recent download speed.
+     *
+     * @return the download speed in bytes per second, -1 if unknown
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Gets the estimated remaining time, based on the recent download speed.
+     *
+     * @return the remaining time in milliseconds, -1 if unknown
+     */
+    public long getRemainingTime() {
+        return remainingTime;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + doneBytes + "/" + totalBytes + " bytes, " + doneFiles + "/" + totalFiles + " files, " + bytesPerSecond + " B/s, " + remainingTime + " ms remaining]";
+    }
+
+}
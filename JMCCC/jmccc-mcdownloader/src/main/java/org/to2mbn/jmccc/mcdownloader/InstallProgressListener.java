@@ -0,0 +1,23 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+/**
+ * Listens for the aggregate progress of a batch download.
+ * <p>
+ * If the callback passed to
+ * {@link MinecraftDownloader#downloadAllIncrementally(org.to2mbn.jmccc.option.MinecraftDirectory, java.util.Collection, org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallback)}
+ * implements this interface, it will be notified with the bytes done out of
+ * the bytes in the {@link InstallPlan}, and the estimated remaining time. The
+ * notifications are throttled.
+ *
+ * @see InstallProgress
+ */
+public interface InstallProgressListener {
+
+    /**
+     * Calls when the progress is updated.
+     *
+     * @param progress the progress
+     */
+    void progressUpdated(InstallProgress progress);
+
+}
@@ -0,0 +1,212 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.mcdownloader.download.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAdapter;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the progress of the files in an {@link InstallPlan}, and
+ * estimates the remaining time.
+ * <p>
+ * The progress of a file is scaled to its size in the plan, because the bytes
+ * transferred may differ from it (e.g. pack200 libraries).
+ */
+class InstallProgressTracker {
+
+    private static final long NOTIFY_INTERVAL = TimeUnit.MILLISECONDS.toNanos(200);
+
+    // the weight of the latest sample in the average speed
+    private static final double SPEED_SMOOTHING = 0.3;
+
+    private final InstallProgressListener listener;
+    private final int totalFiles;
+
+    private final AtomicLong doneBytes = new AtomicLong();
+    private final AtomicLong totalBytes;
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicInteger doneFiles = new AtomicInteger();
+
+    // all guarded by this
+    private long lastNotifyTime;
+    private long lastTransferredBytes;
+    private double bytesPerSecond = -1;
+
+    InstallProgressTracker(InstallPlan plan, InstallProgressListener listener) {
+        Objects.requireNonNull(plan);
+        Objects.requireNonNull(listener);
+        this.listener = listener;
+        this.totalFiles = plan.getFilesCount();
+        this.totalBytes = new AtomicLong(plan.getTotalSize());
+        this.lastNotifyTime = System.nanoTime();
+    }
+
+    /**
+     * Creates a callback to track the download of a file.
+     *
+     * @param size the size of the file in the plan, -1 if unknown
+     * @return the callback to inject
+     */
+    CombinedDownloadCallback<Void> track(long size) {
+        return new FileProgress(size);
+    }
+
+    /**
+     * Marks a file as done without downloading it.
+     *
+     * @param size the size of the file in the plan, -1 if unknown
+     */
+    void skipped(long size) {
+        if (size > 0) {
+            doneBytes.addAndGet(size);
+        }
+        doneFiles.incrementAndGet();
+        notifyListener(false);
+    }
+
+    /**
+     * Notifies the listener of the final progress.
+     */
+    void finish() {
+        notifyListener(true);
+    }
+
+    private void notifyListener(boolean force) {
+        long now = System.nanoTime();
+        long done;
+        long total;
+        long speed;
+        synchronized (this) {
+            long elapsed = now - lastNotifyTime;
+            if (!force && elapsed < NOTIFY_INTERVAL) {
+                return;
+            }
+            long transferred = transferredBytes.get();
+            if (elapsed > 0) {
+                double sample = (transferred - lastTransferredBytes) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+                bytesPerSecond = bytesPerSecond < 0 ? sample : bytesPerSecond * (1 - SPEED_SMOOTHING) + sample * SPEED_SMOOTHING;
+            }
+            lastNotifyTime = now;
+            lastTransferredBytes = transferred;
+            speed = bytesPerSecond < 0 ? -1 : (long) bytesPerSecond;
+            done = doneBytes.get();
+            total = totalBytes.get();
+        }
+
+        long remainingTime;
+        if (done >= total) {
+            remainingTime = 0;
+        } else if (speed > 0) {
+            remainingTime = (total - done) * 1000 / speed;
+        } else {
+            remainingTime = -1;
+        }
+        listener.progressUpdated(new InstallProgress(done, total, doneFiles.get(), totalFiles, speed, remainingTime));
+    }
+
+    private class FileProgress extends CallbackAdapter<Void> {
+
+        private final long size;
+
+        // the bytes of this file counted in doneBytes
+        private final AtomicLong credited = new AtomicLong();
+
+        FileProgress(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public <R> DownloadCallback<R> taskStart(DownloadTask<R> task) {
+            return new CallbackAdapter<R>() {
+
+                private long lastDone;
+                private long lastCredited;
+                private boolean sizeKnown;
+
+                @Override
+                public synchronized void updateProgress(long done, long total) {
+                    if (size < 0 && !sizeKnown && total > 0) {
+                        // the size is known now
+                        totalBytes.addAndGet(total);
+                        sizeKnown = true;
+                    }
+                    long newCredited = size >= 0 && total > 0
+                            ? size * Math.min(done, total) / total
+                            : done;
+                    if (size < 0 && !sizeKnown) {
+                        // the size is still unknown, so the total grows with the file
+                        totalBytes.addAndGet(newCredited - lastCredited);
+                    }
+                    transferredBytes.addAndGet(done - lastDone);
+                    credit(newCredited - lastCredited);
+                    lastDone = done;
+                    lastCredited = newCredited;
+                    notifyListener(false);
+                }
+
+                @Override
+                public synchronized void retry(Throwable e, int current, int max) {
+                    // the download restarts from the beginning
+                    if (size < 0 && !sizeKnown) {
+                        totalBytes.addAndGet(-lastCredited);
+                    }
+                    credit(-lastCredited);
+                    lastDone = 0;
+                    lastCredited = 0;
+                }
+
+            };
+        }
+
+        @Override
+        public void done(Void result) {
+            if (size >= 0) {
+                credit(size - credited.get());
+            }
+            doneFiles.incrementAndGet();
+            notifyListener(false);
+        }
+
+        @Override
+        public void failed(Throwable e) {
+            giveUp();
+        }
+
+        @Override
+        public void cancelled() {
+            giveUp();
+        }
+
+        private void giveUp() {
+            // the file won't be downloaded, so it doesn't count any more
+            long counted = credited.getAndSet(0);
+            doneBytes.addAndGet(-counted);
+            totalBytes.addAndGet(-(size >= 0 ? size : counted));
+            doneFiles.incrementAndGet();
+            notifyListener(false);
+        }
+
+        private void credit(long delta) {
+            if (size >= 0) {
+                // a file may consist of several download tasks, don't count more than its size
+                long current;
+                long next;
+                do {
+                    current = credited.get();
+                    next = Math.max(0, Math.min(size, current + delta));
+                } while (!credited.compareAndSet(current, next));
+                doneBytes.addAndGet(next - current);
+            } else {
+                credited.addAndGet(delta);
+                doneBytes.addAndGet(delta);
+            }
+        }
+
+    }
+
+}
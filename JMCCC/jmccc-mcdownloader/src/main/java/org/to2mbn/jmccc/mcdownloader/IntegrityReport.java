@@ -0,0 +1,238 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The result of scanning a minecraft directory with {@link IntegrityScanner}.
+ *
+ * @see IntegrityScanner#scan()
+ */
+public class IntegrityReport {
+
+    /**
+     * The types of the problems found in the files.
+     */
+    public static enum ProblemType {
+
+        /**
+         * The file doesn't exist.
+         */
+        MISSING,
+
+        /**
+         * The size or the hash of the file doesn't match.
+         */
+        CORRUPTED,
+
+        /**
+         * The file can't be read, or it hasn't been checked because of an
+         * error.
+         */
+        UNREADABLE
+
+    }
+
+    /**
+     * A file which is missing, corrupted or unreadable.
+     */
+    public static class Problem {
+
+        private final File file;
+        private final ArtifactCategory category;
+        private final ProblemType type;
+        private final Set<String> versions;
+
+        public Problem(File file, ArtifactCategory category, ProblemType type, Set<String> versions) {
+            Objects.requireNonNull(file);
+            Objects.requireNonNull(category);
+            Objects.requireNonNull(type);
+            Objects.requireNonNull(versions);
+            this.file = file;
+            this.category = category;
+            this.type = type;
+            this.versions = Collections.unmodifiableSet(versions);
+        }
+
+        /**
+         * Gets the file.
+         *
+         * @return the file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Gets the category of the file.
+         *
+         * @return the category of the file
+         */
+        public ArtifactCategory getCategory() {
+            return category;
+        }
+
+        /**
+         * Gets the type of the problem.
+         *
+         * @return the type of the problem
+         */
+        public ProblemType getType() {
+            return type;
+        }
+
+        /**
+         * Gets the versions which use the file.
+         *
+         * @return the versions which use the file, empty if the file is an
+         * asset object not referred by any asset index
+         */
+        public Set<String> getVersions() {
+            return versions;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + category + " " + file;
+        }
+
+    }
+
+    private final Set<String> versions;
+    private final Set<String> brokenVersions;
+    private final List<Problem> problems;
+    private final int checkedFiles;
+    private final long checkedBytes;
+    private final long elapsedTime;
+
+    /**
+     * Constructor of IntegrityReport.
+     *
+     * @param versions       the scanned versions
+     * @param brokenVersions the versions whose jsons or asset indexes can't be
+     *                       resolved
+     * @param problems       the missing, corrupted or unreadable files
+     * @param checkedFiles   the number of the checked files
+     * @param checkedBytes   the number of the bytes hashed
+     * @param elapsedTime    the time taken by the scan in ms
+     * @throws NullPointerException if any of the collections is null
+     */
+    public IntegrityReport(Set<String> versions, Set<String> brokenVersions, List<Problem> problems, int checkedFiles, long checkedBytes, long elapsedTime) {
+        Objects.requireNonNull(versions);
+        Objects.requireNonNull(brokenVersions);
+        Objects.requireNonNull(problems);
+        this.versions = Collections.unmodifiableSet(versions);
+        this.brokenVersions = Collections.unmodifiableSet(brokenVersions);
+        this.problems = Collections.unmodifiableList(problems);
+        this.checkedFiles = checkedFiles;
+        this.checkedBytes = checkedBytes;
+        this.elapsedTime = elapsedTime;
+    }
+
+    /**
+     * Gets the scanned versions.
+     *
+     * @return the scanned versions
+     */
+    public Set<String> getVersions() {
+        return versions;
+    }
+
+    /**
+     * Gets the versions whose jsons or asset indexes can't be resolved. The
+     * files of these versions may not be fully checked.
+     *
+     * @return the versions which can't be resolved
+     */
+    public Set<String> getBrokenVersions() {
+        return brokenVersions;
+    }
+
+    /**
+     * Gets the missing, corrupted or unreadable files.
+     *
+     * @return the missing, corrupted or unreadable files
+     */
+    public List<Problem> getProblems() {
+        return problems;
+    }
+
+    /**
+     * Gets the versions which use any of the files with problems.
+     *
+     * @return the versions to repair
+     */
+    public Set<String> getAffectedVersions() {
+        Set<String> result = new LinkedHashSet<>();
+        for (Problem problem : problems) {
+            result.addAll(problem.getVersions());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of the checked files.
+     *
+     * @return the number of the checked files
+     */
+    public int getCheckedFiles() {
+        return checkedFiles;
+    }
+
+    /**
+     * Gets the number of the bytes hashed.
+     *
+     * @return the number of the bytes hashed
+     */
+    public long getCheckedBytes() {
+        return checkedBytes;
+    }
+
+    /**
+     * Gets the time taken by the scan.
+     *
+     * @return the time taken by the scan in ms
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Returns true if no problem is found.
+     *
+     * @return true if all the files are fine and all the versions can be
+     * resolved
+     */
+    public boolean isHealthy() {
+        return problems.isEmpty() && brokenVersions.isEmpty();
+    }
+
+    /**
+     * Gets the problems of the given type.
+     *
+     * @param type the type of the problems
+     * @return the problems of the type
+     */
+    public Collection<Problem> getProblems(ProblemType type) {
+        Objects.requireNonNull(type);
+        Collection<Problem> result = new ArrayList<>();
+        for (Problem problem : problems) {
+            if (problem.getType() == type) {
+                result.add(problem);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "[versions=" + versions + ", brokenVersions=" + brokenVersions + ", problems=" + problems.size() + ", checkedFiles=" + checkedFiles + ", checkedBytes=" + checkedBytes + ", elapsedTime=" + elapsedTime + "ms]";
+    }
+
+}
@@ -0,0 +1,462 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.mcdownloader.IntegrityReport.Problem;
+import org.to2mbn.jmccc.mcdownloader.IntegrityReport.ProblemType;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.util.FileDigests;
+import org.to2mbn.jmccc.mcdownloader.util.StorageDevices;
+import org.to2mbn.jmccc.mcdownloader.util.VerifiedFileIndex;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.HexUtils;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.DownloadInfo;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+import org.to2mbn.jmccc.version.Versions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks all the files of a minecraft directory.
+ * <p>
+ * The game jars, the libraries (including the natives) and the asset objects
+ * of the versions are checked against the hashes and the sizes in the version
+ * jsons and the asset indexes. The asset objects which are not referred by any
+ * asset index are checked against their file names. Unlike the incremental
+ * downloads, the {@link VerifiedFileIndex} is not trusted here, since the disk
+ * may have been damaged without changing the sizes and the modified times of
+ * the files. Instead, the index is updated with the hashes computed.
+ * <p>
+ * The files are grouped by the devices where they are located. The files on a
+ * non-rotational device (such as an SSD) are hashed by several threads, and
+ * the files on a rotational device are read by one thread in the order of
+ * their paths, to avoid seeking back and forth.
+ * <p>
+ * The files which can't be read, or which can't be checked because of any
+ * other error, are reported as {@link ProblemType#UNREADABLE}, so a scan never
+ * reports a file as fine without having checked it.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * <code>
+ * IntegrityScanner scanner = new IntegrityScanner(mcdir);
+ * IntegrityReport report = scanner.scan();
+ * if (!report.isHealthy()) {
+ *     scanner.repair(report, downloader, callback);
+ * }
+ * </code>
+ * </pre>
+ */
+public class IntegrityScanner {
+
+    /**
+     * The ways to schedule the reading of a device.
+     */
+    public static enum IoScheduling {
+
+        /**
+         * Reads the rotational devices sequentially and the others in parallel.
+         * The devices which can't be detected are read in parallel.
+         */
+        AUTO,
+
+        /**
+         * Reads all the devices in parallel.
+         */
+        PARALLEL,
+
+        /**
+         * Reads each device with one thread.
+         */
+        SEQUENTIAL
+
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(IntegrityScanner.class.getCanonicalName());
+
+    private static final String HASH_ALGORITHM = "SHA-1";
+
+    private static class Target {
+
+        final File file;
+        final ArtifactCategory category;
+        final String hash;
+        final long size;
+        final Set<String> versions = new TreeSet<>();
+
+        Target(File file, ArtifactCategory category, String hash, long size) {
+            this.file = file;
+            this.category = category;
+            this.hash = hash;
+            this.size = size;
+        }
+
+    }
+
+    private final MinecraftDirectory mcdir;
+    private Collection<String> versions;
+    private int threadsPerDevice = Runtime.getRuntime().availableProcessors();
+    private IoScheduling ioScheduling = IoScheduling.AUTO;
+    private boolean updateVerifiedFileIndex = true;
+
+    /**
+     * Constructs an IntegrityScanner which checks all the versions in the
+     * given directory.
+     *
+     * @param mcdir the minecraft directory
+     * @throws NullPointerException if <code>mcdir==null</code>
+     */
+    public IntegrityScanner(MinecraftDirectory mcdir) {
+        Objects.requireNonNull(mcdir);
+        this.mcdir = mcdir;
+    }
+
+    /**
+     * Sets the versions to check. By default all the versions in the directory
+     * are checked.
+     *
+     * @param versions the versions to check, null for all the versions
+     * @return this
+     */
+    public IntegrityScanner setVersions(Collection<String> versions) {
+        this.versions = versions;
+        return this;
+    }
+
+    /**
+     * Sets the number of the threads hashing the files on a non-rotational
+     * device. Defaults to the number of the processors.
+     *
+     * @param threadsPerDevice the number of the threads
+     * @return this
+     * @throws IllegalArgumentException if <code>threadsPerDevice &lt; 1</code>
+     */
+    public IntegrityScanner setThreadsPerDevice(int threadsPerDevice) {
+        if (threadsPerDevice < 1) {
+            throw new IllegalArgumentException("threadsPerDevice < 1");
+        }
+        this.threadsPerDevice = threadsPerDevice;
+        return this;
+    }
+
+    /**
+     * Sets how to schedule the reading of the devices. Defaults to
+     * {@link IoScheduling#AUTO}.
+     *
+     * @param ioScheduling the way to schedule the reading
+     * @return this
+     * @throws NullPointerException if <code>ioScheduling==null</code>
+     */
+    public IntegrityScanner setIoScheduling(IoScheduling ioScheduling) {
+        Objects.requireNonNull(ioScheduling);
+        this.ioScheduling = ioScheduling;
+        return this;
+    }
+
+    /**
+     * Sets whether to record the computed hashes in the
+     * {@link VerifiedFileIndex} of the directory, so the following incremental
+     * downloads needn't hash the files again. Defaults to true.
+     *
+     * @param updateVerifiedFileIndex true to update the index
+     * @return this
+     */
+    public IntegrityScanner setUpdateVerifiedFileIndex(boolean updateVerifiedFileIndex) {
+        this.updateVerifiedFileIndex = updateVerifiedFileIndex;
+        return this;
+    }
+
+    /**
+     * Checks the files in the directory. Blocks until all the files are
+     * checked.
+     *
+     * @return the report
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public IntegrityReport scan() throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+
+        Set<String> scannedVersions = new TreeSet<>(versions == null ? Versions.getVersions(mcdir) : versions);
+        Set<String> brokenVersions = new TreeSet<>();
+        Map<File, Target> targets = new LinkedHashMap<>();
+        for (String version : scannedVersions) {
+            try {
+                addTargets(targets, version);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Couldn't resolve version " + version, e);
+                brokenVersions.add(version);
+            }
+        }
+        addOrphanAssets(targets);
+
+        final List<Problem> problems = Collections.synchronizedList(new ArrayList<Problem>());
+        final AtomicInteger checkedFiles = new AtomicInteger();
+        final AtomicLong checkedBytes = new AtomicLong();
+        final VerifiedFileIndex index = updateVerifiedFileIndex ? VerifiedFileIndex.forDirectory(mcdir.getRoot()) : null;
+
+        // the missing files needn't be read, the others are grouped by devices
+        Map<FileStore, List<Target>> devices = new LinkedHashMap<>();
+        for (Target target : targets.values()) {
+            if (!target.file.isFile()) {
+                checkedFiles.incrementAndGet();
+                problems.add(new Problem(target.file, target.category, ProblemType.MISSING, target.versions));
+                continue;
+            }
+            FileStore device = StorageDevices.deviceOf(target.file);
+            List<Target> group = devices.get(device);
+            if (group == null) {
+                group = new ArrayList<>();
+                devices.put(device, group);
+            }
+            group.add(target);
+        }
+
+        List<ExecutorService> executors = new ArrayList<>();
+        List<Queue<Target>> queues = new ArrayList<>();
+        try {
+            for (Map.Entry<FileStore, List<Target>> entry : devices.entrySet()) {
+                List<Target> group = entry.getValue();
+                int threads;
+                if (isSequential(entry.getKey())) {
+                    threads = 1;
+                    Collections.sort(group, new Comparator<Target>() {
+
+                        @Override
+                        public int compare(Target o1, Target o2) {
+                            return o1.file.getPath().compareTo(o2.file.getPath());
+                        }
+                    });
+                } else {
+                    threads = Math.min(threadsPerDevice, group.size());
+                }
+
+                final Queue<Target> queue = new ConcurrentLinkedQueue<>(group);
+                queues.add(queue);
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                executors.add(executor);
+                for (int i = 0; i < threads; i++) {
+                    executor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            Target target;
+                            while ((target = queue.poll()) != null && !Thread.currentThread().isInterrupted()) {
+                                ProblemType problem;
+                                try {
+                                    problem = check(target, index, checkedBytes);
+                                } catch (Throwable e) {
+                                    // such as an invalid hash in the json
+                                    LOGGER.log(Level.WARNING, "Couldn't check " + target.file, e);
+                                    problem = ProblemType.UNREADABLE;
+                                }
+                                if (problem != null) {
+                                    problems.add(new Problem(target.file, target.category, problem, target.versions));
+                                }
+                                checkedFiles.incrementAndGet();
+                            }
+                        }
+                    });
+                }
+                executor.shutdown();
+            }
+
+            for (ExecutorService executor : executors) {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                    ;
+            }
+        } finally {
+            for (ExecutorService executor : executors) {
+                executor.shutdownNow();
+            }
+        }
+
+        // the targets left by a worker which has died are not known to be fine
+        for (Queue<Target> queue : queues) {
+            Target target;
+            while ((target = queue.poll()) != null) {
+                LOGGER.warning("Couldn't check " + target.file);
+                problems.add(new Problem(target.file, target.category, ProblemType.UNREADABLE, target.versions));
+            }
+        }
+
+        if (index != null) {
+            try {
+                index.save();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Couldn't save the verified file index of " + mcdir, e);
+            }
+        }
+
+        List<Problem> sortedProblems = new ArrayList<>(problems);
+        Collections.sort(sortedProblems, new Comparator<Problem>() {
+
+            @Override
+            public int compare(Problem o1, Problem o2) {
+                return o1.getFile().compareTo(o2.getFile());
+            }
+        });
+        return new IntegrityReport(scannedVersions, brokenVersions, sortedProblems, checkedFiles.get(), checkedBytes.get(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Deletes the corrupted and the unreadable files in the report, and
+     * downloads the affected
+     * versions incrementally, so the missing and corrupted files are
+     * downloaded again.
+     * <p>
+     * The corrupted and the unreadable asset objects which are not referred by
+     * any asset index are deleted only.
+     *
+     * @param report     the report returned by {@link #scan()}
+     * @param downloader the downloader to download the files with
+     * @param callback   the callback
+     * @return future representing pending completion of the download
+     * @throws IOException          if a corrupted or an unreadable file can't be
+     *                              deleted
+     * @throws NullPointerException if <code>report==null||downloader==null</code>
+     * @see MinecraftDownloader#downloadAllIncrementally(MinecraftDirectory, Collection, CombinedDownloadCallback)
+     */
+    public Future<Map<String, Version>> repair(IntegrityReport report, MinecraftDownloader downloader, CombinedDownloadCallback<Map<String, Version>> callback) throws IOException {
+        Objects.requireNonNull(report);
+        Objects.requireNonNull(downloader);
+        for (Problem problem : report.getProblems()) {
+            if (problem.getType() != ProblemType.MISSING) {
+                Files.deleteIfExists(problem.getFile().toPath());
+            }
+        }
+        return downloader.downloadAllIncrementally(mcdir, report.getAffectedVersions(), callback);
+    }
+
+    private void addTargets(Map<File, Target> targets, String version) throws IOException {
+        Version versionModel = Versions.resolveVersion(mcdir, version);
+        if (versionModel == null) {
+            throw new IOException("Version " + version + " doesn't exist");
+        }
+
+        Map<String, DownloadInfo> downloads = versionModel.getDownloads();
+        DownloadInfo client = downloads == null ? null : downloads.get("client");
+        addTarget(targets, version, mcdir.getVersionJar(versionModel), ArtifactCategory.GAME_JAR, client);
+
+        for (Library library : versionModel.getLibraries()) {
+            addTarget(targets, version, mcdir.getLibrary(library), ArtifactCategory.LIBRARY, library.getDownloadInfo());
+        }
+
+        if (mcdir.getAssetIndex(versionModel).isFile()) {
+            Set<Asset> assets = Versions.resolveAssets(mcdir, versionModel);
+            if (assets != null) {
+                for (Asset asset : assets) {
+                    addTarget(targets, version, mcdir.getAsset(asset), ArtifactCategory.ASSET, asset.getHash(), asset.getSize());
+                }
+            }
+        }
+    }
+
+    private void addOrphanAssets(Map<File, Target> targets) {
+        File[] dirs = mcdir.getAssetObjects().listFiles();
+        if (dirs == null) {
+            return;
+        }
+        Arrays.sort(dirs);
+        for (File dir : dirs) {
+            File[] objects = dir.listFiles();
+            if (objects == null) {
+                continue;
+            }
+            for (File object : objects) {
+                String name = object.getName();
+                // the name of an asset object is its SHA-1
+                if (!targets.containsKey(object) && object.isFile() && name.length() == 40 && name.startsWith(dir.getName())) {
+                    targets.put(object, new Target(object, ArtifactCategory.ASSET, name, -1));
+                }
+            }
+        }
+    }
+
+    private static void addTarget(Map<File, Target> targets, String version, File file, ArtifactCategory category, DownloadInfo info) {
+        if (info == null) {
+            addTarget(targets, version, file, category, null, -1);
+        } else {
+            addTarget(targets, version, file, category, info.getChecksum(), info.getSize());
+        }
+    }
+
+    private static void addTarget(Map<File, Target> targets, String version, File file, ArtifactCategory category, String hash, long size) {
+        Target target = targets.get(file);
+        if (target == null) {
+            target = new Target(file, category, hash, size);
+            targets.put(file, target);
+        }
+        target.versions.add(version);
+    }
+
+    /**
+     * Checks the given file.
+     *
+     * @return the problem of the file, null if the file is fine
+     */
+    private static ProblemType check(Target target, VerifiedFileIndex index, AtomicLong checkedBytes) {
+        long size = target.file.length();
+        if (target.size != -1 && size != target.size) {
+            return ProblemType.CORRUPTED;
+        }
+        if (target.hash == null) {
+            return null;
+        }
+
+        byte[] actualHash;
+        try {
+            // the files are not mapped, so they can be deleted by repair() at once,
+            // and a read error is thrown as an IOException rather than an InternalError
+            actualHash = FileDigests.digest(target.file, HASH_ALGORITHM, false);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Couldn't read " + target.file, e);
+            return ProblemType.UNREADABLE;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        checkedBytes.addAndGet(size);
+        if (index != null) {
+            // replaces the entry that may be stale
+            index.record(target.file, actualHash);
+        }
+        return Arrays.equals(HexUtils.hexToBytes(target.hash), actualHash) ? null : ProblemType.CORRUPTED;
+    }
+
+    private boolean isSequential(FileStore device) {
+        switch (ioScheduling) {
+            case PARALLEL:
+                return false;
+            case SEQUENTIAL:
+                return true;
+            default:
+                return device != null && StorageDevices.isRotational(device);
+        }
+    }
+
+}
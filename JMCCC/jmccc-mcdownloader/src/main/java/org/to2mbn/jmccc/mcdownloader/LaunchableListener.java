@@ -0,0 +1,26 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.version.Version;
+
+/**
+ * Listens for the moment when a version being downloaded becomes launchable.
+ * <p>
+ * If the callback passed to
+ * {@link MinecraftDownloader#downloadIncrementally(org.to2mbn.jmccc.option.MinecraftDirectory, String, org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallback)}
+ * implements this interface, it will be notified once the game jar, the
+ * libraries and the asset index are in place. The assets are still being
+ * downloaded in the background then, and the download completes when all the
+ * assets are downloaded.
+ *
+ * @see IncrementallyDownloadTask
+ */
+public interface LaunchableListener {
+
+    /**
+     * Calls when the files needed to launch the game are in place.
+     *
+     * @param version the version being downloaded
+     */
+    void launchable(Version version);
+
+}
@@ -3,10 +3,13 @@ package org.to2mbn.jmccc.mcdownloader;
 import org.to2mbn.jmccc.mcdownloader.download.DownloaderService;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallback;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.Shutdownable;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
 import org.to2mbn.jmccc.version.Version;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 
@@ -16,6 +19,9 @@ public interface MinecraftDownloader extends Shutdownable, DownloaderService, Co
      * Downloads a minecraft version incrementally and asynchronously.
      * <p>
      * The method will check the asset files, library files, game jars. And downloads the missing or broken ones.
+     * <p>
+     * If the callback implements {@link LaunchableListener}, it will be notified once the game can be launched,
+     * while the assets are still being downloaded.
      *
      * @param dir      the minecraft dir
      * @param version  the version to download
@@ -26,6 +32,78 @@ public interface MinecraftDownloader extends Shutdownable, DownloaderService, Co
      */
     Future<Version> downloadIncrementally(MinecraftDirectory dir, String version, CombinedDownloadCallback<Version> callback);
 
+    /**
+     * Downloads a minecraft version incrementally and asynchronously, with the
+     * given priority.
+     * <p>
+     * The priority applies to the files needed to launch the game (the version
+     * json, the game jar and the libraries). The assets are always downloaded
+     * with lower priorities. Use {@link Priority#CRITICAL} if someone is
+     * waiting to launch the game.
+     *
+     * @param dir      the minecraft dir
+     * @param version  the version to download
+     * @param callback the callback
+     * @param priority the priority of the files needed to launch the game
+     * @return future representing pending completion of the operation
+     * @throws NullPointerException       if
+     *                                    <code>dir==null || version==null || priority==null</code>
+     * @throws RejectedExecutionException if the downloader has been shutdown
+     */
+    Future<Version> downloadIncrementally(MinecraftDirectory dir, String version, CombinedDownloadCallback<Version> callback, Priority priority);
+
+    /**
+     * Plans the installation of several minecraft versions asynchronously,
+     * without downloading them.
+     * <p>
+     * Only the missing version jsons and asset indexes are downloaded. The
+     * game jars, libraries and assets of all the versions are compared with
+     * the files in the minecraft directory, and the missing or broken ones
+     * make up the {@link InstallPlan}, with the number of the files, the bytes
+     * and the providers of each category.
+     *
+     * @param dir      the minecraft dir
+     * @param versions the versions to plan
+     * @param callback the callback
+     * @return future representing pending completion of the operation
+     * @throws NullPointerException       if
+     *                                    <code>dir==null || versions==null</code>,
+     *                                    or <code>versions</code> contains null
+     * @throws RejectedExecutionException if the downloader has been shutdown
+     */
+    Future<InstallPlan> planIncrementally(MinecraftDirectory dir, Collection<String> versions, CombinedDownloadCallback<InstallPlan> callback);
+
+    /**
+     * Downloads several minecraft versions incrementally and asynchronously as
+     * a whole.
+     * <p>
+     * The installation is planned as {@link #planIncrementally(MinecraftDirectory, Collection, CombinedDownloadCallback)}
+     * does, where the files shared by several versions appear only once, and
+     * then the plan is downloaded in one go.
+     * <p>
+     * If the callback implements {@link InstallPlanListener}, it will be
+     * notified with the plan before the files are downloaded. If the callback
+     * implements {@link InstallProgressListener}, it will be notified with the
+     * bytes done out of the bytes in the plan, and the estimated remaining
+     * time.
+     * <p>
+     * Unless the install journal is disabled, the progress is recorded in the
+     * minecraft dir (see {@link InstallJournal}). If an install of the same
+     * versions was interrupted, it continues from the files which haven't been
+     * done, without checking the whole directory again.
+     *
+     * @param dir      the minecraft dir
+     * @param versions the versions to download
+     * @param callback the callback
+     * @return future representing pending completion of the operation, the
+     * result is the resolved versions keyed by the requested version names
+     * @throws NullPointerException       if
+     *                                    <code>dir==null || versions==null</code>,
+     *                                    or <code>versions</code> contains null
+     * @throws RejectedExecutionException if the downloader has been shutdown
+     */
+    Future<Map<String, Version>> downloadAllIncrementally(MinecraftDirectory dir, Collection<String> versions, CombinedDownloadCallback<Map<String, Version>> callback);
+
     /**
      * Fetches the remote version list of the game asynchronously.
      *
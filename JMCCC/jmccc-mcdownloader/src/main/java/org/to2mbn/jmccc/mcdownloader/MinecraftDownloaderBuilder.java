@@ -1,7 +1,13 @@
 package org.to2mbn.jmccc.mcdownloader;
 
+import org.to2mbn.jmccc.mcdownloader.download.AdaptiveConcurrencyDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.CoalescingDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.DiskScheduledDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.DiskWriteScheduler;
 import org.to2mbn.jmccc.mcdownloader.download.DownloaderService;
 import org.to2mbn.jmccc.mcdownloader.download.JdkHttpDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.SegmentedDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.PriorityExecutorQueue;
 import org.to2mbn.jmccc.mcdownloader.provider.ExtendedDownloadProvider;
 import org.to2mbn.jmccc.mcdownloader.provider.InfoDownloadProvider;
 import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
@@ -13,7 +19,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -30,17 +35,31 @@ public class MinecraftDownloaderBuilder {
     int connectTimeout = 10000; // ms
     int soTimeout = 30000;// ms
     boolean disableApacheHttpAsyncClient = false;
+    boolean enableHttp2 = false;
+    int http2MaxConcurrentStreams = 100;
     boolean useVersionDownloadInfo = true;
     Proxy proxy = Proxy.NO_PROXY;
     boolean checkLibrariesHash = true;
     boolean checkAssetsHash = true;
     boolean disableBioConnectionsLimit = false;
     boolean disableEhcache = false;
+    boolean disableSegmentedDownload = false;
+    boolean disableVerifiedFileIndex = false;
+    boolean disableAdaptiveConcurrency = false;
+    boolean disableDownloadCoalescing = false;
+    boolean disableInstallJournal = false;
+    boolean disableDiskWriteScheduling = false;
+    int diskWritersPerDevice = 0; // 0 for detecting
+    int initialConcurrencyPerHost = 8;
+    int maxConcurrencyPerHost = 64;
+    long segmentThreshold = 1024 * 1024 * 4; // bytes
+    int maxSegmentsPerFile = 4;
     long cacheLiveTime = 1000 * 60 * 60 * 2; // ms
     long heapCacheSize = 32;// mb
     long offheapCacheSize = 0;// mb
     long diskCacheSize = 0;// mb
     File diskCacheDir;
+    File sharedObjectStoreDir;
     protected MinecraftDownloaderBuilder() {
     }
 
@@ -61,6 +80,15 @@ public class MinecraftDownloaderBuilder {
         return true;
     }
 
+    private static boolean isApacheHttp2ClientAvailable() {
+        try {
+            Class.forName("org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder");
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+        return true;
+    }
+
     private static boolean isEhcacheAvailable() {
         try {
             Class.forName("org.ehcache.config.builders.CacheManagerBuilder");
@@ -122,6 +150,26 @@ public class MinecraftDownloaderBuilder {
         return this;
     }
 
+    /**
+     * Downloads over HTTP/2 if Apache HttpClient 5 is available.
+     * <p>
+     * The requests to the same host are multiplexed over one connection. Using
+     * HTTP/2 over TLS requires a JVM which supports ALPN. The plain http URLs
+     * are still downloaded over HTTP/1.1. HTTP/2 is not used if a proxy is
+     * set.
+     *
+     * @return the builder itself
+     */
+    public MinecraftDownloaderBuilder enableHttp2() {
+        enableHttp2 = true;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+        this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+        return this;
+    }
+
     public MinecraftDownloaderBuilder disableBioConnectionsLimit() {
         disableBioConnectionsLimit = true;
         return this;
@@ -132,6 +180,71 @@ public class MinecraftDownloaderBuilder {
         return this;
     }
 
+    public MinecraftDownloaderBuilder disableSegmentedDownload() {
+        disableSegmentedDownload = true;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder disableVerifiedFileIndex() {
+        disableVerifiedFileIndex = true;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder disableAdaptiveConcurrency() {
+        disableAdaptiveConcurrency = true;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder disableDownloadCoalescing() {
+        disableDownloadCoalescing = true;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder disableInstallJournal() {
+        disableInstallJournal = true;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder disableDiskWriteScheduling() {
+        disableDiskWriteScheduling = true;
+        return this;
+    }
+
+    /**
+     * Sets the number of the threads writing the downloaded files to each
+     * device, which is independent of the number of the connections.
+     *
+     * @param diskWritersPerDevice the number of the writers, 0 to detect it by
+     *                             whether the device is rotational (one writer
+     *                             if it can't be detected)
+     * @return the builder itself
+     * @see DiskWriteScheduler
+     */
+    public MinecraftDownloaderBuilder setDiskWritersPerDevice(int diskWritersPerDevice) {
+        this.diskWritersPerDevice = diskWritersPerDevice;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder setInitialConcurrencyPerHost(int initialConcurrencyPerHost) {
+        this.initialConcurrencyPerHost = initialConcurrencyPerHost;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder setMaxConcurrencyPerHost(int maxConcurrencyPerHost) {
+        this.maxConcurrencyPerHost = maxConcurrencyPerHost;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder setSegmentThreshold(long segmentThreshold) {
+        this.segmentThreshold = segmentThreshold;
+        return this;
+    }
+
+    public MinecraftDownloaderBuilder setMaxSegmentsPerFile(int maxSegmentsPerFile) {
+        this.maxSegmentsPerFile = maxSegmentsPerFile;
+        return this;
+    }
+
     public MinecraftDownloaderBuilder setUseVersionDownloadInfo(boolean useVersionDownloadInfo) {
         this.useVersionDownloadInfo = useVersionDownloadInfo;
         return this;
@@ -178,6 +291,11 @@ public class MinecraftDownloaderBuilder {
         return this;
     }
 
+    public MinecraftDownloaderBuilder setSharedObjectStoreDir(File sharedObjectStoreDir) {
+        this.sharedObjectStoreDir = sharedObjectStoreDir;
+        return this;
+    }
+
     public MinecraftDownloader build() {
         ExecutorService executor = null;
         DownloaderService downloader = null;
@@ -186,9 +304,11 @@ public class MinecraftDownloaderBuilder {
         try {
             MinecraftDownloadProvider provider = resolveProvider();
 
-            executor = new ThreadPoolExecutor(poolMaxThreads, poolMaxThreads, poolThreadLivingTime, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+            executor = new ThreadPoolExecutor(poolMaxThreads, poolMaxThreads, poolThreadLivingTime, TimeUnit.MILLISECONDS, new PriorityExecutorQueue());
 
-            if (!disableApacheHttpAsyncClient && isApacheHttpAsyncClientAvailable()) {
+            if (enableHttp2 && proxy.type() == Proxy.Type.DIRECT && isApacheHttp2ClientAvailable()) {
+                downloader = ApacheHttp2ClientFeature.createApacheHttp2Client(executor, this);
+            } else if (!disableApacheHttpAsyncClient && isApacheHttpAsyncClientAvailable()) {
                 downloader = ApacheHttpAsyncClientFeature.createApacheHttpAsyncClient(executor, this);
             } else {
                 int conns = maxConnections > 0 ? maxConnections : Runtime.getRuntime().availableProcessors() * 2;
@@ -203,11 +323,30 @@ public class MinecraftDownloaderBuilder {
                         proxy);
             }
 
+            if (!disableAdaptiveConcurrency) {
+                downloader = new AdaptiveConcurrencyDownloader(downloader, initialConcurrencyPerHost, Math.max(initialConcurrencyPerHost, maxConcurrencyPerHost));
+            }
+
+            if (!disableSegmentedDownload && maxSegmentsPerFile > 1) {
+                downloader = new SegmentedDownloader(downloader, segmentThreshold, maxSegmentsPerFile);
+            }
+
+            // outside the SegmentedDownloader, which passes its own tasks to the upstream
+            if (!disableDiskWriteScheduling) {
+                downloader = new DiskScheduledDownloader(downloader, new DiskWriteScheduler(diskWritersPerDevice));
+            }
+
             if (!disableEhcache && isEhcacheAvailable()) {
                 downloader = EhcacheFeature.createCachedDownloader(downloader, this);
             }
 
-            mcdownloader = new MinecraftDownloaderImpl(downloader, executor, provider, defaultTries, checkLibrariesHash, checkAssetsHash);
+            if (!disableDownloadCoalescing) {
+                downloader = new CoalescingDownloader(downloader);
+            }
+
+            SharedObjectStore objectStore = sharedObjectStoreDir == null ? null : new SharedObjectStore(sharedObjectStoreDir, !disableVerifiedFileIndex);
+
+            mcdownloader = new MinecraftDownloaderImpl(downloader, executor, provider, defaultTries, checkLibrariesHash, checkAssetsHash, objectStore, !disableVerifiedFileIndex, !disableInstallJournal);
         } catch (Throwable e) {
             if (executor != null) {
                 try {
@@ -7,10 +7,13 @@ import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadCallback;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloader;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloaderImpl;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
 import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
 import org.to2mbn.jmccc.version.Version;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
@@ -27,17 +30,31 @@ public class MinecraftDownloaderImpl implements MinecraftDownloader {
     private int tries;
     private boolean checkLibrariesHash;
     private boolean checkAssetsHash;
+    private SharedObjectStore objectStore;
+    private boolean useVerifiedFileIndex;
+    private boolean useInstallJournal;
 
     private volatile boolean shutdown = false;
     private ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
 
     public MinecraftDownloaderImpl(DownloaderService downloader, ExecutorService executor, MinecraftDownloadProvider downloadProvider, int tries, boolean checkLibrariesHash, boolean checkAssetsHash) {
+        this(downloader, executor, downloadProvider, tries, checkLibrariesHash, checkAssetsHash, null, true);
+    }
+
+    public MinecraftDownloaderImpl(DownloaderService downloader, ExecutorService executor, MinecraftDownloadProvider downloadProvider, int tries, boolean checkLibrariesHash, boolean checkAssetsHash, SharedObjectStore objectStore, boolean useVerifiedFileIndex) {
+        this(downloader, executor, downloadProvider, tries, checkLibrariesHash, checkAssetsHash, objectStore, useVerifiedFileIndex, false);
+    }
+
+    public MinecraftDownloaderImpl(DownloaderService downloader, ExecutorService executor, MinecraftDownloadProvider downloadProvider, int tries, boolean checkLibrariesHash, boolean checkAssetsHash, SharedObjectStore objectStore, boolean useVerifiedFileIndex, boolean useInstallJournal) {
         this.downloader = downloader;
         this.executor = executor;
         this.downloadProvider = downloadProvider;
         this.tries = tries;
         this.checkLibrariesHash = checkLibrariesHash;
         this.checkAssetsHash = checkAssetsHash;
+        this.objectStore = objectStore;
+        this.useVerifiedFileIndex = useVerifiedFileIndex;
+        this.useInstallJournal = useInstallJournal;
         combinedDownloader = new CombinedDownloaderImpl(executor, downloader, tries);
     }
 
@@ -102,7 +119,29 @@ public class MinecraftDownloaderImpl implements MinecraftDownloader {
 
     @Override
     public Future<Version> downloadIncrementally(MinecraftDirectory dir, String version, CombinedDownloadCallback<Version> callback) {
-        return download(new IncrementallyDownloadTask(downloadProvider, dir, version, checkLibrariesHash, checkAssetsHash), callback, tries);
+        return download(createIncrementallyDownloadTask(dir, version, callback), callback, tries);
+    }
+
+    @Override
+    public Future<Version> downloadIncrementally(MinecraftDirectory dir, String version, CombinedDownloadCallback<Version> callback, Priority priority) {
+        return download(createIncrementallyDownloadTask(dir, version, callback).withPriority(priority), callback, tries);
+    }
+
+    private IncrementallyDownloadTask createIncrementallyDownloadTask(MinecraftDirectory dir, String version, CombinedDownloadCallback<Version> callback) {
+        LaunchableListener launchableListener = callback instanceof LaunchableListener ? (LaunchableListener) callback : null;
+        return new IncrementallyDownloadTask(downloadProvider, dir, version, checkLibrariesHash, checkAssetsHash, objectStore, useVerifiedFileIndex, launchableListener);
+    }
+
+    @Override
+    public Future<InstallPlan> planIncrementally(MinecraftDirectory dir, Collection<String> versions, CombinedDownloadCallback<InstallPlan> callback) {
+        return download(new InstallPlanTask(downloadProvider, dir, versions, checkLibrariesHash, checkAssetsHash, objectStore, useVerifiedFileIndex), callback, tries);
+    }
+
+    @Override
+    public Future<Map<String, Version>> downloadAllIncrementally(MinecraftDirectory dir, Collection<String> versions, CombinedDownloadCallback<Map<String, Version>> callback) {
+        InstallPlanListener planListener = callback instanceof InstallPlanListener ? (InstallPlanListener) callback : null;
+        InstallProgressListener progressListener = callback instanceof InstallProgressListener ? (InstallProgressListener) callback : null;
+        return download(new BatchDownloadTask(downloadProvider, dir, versions, checkLibrariesHash, checkAssetsHash, objectStore, useVerifiedFileIndex, planListener, progressListener, useInstallJournal), callback, tries);
     }
 
     @Override
@@ -3,7 +3,10 @@ package org.to2mbn.jmccc.mcdownloader;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.to2mbn.jmccc.util.JsonReader;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -61,6 +64,115 @@ public class RemoteVersionList implements Serializable {
         return new RemoteVersionList(latestSnapshot, latestRelease, versions);
     }
 
+    /**
+     * Parses the version list from the given reader, without building the
+     * whole json in the memory.
+     * <p>
+     * The reader is not closed.
+     *
+     * @param in the reader to read the json from
+     * @return the version list
+     * @throws IOException    if an I/O error occurs
+     * @throws JSONException  if the json is malformed
+     * @throws ParseException if a date can't be parsed
+     */
+    public static RemoteVersionList fromJson(Reader in) throws IOException, JSONException, ParseException {
+        String latestSnapshot = null;
+        String latestRelease = null;
+        Map<String, RemoteVersion> versions = null;
+
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "latest":
+                    latestSnapshot = "";
+                    latestRelease = "";
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "snapshot":
+                                latestSnapshot = optional(reader.nextStringOrNull(), "");
+                                break;
+                            case "release":
+                                latestRelease = optional(reader.nextStringOrNull(), "");
+                                break;
+                            default:
+                                reader.skipValue();
+                                break;
+                        }
+                    }
+                    reader.endObject();
+                    break;
+
+                case "versions":
+                    versions = new HashMap<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        RemoteVersion version = parseVersion(reader);
+                        versions.put(version.getVersion(), version);
+                    }
+                    reader.endArray();
+                    break;
+
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (versions == null) {
+            throw new JSONException("JSONObject[\"versions\"] not found.");
+        }
+        return new RemoteVersionList(latestSnapshot, latestRelease, versions);
+    }
+
+    private static RemoteVersion parseVersion(JsonReader reader) throws IOException, JSONException, ParseException {
+        String version = null;
+        String updateTime = null;
+        String releaseTime = null;
+        String type = null;
+        String url = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    version = reader.nextString();
+                    break;
+                case "time":
+                    updateTime = reader.nextStringOrNull();
+                    break;
+                case "releaseTime":
+                    releaseTime = reader.nextStringOrNull();
+                    break;
+                case "type":
+                    type = reader.nextStringOrNull();
+                    break;
+                case "url":
+                    url = reader.nextStringOrNull();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (version == null) {
+            throw new JSONException("JSONObject[\"id\"] not found.");
+        }
+        return new RemoteVersion(version,
+                updateTime == null ? null : convertDate(updateTime),
+                updateTime == null ? null : convertDate(releaseTime),
+                type,
+                url);
+    }
+
+    private static String optional(String value, String defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+
     private static Date convertDate(String date) throws ParseException {
         Matcher matcher = DATETIME_PATTERN.matcher(date);
         if (!matcher.find()) {
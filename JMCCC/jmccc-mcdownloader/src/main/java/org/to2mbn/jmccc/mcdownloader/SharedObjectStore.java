@@ -0,0 +1,176 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.mcdownloader.util.VerifiedFileIndex;
+import org.to2mbn.jmccc.util.ChecksumUtils;
+import org.to2mbn.jmccc.util.FileUtils;
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+/**
+ * A content-addressed file store which is shared across several minecraft
+ * directories.
+ * <p>
+ * The objects are keyed by their SHA-1, and saved to
+ * <code>${root}/${2-character-prefix of hash}/${hash}</code>. They are
+ * hard-linked into the minecraft directories, or copied if the file system
+ * doesn't support hard links.
+ * <p>
+ * The SHA-1 of the objects are recorded in a {@link VerifiedFileIndex} of the
+ * store root when they are stored, so retrieving with hash checking doesn't
+ * read an object again unless it has been modified.
+ * <p>
+ * Notes: A hard-linked file shares its content with the store. Modifying it in
+ * place corrupts the stored object, which will be detected and removed the
+ * next time it is retrieved with hash checking.
+ *
+ * @see MinecraftDownloaderBuilder#setSharedObjectStoreDir(File)
+ */
+public class SharedObjectStore {
+
+    private static final String HASH_ALGORITHM = "SHA-1";
+
+    private final File root;
+    private final VerifiedFileIndex index;
+
+    /**
+     * Constructs a SharedObjectStore which uses a {@link VerifiedFileIndex}.
+     *
+     * @param root the root directory of the store
+     * @throws NullPointerException if <code>root==null</code>
+     */
+    public SharedObjectStore(File root) {
+        this(root, true);
+    }
+
+    /**
+     * Constructs a SharedObjectStore.
+     *
+     * @param root                 the root directory of the store
+     * @param useVerifiedFileIndex true to record the SHA-1 of the objects in a
+     *                             {@link VerifiedFileIndex}, false to hash
+     *                             the objects on every retrieval with hash
+     *                             checking
+     * @throws NullPointerException if <code>root==null</code>
+     */
+    public SharedObjectStore(File root, boolean useVerifiedFileIndex) {
+        Objects.requireNonNull(root);
+        this.root = root;
+        this.index = useVerifiedFileIndex ? VerifiedFileIndex.forDirectory(root) : null;
+    }
+
+    /**
+     * Gets the root directory of the store.
+     *
+     * @return the root directory of the store
+     */
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Gets the location of the object with the given hash.
+     *
+     * @param hash the SHA-1 of the object
+     * @return the location of the object
+     */
+    public File getObject(String hash) {
+        return new File(root, hash.substring(0, 2) + "/" + hash);
+    }
+
+    /**
+     * Places the object with the given hash at <code>target</code>.
+     * <p>
+     * If the stored object is corrupted, it will be removed from the store, and
+     * this method returns false.
+     *
+     * @param hash      the SHA-1 of the object
+     * @param size      the size of the object, -1 if unknown
+     * @param target    where to place the object
+     * @param checkHash true to verify the SHA-1 of the stored object
+     * @return true if the object has been placed at <code>target</code>, false
+     * if the store doesn't have the object
+     * @throws IOException              if an I/O error occurs
+     * @throws NoSuchAlgorithmException if the SHA-1 algorithm doesn't exist
+     */
+    public boolean retrieve(String hash, long size, File target, boolean checkHash) throws IOException, NoSuchAlgorithmException {
+        File object = getObject(hash);
+        if (!object.isFile()) {
+            return false;
+        }
+        boolean valid = checkHash && index != null
+                ? index.verify(object, hash, size)
+                : ChecksumUtils.verify(object, checkHash ? hash : null, HASH_ALGORITHM, size);
+        if (!valid) {
+            object.delete();
+            return false;
+        }
+
+        FileUtils.prepareWrite(target);
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), object.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            FileUtils.copyFile(object, target);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a file to the store.
+     * <p>
+     * The caller must ensure that the SHA-1 of the file is <code>hash</code>.
+     * If the store already has the object, this method does nothing.
+     *
+     * @param hash the SHA-1 of the file
+     * @param file the file to add
+     * @throws IOException if an I/O error occurs
+     */
+    public void store(String hash, File file) throws IOException {
+        File object = getObject(hash);
+        if (object.isFile()) {
+            return;
+        }
+
+        FileUtils.prepareWrite(object);
+        try {
+            Files.createLink(object.toPath(), file.toPath());
+        } catch (FileAlreadyExistsException e) {
+            // stored by others
+            return;
+        } catch (IOException | UnsupportedOperationException e) {
+            File temp = File.createTempFile(hash, ".tmp", object.getParentFile());
+            try {
+                FileUtils.copyFile(file, temp);
+                Files.move(temp.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e1) {
+                // stored by others
+                return;
+            } finally {
+                temp.delete();
+            }
+        }
+        if (index != null) {
+            index.record(object, HexUtils.hexToBytes(hash));
+        }
+    }
+
+    /**
+     * Saves the SHA-1 of the objects recorded since the last saving. Called
+     * when the objects have been stored.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void saveIndex() throws IOException {
+        if (index != null) {
+            index.save();
+        }
+    }
+
+}
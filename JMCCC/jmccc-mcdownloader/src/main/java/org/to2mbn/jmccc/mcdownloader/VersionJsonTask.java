@@ -0,0 +1,98 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadContext;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAdapter;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Downloads the json of a version and the jsons of the versions it inherits
+ * from, if they are missing.
+ * <p>
+ * The result is the resolved name of the version, which may differ from the
+ * requested one (e.g. forge versions).
+ */
+class VersionJsonTask extends CombinedDownloadTask<String> {
+
+    private final MinecraftDownloadProvider downloadProvider;
+    private final MinecraftDirectory mcdir;
+    private final String version;
+
+    VersionJsonTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, String version) {
+        Objects.requireNonNull(downloadProvider);
+        Objects.requireNonNull(mcdir);
+        Objects.requireNonNull(version);
+        this.downloadProvider = downloadProvider;
+        this.mcdir = mcdir;
+        this.version = version;
+    }
+
+    @Override
+    public void execute(final CombinedDownloadContext<String> context) throws Exception {
+        Set<String> handledVersions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        handleVersionJson(version, version, handledVersions, context);
+    }
+
+    private void handleVersionJson(final String currentVersion, final String resolvedVersion, final Set<String> handledVersions, final CombinedDownloadContext<String> context) throws Exception {
+        if (mcdir.getVersionJson(currentVersion).exists()) {
+            JSONObject versionjson = readJson(mcdir.getVersionJson(currentVersion));
+            String inheritsFrom = versionjson.optString("inheritsFrom", null);
+            handledVersions.add(currentVersion);
+            if (inheritsFrom == null) {
+                // end node
+                context.done(resolvedVersion);
+            } else {
+                // intermediate node
+                if (handledVersions.contains(inheritsFrom)) {
+                    throw new IllegalStateException("loop inherits from: " + currentVersion + " to " + inheritsFrom);
+                }
+                handleVersionJson(inheritsFrom, resolvedVersion, handledVersions, context);
+            }
+        } else {
+            // the version json blocks all the other files
+            context.submit(downloadProvider.gameVersionJson(mcdir, currentVersion).withPriority(Priority.higher(context.getPriority(), Priority.HIGH)), new CallbackAdapter<String>() {
+
+                @Override
+                public void done(final String currentResolvedVersion) {
+                    try {
+                        context.submit(new Callable<Void>() {
+
+                            @Override
+                            public Void call() throws Exception {
+                                handleVersionJson(currentResolvedVersion, version.equals(currentVersion) ? currentResolvedVersion : resolvedVersion, handledVersions, context);
+                                return null;
+                            }
+                        }, null, true);
+                    } catch (InterruptedException e) {
+                        context.cancelled();
+                    }
+                }
+
+            }, true);
+        }
+    }
+
+    private JSONObject readJson(File file) throws IOException, JSONException {
+        try (Reader reader = new InputStreamReader(new BufferedInputStream(new FileInputStream(file)), "UTF-8")) {
+            return new JSONObject(new JSONTokener(reader));
+        }
+    }
+
+}
@@ -0,0 +1,454 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.AsyncFuture;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Cancelable;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrent downloads per host, and adapts the limits to
+ * the hosts.
+ * <p>
+ * The limit of a host is adjusted in AIMD (additive increase, multiplicative
+ * decrease) style. Once the limit of a host is reached, the downloads are
+ * queued, and started in the order of their priorities. After
+ * <code>limit</code> downloads completing, if the host was saturated and the
+ * throughput didn't drop, the limit is increased by 1. If a download times
+ * out, or the server responds with 429 or 5xx, the limit is halved (at most
+ * once per such round).
+ *
+ * @see #getHostStatuses()
+ */
+public class AdaptiveConcurrencyDownloader implements DownloaderService {
+
+    /**
+     * A snapshot of the status of a host.
+     */
+    public static class HostStatus {
+
+        private final String host;
+        private final int limit;
+        private final int active;
+        private final int queued;
+
+        public HostStatus(String host, int limit, int active, int queued) {
+            this.host = host;
+            this.limit = limit;
+            this.active = active;
+            this.queued = queued;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return the current max number of concurrent downloads
+         */
+        public int getLimit() {
+            return limit;
+        }
+
+        /**
+         * @return the number of the running downloads
+         */
+        public int getActive() {
+            return active;
+        }
+
+        /**
+         * @return the number of the downloads waiting for a slot
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        @Override
+        public String toString() {
+            return host + "[limit=" + limit + ", active=" + active + ", queued=" + queued + "]";
+        }
+
+    }
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    // if the throughput drops below this ratio of the last round, stop increasing
+    private static final double THROUGHPUT_TOLERANCE = 0.9;
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final DownloaderService upstream;
+    private final int initialLimit;
+    private final int maxLimit;
+    private final ConcurrentMap<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Constructs an AdaptiveConcurrencyDownloader.
+     *
+     * @param upstream     the downloader to send requests
+     * @param initialLimit the initial max number of concurrent downloads per
+     *                     host
+     * @param maxLimit     the upper bound of the limits
+     * @throws NullPointerException     if <code>upstream==null</code>
+     * @throws IllegalArgumentException if <code>initialLimit &lt; 1</code> or
+     *                                  <code>maxLimit &lt; initialLimit</code>
+     */
+    public AdaptiveConcurrencyDownloader(DownloaderService upstream, int initialLimit, int maxLimit) {
+        Objects.requireNonNull(upstream);
+        if (initialLimit < 1)
+            throw new IllegalArgumentException("initialLimit < 1");
+        if (maxLimit < initialLimit)
+            throw new IllegalArgumentException("maxLimit < initialLimit");
+
+        this.upstream = upstream;
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return submit(task, callback, -1);
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        return submit(task, callback, tries);
+    }
+
+    @Override
+    public void shutdown() {
+        upstream.shutdown();
+        for (HostLimiter limiter : limiters.values()) {
+            limiter.cancelQueued();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return upstream.isShutdown();
+    }
+
+    /**
+     * Gets the current status of each host, sorted by host.
+     *
+     * @return the status of the hosts
+     */
+    public Map<String, HostStatus> getHostStatuses() {
+        Map<String, HostStatus> statuses = new TreeMap<>();
+        for (HostLimiter limiter : limiters.values()) {
+            HostStatus status = limiter.getStatus();
+            statuses.put(status.getHost(), status);
+        }
+        return Collections.unmodifiableMap(statuses);
+    }
+
+    private <T> Future<T> submit(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        Objects.requireNonNull(task);
+        if (isShutdown())
+            throw new RejectedExecutionException("The downloader has been shutdown.");
+
+        PendingDownload<T> pending = new PendingDownload<>(getLimiter(task), task, callback, tries);
+        pending.limiter.enqueue(pending);
+        return pending.future;
+    }
+
+    private HostLimiter getLimiter(DownloadTask<?> task) {
+        String host = task.getURI().getHost();
+        if (host == null) {
+            host = "";
+        }
+        HostLimiter limiter = limiters.get(host);
+        if (limiter == null) {
+            HostLimiter created = new HostLimiter(host);
+            limiter = limiters.putIfAbsent(host, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    private static boolean isOverloaded(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause instanceof HttpResponseCodeException) {
+                int code = ((HttpResponseCodeException) cause).getResponseCode();
+                return code == HTTP_TOO_MANY_REQUESTS || code >= 500;
+            }
+        }
+        return false;
+    }
+
+    private class HostLimiter {
+
+        private final String host;
+
+        // all guarded by this
+        private final Queue<PendingDownload<?>> queue = new PriorityQueue<>();
+        private double limit = initialLimit;
+        private int active = 0;
+
+        // the current round
+        private long roundStart = System.nanoTime();
+        private int roundCompleted = 0;
+        private long roundBytes = 0;
+        private boolean roundSaturated = false;
+        private boolean roundOverloaded = false;
+        private double lastThroughput = -1;
+
+        HostLimiter(String host) {
+            this.host = host;
+        }
+
+        void enqueue(PendingDownload<?> pending) {
+            synchronized (this) {
+                queue.add(pending);
+            }
+            dispatch();
+        }
+
+        boolean remove(PendingDownload<?> pending) {
+            synchronized (this) {
+                return queue.remove(pending);
+            }
+        }
+
+        void cancelQueued() {
+            List<PendingDownload<?>> cancelled;
+            synchronized (this) {
+                cancelled = new ArrayList<>(queue);
+                queue.clear();
+            }
+            for (PendingDownload<?> pending : cancelled) {
+                pending.future.cancelled();
+            }
+        }
+
+        void completed(long bytes) {
+            synchronized (this) {
+                active--;
+                roundCompleted++;
+                roundBytes += bytes;
+                if (roundCompleted >= (int) limit) {
+                    endRound();
+                }
+            }
+            dispatch();
+        }
+
+        void failed(Throwable e) {
+            synchronized (this) {
+                active--;
+                if (isOverloaded(e)) {
+                    decrease();
+                }
+            }
+            dispatch();
+        }
+
+        void retrying(Throwable e) {
+            if (isOverloaded(e)) {
+                synchronized (this) {
+                    decrease();
+                }
+            }
+        }
+
+        HostStatus getStatus() {
+            synchronized (this) {
+                return new HostStatus(host, (int) limit, active, queue.size());
+            }
+        }
+
+        // guarded by this
+        private void endRound() {
+            long duration = Math.max(1, System.nanoTime() - roundStart);
+            double throughput = (double) roundBytes / duration;
+            if (!roundOverloaded && roundSaturated) {
+                if (lastThroughput < 0 || throughput >= lastThroughput * THROUGHPUT_TOLERANCE) {
+                    limit = Math.min(maxLimit, limit + 1);
+                }
+            }
+            lastThroughput = throughput;
+            resetRound();
+        }
+
+        // guarded by this
+        private void decrease() {
+            if (roundOverloaded) {
+                // already decreased in this round
+                return;
+            }
+            limit = Math.max(1, limit * DECREASE_FACTOR);
+            lastThroughput = -1;
+            resetRound();
+            roundOverloaded = true;
+        }
+
+        // guarded by this
+        private void resetRound() {
+            roundStart = System.nanoTime();
+            roundCompleted = 0;
+            roundBytes = 0;
+            roundSaturated = false;
+            roundOverloaded = false;
+        }
+
+        private void dispatch() {
+            List<PendingDownload<?>> toStart = null;
+            synchronized (this) {
+                while (!queue.isEmpty() && active < (int) limit) {
+                    if (toStart == null) {
+                        toStart = new ArrayList<>();
+                    }
+                    toStart.add(queue.poll());
+                    active++;
+                }
+                if (!queue.isEmpty()) {
+                    roundSaturated = true;
+                }
+            }
+            if (toStart != null) {
+                for (PendingDownload<?> pending : toStart) {
+                    pending.start();
+                }
+            }
+        }
+
+    }
+
+    private class PendingDownload<T> implements Cancelable, DownloadCallback<T>, Comparable<PendingDownload<?>> {
+
+        final HostLimiter limiter;
+        final AsyncFuture<T> future;
+        private final Priority priority;
+        private final long order = sequence.getAndIncrement();
+        private final DownloadTask<T> task;
+        private final DownloadCallback<T> callback;
+        private final int tries;
+
+        private volatile Future<T> upstreamFuture;
+        private volatile long startProgress;
+        private volatile long lastProgress = -1;
+
+        PendingDownload(HostLimiter limiter, DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+            this.limiter = limiter;
+            this.task = task;
+            this.callback = callback;
+            this.tries = tries;
+            priority = task.getPriority() == null ? Priority.NORMAL : task.getPriority();
+            future = new AsyncFuture<>(this);
+            if (callback != null) {
+                future.setCallback(callback);
+            }
+        }
+
+        void start() {
+            if (future.isExceptional()) {
+                // cancelled while it was being dispatched
+                limiter.failed(new CancelledException());
+                return;
+            }
+            startProgress = task.getResumeOffset();
+            Future<T> subfuture;
+            try {
+                subfuture = tries == -1
+                        ? upstream.download(task, this)
+                        : upstream.download(task, this, tries);
+            } catch (Throwable e) {
+                limiter.failed(e);
+                future.failed(e);
+                return;
+            }
+            upstreamFuture = subfuture;
+            if (future.isExceptional()) {
+                subfuture.cancel(true);
+            }
+        }
+
+        @Override
+        public int compareTo(PendingDownload<?> o) {
+            int result = priority.compareTo(o.priority);
+            if (result == 0) {
+                result = Long.compare(order, o.order);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!limiter.remove(this)) {
+                Future<T> subfuture = upstreamFuture;
+                if (subfuture != null) {
+                    subfuture.cancel(mayInterruptIfRunning);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void done(T result) {
+            long bytes = lastProgress == -1 ? 0 : Math.max(0, lastProgress - startProgress);
+            limiter.completed(bytes);
+            future.done(result);
+        }
+
+        @Override
+        public void failed(Throwable e) {
+            limiter.failed(e);
+            future.failed(e);
+        }
+
+        @Override
+        public void cancelled() {
+            limiter.failed(new CancelledException());
+            future.cancelled();
+        }
+
+        @Override
+        public void updateProgress(long done, long total) {
+            lastProgress = done;
+            if (callback != null) {
+                callback.updateProgress(done, total);
+            }
+        }
+
+        @Override
+        public void retry(Throwable e, int current, int max) {
+            limiter.retrying(e);
+            if (callback != null) {
+                callback.retry(e, current, max);
+            }
+        }
+
+    }
+
+    // a cancelled download is neither a success nor an overload
+    private static class CancelledException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        CancelledException() {
+            super(null, null, false, false);
+        }
+
+    }
+
+}
@@ -3,7 +3,7 @@ package org.to2mbn.jmccc.mcdownloader.download;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
-class AppendedDownloadSession<R, S> implements DownloadSession<S> {
+class AppendedDownloadSession<R, S> implements FlowControlledDownloadSession<S> {
 
     ResultProcessor<R, S> processor;
     DownloadSession<R> proxied;
@@ -18,6 +18,11 @@ class AppendedDownloadSession<R, S> implements DownloadSession<S> {
         proxied.receiveData(data);
     }
 
+    @Override
+    public boolean pauseIfBusy(Runnable resume) {
+        return proxied instanceof FlowControlledDownloadSession && ((FlowControlledDownloadSession<R>) proxied).pauseIfBusy(resume);
+    }
+
     @Override
     public S completed() throws Exception {
         return processor.process(proxied.completed());
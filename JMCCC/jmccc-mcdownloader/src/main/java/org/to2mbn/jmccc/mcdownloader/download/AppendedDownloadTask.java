@@ -1,6 +1,10 @@
 package org.to2mbn.jmccc.mcdownloader.download;
 
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 class AppendedDownloadTask<R, S> extends DownloadTask<S> {
 
@@ -28,4 +32,54 @@ class AppendedDownloadTask<R, S> extends DownloadTask<S> {
         return proxied.isCacheable();
     }
 
-}
\ No newline at end of file
+    @Override
+    public Priority getPriority() {
+        return proxied.getPriority();
+    }
+
+    @Override
+    public File getWriteTarget() {
+        return proxied.getWriteTarget();
+    }
+
+    @Override
+    public long getResumeOffset() {
+        return proxied.getResumeOffset();
+    }
+
+    @Override
+    public String getResumeValidator() {
+        return proxied.getResumeValidator();
+    }
+
+    @Override
+    public void setResumeValidator(String validator) throws IOException {
+        proxied.setResumeValidator(validator);
+    }
+
+    @Override
+    public void discardResumedData() throws IOException {
+        proxied.discardResumedData();
+    }
+
+    @Override
+    public DownloadSession<S> resumeSession(long offset, long length) throws IOException {
+        return new AppendedDownloadSession<>(processor, proxied.resumeSession(offset, length));
+    }
+
+    @Override
+    public InputStream openResumedData(long offset) throws IOException {
+        return proxied.openResumedData(offset);
+    }
+
+    @Override
+    public boolean isSegmentable() {
+        return proxied.isSegmentable();
+    }
+
+    @Override
+    public SegmentedDownloadSession<S> createSegmentedSession(long length) throws IOException {
+        return new AppendedSegmentedDownloadSession<>(processor, proxied.createSegmentedSession(length));
+    }
+
+}
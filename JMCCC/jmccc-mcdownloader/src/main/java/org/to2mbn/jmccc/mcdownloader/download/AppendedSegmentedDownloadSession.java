@@ -0,0 +1,36 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+class AppendedSegmentedDownloadSession<R, S> implements SegmentedDownloadSession<S> {
+
+    ResultProcessor<R, S> processor;
+    SegmentedDownloadSession<R> proxied;
+
+    AppendedSegmentedDownloadSession(ResultProcessor<R, S> processor, SegmentedDownloadSession<R> proxied) {
+        this.processor = processor;
+        this.proxied = proxied;
+    }
+
+    @Override
+    public void receiveData(long position, ByteBuffer data) throws IOException {
+        proxied.receiveData(position, data);
+    }
+
+    @Override
+    public int readData(long position, ByteBuffer dst) throws IOException {
+        return proxied.readData(position, dst);
+    }
+
+    @Override
+    public S completed() throws Exception {
+        return processor.process(proxied.completed());
+    }
+
+    @Override
+    public void failed() throws Exception {
+        proxied.failed();
+    }
+
+}
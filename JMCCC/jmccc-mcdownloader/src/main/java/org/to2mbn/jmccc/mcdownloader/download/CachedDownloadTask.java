@@ -1,6 +1,10 @@
 package org.to2mbn.jmccc.mcdownloader.download;
 
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 class CachedDownloadTask<T> extends DownloadTask<T> {
 
@@ -28,4 +32,59 @@ class CachedDownloadTask<T> extends DownloadTask<T> {
         return proxied.createSession(length);
     }
 
+    @Override
+    public Priority getPriority() {
+        return proxied.getPriority();
+    }
+
+    @Override
+    public Object getCoalescingKey() {
+        return proxied.getCoalescingKey();
+    }
+
+    @Override
+    public File getWriteTarget() {
+        return proxied.getWriteTarget();
+    }
+
+    @Override
+    public long getResumeOffset() {
+        return proxied.getResumeOffset();
+    }
+
+    @Override
+    public String getResumeValidator() {
+        return proxied.getResumeValidator();
+    }
+
+    @Override
+    public void setResumeValidator(String validator) throws IOException {
+        proxied.setResumeValidator(validator);
+    }
+
+    @Override
+    public void discardResumedData() throws IOException {
+        proxied.discardResumedData();
+    }
+
+    @Override
+    public DownloadSession<T> resumeSession(long offset, long length) throws IOException {
+        return proxied.resumeSession(offset, length);
+    }
+
+    @Override
+    public InputStream openResumedData(long offset) throws IOException {
+        return proxied.openResumedData(offset);
+    }
+
+    @Override
+    public boolean isSegmentable() {
+        return proxied.isSegmentable();
+    }
+
+    @Override
+    public SegmentedDownloadSession<T> createSegmentedSession(long length) throws IOException {
+        return proxied.createSegmentedSession(length);
+    }
+
 }
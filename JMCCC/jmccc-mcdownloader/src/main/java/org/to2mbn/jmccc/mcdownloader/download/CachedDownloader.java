@@ -4,18 +4,21 @@ import org.ehcache.Cache;
 import org.ehcache.CacheManager;
 import org.ehcache.config.builders.CacheManagerBuilder;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.CompletedFuture;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.concurrent.Future;
 
 public class CachedDownloader implements DownloaderService {
 
     public static final String DEFAULT_CACHE_NAME = CachedDownloader.class.getCanonicalName();
+    private static final int INITIAL_BUFFER_SIZE = 8192;
     private final DownloaderService upstream;
     private final Cache<URI, byte[]> cache;
     private final CacheManager cacheManager;
@@ -113,7 +116,7 @@ public class CachedDownloader implements DownloaderService {
 
         @Override
         public DownloadSession<T> createSession() throws IOException {
-            return new CachingDownloadSession(proxiedTask.createSession(), 8192);
+            return new CachingDownloadSession(proxiedTask.createSession(), INITIAL_BUFFER_SIZE);
         }
 
         @Override
@@ -121,18 +124,55 @@ public class CachedDownloader implements DownloaderService {
             return new CachingDownloadSession(proxiedTask.createSession(length), length);
         }
 
-        private class CachingDownloadSession implements DownloadSession<T> {
+        @Override
+        public Priority getPriority() {
+            return proxiedTask.getPriority();
+        }
+
+        @Override
+        public File getWriteTarget() {
+            return proxiedTask.getWriteTarget();
+        }
+
+        @Override
+        public long getResumeOffset() {
+            return proxiedTask.getResumeOffset();
+        }
+
+        @Override
+        public String getResumeValidator() {
+            return proxiedTask.getResumeValidator();
+        }
+
+        @Override
+        public void setResumeValidator(String validator) throws IOException {
+            proxiedTask.setResumeValidator(validator);
+        }
+
+        @Override
+        public void discardResumedData() throws IOException {
+            proxiedTask.discardResumedData();
+        }
+
+        @Override
+        public DownloadSession<T> resumeSession(long offset, long length) throws IOException {
+            // the data received before is not available, so a resumed download won't be cached
+            return proxiedTask.resumeSession(offset, length);
+        }
+
+        private class CachingDownloadSession implements FlowControlledDownloadSession<T> {
 
             private final DownloadSession<T> proxiedSession;
 
             // use SoftReference to prevent OOM
-            private SoftReference<ByteArrayOutputStream> bufRef;
+            private SoftReference<byte[]> bufRef;
+            private int count = 0;
 
             public CachingDownloadSession(DownloadSession<T> proxiedSession, long length) {
                 this.proxiedSession = proxiedSession;
                 if (length < Integer.MAX_VALUE) {
                     try {
-                        bufRef = new SoftReference<>(new ByteArrayOutputStream((int) length));
+                        bufRef = new SoftReference<>(new byte[(int) length]);
                     } catch (OutOfMemoryError e) {
                         dropCache();
                     }
@@ -141,21 +181,20 @@ public class CachedDownloader implements DownloaderService {
 
             @Override
             public void receiveData(ByteBuffer data) throws IOException {
-                byte[] copiedData = new byte[data.remaining()];
-                data.get(copiedData);
-
-                proxiedSession.receiveData(ByteBuffer.wrap(copiedData));
-
                 if (bufRef != null) {
                     try {
-                        ByteArrayOutputStream buf = bufRef.get();
-                        if (buf != null) {
-                            buf.write(copiedData);
-                        }
+                        append(data.duplicate());
                     } catch (OutOfMemoryError e) {
                         dropCache();
                     }
                 }
+
+                proxiedSession.receiveData(data);
+            }
+
+            @Override
+            public boolean pauseIfBusy(Runnable resume) {
+                return proxiedSession instanceof FlowControlledDownloadSession && ((FlowControlledDownloadSession<T>) proxiedSession).pauseIfBusy(resume);
             }
 
             @Override
@@ -184,12 +223,35 @@ public class CachedDownloader implements DownloaderService {
                 }
             }
 
+            private void append(ByteBuffer data) {
+                byte[] buf = bufRef.get();
+                if (buf == null) {
+                    dropCache();
+                    return;
+                }
+
+                int length = data.remaining();
+                if (length > buf.length - count) {
+                    long newLength = Math.max((long) buf.length * 2, (long) count + length);
+                    if (newLength >= Integer.MAX_VALUE) {
+                        dropCache();
+                        return;
+                    }
+                    buf = Arrays.copyOf(buf, (int) newLength);
+                    bufRef = new SoftReference<>(buf);
+                }
+                data.get(buf, count, length);
+                count += length;
+            }
+
             private void saveCache() {
                 if (bufRef != null) {
                     try {
-                        ByteArrayOutputStream buf = bufRef.get();
+                        byte[] buf = bufRef.get();
                         if (buf != null) {
-                            byte[] data = buf.toByteArray();
+                            // hand over the array directly if it is exactly filled
+                            byte[] data = buf.length == count ? buf : Arrays.copyOf(buf, count);
+                            dropCache();
                             cache.put(proxiedTask.getURI(), data);
                         }
                     } catch (OutOfMemoryError e) {
@@ -0,0 +1,259 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+import org.to2mbn.jmccc.mcdownloader.util.VerifiedFileIndex;
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+class ChecksumVerifyingDownloadTask<T> extends DownloadTask<T> {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private DownloadTask<T> proxied;
+    private String algorithm;
+    private byte[] checksum;
+    private long size;
+
+    // set when the verification fails, the data received must not be resumed
+    // even if it couldn't be deleted
+    private volatile boolean resumedDataDiscarded = false;
+
+    public ChecksumVerifyingDownloadTask(DownloadTask<T> proxied, String algorithm, String checksum, long size) {
+        super(proxied.getURI());
+        this.proxied = proxied;
+        this.algorithm = algorithm;
+        this.checksum = checksum == null ? null : HexUtils.hexToBytes(checksum);
+        this.size = size;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return proxied.isCacheable();
+    }
+
+    @Override
+    public DownloadSession<T> createSession() throws IOException {
+        resumedDataDiscarded = false;
+        return verifying(proxied.createSession(), createDigest(), 0);
+    }
+
+    @Override
+    public DownloadSession<T> createSession(long length) throws IOException {
+        resumedDataDiscarded = false;
+        return verifying(proxied.createSession(length), createDigest(), 0);
+    }
+
+    @Override
+    public Priority getPriority() {
+        return proxied.getPriority();
+    }
+
+    @Override
+    public Object getCoalescingKey() {
+        Object proxiedKey = proxied.getCoalescingKey();
+        if (proxiedKey == null) {
+            return null;
+        }
+        return Arrays.asList(proxiedKey, algorithm, checksum == null ? null : HexUtils.bytesToHex(checksum), size);
+    }
+
+    @Override
+    public File getWriteTarget() {
+        return proxied.getWriteTarget();
+    }
+
+    @Override
+    public long getResumeOffset() {
+        return resumedDataDiscarded ? 0 : proxied.getResumeOffset();
+    }
+
+    @Override
+    public String getResumeValidator() {
+        return proxied.getResumeValidator();
+    }
+
+    @Override
+    public void setResumeValidator(String validator) throws IOException {
+        proxied.setResumeValidator(validator);
+    }
+
+    @Override
+    public void discardResumedData() throws IOException {
+        proxied.discardResumedData();
+    }
+
+    @Override
+    public InputStream openResumedData(long offset) throws IOException {
+        return proxied.openResumedData(offset);
+    }
+
+    @Override
+    public DownloadSession<T> resumeSession(long offset, long length) throws IOException {
+        MessageDigest digest = createDigest();
+        if (digest != null) {
+            try (InputStream in = proxied.openResumedData(offset)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                long remaining = offset;
+                while (remaining > 0) {
+                    int read = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+                    if (read == -1) {
+                        throw new IOException("Couldn't resume from " + offset + ", the data received before is incomplete");
+                    }
+                    digest.update(buf, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+        return verifying(proxied.resumeSession(offset, length), digest, offset);
+    }
+
+    @Override
+    public boolean isSegmentable() {
+        return proxied.isSegmentable();
+    }
+
+    @Override
+    public SegmentedDownloadSession<T> createSegmentedSession(long length) throws IOException {
+        resumedDataDiscarded = false;
+        return new VerifyingSegmentedSession(proxied.createSegmentedSession(length), createDigest(), length);
+    }
+
+    private DownloadSession<T> verifying(DownloadSession<T> session, MessageDigest digest, long received) {
+        return new ChecksumVerifyingSession<>(session, digest, checksum, size, received, new Runnable() {
+
+            @Override
+            public void run() {
+                resumedDataDiscarded = true;
+                try {
+                    proxied.discardResumedData();
+                } catch (IOException e) {
+                    // not resumed anyway, as the flag is set
+                }
+            }
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+                recordVerified();
+            }
+        });
+    }
+
+    /**
+     * Records the checksum in the {@link VerifiedFileIndex} of the downloaded
+     * file, so the file needn't be hashed again.
+     */
+    private void recordVerified() {
+        if (!(proxied instanceof FileDownloadTask) || !VerifiedFileIndex.HASH_ALGORITHM.equalsIgnoreCase(algorithm)) {
+            return;
+        }
+        File target = ((FileDownloadTask) proxied).getTarget();
+        VerifiedFileIndex index = VerifiedFileIndex.lookup(target);
+        if (index != null) {
+            index.record(target, checksum);
+        }
+    }
+
+    private MessageDigest createDigest() throws IOException {
+        if (checksum == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Digests the data which arrives in order while it is being received. The
+     * rest is read back when all the segments completed.
+     */
+    private class VerifyingSegmentedSession implements SegmentedDownloadSession<T> {
+
+        private final SegmentedDownloadSession<T> proxiedSession;
+        private final MessageDigest digest;
+        private final long length;
+
+        // guarded by this
+        private long digestedPosition = 0;
+
+        VerifyingSegmentedSession(SegmentedDownloadSession<T> proxiedSession, MessageDigest digest, long length) {
+            this.proxiedSession = proxiedSession;
+            this.digest = digest;
+            this.length = length;
+        }
+
+        @Override
+        public void receiveData(long position, ByteBuffer data) throws IOException {
+            ByteBuffer duplicate = data.duplicate();
+            proxiedSession.receiveData(position, data);
+            if (digest != null) {
+                synchronized (this) {
+                    if (position == digestedPosition) {
+                        digestedPosition += duplicate.remaining();
+                        digest.update(duplicate);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int readData(long position, ByteBuffer dst) throws IOException {
+            return proxiedSession.readData(position, dst);
+        }
+
+        @Override
+        public T completed() throws Exception {
+            if (size != -1 && length != size) {
+                throw mismatch(new IOException("size mismatch, expected: " + size + ", actual: " + length));
+            }
+            if (digest != null) {
+                synchronized (this) {
+                    ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+                    while (digestedPosition < length) {
+                        buf.clear();
+                        int read = proxiedSession.readData(digestedPosition, buf);
+                        if (read == -1) {
+                            break;
+                        }
+                        buf.flip();
+                        digest.update(buf);
+                        digestedPosition += read;
+                    }
+                    if (!Arrays.equals(checksum, digest.digest())) {
+                        throw mismatch(new IOException("checksums mismatch"));
+                    }
+                }
+            }
+            T result = proxiedSession.completed();
+            if (digest != null) {
+                recordVerified();
+            }
+            return result;
+        }
+
+        @Override
+        public void failed() throws Exception {
+            proxiedSession.failed();
+        }
+
+        private IOException mismatch(IOException e) {
+            try {
+                proxiedSession.failed();
+            } catch (Throwable e1) {
+                e.addSuppressed(e1);
+            }
+            return e;
+        }
+
+    }
+
+}
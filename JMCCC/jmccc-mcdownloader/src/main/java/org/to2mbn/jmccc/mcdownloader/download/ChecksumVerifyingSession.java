@@ -0,0 +1,92 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * A download session decorator which digests the data while it is being
+ * received, and fails the session if the checksum or the size mismatches.
+ *
+ * @param <T> the type of result
+ */
+class ChecksumVerifyingSession<T> implements FlowControlledDownloadSession<T> {
+
+    private final DownloadSession<T> proxied;
+    private final MessageDigest digest;
+    private final byte[] checksum;
+    private final long size;
+    private final Runnable mismatchListener;
+    private final Runnable verifiedListener;
+    private long received;
+
+    /**
+     * @param proxied          the session to decorate
+     * @param digest           the digest which has been updated with the data
+     *                         received before, null if <code>checksum</code> is
+     *                         null
+     * @param checksum         the expected checksum, null if unknown
+     * @param size             the expected size, -1 if unknown
+     * @param received         the number of bytes received before
+     * @param mismatchListener calls when the verification fails, after the
+     *                         proxied session has failed
+     * @param verifiedListener calls when the session has completed after the
+     *                         checksum matched
+     */
+    ChecksumVerifyingSession(DownloadSession<T> proxied, MessageDigest digest, byte[] checksum, long size, long received, Runnable mismatchListener, Runnable verifiedListener) {
+        this.proxied = proxied;
+        this.digest = digest;
+        this.checksum = checksum;
+        this.size = size;
+        this.received = received;
+        this.mismatchListener = mismatchListener;
+        this.verifiedListener = verifiedListener;
+    }
+
+    @Override
+    public void receiveData(ByteBuffer data) throws IOException {
+        received += data.remaining();
+        if (digest != null) {
+            digest.update(data.duplicate());
+        }
+        proxied.receiveData(data);
+    }
+
+    @Override
+    public boolean pauseIfBusy(Runnable resume) {
+        return proxied instanceof FlowControlledDownloadSession && ((FlowControlledDownloadSession<T>) proxied).pauseIfBusy(resume);
+    }
+
+    @Override
+    public T completed() throws Exception {
+        if (size != -1 && received != size) {
+            throw mismatch(new IOException("size mismatch, expected: " + size + ", actual: " + received));
+        }
+        if (checksum != null && !Arrays.equals(checksum, digest.digest())) {
+            throw mismatch(new IOException("checksums mismatch"));
+        }
+        T result = proxied.completed();
+        if (checksum != null) {
+            verifiedListener.run();
+        }
+        return result;
+    }
+
+    @Override
+    public void failed() throws Exception {
+        proxied.failed();
+    }
+
+    private IOException mismatch(IOException e) {
+        try {
+            proxied.failed();
+        } catch (Throwable e1) {
+            e.addSuppressed(e1);
+        }
+        // after the proxied session has failed, so the data it kept can be discarded
+        mismatchListener.run();
+        return e;
+    }
+
+}
@@ -0,0 +1,313 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.AsyncFuture;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Cancelable;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.EventDispatchException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Coalesces the identical download tasks which are running at the same time.
+ * <p>
+ * Two download tasks are identical if they have the same uri and equal
+ * {@link DownloadTask#getCoalescingKey() coalescing keys}. If an identical
+ * download task is running, the new one doesn't start another transfer, but
+ * attaches to the running one, and gets the same result or failure. The
+ * transfer is cancelled only after all the attached requesters have cancelled.
+ * <p>
+ * The download tasks without coalescing keys are passed to the upstream
+ * directly.
+ *
+ * @see DownloadTask#getCoalescingKey()
+ */
+public class CoalescingDownloader implements DownloaderService {
+
+    private final DownloaderService upstream;
+    private final ConcurrentMap<List<Object>, Flight<?>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a CoalescingDownloader.
+     *
+     * @param upstream the downloader to send requests
+     * @throws NullPointerException if <code>upstream==null</code>
+     */
+    public CoalescingDownloader(DownloaderService upstream) {
+        Objects.requireNonNull(upstream);
+        this.upstream = upstream;
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return submit(task, callback, -1);
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        return submit(task, callback, tries);
+    }
+
+    @Override
+    public void shutdown() {
+        upstream.shutdown();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return upstream.isShutdown();
+    }
+
+    /**
+     * Gets the number of the transfers which are running, and may be shared.
+     *
+     * @return the number of the running transfers
+     */
+    public int getFlightsCount() {
+        return flights.size();
+    }
+
+    private <T> Future<T> submit(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        Objects.requireNonNull(task);
+        if (isShutdown())
+            throw new RejectedExecutionException("The downloader has been shutdown.");
+
+        Object coalescingKey = task.getCoalescingKey();
+        if (coalescingKey == null) {
+            return tries == -1
+                    ? upstream.download(task, callback)
+                    : upstream.download(task, callback, tries);
+        }
+
+        List<Object> key = Arrays.<Object>asList(task.getURI(), coalescingKey);
+        for (; ; ) {
+            @SuppressWarnings("unchecked")
+            Flight<T> flight = (Flight<T>) flights.get(key);
+            if (flight == null) {
+                Flight<T> created = new Flight<>(key);
+                Requester<T> requester = created.attach(callback);
+                if (flights.putIfAbsent(key, created) == null) {
+                    created.start(task, tries);
+                    return requester.future;
+                }
+            } else {
+                Requester<T> requester = flight.attach(callback);
+                if (requester != null) {
+                    return requester.future;
+                }
+                // the flight has terminated, but hasn't been removed yet
+                flights.remove(key, flight);
+            }
+        }
+    }
+
+    // one requester's callback must not prevent the others from being notified
+    private static EventDispatchException suppress(EventDispatchException ex, Throwable e) {
+        if (ex == null) {
+            ex = new EventDispatchException();
+        }
+        ex.addSuppressed(e);
+        return ex;
+    }
+
+    /**
+     * A running transfer, and the requesters attached to it.
+     */
+    private class Flight<T> implements DownloadCallback<T> {
+
+        private final List<Object> key;
+
+        // all guarded by this
+        private final List<Requester<T>> requesters = new ArrayList<>();
+        private boolean terminated = false;
+        private Future<T> upstreamFuture;
+        private boolean cancelled = false;
+
+        Flight(List<Object> key) {
+            this.key = key;
+        }
+
+        void start(DownloadTask<T> task, int tries) {
+            Future<T> future;
+            try {
+                future = tries == -1
+                        ? upstream.download(task, this)
+                        : upstream.download(task, this, tries);
+            } catch (Throwable e) {
+                failed(e);
+                throw e;
+            }
+            boolean cancelNow;
+            synchronized (this) {
+                upstreamFuture = future;
+                cancelNow = cancelled;
+            }
+            if (cancelNow) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * @return the attached requester, null if the flight has terminated
+         * or all the requesters have cancelled
+         */
+        Requester<T> attach(DownloadCallback<T> callback) {
+            Requester<T> requester = new Requester<>(this, callback);
+            synchronized (this) {
+                if (terminated || cancelled) {
+                    return null;
+                }
+                requesters.add(requester);
+            }
+            return requester;
+        }
+
+        void detach(Requester<T> requester, boolean mayInterruptIfRunning) {
+            Future<T> toCancel = null;
+            synchronized (this) {
+                if (terminated || !requesters.remove(requester)) {
+                    return;
+                }
+                if (requesters.isEmpty()) {
+                    // nobody needs the result any more
+                    cancelled = true;
+                    toCancel = upstreamFuture;
+                }
+            }
+            if (toCancel != null) {
+                flights.remove(key, this);
+                toCancel.cancel(mayInterruptIfRunning);
+            }
+        }
+
+        @Override
+        public void done(T result) {
+            EventDispatchException ex = null;
+            for (Requester<T> requester : terminate()) {
+                try {
+                    requester.future.done(result);
+                } catch (Throwable e) {
+                    ex = suppress(ex, e);
+                }
+            }
+            if (ex != null) {
+                throw ex;
+            }
+        }
+
+        @Override
+        public void failed(Throwable e) {
+            EventDispatchException ex = null;
+            for (Requester<T> requester : terminate()) {
+                try {
+                    requester.future.failed(e);
+                } catch (Throwable e1) {
+                    ex = suppress(ex, e1);
+                }
+            }
+            if (ex != null) {
+                throw ex;
+            }
+        }
+
+        @Override
+        public void cancelled() {
+            EventDispatchException ex = null;
+            for (Requester<T> requester : terminate()) {
+                try {
+                    requester.future.cancelled();
+                } catch (Throwable e) {
+                    ex = suppress(ex, e);
+                }
+            }
+            if (ex != null) {
+                throw ex;
+            }
+        }
+
+        @Override
+        public void updateProgress(long done, long total) {
+            EventDispatchException ex = null;
+            for (Requester<T> requester : snapshot()) {
+                try {
+                    if (requester.callback != null) {
+                        requester.callback.updateProgress(done, total);
+                    }
+                } catch (Throwable e) {
+                    ex = suppress(ex, e);
+                }
+            }
+            if (ex != null) {
+                throw ex;
+            }
+        }
+
+        @Override
+        public void retry(Throwable e, int current, int max) {
+            EventDispatchException ex = null;
+            for (Requester<T> requester : snapshot()) {
+                try {
+                    if (requester.callback != null) {
+                        requester.callback.retry(e, current, max);
+                    }
+                } catch (Throwable e1) {
+                    ex = suppress(ex, e1);
+                }
+            }
+            if (ex != null) {
+                throw ex;
+            }
+        }
+
+        private List<Requester<T>> terminate() {
+            // remove the flight first, so the new requests won't attach to it
+            flights.remove(key, this);
+            synchronized (this) {
+                if (terminated) {
+                    return new ArrayList<>();
+                }
+                terminated = true;
+                List<Requester<T>> result = new ArrayList<>(requesters);
+                requesters.clear();
+                return result;
+            }
+        }
+
+        private synchronized List<Requester<T>> snapshot() {
+            return new ArrayList<>(requesters);
+        }
+
+    }
+
+    /**
+     * A requester attached to a flight.
+     */
+    private static class Requester<T> implements Cancelable {
+
+        final AsyncFuture<T> future;
+        final DownloadCallback<T> callback;
+        private final Flight<T> flight;
+
+        Requester(Flight<T> flight, DownloadCallback<T> callback) {
+            this.flight = flight;
+            this.callback = callback;
+            future = new AsyncFuture<>(this);
+            if (callback != null) {
+                future.setCallback(callback);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            flight.detach(this, mayInterruptIfRunning);
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Describes the <code>Content-Range</code> header of a partial http response.
+ */
+final class ContentRange {
+
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("^\\s*bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)\\s*$");
+
+    private final long start;
+    private final long end;
+    private final long total;
+
+    private ContentRange(long start, long end, long total) {
+        this.start = start;
+        this.end = end;
+        this.total = total;
+    }
+
+    /**
+     * Parses a <code>Content-Range</code> header.
+     *
+     * @param header the value of the header, can be null
+     * @return the content range, null if the header is absent or malformed
+     */
+    static ContentRange parse(String header) {
+        if (header == null) {
+            return null;
+        }
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher(header);
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            long start = Long.parseLong(matcher.group(1));
+            long end = Long.parseLong(matcher.group(2));
+            long total = "*".equals(matcher.group(3)) ? -1 : Long.parseLong(matcher.group(3));
+            if (end < start || (total != -1 && end >= total)) {
+                return null;
+            }
+            return new ContentRange(start, end, total);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the value of the <code>Range</code> header.
+     *
+     * @param offset the first byte to request
+     * @param end    the last byte to request (inclusive), -1 to request till
+     *               the end of the resource
+     * @return the value of the <code>Range</code> header
+     */
+    static String toRangeHeader(long offset, long end) {
+        return end == -1
+                ? "bytes=" + offset + "-"
+                : "bytes=" + offset + "-" + end;
+    }
+
+    /**
+     * Selects the validator to send in the <code>If-Range</code> header when
+     * resuming the resource of a response.
+     * <p>
+     * A weak <code>ETag</code> can't be used in <code>If-Range</code>, so the
+     * <code>Last-Modified</code> is used instead.
+     *
+     * @param etag         the <code>ETag</code> of the response, can be null
+     * @param lastModified the <code>Last-Modified</code> of the response, can
+     *                     be null
+     * @return the validator, null if the response has no usable validator
+     */
+    static String selectValidator(String etag, String lastModified) {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Gets the position of the first byte in the response.
+     *
+     * @return the position of the first byte
+     */
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the position of the last byte (inclusive) in the response.
+     *
+     * @return the position of the last byte
+     */
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * Gets the length of the whole resource.
+     *
+     * @return the length of the whole resource, -1 if unknown
+     */
+    long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the length of the whole resource of a partial response.
+     *
+     * @param range         the content range of the response, can be null
+     * @param offset        the first byte requested
+     * @param end           the last byte requested (inclusive), -1 if the
+     *                      request is not bounded
+     * @param contentLength the content length of the response, -1 if unknown
+     * @return the length of the whole resource, -1 if unknown
+     */
+    static long resolveTotalLength(ContentRange range, long offset, long end, long contentLength) {
+        if (range != null && range.total != -1) {
+            return range.total;
+        }
+        if (end != -1 || contentLength == -1) {
+            return -1;
+        }
+        return offset + contentLength;
+    }
+
+}
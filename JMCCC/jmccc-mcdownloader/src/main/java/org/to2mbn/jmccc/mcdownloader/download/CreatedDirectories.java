@@ -0,0 +1,62 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import org.to2mbn.jmccc.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the directories which have been created for the downloaded files,
+ * so the parent directory of a file is checked only once instead of once per
+ * file.
+ * <p>
+ * The directories may be deleted by others after they are remembered. In that
+ * case, opening a file in them fails, and the caller should call
+ * {@link #forget(File)} and try again.
+ */
+final class CreatedDirectories {
+
+    private static final int MAX_SIZE = 8192;
+
+    private static final Set<File> DIRECTORIES = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+    private CreatedDirectories() {
+    }
+
+    /**
+     * Creates the parent directory of the given file if it hasn't been
+     * created.
+     *
+     * @param file the file to write
+     * @throws IOException if the directory can't be created
+     */
+    static void prepareWrite(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory == null || DIRECTORIES.contains(directory)) {
+            return;
+        }
+        FileUtils.prepareWrite(file);
+        if (DIRECTORIES.size() >= MAX_SIZE) {
+            DIRECTORIES.clear();
+        }
+        DIRECTORIES.add(directory);
+    }
+
+    /**
+     * Forgets the parent directory of the given file, and creates it again.
+     *
+     * @param file the file to write
+     * @throws IOException if the directory can't be created
+     */
+    static void forget(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            DIRECTORIES.remove(directory);
+        }
+        prepareWrite(file);
+    }
+
+}
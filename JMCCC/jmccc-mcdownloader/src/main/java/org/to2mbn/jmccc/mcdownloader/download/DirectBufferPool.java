@@ -0,0 +1,57 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pools the direct buffers used to write the downloaded data.
+ * <p>
+ * Allocating a direct buffer is expensive, so the buffers are reused. The pool
+ * never blocks: a new buffer is allocated if there is no free one, and the
+ * buffers exceeding the capacity of the pool are left to the GC.
+ */
+final class DirectBufferPool {
+
+    static final int BUFFER_SIZE = 128 * 1024;
+
+    /**
+     * Shared by the {@link DiskWriteScheduler}s and the
+     * {@link FileDownloadTask}s.
+     */
+    static final DirectBufferPool SHARED = new DirectBufferPool(BUFFER_SIZE, 64);
+
+    private final int bufferSize;
+    private final int capacity;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger count = new AtomicInteger();
+
+    DirectBufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        count.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (count.incrementAndGet() <= capacity) {
+            buffers.offer(buffer);
+        } else {
+            count.decrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import java.io.File;
+import java.util.Objects;
+import java.util.concurrent.Future;
+
+/**
+ * Schedules the disk writes of the download tasks with a
+ * {@link DiskWriteScheduler}.
+ * <p>
+ * The download tasks which have {@link DownloadTask#getWriteTarget() write
+ * targets} are wrapped, so their sessions are written by the writer threads of
+ * the scheduler. The others, and the segmented sessions, are passed to the
+ * upstream directly.
+ * <p>
+ * The decorators which wrap the tasks without write targets, such as
+ * {@link SegmentedDownloader}, must be the upstream of this, otherwise their
+ * tasks are not scheduled.
+ *
+ * @see DiskWriteScheduler
+ */
+public class DiskScheduledDownloader implements DownloaderService {
+
+    private final DownloaderService upstream;
+    private final DiskWriteScheduler scheduler;
+
+    /**
+     * Constructs a DiskScheduledDownloader.
+     *
+     * @param upstream  the downloader to send requests
+     * @param scheduler the scheduler to schedule the writes, which will be
+     *                  shutdown with this
+     * @throws NullPointerException if <code>upstream==null||scheduler==null</code>
+     */
+    public DiskScheduledDownloader(DownloaderService upstream, DiskWriteScheduler scheduler) {
+        Objects.requireNonNull(upstream);
+        Objects.requireNonNull(scheduler);
+        this.upstream = upstream;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return upstream.download(schedule(task), callback);
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        return upstream.download(schedule(task), callback, tries);
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            upstream.shutdown();
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return upstream.isShutdown();
+    }
+
+    private <T> DownloadTask<T> schedule(DownloadTask<T> task) {
+        Objects.requireNonNull(task);
+        File target = task.getWriteTarget();
+        return target == null ? task : new ScheduledWriteDownloadTask<>(task, target, scheduler);
+    }
+
+}
@@ -0,0 +1,465 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Shutdownable;
+import org.to2mbn.jmccc.mcdownloader.util.StorageDevices;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileStore;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedules the disk writes of the download sessions, independently of the
+ * network concurrency.
+ * <p>
+ * The data received by a scheduled session is staged in a bounded buffer, and
+ * the buffer is queued to be written by a writer thread of the device where the
+ * target file is located when it's full, or when the session completes. A
+ * session with a few buffers queued is busy: it pauses the input of a
+ * non-blocking downloader (see {@link FlowControlledDownloadSession}), and
+ * blocks the others. A small file fits in one buffer, so it is created, written
+ * and moved into place by a writer in one go, and a device is never written by
+ * more sessions than it has writers.
+ * <p>
+ * The number of the writers of a device can be specified. Otherwise it's
+ * detected: a device known to be non-rotational (such as an SSD) has
+ * {@link #DEFAULT_NON_ROTATIONAL_WRITERS} writers, and the others have one
+ * writer, to avoid seeking back and forth between the files. The devices can
+ * only be detected on Linux, so the devices on the other platforms (such as
+ * Windows) have one writer unless the number is specified.
+ *
+ * @see DiskScheduledDownloader
+ */
+public class DiskWriteScheduler implements Shutdownable {
+
+    public static final int DEFAULT_NON_ROTATIONAL_WRITERS = 4;
+
+    // the buffers a session may have queued before it's busy
+    private static final int MAX_QUEUED_BUFFERS = 2;
+
+    private final int writersPerDevice;
+
+    // the key is the FileStore, or this if the device is unknown
+    private final ConcurrentMap<Object, ExecutorService> writers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<File, ExecutorService> directoryWriters = new ConcurrentHashMap<>();
+
+    private volatile boolean shutdown = false;
+
+    /**
+     * Constructs a DiskWriteScheduler which detects the number of the writers
+     * of each device.
+     */
+    public DiskWriteScheduler() {
+        this(0);
+    }
+
+    /**
+     * Constructs a DiskWriteScheduler.
+     *
+     * @param writersPerDevice the number of the writer threads of each device,
+     *                         0 to detect it for each device
+     * @throws IllegalArgumentException if <code>writersPerDevice &lt; 0</code>
+     */
+    public DiskWriteScheduler(int writersPerDevice) {
+        if (writersPerDevice < 0) {
+            throw new IllegalArgumentException("writersPerDevice < 0");
+        }
+        this.writersPerDevice = writersPerDevice;
+    }
+
+    /**
+     * Creates a session whose writes are scheduled by this.
+     * <p>
+     * The session to write the data to is opened by a writer thread when the
+     * first buffer is to be written, or when the scheduled session completes or
+     * fails, and all the methods of it are called by the writer threads.
+     *
+     * @param target  the file to which the session writes
+     * @param session opens the session to write the data to
+     * @param <T>     the type of the result
+     * @return the scheduled session
+     * @throws NullPointerException       if <code>target==null||session==null</code>
+     * @throws RejectedExecutionException if the scheduler has been shutdown
+     */
+    public <T> DownloadSession<T> schedule(File target, Callable<DownloadSession<T>> session) {
+        Objects.requireNonNull(target);
+        Objects.requireNonNull(session);
+        if (shutdown) {
+            throw new RejectedExecutionException("The scheduler has been shutdown.");
+        }
+        return new ScheduledSession<>(session, writerOf(target));
+    }
+
+    @Override
+    public void shutdown() {
+        if (!shutdown) {
+            shutdown = true;
+            // the writes which have been scheduled are still done
+            for (ExecutorService writer : writers.values()) {
+                writer.shutdown();
+            }
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private ExecutorService writerOf(File target) {
+        File directory = target.getAbsoluteFile().getParentFile();
+        ExecutorService writer = directory == null ? null : directoryWriters.get(directory);
+        if (writer == null) {
+            FileStore device = StorageDevices.deviceOf(target);
+            Object key = device == null ? this : device;
+            writer = writers.get(key);
+            if (writer == null) {
+                ExecutorService newWriter = createWriter(device);
+                writer = writers.putIfAbsent(key, newWriter);
+                if (writer == null) {
+                    writer = newWriter;
+                    if (shutdown) {
+                        writer.shutdown();
+                    }
+                } else {
+                    newWriter.shutdown();
+                }
+            }
+            if (directory != null) {
+                directoryWriters.put(directory, writer);
+            }
+        }
+        return writer;
+    }
+
+    private ExecutorService createWriter(FileStore device) {
+        int threads = writersPerDevice;
+        if (threads == 0) {
+            // an undetected device may be an HDD, where more writers would thrash
+            threads = device != null && StorageDevices.isNonRotational(device) ? DEFAULT_NON_ROTATIONAL_WRITERS : 1;
+        }
+        final String name = "jmccc-disk-writer-" + (device == null ? "unknown" : device.name());
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private class ScheduledSession<T> implements FlowControlledDownloadSession<T> {
+
+        private final Callable<DownloadSession<T>> opener;
+        private final ExecutorService writer;
+        private final Runnable drainJob = new Runnable() {
+
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+
+        // only accessed by the writers, one at a time
+        private DownloadSession<T> session;
+
+        // only accessed by the receiving thread
+        private ByteBuffer staging;
+
+        // guarded by this
+        private final Queue<ByteBuffer> queue = new ArrayDeque<>();
+        private FutureTask<T> finisher;
+        private boolean draining = false;
+        private Throwable writeFailure;
+        private boolean flowControlled = false;
+        private Runnable resume;
+
+        ScheduledSession(Callable<DownloadSession<T>> opener, ExecutorService writer) {
+            this.opener = opener;
+            this.writer = writer;
+        }
+
+        @Override
+        public void receiveData(ByteBuffer data) throws IOException {
+            checkQueue();
+            while (data.hasRemaining()) {
+                if (staging == null) {
+                    staging = DirectBufferPool.SHARED.acquire();
+                }
+                int length = Math.min(staging.remaining(), data.remaining());
+                ByteBuffer part = data.duplicate();
+                part.limit(part.position() + length);
+                staging.put(part);
+                data.position(data.position() + length);
+
+                if (!staging.hasRemaining()) {
+                    enqueue(takeStaging());
+                    checkQueue();
+                }
+            }
+        }
+
+        @Override
+        public synchronized boolean pauseIfBusy(Runnable resume) {
+            flowControlled = true;
+            if (queue.size() < MAX_QUEUED_BUFFERS || writeFailure != null) {
+                return false;
+            }
+            this.resume = resume;
+            return true;
+        }
+
+        @Override
+        public T completed() throws Exception {
+            ByteBuffer buffer = takeStaging();
+            if (buffer != null) {
+                enqueue(buffer);
+            }
+            return await(finish(new Callable<T>() {
+
+                @Override
+                public T call() throws Exception {
+                    Throwable failure;
+                    synchronized (ScheduledSession.this) {
+                        failure = writeFailure;
+                    }
+                    if (session == null) {
+                        session = opener.call();
+                    }
+                    if (failure != null) {
+                        IOException ex = new IOException("A previous write has failed", failure);
+                        try {
+                            session.failed();
+                        } catch (Throwable e) {
+                            ex.addSuppressed(e);
+                        }
+                        throw ex;
+                    }
+                    return session.completed();
+                }
+            }));
+        }
+
+        @Override
+        public void failed() throws Exception {
+            // the data received is still written, so the download can be resumed from it,
+            // unless a previous write has failed
+            ByteBuffer buffer = takeStaging();
+            if (buffer != null) {
+                enqueue(buffer);
+            }
+            await(finish(new Callable<T>() {
+
+                @Override
+                public T call() throws Exception {
+                    if (session == null) {
+                        // opened even if nothing has been written, since creating a
+                        // session may discard the data downloaded before
+                        session = opener.call();
+                    }
+                    session.failed();
+                    return null;
+                }
+            }));
+        }
+
+        private ByteBuffer takeStaging() {
+            ByteBuffer buffer = staging;
+            staging = null;
+            if (buffer != null) {
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        /**
+         * Queues the buffer to be written. The buffer is dropped if a previous
+         * write has failed.
+         */
+        private void enqueue(ByteBuffer buffer) {
+            boolean submit;
+            synchronized (this) {
+                if (writeFailure != null) {
+                    DirectBufferPool.SHARED.release(buffer);
+                    return;
+                }
+                queue.add(buffer);
+                submit = !draining;
+                draining = true;
+            }
+            if (submit) {
+                submitDrain();
+            }
+        }
+
+        /**
+         * Waits for the writers to catch up, unless the downloader pauses the
+         * input by itself.
+         *
+         * @throws IOException if a previous write has failed
+         */
+        private synchronized void checkQueue() throws IOException {
+            while (!flowControlled && queue.size() >= MAX_QUEUED_BUFFERS && writeFailure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (writeFailure != null) {
+                throw new IOException("A previous write has failed", writeFailure);
+            }
+        }
+
+        /**
+         * Schedules the job to complete or fail the session after the queued
+         * buffers are written.
+         */
+        private FutureTask<T> finish(Callable<T> job) {
+            FutureTask<T> task = new FutureTask<>(job);
+            boolean submit;
+            synchronized (this) {
+                finisher = task;
+                submit = !draining;
+                draining = true;
+            }
+            if (submit) {
+                submitDrain();
+            }
+            return task;
+        }
+
+        private void submitDrain() {
+            try {
+                writer.execute(drainJob);
+            } catch (RejectedExecutionException e) {
+                // the scheduler has been shutdown, the session is written by the current thread
+                drain();
+            }
+        }
+
+        /**
+         * Writes the buffers queued when the job starts, and resubmits itself for
+         * the rest, so the sessions sharing a writer take turns. Runs the
+         * finisher once all the buffers are written.
+         */
+        private void drain() {
+            int batch;
+            synchronized (this) {
+                batch = queue.size();
+            }
+            for (int i = 0; i < batch; i++) {
+                ByteBuffer buffer;
+                synchronized (this) {
+                    buffer = queue.poll();
+                }
+                if (buffer == null) {
+                    // dropped after a failure
+                    break;
+                }
+                Throwable failure = null;
+                try {
+                    if (session == null) {
+                        session = opener.call();
+                    }
+                    session.receiveData(buffer);
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    DirectBufferPool.SHARED.release(buffer);
+                }
+                written(failure);
+            }
+
+            FutureTask<T> task = null;
+            boolean more;
+            synchronized (this) {
+                more = !queue.isEmpty();
+                if (!more) {
+                    task = finisher;
+                    finisher = null;
+                    draining = task != null;
+                }
+            }
+            if (task != null) {
+                task.run();
+                synchronized (this) {
+                    more = !queue.isEmpty() || finisher != null;
+                    draining = more;
+                }
+            }
+            if (more) {
+                submitDrain();
+            }
+        }
+
+        /**
+         * Called after a buffer has been written, resumes the input if the
+         * session is no longer busy.
+         */
+        private void written(Throwable failure) {
+            Runnable toResume = null;
+            synchronized (this) {
+                if (failure != null && writeFailure == null) {
+                    writeFailure = failure;
+                    // the rest can't be written
+                    for (ByteBuffer buffer : queue) {
+                        DirectBufferPool.SHARED.release(buffer);
+                    }
+                    queue.clear();
+                }
+                if (resume != null && (queue.size() < MAX_QUEUED_BUFFERS || writeFailure != null)) {
+                    toResume = resume;
+                    resume = null;
+                }
+                notifyAll();
+            }
+            if (toResume != null) {
+                toResume.run();
+            }
+        }
+
+        private T await(Future<T> future) throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+
+    }
+
+}
@@ -1,8 +1,11 @@
 package org.to2mbn.jmccc.mcdownloader.download;
 
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
 import org.to2mbn.jmccc.mcdownloader.util.URIUtils;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.Objects;
 
@@ -78,11 +81,218 @@ abstract public class DownloadTask<T> {
         return createSession();
     }
 
+    /**
+     * Gets the number of bytes which have been received in a previous session
+     * and can be resumed.
+     * <p>
+     * If this method returns a positive value, the downloader will request the
+     * resource from the returned offset, and
+     * {@link #resumeSession(long, long)} will be called if the server accepts
+     * the range request. Otherwise {@link #createSession()} or
+     * {@link #createSession(long)} will be called, and the data received before
+     * will be discarded.
+     *
+     * @return the offset to resume from, 0 if the download cannot be resumed
+     */
+    public long getResumeOffset() {
+        return 0;
+    }
+
+    /**
+     * Calls when the download task resumes from the given offset.
+     *
+     * @param offset the offset to resume from, which is returned by
+     *               {@link #getResumeOffset()}
+     * @param length the possible length of the whole resource, -1 if unknown
+     * @return a new download session which receives the data after
+     * <code>offset</code>
+     * @throws IOException                   if an I/O error occurs
+     * @throws UnsupportedOperationException if the download task cannot be
+     *                                       resumed
+     */
+    public DownloadSession<T> resumeSession(long offset, long length) throws IOException {
+        throw new UnsupportedOperationException("resuming is not supported");
+    }
+
+    /**
+     * Opens the data which have been received in a previous session.
+     * <p>
+     * This method is used by the decorators which need to inspect the whole
+     * data of a resumed download, such as checksum verifying.
+     *
+     * @param offset the offset to resume from, which is returned by
+     *               {@link #getResumeOffset()}
+     * @return an input stream of the first <code>offset</code> bytes
+     * @throws IOException                   if an I/O error occurs
+     * @throws UnsupportedOperationException if the download task cannot be
+     *                                       resumed
+     */
+    public InputStream openResumedData(long offset) throws IOException {
+        throw new UnsupportedOperationException("resuming is not supported");
+    }
+
+    /**
+     * Gets the validator of the response which the data received in a
+     * previous session came from.
+     * <p>
+     * The validator is sent in the <code>If-Range</code> header when the
+     * download resumes, so the server sends the whole resource instead of the
+     * requested range if the resource has changed since then.
+     *
+     * @return the <code>ETag</code> or the <code>Last-Modified</code> of the
+     * response, null if unknown
+     * @see #setResumeValidator(String)
+     */
+    public String getResumeValidator() {
+        return null;
+    }
+
+    /**
+     * Calls before a new session is created, with the validator of the
+     * response. The download task should store it along with the data
+     * received, and return it from {@link #getResumeValidator()} when the data
+     * is to be resumed.
+     *
+     * @param validator the strong <code>ETag</code> or the
+     *                  <code>Last-Modified</code> of the response, null if the
+     *                  response has neither
+     * @throws IOException if an I/O error occurs
+     */
+    public void setResumeValidator(String validator) throws IOException {
+    }
+
+    /**
+     * Discards the data received in a previous session, so the download won't
+     * be resumed from it.
+     * <p>
+     * The downloaders call it when the server rejects the range to resume,
+     * which means the data received before is out of date.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void discardResumedData() throws IOException {
+    }
+
+    /**
+     * Gets the position of the last byte to request (inclusive).
+     * <p>
+     * The downloader requests the bytes between {@link #getResumeOffset()} and
+     * the returned position, and {@link #resumeSession(long, long)} will be
+     * called if the server accepts the range request.
+     *
+     * @return the position of the last byte to request, -1 to request till the
+     * end of the resource
+     */
+    public long getRangeEnd() {
+        return -1;
+    }
+
+    /**
+     * Returns true if the data of the download task can be received in several
+     * segments concurrently.
+     *
+     * @return true if {@link #createSegmentedSession(long)} is supported
+     * @see SegmentedDownloader
+     */
+    public boolean isSegmentable() {
+        return false;
+    }
+
+    /**
+     * Calls when the download task begins, and the data will be received in
+     * several segments concurrently.
+     *
+     * @param length the length of the whole resource
+     * @return a new segmented download session
+     * @throws IOException                   if an I/O error occurs
+     * @throws UnsupportedOperationException if the download task is not
+     *                                       segmentable
+     */
+    public SegmentedDownloadSession<T> createSegmentedSession(long length) throws IOException {
+        throw new UnsupportedOperationException("segmented downloading is not supported");
+    }
+
+    /**
+     * Gets the priority of the download task.
+     * <p>
+     * The downloaders start the tasks with higher priorities first when they
+     * have to queue tasks.
+     *
+     * @return the priority, null if unspecified
+     * @see #withPriority(Priority)
+     */
+    public Priority getPriority() {
+        return null;
+    }
+
+    /**
+     * Returns a download task which has the given priority.
+     *
+     * @param priority the priority
+     * @return the download task with the given priority
+     * @throws NullPointerException if <code>priority==null</code>
+     */
+    public DownloadTask<T> withPriority(Priority priority) {
+        Objects.requireNonNull(priority);
+        return new PrioritizedDownloadTask<>(this, priority);
+    }
+
+    /**
+     * Gets the key which identifies where and how the result of the download
+     * task is stored.
+     * <p>
+     * Two download tasks with the same uri and equal non-null keys are
+     * considered identical, so a download task may share the transfer and the
+     * result of an identical one which is running.
+     *
+     * @return the key, null if the download task cannot be coalesced
+     * @see CoalescingDownloader
+     */
+    public Object getCoalescingKey() {
+        return null;
+    }
+
+    /**
+     * Gets the file to which the data of the download task is written.
+     * <p>
+     * The downloaders use it to schedule the disk writes by the devices where
+     * the files are located.
+     *
+     * @return the file, null if the data is not written to a file, or is
+     * written to several files
+     * @see DiskScheduledDownloader
+     */
+    public File getWriteTarget() {
+        return null;
+    }
+
     public <R> DownloadTask<R> andThen(ResultProcessor<T, R> processor) {
         Objects.requireNonNull(processor);
         return new AppendedDownloadTask<>(processor, this);
     }
 
+    /**
+     * Returns a download task which verifies the checksum and the size of the
+     * received data before completing.
+     * <p>
+     * The data is digested while it is being received. If the checksum or the
+     * size mismatches, the session fails with an <code>IOException</code>, so
+     * the download will be retried.
+     *
+     * @param algorithm the digest algorithm, such as <code>SHA-1</code>
+     * @param checksum  the expected checksum in hex, null if unknown
+     * @param size      the expected size, -1 if unknown
+     * @return the verifying download task
+     * @throws NullPointerException if <code>algorithm==null</code>
+     */
+    public DownloadTask<T> verifyChecksum(String algorithm, String checksum, long size) {
+        Objects.requireNonNull(algorithm);
+        if (checksum == null && size == -1) {
+            return this;
+        }
+        return new ChecksumVerifyingDownloadTask<>(this, algorithm, checksum, size);
+    }
+
     public DownloadTask<T> cacheable() {
         return cacheable(true);
     }
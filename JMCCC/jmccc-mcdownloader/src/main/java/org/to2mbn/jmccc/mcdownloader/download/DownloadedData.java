@@ -0,0 +1,198 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * The data downloaded by a {@link SpillableDownloadTask}, which is either in
+ * memory or in a temporary file.
+ * <p>
+ * The temporary file is deleted when the data is closed, so the consumer of the
+ * data should close it after use. It's not deleted on exit otherwise, since
+ * the list of the files to delete on exit would grow with every download in a
+ * long-running JVM.
+ *
+ * @see SpillableDownloadTask
+ */
+public class DownloadedData implements Closeable {
+
+    private final long length;
+
+    // guarded by this
+    private byte[] buffer;
+    private File file;
+
+    private ByteBuffer mapped;
+    private boolean closed;
+
+    DownloadedData(byte[] buffer, int length) {
+        this.buffer = buffer;
+        this.file = null;
+        this.length = length;
+    }
+
+    DownloadedData(File file, long length) {
+        this.buffer = null;
+        this.file = file;
+        this.length = length;
+    }
+
+    /**
+     * Gets the length of the data.
+     *
+     * @return the length of the data
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Returns true if the data has been spilled to a temporary file.
+     *
+     * @return true if the data is in a temporary file
+     */
+    public synchronized boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Gets the file which contains the data.
+     * <p>
+     * If the data is in memory, it's written to a temporary file first, and
+     * the memory is released.
+     *
+     * @return the file which contains the data
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized File toFile() throws IOException {
+        ensureOpen();
+        if (file == null) {
+            File spilled = File.createTempFile("jmccc-download-", ".tmp");
+            try (OutputStream out = new FileOutputStream(spilled)) {
+                out.write(buffer, 0, (int) length);
+            } catch (IOException e) {
+                spilled.delete();
+                throw e;
+            }
+            file = spilled;
+            buffer = null;
+        }
+        return file;
+    }
+
+    /**
+     * Opens an input stream of the data.
+     *
+     * @return an input stream of the data
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized InputStream openStream() throws IOException {
+        ensureOpen();
+        if (file == null) {
+            return new ByteArrayInputStream(buffer, 0, (int) length);
+        } else {
+            return new BufferedInputStream(new FileInputStream(file));
+        }
+    }
+
+    /**
+     * Opens a readable channel of the data.
+     *
+     * @return a readable channel of the data
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized ReadableByteChannel openChannel() throws IOException {
+        ensureOpen();
+        if (file == null) {
+            return Channels.newChannel(openStream());
+        } else {
+            return new FileInputStream(file).getChannel();
+        }
+    }
+
+    /**
+     * Returns a read-only buffer of the data.
+     * <p>
+     * If the data has been spilled, the temporary file is mapped into memory,
+     * so the data is not copied to the heap.
+     *
+     * @return a read-only buffer of the data
+     * @throws IOException if an I/O error occurs, or the data is larger than
+     *                     2 GiB
+     */
+    public synchronized ByteBuffer asByteBuffer() throws IOException {
+        ensureOpen();
+        if (file == null) {
+            return ByteBuffer.wrap(buffer, 0, (int) length).asReadOnlyBuffer();
+        }
+        if (mapped == null) {
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Data too large to map: " + length);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                mapped = channel.map(MapMode.READ_ONLY, 0, length);
+            }
+        }
+        return mapped.duplicate();
+    }
+
+    /**
+     * Copies the data into a byte array.
+     *
+     * @return the data
+     * @throws IOException if an I/O error occurs, or the data is larger than
+     *                     2 GiB
+     */
+    public synchronized byte[] toByteArray() throws IOException {
+        ensureOpen();
+        if (file == null) {
+            return buffer.length == length ? buffer : Arrays.copyOf(buffer, (int) length);
+        }
+        ByteBuffer data = asByteBuffer();
+        byte[] result = new byte[data.remaining()];
+        data.get(result);
+        return result;
+    }
+
+    /**
+     * Releases the data, and deletes the temporary file.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        mapped = null;
+        if (file != null && !file.delete()) {
+            // a mapped file cannot be deleted on some platforms until the buffer is collected
+            file.deleteOnExit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadedData[length=" + length + ", spilled=" + isSpilled() + "]";
+    }
+
+    private synchronized void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The data has been closed");
+        }
+    }
+
+}
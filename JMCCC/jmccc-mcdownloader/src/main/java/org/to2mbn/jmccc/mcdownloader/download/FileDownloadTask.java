@@ -1,13 +1,21 @@
 package org.to2mbn.jmccc.mcdownloader.download;
 
-import org.to2mbn.jmccc.util.FileUtils;
-
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Objects;
 
 /**
@@ -17,6 +25,11 @@ import java.util.Objects;
  */
 public class FileDownloadTask extends DownloadTask<Void> {
 
+    /**
+     * The sessions longer than this preallocate their files.
+     */
+    private static final long PREALLOCATION_THRESHOLD = DirectBufferPool.BUFFER_SIZE;
+
     private File target;
 
     /**
@@ -56,6 +69,16 @@ public class FileDownloadTask extends DownloadTask<Void> {
         return target;
     }
 
+    @Override
+    public Object getCoalescingKey() {
+        return target.getAbsoluteFile();
+    }
+
+    @Override
+    public File getWriteTarget() {
+        return target;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(super.hashCode(), target);
@@ -73,43 +96,311 @@ public class FileDownloadTask extends DownloadTask<Void> {
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The part file is resumed only if the validator of its response has been
+     * stored, otherwise it can't be told whether the resource has changed
+     * since then.
+     */
+    @Override
+    public long getResumeOffset() {
+        File partFile = getPartFile();
+        return partFile.isFile() && getValidatorFile().isFile() ? partFile.length() : 0;
+    }
+
+    @Override
+    public String getResumeValidator() {
+        try {
+            return new String(Files.readAllBytes(getValidatorFile().toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void setResumeValidator(String validator) throws IOException {
+        File validatorFile = getValidatorFile();
+        if (validator == null) {
+            Files.deleteIfExists(validatorFile.toPath());
+        } else {
+            CreatedDirectories.prepareWrite(validatorFile);
+            Files.write(validatorFile.toPath(), validator.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void discardResumedData() throws IOException {
+        Files.deleteIfExists(getPartFile().toPath());
+        Files.deleteIfExists(getValidatorFile().toPath());
+    }
+
     @Override
     public DownloadSession<Void> createSession() throws IOException {
-        final File partFile = new File(target.getParentFile(), target.getName() + ".part");
+        return createSession(-1);
+    }
 
-        FileUtils.prepareWrite(partFile);
+    @Override
+    public DownloadSession<Void> createSession(long length) throws IOException {
+        if (length > PREALLOCATION_THRESHOLD) {
+            // the preallocated file is longer than the data received, so it's not resumable until
+            // it's truncated and moved to the part file when the session fails
+            File preallocatedFile = getPreallocatedFile();
+            FileChannel channel = openPreallocated(preallocatedFile, length);
+            getPartFile().delete();
+            return new FileDownloadSession(preallocatedFile, channel, true);
+        }
+
+        File partFile = getPartFile();
+        return new FileDownloadSession(partFile, open(partFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), false);
+    }
+
+    @Override
+    public DownloadSession<Void> resumeSession(long offset, long length) throws IOException {
+        File partFile = getPartFile();
+        FileChannel channel = FileChannel.open(partFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (channel.size() != offset) {
+            channel.close();
+            throw new IOException("Couldn't resume from " + offset + ", the part file has been modified: " + partFile);
+        }
+        return new FileDownloadSession(partFile, channel, false);
+    }
+
+    @Override
+    public InputStream openResumedData(long offset) throws IOException {
+        return new FileInputStream(getPartFile());
+    }
+
+    @Override
+    public boolean isSegmentable() {
+        return true;
+    }
 
-        final FileOutputStream out = new FileOutputStream(partFile);
-        final FileChannel channel = out.getChannel();
+    @Override
+    public SegmentedDownloadSession<Void> createSegmentedSession(long length) throws IOException {
+        final File segmentsFile = new File(target.getParentFile(), target.getName() + ".segments");
+
+        CreatedDirectories.prepareWrite(segmentsFile);
+
+        final RandomAccessFile file = new RandomAccessFile(segmentsFile, "rw");
+        try {
+            file.setLength(length);
+        } catch (Throwable e) {
+            file.close();
+            throw e;
+        }
+        final FileChannel channel = file.getChannel();
 
-        return new DownloadSession<Void>() {
+        return new SegmentedDownloadSession<Void>() {
 
             @Override
-            public void receiveData(ByteBuffer data) throws IOException {
-                channel.write(data);
+            public void receiveData(long position, ByteBuffer data) throws IOException {
+                while (data.hasRemaining()) {
+                    position += channel.write(data, position);
+                }
+            }
+
+            @Override
+            public int readData(long position, ByteBuffer dst) throws IOException {
+                return channel.read(dst, position);
             }
 
             @Override
             public void failed() throws IOException {
-                close();
-                partFile.delete();
+                file.close();
+                segmentsFile.delete();
             }
 
             @Override
             public Void completed() throws IOException {
-                close();
-                FileUtils.prepareWrite(target);
-                if (target.exists()) {
-                    target.delete();
-                }
-                partFile.renameTo(target);
+                file.close();
+                moveAtomically(segmentsFile, target);
                 return null;
             }
+        };
+    }
 
-            private void close() throws IOException {
-                out.close();
+    private File getPartFile() {
+        return new File(target.getParentFile(), target.getName() + ".part");
+    }
+
+    private File getValidatorFile() {
+        return new File(target.getParentFile(), target.getName() + ".part.validator");
+    }
+
+    private File getPreallocatedFile() {
+        return new File(target.getParentFile(), target.getName() + ".prealloc");
+    }
+
+    private static FileChannel open(File file, OpenOption... options) throws IOException {
+        CreatedDirectories.prepareWrite(file);
+        try {
+            return FileChannel.open(file.toPath(), options);
+        } catch (NoSuchFileException e) {
+            // the directory has been deleted since it was created
+            CreatedDirectories.forget(file);
+            return FileChannel.open(file.toPath(), options);
+        }
+    }
+
+    private static FileChannel openPreallocated(File file, long length) throws IOException {
+        CreatedDirectories.prepareWrite(file);
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+        } catch (FileNotFoundException e) {
+            CreatedDirectories.forget(file);
+            raf = new RandomAccessFile(file, "rw");
+        }
+        try {
+            // allocates the space at once instead of growing the file on every write,
+            // so the file is less fragmented
+            raf.setLength(0);
+            raf.setLength(length);
+        } catch (Throwable e) {
+            raf.close();
+            throw e;
+        }
+        return raf.getChannel();
+    }
+
+    /**
+     * Moves the file to the target in one step, replacing the existing one.
+     */
+    private static void moveAtomically(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the data to a file, and moves the file to the target when
+     * completed.
+     * <p>
+     * The small pieces of data are coalesced in a direct buffer before being
+     * written, and the large ones are written directly.
+     */
+    private class FileDownloadSession implements DownloadSession<Void> {
+
+        private final File file;
+        private final FileChannel channel;
+        private final boolean preallocated;
+
+        private ByteBuffer buffer;
+
+        FileDownloadSession(File file, FileChannel channel, boolean preallocated) {
+            this.file = file;
+            this.channel = channel;
+            this.preallocated = preallocated;
+        }
+
+        @Override
+        public void receiveData(ByteBuffer data) throws IOException {
+            if ((buffer == null || buffer.position() == 0) && data.remaining() >= DirectBufferPool.SHARED.getBufferSize()) {
+                writeFully(data);
+                return;
             }
-        };
+
+            while (data.hasRemaining()) {
+                if (buffer == null) {
+                    buffer = DirectBufferPool.SHARED.acquire();
+                }
+                int length = Math.min(buffer.remaining(), data.remaining());
+                ByteBuffer part = data.duplicate();
+                part.limit(part.position() + length);
+                buffer.put(part);
+                data.position(data.position() + length);
+
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void failed() throws IOException {
+            // keep the data received, so that the download can be resumed
+            IOException ex = null;
+            boolean written = false;
+            try {
+                finishWriting();
+                written = true;
+            } catch (IOException e) {
+                ex = e;
+            } finally {
+                try {
+                    close();
+                } catch (IOException e) {
+                    if (ex == null) {
+                        ex = e;
+                    } else {
+                        ex.addSuppressed(e);
+                    }
+                }
+                if (preallocated) {
+                    try {
+                        if (written) {
+                            moveAtomically(file, getPartFile());
+                        } else {
+                            // not truncated, so the end of the data is unknown
+                            Files.deleteIfExists(file.toPath());
+                        }
+                    } catch (IOException e) {
+                        if (ex == null) {
+                            ex = e;
+                        } else {
+                            ex.addSuppressed(e);
+                        }
+                    }
+                }
+            }
+            if (ex != null) {
+                throw ex;
+            }
+        }
+
+        @Override
+        public Void completed() throws IOException {
+            try {
+                finishWriting();
+            } finally {
+                close();
+            }
+            moveAtomically(file, target);
+            Files.deleteIfExists(getValidatorFile().toPath());
+            return null;
+        }
+
+        private void finishWriting() throws IOException {
+            flush();
+            if (preallocated) {
+                channel.truncate(channel.position());
+            }
+        }
+
+        private void flush() throws IOException {
+            if (buffer != null && buffer.position() > 0) {
+                buffer.flip();
+                writeFully(buffer);
+                buffer.clear();
+            }
+        }
+
+        private void writeFully(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+
+        private void close() throws IOException {
+            if (buffer != null) {
+                DirectBufferPool.SHARED.release(buffer);
+                buffer = null;
+            }
+            channel.close();
+        }
     }
 
 }
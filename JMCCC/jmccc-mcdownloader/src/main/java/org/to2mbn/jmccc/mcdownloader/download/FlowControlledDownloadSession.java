@@ -0,0 +1,34 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+/**
+ * A download session which may handle the data slower than they are received,
+ * and asks the downloader to pause the input instead of being blocked in.
+ * <p>
+ * A non-blocking downloader calls {@link #pauseIfBusy(Runnable)} after passing
+ * data to the session, and stops reading the response while the session is
+ * busy. A downloader which doesn't, such as a blocking one, is blocked in
+ * {@link #receiveData(java.nio.ByteBuffer)} instead.
+ * <p>
+ * The decorators of the sessions should forward the method to the decorated
+ * sessions.
+ *
+ * @param <T> the type of the result
+ */
+public interface FlowControlledDownloadSession<T> extends DownloadSession<T> {
+
+    /**
+     * Checks if the session is busy, and if so, arranges the given callback to
+     * be called when it can receive more data.
+     * <p>
+     * The callback may be called by any thread, even before this method
+     * returns. Once this method has been called, the session never blocks in
+     * {@link #receiveData(java.nio.ByteBuffer)}, so the data received before
+     * the input is paused are still accepted.
+     *
+     * @param resume called once when the session can receive more data, if
+     *               this method returns true
+     * @return true if the session is busy, and the input should be paused
+     */
+    boolean pauseIfBusy(Runnable resume);
+
+}
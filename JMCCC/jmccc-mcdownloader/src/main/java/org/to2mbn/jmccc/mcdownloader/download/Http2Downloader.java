@@ -0,0 +1,563 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAsyncFutureTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.EmptyCallback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.PrioritizedRunnable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads over HTTP/2 with Apache HttpClient 5.
+ * <p>
+ * The requests to the same host are multiplexed as concurrent streams over a
+ * single connection, so thousands of small files (such as assets) don't need
+ * thousands of TCP/TLS handshakes, and aren't limited by the number of
+ * connections per host.
+ * <p>
+ * Only the https URLs are downloaded over HTTP/2. Most servers don't support
+ * HTTP/2 over cleartext (h2c), such as <code>resources.download.minecraft.net</code>,
+ * so the plain http URLs are downloaded over HTTP/1.1 with another client.
+ * <p>
+ * Notes: HTTP/2 over TLS requires ALPN, which is supported since Java 9 (and
+ * Java 8u252). The client doesn't support proxies.
+ */
+public class Http2Downloader implements DownloaderService {
+
+    private static final Logger LOGGER = Logger.getLogger(Http2Downloader.class.getCanonicalName());
+
+    private static final int HTTP_PARTIAL = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    // the flow-control window to grant each time the consumer is ready for more data
+    private static final int CAPACITY_INCREMENT = 64 * 1024;
+
+    // see HttpAsyncDownloader for the state word
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWNING = 1;
+    private static final int SHUTDOWNED = 2;
+    private static final int STATUS_MASK = 3;
+    private static final int TASK = 4;
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private final Set<Future<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+    private CloseableHttpAsyncClient http2Client;
+    private CloseableHttpAsyncClient http1Client;
+    private Executor bootstrapPool;
+
+    /**
+     * Constructs an Http2Downloader.
+     *
+     * @param http2Builder  the builder of the client for the https URLs
+     * @param http1Builder  the builder of the client for the plain http URLs
+     * @param bootstrapPool the pool to submit the requests
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public Http2Downloader(H2AsyncClientBuilder http2Builder, HttpAsyncClientBuilder http1Builder, Executor bootstrapPool) {
+        Objects.requireNonNull(http2Builder);
+        Objects.requireNonNull(http1Builder);
+        Objects.requireNonNull(bootstrapPool);
+        this.http2Client = http2Builder.build();
+        this.http1Client = http1Builder.build();
+        this.bootstrapPool = bootstrapPool;
+
+        http2Client.start();
+        http1Client.start();
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> downloadTask, DownloadCallback<T> callback, int tries) {
+        // see HttpAsyncDownloader for the submission protocol
+
+        Objects.requireNonNull(downloadTask);
+        if (tries < 1)
+            throw new IllegalArgumentException("tries < 1");
+
+        CallbackAsyncFutureTask<T> task = new AsyncDownloadTask<T>(downloadTask, callback == null ? new EmptyCallback<T>() : callback, tries);
+        task.setCallback(new TaskInactiver<>(task, callback));
+
+        for (; ; ) {
+            int s = state.get();
+            if ((s & STATUS_MASK) != RUNNING)
+                throw new RejectedExecutionException("The downloader has been shutdown.");
+            if (state.compareAndSet(s, s + TASK))
+                break;
+        }
+        Executor pool = bootstrapPool;
+
+        tasks.add(task);
+        if (isShutdown()) {
+            task.cancel(true);
+            return task;
+        }
+
+        try {
+            pool.execute(new PrioritizedRunnable(task, downloadTask.getPriority()));
+        } catch (Throwable e) {
+            inactive(task);
+            throw e;
+        }
+
+        return task;
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return download(task, callback, 1);
+    }
+
+    @Override
+    public void shutdown() {
+        int s;
+        int tasksCount;
+        do {
+            s = state.get();
+            if ((s & STATUS_MASK) != RUNNING) {
+                return;
+            }
+            tasksCount = s & ~STATUS_MASK;
+        } while (!state.compareAndSet(s, tasksCount == 0 ? SHUTDOWNED : tasksCount | SHUTDOWNING));
+
+        if (tasksCount == 0) {
+            completeShutdown();
+        } else {
+            for (Future<?> task : tasks)
+                task.cancel(true);
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return (state.get() & STATUS_MASK) != RUNNING;
+    }
+
+    private void inactive(Future<?> task) {
+        if (tasks.remove(task)) {
+            if (state.addAndGet(-TASK) == SHUTDOWNING && state.compareAndSet(SHUTDOWNING, SHUTDOWNED)) {
+                completeShutdown();
+            }
+        }
+    }
+
+    private void completeShutdown() {
+        bootstrapPool = null;
+        try {
+            http2Client.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "an exception occurred during shutdown http client", e);
+        }
+        try {
+            http1Client.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "an exception occurred during shutdown http client", e);
+        }
+        http2Client = null;
+        http1Client = null;
+    }
+
+    private CloseableHttpAsyncClient selectClient(DownloadTask<?> task) {
+        return "https".equalsIgnoreCase(task.getURI().getScheme()) ? http2Client : http1Client;
+    }
+
+    // see HttpAsyncDownloader, the sessions are completed or failed in the pool
+    private static class DownloadSessionHandler<T> {
+
+        public final AsyncResponseConsumer<T> consumer;
+        public final FutureCallback<T> callback;
+        private final DownloadTask<T> task;
+        private final DownloadCallback<T> downloadCallback;
+        private final Executor pool;
+        private final long resumeOffset;
+        private final long rangeEnd;
+
+        private volatile DownloadSession<T> session;
+        private volatile boolean partOutOfDate = false;
+
+        public DownloadSessionHandler(DownloadTask<T> task, DownloadCallback<T> downloadCallback, Executor pool, long resumeOffset, long rangeEnd) {
+            Objects.requireNonNull(task);
+            Objects.requireNonNull(downloadCallback);
+            Objects.requireNonNull(pool);
+            this.task = task;
+            this.downloadCallback = downloadCallback;
+            this.pool = pool;
+            this.resumeOffset = resumeOffset;
+            this.rangeEnd = rangeEnd;
+
+            consumer = new DataConsumer();
+            callback = new DownloadCallbackAdapter(downloadCallback);
+        }
+
+        private void runInPool(Runnable runnable) {
+            try {
+                pool.execute(new PrioritizedRunnable(runnable, task.getPriority()));
+            } catch (RejectedExecutionException e) {
+                runnable.run();
+            }
+        }
+
+        /*
+         * The input is paused by withholding the flow-control window: the capacity requested while the session is
+         * busy is granted when the session resumes.
+         */
+        private class DataConsumer extends InputThrottle implements AsyncResponseConsumer<T> {
+
+            private volatile long contextLength = -1;
+            private volatile long received = 0;
+            private volatile FutureCallback<T> resultCallback;
+
+            // guarded by the throttle
+            private CapacityChannel pendingCapacity;
+
+            @Override
+            public void consumeResponse(HttpResponse response, EntityDetails entityDetails, HttpContext context, FutureCallback<T> resultCallback) throws HttpException, IOException {
+                this.resultCallback = resultCallback;
+                start(response);
+                if (entityDetails == null) {
+                    // no content, the session is completed by the callback
+                    finish();
+                    resultCallback.completed(null);
+                }
+            }
+
+            @Override
+            public void informationResponse(HttpResponse response, HttpContext context) {
+                // ignore 1xx responses
+            }
+
+            private void start(HttpResponse response) throws HttpException, IOException {
+                int statusCode = response.getCode();
+                if (resumeOffset > 0 && rangeEnd == -1 && statusCode == HTTP_RANGE_NOT_SATISFIABLE) {
+                    // the part downloaded before is out of date, it's discarded by the callback
+                    partOutOfDate = true;
+                    throw new IOException("Couldn't resume from " + resumeOffset + ", range not satisfiable");
+                }
+                if (statusCode < 200 || statusCode > 299)
+                    // non-2xx response code
+                    throw new HttpResponseCodeException(statusCode);
+
+                boolean partial = (resumeOffset > 0 || rangeEnd != -1) && statusCode == HTTP_PARTIAL;
+                long responseLength = parseContentLength(response.getFirstHeader("Content-Length"));
+
+                if (partial) {
+                    Header contentRangeHeader = response.getFirstHeader("Content-Range");
+                    String contentRange = contentRangeHeader == null ? null : contentRangeHeader.getValue();
+                    ContentRange range = ContentRange.parse(contentRange);
+                    if (range == null || range.getStart() != resumeOffset)
+                        throw new IOException("Illegal Content-Range: " + contentRange + ", expected offset: " + resumeOffset);
+
+                    contextLength = ContentRange.resolveTotalLength(range, resumeOffset, rangeEnd, responseLength);
+                    received = resumeOffset;
+                    session = task.resumeSession(resumeOffset, contextLength);
+                } else {
+                    contextLength = responseLength;
+                    task.setResumeValidator(ContentRange.selectValidator(headerValue(response, "ETag"), headerValue(response, "Last-Modified")));
+                    session = responseLength > 0
+                            ? task.createSession(responseLength)
+                            : task.createSession();
+                }
+            }
+
+            @Override
+            public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+                synchronized (this) {
+                    if (isPaused()) {
+                        pendingCapacity = capacityChannel;
+                        return;
+                    }
+                }
+                capacityChannel.update(CAPACITY_INCREMENT);
+            }
+
+            @Override
+            public void consume(ByteBuffer data) throws IOException {
+                if (!data.hasRemaining()) {
+                    return;
+                }
+                received += data.remaining();
+                session.receiveData(data);
+                downloadCallback.updateProgress(received, contextLength);
+                throttle(session);
+            }
+
+            @Override
+            public void streamEnd(List<? extends Header> trailers) {
+                finish();
+                // the session is completed by the callback
+                resultCallback.completed(null);
+            }
+
+            @Override
+            public void failed(Exception cause) {
+                finish();
+            }
+
+            @Override
+            public void releaseResources() {
+                finish();
+                // the session is closed by the callback
+            }
+
+            @Override
+            protected void suspend() {
+                // the window is withheld by updateCapacity()
+            }
+
+            @Override
+            protected void resume() {
+                CapacityChannel capacityChannel;
+                synchronized (this) {
+                    capacityChannel = pendingCapacity;
+                    pendingCapacity = null;
+                }
+                if (capacityChannel != null) {
+                    try {
+                        capacityChannel.update(CAPACITY_INCREMENT);
+                    } catch (IOException e) {
+                        // the stream has been closed
+                        LOGGER.log(Level.FINE, "couldn't resume the input", e);
+                    }
+                }
+            }
+
+            @Override
+            synchronized boolean finish() {
+                pendingCapacity = null;
+                return super.finish();
+            }
+
+            private String headerValue(HttpResponse response, String name) {
+                Header header = response.getFirstHeader(name);
+                return header == null ? null : header.getValue();
+            }
+
+            private long parseContentLength(Header header) {
+                if (header != null) {
+                    try {
+                        long length = Long.parseLong(header.getValue().trim());
+                        if (length >= 0)
+                            return length;
+                    } catch (NumberFormatException e) {
+                        // ignore the illegal header
+                    }
+                }
+                return -1;
+            }
+
+        }
+
+        private class DownloadCallbackAdapter implements FutureCallback<T> {
+
+            private final Callback<T> adapted;
+
+            public DownloadCallbackAdapter(Callback<T> adapted) {
+                this.adapted = adapted;
+            }
+
+            @Override
+            public void completed(T ignored) {
+                runInPool(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        T result;
+                        try {
+                            if (session == null) {
+                                throw new IllegalStateException("Download session is not active");
+                            }
+                            result = session.completed();
+                        } catch (Throwable e) {
+                            adapted.failed(e);
+                            return;
+                        }
+                        adapted.done(result);
+                    }
+                });
+            }
+
+            @Override
+            public void failed(final Exception ex) {
+                runInPool(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            failSession();
+                        } catch (Throwable e) {
+                            if (e != ex)
+                                ex.addSuppressed(e);
+                        }
+                        adapted.failed(ex);
+                    }
+                });
+            }
+
+            @Override
+            public void cancelled() {
+                runInPool(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            failSession();
+                        } catch (Throwable e) {
+                            adapted.failed(e);
+                            return;
+                        }
+                        adapted.cancelled();
+                    }
+                });
+            }
+
+            private void failSession() throws Exception {
+                if (session != null) {
+                    session.failed();
+                } else if (partOutOfDate) {
+                    task.discardResumedData();
+                }
+            }
+
+        }
+
+    }
+
+    private class AsyncDownloadTask<T> extends CallbackAsyncFutureTask<T> {
+
+        private final DownloadTask<T> task;
+        private final DownloadCallback<T> callback;
+        private final int maxTries;
+        private volatile int currentTries;
+
+        public AsyncDownloadTask(DownloadTask<T> task, DownloadCallback<T> callback, int maxTries) {
+            Objects.requireNonNull(task);
+            Objects.requireNonNull(callback);
+            if (maxTries < 1)
+                throw new IllegalArgumentException(String.valueOf(maxTries));
+
+            this.task = task;
+            this.callback = callback;
+            this.maxTries = maxTries;
+        }
+
+        @Override
+        protected void execute() throws Exception {
+            download();
+        }
+
+        private void download() {
+            if (Thread.interrupted() || isExceptional()) {
+                lifecycle().cancelled();
+                return;
+            }
+
+            FutureManager<T> manager = createFutureManager();
+            DownloadRetryHandler retryHandler = new DownloadRetryHandler();
+            long resumeOffset = task.getResumeOffset();
+            long rangeEnd = task.getRangeEnd();
+            AsyncRequestBuilder request = AsyncRequestBuilder.get(task.getURI());
+            if (resumeOffset > 0 || rangeEnd != -1) {
+                request.setHeader("Range", ContentRange.toRangeHeader(resumeOffset, rangeEnd));
+                String validator = resumeOffset > 0 ? task.getResumeValidator() : null;
+                if (validator != null) {
+                    // the whole resource is sent instead if it has changed
+                    request.setHeader("If-Range", validator);
+                }
+            }
+            DownloadSessionHandler<T> handler = new DownloadSessionHandler<>(task, DownloadCallbacks.group(DownloadCallbacks.fromCallback(manager), retryHandler), bootstrapPool, resumeOffset, rangeEnd);
+            Future<T> downloadFuture = selectClient(task).execute(request.build(), handler.consumer, handler.callback);
+            manager.setFuture(downloadFuture);
+        }
+
+        private class DownloadRetryHandler implements DownloadCallback<T> {
+
+            @Override
+            public void done(T result) {
+                lifecycle().done(result);
+            }
+
+            @Override
+            public void failed(Throwable e) {
+                currentTries++;
+                if (e instanceof IOException && currentTries < maxTries) {
+                    callback.retry(e, currentTries, maxTries);
+                    download();
+                } else {
+                    lifecycle().failed(e);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                lifecycle().cancelled();
+            }
+
+            @Override
+            public void updateProgress(long done, long total) {
+                callback.updateProgress(done, total);
+            }
+
+            @Override
+            public void retry(Throwable e, int current, int max) {
+                throw new AssertionError("This method shouldn't be invoked.");
+            }
+
+        }
+
+    }
+
+    private class TaskInactiver<T> implements Callback<T> {
+
+        private final Future<?> task;
+        private final Callback<T> callback;
+
+        public TaskInactiver(Future<?> task, Callback<T> callback) {
+            this.task = task;
+            this.callback = callback;
+        }
+
+        @Override
+        public void done(T result) {
+            inactive(task);
+            if (callback != null)
+                callback.done(result);
+        }
+
+        @Override
+        public void failed(Throwable e) {
+            inactive(task);
+            if (callback != null)
+                callback.failed(e);
+        }
+
+        @Override
+        public void cancelled() {
+            inactive(task);
+            if (callback != null)
+                callback.cancelled();
+        }
+
+    }
+
+}
@@ -4,7 +4,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
@@ -15,8 +17,8 @@ import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
 import org.apache.http.protocol.HttpContext;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callback;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAsyncFutureTask;
-import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callbacks;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.EmptyCallback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.PrioritizedRunnable;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -27,22 +29,29 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpAsyncDownloader implements DownloaderService {
 
     private static final Log LOGGER = LogFactory.getLog(HttpAsyncDownloader.class);
 
+    private static final int HTTP_PARTIAL = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /*
+     * The state word:
+     * the lowest 2 bits - the status
+     * the rest - the number of the running tasks
+     */
     private static final int RUNNING = 0;
     private static final int SHUTDOWNING = 1;
     private static final int SHUTDOWNED = 2;
-    private final ReadWriteLock rwlock = new ReentrantReadWriteLock();
+    private static final int STATUS_MASK = 3;
+    private static final int TASK = 4;
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
     private final Set<Future<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
     private CloseableHttpAsyncClient httpClient;
     private Executor bootstrapPool;
-    private volatile int status = RUNNING;
 
     public HttpAsyncDownloader(HttpAsyncClientBuilder builder, Executor bootstrapPool) {
         Objects.requireNonNull(builder);
@@ -57,15 +66,18 @@ public class HttpAsyncDownloader implements DownloaderService {
     public <T> Future<T> download(DownloadTask<T> downloadTask, DownloadCallback<T> callback, int tries) {
         /*
          * # Submit task
-         * ++++ read lock
-         * 	1. Has the shutdown flag been set? ................................................... read status
-         * 		Yes - Reject execution.
-         * 		No - Go on.
+         * 	1. Is the downloader running? ........................................................ CAS state
+         * 		Yes - Count up the running tasks.
+         * 		No - Reject execution.
+         *
+         * 	2. Store the task handler in tasks. .................................................. write tasks
          *
-         * 	2. Create a task handler, store it in tasks. ......................................... write tasks
+         * 	3. Has the downloader been shutdown during step 2? ................................... read state
+         * 		Yes - Cancel the task handler, since the shutdown may have missed it.
+         * 		No - Start the task handler.
          *
-         * 	3. Start the task handler. ........................................................... read status
-         * ---- read unlock
+         * The running task count stays positive until the task handler terminates, so the cleanup cannot happen
+         * during the submission.
          */
 
         Objects.requireNonNull(downloadTask);
@@ -73,22 +85,28 @@ public class HttpAsyncDownloader implements DownloaderService {
             throw new IllegalArgumentException("tries < 1");
 
         CallbackAsyncFutureTask<T> task = new AsyncDownloadTask<T>(downloadTask, callback == null ? new EmptyCallback<T>() : callback, tries);
-        Callback<T> statusCallback = Callbacks.whatever(new TaskInactiver(task));
-        if (callback != null)
-            statusCallback = Callbacks.group(statusCallback, callback);
-        task.setCallback(statusCallback);
+        task.setCallback(new TaskInactiver<>(task, callback));
 
-        Lock lock = rwlock.readLock();
-        lock.lock();
-        try {
-            if (isShutdown())
+        for (; ; ) {
+            int s = state.get();
+            if ((s & STATUS_MASK) != RUNNING)
                 throw new RejectedExecutionException("The downloader has been shutdown.");
+            if (state.compareAndSet(s, s + TASK))
+                break;
+        }
+        Executor pool = bootstrapPool;
 
-            bootstrapPool.execute(task);
+        tasks.add(task);
+        if (isShutdown()) {
+            task.cancel(true);
+            return task;
+        }
 
-            tasks.add(task);
-        } finally {
-            lock.unlock();
+        try {
+            pool.execute(new PrioritizedRunnable(task, downloadTask.getPriority()));
+        } catch (Throwable e) {
+            inactive(task);
+            throw e;
         }
 
         return task;
@@ -98,43 +116,25 @@ public class HttpAsyncDownloader implements DownloaderService {
     public void shutdown() {
         /*
          * # Shutdown
-         * ++++ write lock
-         * 	1. Is the downloader running? ........................................................ read status
-         * 		Yes - Go on.
+         * 	1. Is the downloader running? ........................................................ CAS state
+         * 		Yes - Set the status to SHUTDOWNING, or SHUTDOWNED if no task is running.
          * 		No - Do nothing.
          *
-         * 	2. Set the status to SHUTDOWNING. .................................................... write status
-         *
-         * 	3. Is any task running? .............................................................. read tasks
-         * 		Yes -
-         * 				---- write unlock
-         * 				1. Cancel all the tasks and then do nothing.
-         * 					Let the last terminated thread cleanup.
-         * 		No -
-         * 				1. Set the status to SHUTDOWNING. ........................................ write status
-         * 				---- write unlock
-         * 				2. Cleanup. .............................................................. write status
-         *
+         * 	2. Is any task running?
+         * 		Yes - Cancel all the tasks. Let the last terminated task cleanup.
+         * 		No - Cleanup.
          */
-        boolean isTasksEmpty;
-
-        Lock lock = rwlock.writeLock();
-        lock.lock();
-        try {
-            if (isShutdown()) {
+        int s;
+        int tasksCount;
+        do {
+            s = state.get();
+            if ((s & STATUS_MASK) != RUNNING) {
                 return;
             }
+            tasksCount = s & ~STATUS_MASK;
+        } while (!state.compareAndSet(s, tasksCount == 0 ? SHUTDOWNED : tasksCount | SHUTDOWNING));
 
-            status = SHUTDOWNING;
-            isTasksEmpty = tasks.isEmpty();
-            if (isTasksEmpty) {
-                status = SHUTDOWNED;
-            }
-        } finally {
-            lock.unlock();
-        }
-
-        if (isTasksEmpty) {
+        if (tasksCount == 0) {
             completeShutdown();
         } else {
             for (Future<?> task : tasks)
@@ -149,7 +149,26 @@ public class HttpAsyncDownloader implements DownloaderService {
 
     @Override
     public boolean isShutdown() {
-        return status != RUNNING;
+        return (state.get() & STATUS_MASK) != RUNNING;
+    }
+
+    private void inactive(Future<?> task) {
+        /*
+         * ## When the task terminates
+         * 	1. Remove itself from tasks. ......................................................... write tasks
+         * 		Only the first removal counts, so a task is never counted down twice.
+         *
+         * 	2. Count down the running tasks. ..................................................... write state
+         *
+         * 	3. Is the status SHUTDOWNING, and no task is running? ................................ CAS state
+         * 		Yes - Set the status to SHUTDOWNED, and cleanup.
+         * 		No - Do nothing.
+         */
+        if (tasks.remove(task)) {
+            if (state.addAndGet(-TASK) == SHUTDOWNING && state.compareAndSet(SHUTDOWNING, SHUTDOWNED)) {
+                completeShutdown();
+            }
+        }
     }
 
     private void completeShutdown() {
@@ -162,30 +181,50 @@ public class HttpAsyncDownloader implements DownloaderService {
         httpClient = null;
     }
 
+    /*
+     * The sessions may block when they are completed or failed (such as waiting for the disk writes),
+     * so these are done in the pool rather than the I/O dispatchers.
+     */
     private static class DownloadSessionHandler<T> {
 
         public final HttpAsyncResponseConsumer<T> consumer;
         public final FutureCallback<T> callback;
         private final DownloadTask<T> task;
         private final DownloadCallback<T> downloadCallback;
+        private final Executor pool;
+        private final long resumeOffset;
+        private final long rangeEnd;
 
         private volatile DownloadSession<T> session;
-        private volatile Throwable resultBuildingEx;
+        private volatile boolean partOutOfDate = false;
 
-        public DownloadSessionHandler(DownloadTask<T> task, DownloadCallback<T> downloadCallback) {
+        public DownloadSessionHandler(DownloadTask<T> task, DownloadCallback<T> downloadCallback, Executor pool, long resumeOffset, long rangeEnd) {
             Objects.requireNonNull(task);
             Objects.requireNonNull(downloadCallback);
+            Objects.requireNonNull(pool);
             this.task = task;
             this.downloadCallback = downloadCallback;
+            this.pool = pool;
+            this.resumeOffset = resumeOffset;
+            this.rangeEnd = rangeEnd;
 
             consumer = new DataConsumer();
             callback = new DownloadCallbackAdapter(downloadCallback);
         }
 
+        private void runInPool(Runnable runnable) {
+            try {
+                pool.execute(new PrioritizedRunnable(runnable, task.getPriority()));
+            } catch (RejectedExecutionException e) {
+                runnable.run();
+            }
+        }
+
         private class DataConsumer extends AsyncByteConsumer<T> {
 
             private volatile long contextLength = -1;
             private volatile long received = 0;
+            private volatile InputThrottle throttle;
 
             @Override
             protected void onByteReceived(ByteBuffer buf, IOControl ioctrl) throws IOException {
@@ -195,47 +234,101 @@ public class HttpAsyncDownloader implements DownloaderService {
                 received += buf.remaining();
                 session.receiveData(buf);
                 downloadCallback.updateProgress(received, contextLength);
+
+                if (throttle == null)
+                    throttle = new IOControlThrottle(ioctrl);
+                throttle.throttle(session);
             }
 
             @Override
             protected void onResponseReceived(HttpResponse response) throws HttpException, IOException {
+                boolean partial = false;
                 if (response.getStatusLine() != null) {
                     int statusCode = response.getStatusLine().getStatusCode();
+                    if (resumeOffset > 0 && rangeEnd == -1 && statusCode == HTTP_RANGE_NOT_SATISFIABLE) {
+                        // the part downloaded before is out of date, it's discarded by the callback
+                        partOutOfDate = true;
+                        throw new IOException("Couldn't resume from " + resumeOffset + ", range not satisfiable");
+                    }
                     if (statusCode < 200 || statusCode > 299)
                         // non-2xx response code
-                        throw new IOException("Illegal http response code: " + statusCode);
+                        throw new HttpResponseCodeException(statusCode);
 
+                    partial = (resumeOffset > 0 || rangeEnd != -1) && statusCode == HTTP_PARTIAL;
                 }
 
                 if (session == null) {
+                    long responseLength = -1;
                     HttpEntity httpEntity = response.getEntity();
                     if (httpEntity != null) {
                         long contextLength = httpEntity.getContentLength();
                         if (contextLength >= 0)
-                            this.contextLength = contextLength;
+                            responseLength = contextLength;
 
                     }
 
-                    session = contextLength > 0
-                            ? task.createSession(contextLength)
-                            : task.createSession();
+                    if (partial) {
+                        Header contentRangeHeader = response.getFirstHeader("Content-Range");
+                        String contentRange = contentRangeHeader == null ? null : contentRangeHeader.getValue();
+                        ContentRange range = ContentRange.parse(contentRange);
+                        if (range == null || range.getStart() != resumeOffset)
+                            throw new IOException("Illegal Content-Range: " + contentRange + ", expected offset: " + resumeOffset);
+
+                        contextLength = ContentRange.resolveTotalLength(range, resumeOffset, rangeEnd, responseLength);
+                        received = resumeOffset;
+                        session = task.resumeSession(resumeOffset, contextLength);
+                    } else {
+                        contextLength = responseLength;
+                        task.setResumeValidator(ContentRange.selectValidator(headerValue(response, "ETag"), headerValue(response, "Last-Modified")));
+                        session = responseLength > 0
+                                ? task.createSession(responseLength)
+                                : task.createSession();
+                    }
                 }
             }
 
+            private String headerValue(HttpResponse response, String name) {
+                Header header = response.getFirstHeader(name);
+                return header == null ? null : header.getValue();
+            }
+
             @Override
-            protected T buildResult(HttpContext context) throws Exception {
-                T result = null;
-                try {
-                    if (session == null) {
-                        throw new IllegalStateException("Download session is not active");
-                    }
+            protected T buildResult(HttpContext context) {
+                // the connection is to be reused, don't leave its input paused
+                InputThrottle t = throttle;
+                if (t != null && t.finish())
+                    t.resume();
+
+                // the session is completed by the callback
+                return null;
+            }
 
-                    result = session.completed();
-                    resultBuildingEx = null;
-                } catch (Throwable e) {
-                    resultBuildingEx = e;
-                }
-                return result;
+            @Override
+            protected void releaseResources() {
+                InputThrottle t = throttle;
+                if (t != null)
+                    t.finish();
+                super.releaseResources();
+            }
+
+        }
+
+        private class IOControlThrottle extends InputThrottle {
+
+            private final IOControl ioctrl;
+
+            public IOControlThrottle(IOControl ioctrl) {
+                this.ioctrl = ioctrl;
+            }
+
+            @Override
+            protected void suspend() {
+                ioctrl.suspendInput();
+            }
+
+            @Override
+            protected void resume() {
+                ioctrl.requestInput();
             }
 
         }
@@ -249,38 +342,66 @@ public class HttpAsyncDownloader implements DownloaderService {
             }
 
             @Override
-            public void completed(T result) {
-                if (resultBuildingEx == null) {
-                    adapted.done(result);
-                } else {
-                    adapted.failed(resultBuildingEx);
-                }
+            public void completed(T ignored) {
+                runInPool(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        T result;
+                        try {
+                            if (session == null) {
+                                throw new IllegalStateException("Download session is not active");
+                            }
+                            result = session.completed();
+                        } catch (Throwable e) {
+                            adapted.failed(e);
+                            return;
+                        }
+                        adapted.done(result);
+                    }
+                });
             }
 
             @Override
-            public void failed(Exception ex) {
-                if (session != null) {
-                    try {
-                        session.failed();
-                    } catch (Throwable e) {
-                        if (e != ex)
-                            ex.addSuppressed(e);
+            public void failed(final Exception ex) {
+                runInPool(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            failSession();
+                        } catch (Throwable e) {
+                            if (e != ex)
+                                ex.addSuppressed(e);
+                        }
+                        adapted.failed(ex);
                     }
-                }
-                adapted.failed(ex);
+                });
             }
 
             @Override
             public void cancelled() {
-                if (session != null) {
-                    try {
-                        session.failed();
-                    } catch (Throwable e) {
-                        adapted.failed(e);
-                        return;
+                runInPool(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            failSession();
+                        } catch (Throwable e) {
+                            adapted.failed(e);
+                            return;
+                        }
+                        adapted.cancelled();
                     }
+                });
+            }
+
+            private void failSession() throws Exception {
+                if (session != null) {
+                    session.failed();
+                } else if (partOutOfDate) {
+                    task.discardResumedData();
                 }
-                adapted.cancelled();
             }
 
         }
@@ -318,8 +439,19 @@ public class HttpAsyncDownloader implements DownloaderService {
 
             FutureManager<T> manager = createFutureManager();
             DownloadRetryHandler retryHandler = new DownloadRetryHandler();
-            DownloadSessionHandler<T> handler = new DownloadSessionHandler<>(task, DownloadCallbacks.group(DownloadCallbacks.fromCallback(manager), retryHandler));
-            Future<T> downloadFuture = httpClient.execute(HttpAsyncMethods.createGet(task.getURI()), handler.consumer, handler.callback);
+            long resumeOffset = task.getResumeOffset();
+            long rangeEnd = task.getRangeEnd();
+            HttpGet request = new HttpGet(task.getURI());
+            if (resumeOffset > 0 || rangeEnd != -1) {
+                request.setHeader("Range", ContentRange.toRangeHeader(resumeOffset, rangeEnd));
+                String validator = resumeOffset > 0 ? task.getResumeValidator() : null;
+                if (validator != null) {
+                    // the whole resource is sent instead if it has changed
+                    request.setHeader("If-Range", validator);
+                }
+            }
+            DownloadSessionHandler<T> handler = new DownloadSessionHandler<>(task, DownloadCallbacks.group(DownloadCallbacks.fromCallback(manager), retryHandler), bootstrapPool, resumeOffset, rangeEnd);
+            Future<T> downloadFuture = httpClient.execute(HttpAsyncMethods.create(request), handler.consumer, handler.callback);
             manager.setFuture(downloadFuture);
         }
 
@@ -360,63 +492,35 @@ public class HttpAsyncDownloader implements DownloaderService {
 
     }
 
-    private class TaskInactiver implements Runnable {
+    private class TaskInactiver<T> implements Callback<T> {
 
         private final Future<?> task;
+        private final Callback<T> callback;
 
-        public TaskInactiver(Future<?> task) {
+        public TaskInactiver(Future<?> task, Callback<T> callback) {
             this.task = task;
+            this.callback = callback;
         }
 
         @Override
-        public void run() {
-            /*
-             * ## When the task terminates
-             * ++++ read lock
-             * 	1. Remove itself from tasks. ..................................................... write tasks
-             * ---- read unlock
-             * 	2. Is status SHUTDOWNING? ........................................................ read status
-             * 		Yes -
-             * 			++++ write lock
-             * 			1. Is status SHUTDOWNING? ................................................ read status
-             * 				Yes - Go on.
-             * 				No - Do nothing.
-             *
-             * 			2. Is tasks empty? ....................................................... read tasks
-             * 				Yes - Go on.
-             * 				No - Do nothing.
-             *
-             * 			3. Set status to SHUTDOWNED. ............................................. write status
-             * 			---- write unlock
-             *
-             * 			4. Cleanup. .............................................................. write status
-             * 		No - Do nothing.
-             */
-
-            Lock rlock = rwlock.readLock();
-            rlock.lock();
-            try {
-                tasks.remove(task);
-            } finally {
-                rlock.unlock();
-            }
+        public void done(T result) {
+            inactive(task);
+            if (callback != null)
+                callback.done(result);
+        }
 
-            if (status == SHUTDOWNING) {
-                boolean doCleanup = false;
-                Lock wlock = rwlock.writeLock();
-                wlock.lock();
-                try {
-                    if (status == SHUTDOWNING && tasks.isEmpty()) {
-                        status = SHUTDOWNED;
-                        doCleanup = true;
-                    }
-                } finally {
-                    wlock.unlock();
-                }
-                if (doCleanup) {
-                    completeShutdown();
-                }
-            }
+        @Override
+        public void failed(Throwable e) {
+            inactive(task);
+            if (callback != null)
+                callback.failed(e);
+        }
+
+        @Override
+        public void cancelled() {
+            inactive(task);
+            if (callback != null)
+                callback.cancelled();
         }
 
     }
@@ -0,0 +1,28 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server responds with an unexpected http response code.
+ */
+public class HttpResponseCodeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int responseCode;
+
+    public HttpResponseCodeException(int responseCode) {
+        super("Illegal http response code: " + responseCode);
+        this.responseCode = responseCode;
+    }
+
+    /**
+     * Gets the http response code.
+     *
+     * @return the http response code
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+/**
+ * Pauses the input of a response while its session is busy.
+ * <p>
+ * The session may resume the input before the throttle pauses it, so the
+ * throttle tracks the state and only resumes an input which has been paused.
+ *
+ * @see FlowControlledDownloadSession
+ */
+abstract class InputThrottle implements Runnable {
+
+    private static final int RUNNING = 0;
+    private static final int PAUSING = 1;
+    private static final int PAUSED = 2;
+    private static final int RESUMED = 3;
+    private static final int FINISHED = 4;
+
+    // guarded by this
+    private int state = RUNNING;
+
+    /**
+     * Pauses the input if the session is busy. Called by the I/O thread after
+     * the session received data.
+     *
+     * @param session the session which received the data
+     */
+    void throttle(DownloadSession<?> session) {
+        if (!(session instanceof FlowControlledDownloadSession)) {
+            return;
+        }
+        synchronized (this) {
+            if (state == FINISHED) {
+                return;
+            }
+            state = PAUSING;
+        }
+        if (!((FlowControlledDownloadSession<?>) session).pauseIfBusy(this)) {
+            synchronized (this) {
+                if (state != FINISHED) {
+                    state = RUNNING;
+                }
+            }
+            return;
+        }
+
+        suspend();
+        boolean resumed;
+        synchronized (this) {
+            resumed = state == RESUMED;
+            if (state != FINISHED) {
+                state = resumed ? RUNNING : PAUSED;
+            }
+        }
+        if (resumed) {
+            resume();
+        }
+    }
+
+    /**
+     * Checks if the input is being paused.
+     *
+     * @return true if the input is being paused
+     */
+    synchronized boolean isPaused() {
+        return state == PAUSING || state == PAUSED;
+    }
+
+    /**
+     * Stops throttling when the response terminates. The session won't resume
+     * the input after this.
+     *
+     * @return true if the input was paused
+     */
+    synchronized boolean finish() {
+        boolean paused = state == PAUSED;
+        state = FINISHED;
+        return paused;
+    }
+
+    /**
+     * Called by the session when it can receive more data.
+     */
+    @Override
+    public void run() {
+        boolean paused;
+        synchronized (this) {
+            paused = state == PAUSED;
+            if (paused) {
+                state = RUNNING;
+            } else if (state == PAUSING) {
+                state = RESUMED;
+            }
+        }
+        if (paused) {
+            resume();
+        }
+    }
+
+    /**
+     * Stops reading the response.
+     */
+    protected abstract void suspend();
+
+    /**
+     * Continues reading the response.
+     */
+    protected abstract void resume();
+
+}
@@ -4,6 +4,8 @@ import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callback;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackFutureTask;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callbacks;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.EmptyCallback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.PrioritizedRunnable;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.PriorityExecutorQueue;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -23,6 +25,7 @@ import java.util.logging.Logger;
 public class JdkHttpDownloader implements DownloaderService {
 
     private static final int BUFFER_SIZE = 8192;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
     private static final Logger LOGGER = Logger.getLogger(JdkHttpDownloader.class.getCanonicalName());
     private final ReadWriteLock rwlock = new ReentrantReadWriteLock();
@@ -40,7 +43,7 @@ public class JdkHttpDownloader implements DownloaderService {
         this.connectTimeout = connectTimeout;
         this.readTimeout = readTimeout;
         this.proxy = proxy;
-        executor = new ThreadPoolExecutor(maxConns, maxConns, poolThreadLivingTime, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        executor = new ThreadPoolExecutor(maxConns, maxConns, poolThreadLivingTime, TimeUnit.MILLISECONDS, new PriorityExecutorQueue());
     }
 
     @Override
@@ -85,7 +88,7 @@ public class JdkHttpDownloader implements DownloaderService {
                 throw new RejectedExecutionException("The downloader has been shutdown.");
 
             tasks.add(task);
-            executor.execute(task);
+            executor.execute(new PrioritizedRunnable(task, downloadTask.getPriority()));
         } finally {
             lock.unlock();
         }
@@ -170,6 +173,9 @@ public class JdkHttpDownloader implements DownloaderService {
         }
 
         private T download() throws IOException, InterruptedException, Exception {
+            long resumeOffset = task.getResumeOffset();
+            long rangeEnd = task.getRangeEnd();
+            boolean ranged = resumeOffset > 0 || rangeEnd != -1;
             URLConnection connection = task.getURI().toURL().openConnection(proxy);
             connection.setReadTimeout(readTimeout);
             connection.setConnectTimeout(connectTimeout);
@@ -177,16 +183,31 @@ public class JdkHttpDownloader implements DownloaderService {
             connection.setRequestProperty("Connection", "keep-alive");
             if (connection instanceof HttpURLConnection) {
                 ((HttpURLConnection) connection).setRequestMethod("GET");
+                if (ranged) {
+                    connection.setRequestProperty("Range", ContentRange.toRangeHeader(resumeOffset, rangeEnd));
+                    String validator = resumeOffset > 0 ? task.getResumeValidator() : null;
+                    if (validator != null) {
+                        // the whole resource is sent instead if it has changed
+                        connection.setRequestProperty("If-Range", validator);
+                    }
+                }
             }
             connection.connect();
 
             try {
+                boolean partial = false;
                 if (connection instanceof HttpURLConnection) {
                     int responseCode = ((HttpURLConnection) connection).getResponseCode();
+                    if (resumeOffset > 0 && rangeEnd == -1 && responseCode == HTTP_RANGE_NOT_SATISFIABLE) {
+                        // the part downloaded before is out of date
+                        task.discardResumedData();
+                        throw new IOException("Couldn't resume from " + resumeOffset + ", range not satisfiable");
+                    }
                     if (responseCode < 200 || responseCode > 299) {
                         // non-2xx response code
-                        throw new IOException("Illegal http response code: " + responseCode);
+                        throw new HttpResponseCodeException(responseCode);
                     }
+                    partial = ranged && responseCode == HttpURLConnection.HTTP_PARTIAL;
                 }
 
                 String contentLengthStr = connection.getHeaderField("Content-Length");
@@ -205,11 +226,25 @@ public class JdkHttpDownloader implements DownloaderService {
 
                 checkInterrupted();
 
-                DownloadSession<T> session = (contentLength == -1)
-                        ? task.createSession()
-                        : task.createSession(contentLength);
-
-                long downloaded = 0;
+                DownloadSession<T> session;
+                long downloaded;
+                long totalLength;
+                if (partial) {
+                    ContentRange range = ContentRange.parse(connection.getHeaderField("Content-Range"));
+                    if (range == null || range.getStart() != resumeOffset) {
+                        throw new IOException("Illegal Content-Range: " + connection.getHeaderField("Content-Range") + ", expected offset: " + resumeOffset);
+                    }
+                    totalLength = ContentRange.resolveTotalLength(range, resumeOffset, rangeEnd, contentLength);
+                    downloaded = resumeOffset;
+                    session = task.resumeSession(resumeOffset, totalLength);
+                } else {
+                    totalLength = contentLength;
+                    downloaded = 0;
+                    task.setResumeValidator(ContentRange.selectValidator(connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified")));
+                    session = (contentLength == -1)
+                            ? task.createSession()
+                            : task.createSession(contentLength);
+                }
 
                 try (InputStream in = connection.getInputStream()) {
                     byte[] buf = new byte[BUFFER_SIZE];
@@ -218,7 +253,7 @@ public class JdkHttpDownloader implements DownloaderService {
                         checkInterrupted();
                         downloaded += read;
                         session.receiveData(ByteBuffer.wrap(buf, 0, read));
-                        callback.updateProgress(downloaded, contentLength);
+                        callback.updateProgress(downloaded, totalLength);
                     }
                 } catch (Throwable e) {
                     session.failed();
@@ -1,14 +1,15 @@
 package org.to2mbn.jmccc.mcdownloader.download;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 /**
  * A memories download task.
+ * <p>
+ * The whole data is kept on the heap. For large resources, consider
+ * {@link SpillableDownloadTask}.
  *
  * @author yushijinhun
  */
@@ -40,30 +41,35 @@ public class MemoryDownloadTask extends DownloadTask<byte[]> {
     public DownloadSession<byte[]> createSession(final long length) throws IOException {
         return new DownloadSession<byte[]>() {
 
-            ByteArrayOutputStream out = new ByteArrayOutputStream(length == -1 ? 8192 : (int) length);
-            WritableByteChannel channel = Channels.newChannel(out);
+            byte[] buffer = new byte[length < 0 || length > Integer.MAX_VALUE ? 8192 : (int) length];
+            int count = 0;
 
             @Override
             public void receiveData(ByteBuffer data) throws IOException {
-                channel.write(data);
+                int remaining = data.remaining();
+                if (remaining > buffer.length - count) {
+                    long newLength = Math.max((long) buffer.length * 2, (long) count + remaining);
+                    if (newLength > Integer.MAX_VALUE) {
+                        throw new IOException("Data too large: " + newLength);
+                    }
+                    buffer = Arrays.copyOf(buffer, (int) newLength);
+                }
+                data.get(buffer, count, remaining);
+                count += remaining;
             }
 
             @Override
             public void failed() throws IOException {
-                close();
+                buffer = null;
             }
 
             @Override
             public byte[] completed() throws IOException {
-                byte[] data = out.toByteArray();
-                close();
+                // hand over the array directly if the length was known
+                byte[] data = buffer.length == count ? buffer : Arrays.copyOf(buffer, count);
+                buffer = null;
                 return data;
             }
-
-            private void close() {
-                channel = null;
-                out = null;
-            }
         };
     }
 
@@ -0,0 +1,95 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+class PrioritizedDownloadTask<T> extends DownloadTask<T> {
+
+    private DownloadTask<T> proxied;
+    private Priority priority;
+
+    public PrioritizedDownloadTask(DownloadTask<T> proxied, Priority priority) {
+        super(proxied.getURI());
+        this.proxied = proxied;
+        this.priority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    public Object getCoalescingKey() {
+        return proxied.getCoalescingKey();
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return proxied.isCacheable();
+    }
+
+    @Override
+    public DownloadSession<T> createSession() throws IOException {
+        return proxied.createSession();
+    }
+
+    @Override
+    public DownloadSession<T> createSession(long length) throws IOException {
+        return proxied.createSession(length);
+    }
+
+    @Override
+    public File getWriteTarget() {
+        return proxied.getWriteTarget();
+    }
+
+    @Override
+    public long getResumeOffset() {
+        return proxied.getResumeOffset();
+    }
+
+    @Override
+    public String getResumeValidator() {
+        return proxied.getResumeValidator();
+    }
+
+    @Override
+    public void setResumeValidator(String validator) throws IOException {
+        proxied.setResumeValidator(validator);
+    }
+
+    @Override
+    public void discardResumedData() throws IOException {
+        proxied.discardResumedData();
+    }
+
+    @Override
+    public DownloadSession<T> resumeSession(long offset, long length) throws IOException {
+        return proxied.resumeSession(offset, length);
+    }
+
+    @Override
+    public InputStream openResumedData(long offset) throws IOException {
+        return proxied.openResumedData(offset);
+    }
+
+    @Override
+    public long getRangeEnd() {
+        return proxied.getRangeEnd();
+    }
+
+    @Override
+    public boolean isSegmentable() {
+        return proxied.isSegmentable();
+    }
+
+    @Override
+    public SegmentedDownloadSession<T> createSegmentedSession(long length) throws IOException {
+        return proxied.createSegmentedSession(length);
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+class ScheduledWriteDownloadTask<T> extends DownloadTask<T> {
+
+    private DownloadTask<T> proxied;
+    private File target;
+    private DiskWriteScheduler scheduler;
+
+    public ScheduledWriteDownloadTask(DownloadTask<T> proxied, File target, DiskWriteScheduler scheduler) {
+        super(proxied.getURI());
+        this.proxied = proxied;
+        this.target = target;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public DownloadSession<T> createSession() throws IOException {
+        return scheduler.schedule(target, new Callable<DownloadSession<T>>() {
+
+            @Override
+            public DownloadSession<T> call() throws Exception {
+                return proxied.createSession();
+            }
+        });
+    }
+
+    @Override
+    public DownloadSession<T> createSession(final long length) throws IOException {
+        return scheduler.schedule(target, new Callable<DownloadSession<T>>() {
+
+            @Override
+            public DownloadSession<T> call() throws Exception {
+                return proxied.createSession(length);
+            }
+        });
+    }
+
+    @Override
+    public DownloadSession<T> resumeSession(final long offset, final long length) throws IOException {
+        return scheduler.schedule(target, new Callable<DownloadSession<T>>() {
+
+            @Override
+            public DownloadSession<T> call() throws Exception {
+                return proxied.resumeSession(offset, length);
+            }
+        });
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return proxied.isCacheable();
+    }
+
+    @Override
+    public Priority getPriority() {
+        return proxied.getPriority();
+    }
+
+    @Override
+    public Object getCoalescingKey() {
+        return proxied.getCoalescingKey();
+    }
+
+    @Override
+    public File getWriteTarget() {
+        return target;
+    }
+
+    @Override
+    public long getResumeOffset() {
+        return proxied.getResumeOffset();
+    }
+
+    @Override
+    public String getResumeValidator() {
+        return proxied.getResumeValidator();
+    }
+
+    @Override
+    public void setResumeValidator(String validator) throws IOException {
+        proxied.setResumeValidator(validator);
+    }
+
+    @Override
+    public void discardResumedData() throws IOException {
+        proxied.discardResumedData();
+    }
+
+    @Override
+    public InputStream openResumedData(long offset) throws IOException {
+        return proxied.openResumedData(offset);
+    }
+
+    @Override
+    public long getRangeEnd() {
+        return proxied.getRangeEnd();
+    }
+
+    @Override
+    public boolean isSegmentable() {
+        return proxied.isSegmentable();
+    }
+
+    @Override
+    public SegmentedDownloadSession<T> createSegmentedSession(long length) throws IOException {
+        return proxied.createSegmentedSession(length);
+    }
+
+}
@@ -0,0 +1,53 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Describes a download session whose data is received in several segments
+ * concurrently.
+ *
+ * @param <T> the type of result
+ * @see DownloadTask#createSegmentedSession(long)
+ */
+public interface SegmentedDownloadSession<T> {
+
+    /**
+     * Calls when a block of data is received.
+     * <p>
+     * This method can be called concurrently by different segments.
+     *
+     * @param position the position of the first byte of the data in the whole
+     *                 resource
+     * @param data     the data received
+     * @throws IOException if an I/O error occurs
+     */
+    void receiveData(long position, ByteBuffer data) throws IOException;
+
+    /**
+     * Reads back the data which have been received.
+     *
+     * @param position the position of the first byte to read
+     * @param dst      the buffer to read into
+     * @return the number of bytes read, -1 if <code>position</code> is beyond
+     * the end
+     * @throws IOException if an I/O error occurs
+     */
+    int readData(long position, ByteBuffer dst) throws IOException;
+
+    /**
+     * Calls when all the segments completed.
+     *
+     * @return the result of the download
+     * @throws Exception if an error occurs
+     */
+    T completed() throws Exception;
+
+    /**
+     * Calls when the download failed or has been cancelled.
+     *
+     * @throws Exception if an error occurs
+     */
+    void failed() throws Exception;
+
+}
@@ -0,0 +1,501 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.AsyncFuture;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Cancelable;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads large resources in several segments concurrently.
+ * <p>
+ * For a segmentable task, the first request only asks for the first
+ * <code>segmentThreshold</code> bytes. If the resource turns out to be larger,
+ * the rest is split into at most <code>maxSegments-1</code> byte ranges, which
+ * are downloaded concurrently while the first request is still running. Each
+ * segment is written to its offset of the target. Otherwise, the response of
+ * the first request is the whole resource, and it's downloaded as usual.
+ * <p>
+ * If the server doesn't support range requests, the resource is downloaded in
+ * a single stream.
+ *
+ * @see DownloadTask#isSegmentable()
+ */
+public class SegmentedDownloader implements DownloaderService {
+
+    private static final Logger LOGGER = Logger.getLogger(SegmentedDownloader.class.getCanonicalName());
+
+    private final DownloaderService upstream;
+    private final long segmentThreshold;
+    private final int maxSegments;
+
+    /**
+     * Constructs a SegmentedDownloader.
+     *
+     * @param upstream         the downloader to send requests
+     * @param segmentThreshold the min length of a resource to split, in bytes
+     * @param maxSegments      the max number of segments per resource
+     * @throws NullPointerException     if <code>upstream==null</code>
+     * @throws IllegalArgumentException if <code>segmentThreshold &lt; 1</code>
+     *                                  or <code>maxSegments &lt; 2</code>
+     */
+    public SegmentedDownloader(DownloaderService upstream, long segmentThreshold, int maxSegments) {
+        Objects.requireNonNull(upstream);
+        if (segmentThreshold < 1)
+            throw new IllegalArgumentException("segmentThreshold < 1");
+        if (maxSegments < 2)
+            throw new IllegalArgumentException("maxSegments < 2");
+
+        this.upstream = upstream;
+        this.segmentThreshold = segmentThreshold;
+        this.maxSegments = maxSegments;
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return downloadIfNecessary(task, callback, -1);
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        return downloadIfNecessary(task, callback, tries);
+    }
+
+    @Override
+    public void shutdown() {
+        upstream.shutdown();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return upstream.isShutdown();
+    }
+
+    private <T> Future<T> downloadIfNecessary(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        Objects.requireNonNull(task);
+        if (task.isSegmentable() && task.getResumeOffset() == 0) {
+            return new SegmentedDownload<>(task, callback, tries).start();
+        } else {
+            // the download can be resumed, which is cheaper than downloading again
+            return submitToUpstream(task, callback, tries);
+        }
+    }
+
+    private <T> Future<T> submitToUpstream(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        if (tries == -1) {
+            return upstream.download(task, callback);
+        } else {
+            return upstream.download(task, callback, tries);
+        }
+    }
+
+    private class SegmentedDownload<T> implements Cancelable {
+
+        private final DownloadTask<T> task;
+        private final DownloadCallback<T> callback;
+        private final int tries;
+        private final AsyncFuture<T> future;
+        private final Set<Future<?>> subfutures = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+        private final AtomicInteger remainingSegments = new AtomicInteger(1);
+
+        // guarded by this
+        private boolean closed = false;
+
+        private volatile SegmentedDownloadSession<T> session;
+        private volatile AtomicLong[] progress;
+        private volatile long total = -1;
+
+        // true if the server doesn't support range requests
+        private volatile boolean streaming = false;
+        private volatile T streamingResult;
+
+        public SegmentedDownload(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+            this.task = task;
+            this.callback = callback;
+            this.tries = tries;
+            future = new AsyncFuture<>(this);
+            if (callback != null) {
+                future.setCallback(callback);
+            }
+        }
+
+        public Future<T> start() {
+            submit(new ProbeTask(), new ProbeCallback());
+            return future;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            for (Future<?> subfuture : subfutures) {
+                subfuture.cancel(mayInterruptIfRunning);
+            }
+            closeSession();
+            return true;
+        }
+
+        private void submit(SegmentTask segment, SegmentCallback segmentCallback) {
+            Future<Void> subfuture = submitToUpstream(segment, segmentCallback, tries);
+            subfutures.add(subfuture);
+            if (future.isExceptional()) {
+                subfuture.cancel(true);
+            }
+        }
+
+        private List<SegmentTask> openSession(long length) throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("The download has been terminated");
+                }
+
+                long firstSegmentLength = Math.min(segmentThreshold, length);
+                long rest = length - firstSegmentLength;
+                int segmentsCount = (int) Math.min(maxSegments - 1, rest);
+                List<SegmentTask> segments = new ArrayList<>(segmentsCount);
+                for (int i = 1; i <= segmentsCount; i++) {
+                    long start = firstSegmentLength + rest * (i - 1) / segmentsCount;
+                    long end = firstSegmentLength + rest * i / segmentsCount - 1;
+                    segments.add(new SegmentTask(i, start, end));
+                }
+
+                AtomicLong[] progress = new AtomicLong[segmentsCount + 1];
+                for (int i = 0; i < progress.length; i++) {
+                    progress[i] = new AtomicLong();
+                }
+
+                session = task.createSegmentedSession(length);
+                this.progress = progress;
+                total = length;
+                return segments;
+            }
+        }
+
+        private void closeSession() {
+            SegmentedDownloadSession<T> s;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                s = session;
+            }
+            if (s != null) {
+                try {
+                    s.failed();
+                } catch (Throwable e) {
+                    LOGGER.log(Level.WARNING, "Couldn't close the download session of " + task.getURI(), e);
+                }
+            }
+        }
+
+        private void segmentCompleted() {
+            if (remainingSegments.decrementAndGet() == 0) {
+                SegmentedDownloadSession<T> s;
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    s = session;
+                }
+
+                T result;
+                try {
+                    result = s.completed();
+                } catch (IOException e) {
+                    // such as checksums mismatch, download it again in a single stream
+                    retryInSingleStream(e);
+                    return;
+                } catch (Throwable e) {
+                    future.failed(e);
+                    return;
+                }
+                future.done(result);
+            }
+        }
+
+        private void retryInSingleStream(final IOException cause) {
+            Future<T> subfuture = submitToUpstream(task, new DownloadCallback<T>() {
+
+                @Override
+                public void done(T result) {
+                    future.done(result);
+                }
+
+                @Override
+                public void failed(Throwable e) {
+                    e.addSuppressed(cause);
+                    future.failed(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    future.cancelled();
+                }
+
+                @Override
+                public void updateProgress(long done, long total) {
+                    if (callback != null) {
+                        callback.updateProgress(done, total);
+                    }
+                }
+
+                @Override
+                public void retry(Throwable e, int current, int max) {
+                    if (callback != null) {
+                        callback.retry(e, current, max);
+                    }
+                }
+            }, tries);
+            subfutures.add(subfuture);
+            if (future.isExceptional()) {
+                subfuture.cancel(true);
+            }
+        }
+
+        private void updateProgress() {
+            if (callback != null) {
+                long done = 0;
+                for (AtomicLong segmentProgress : progress) {
+                    done += segmentProgress.get();
+                }
+                callback.updateProgress(done, total);
+            }
+        }
+
+        private class SegmentTask extends DownloadTask<Void> {
+
+            final int index;
+            final long start;
+            final long end;
+
+            SegmentTask(int index, long start, long end) {
+                super(task.getURI());
+                this.index = index;
+                this.start = start;
+                this.end = end;
+            }
+
+            @Override
+            public Priority getPriority() {
+                return task.getPriority();
+            }
+
+            @Override
+            public long getResumeOffset() {
+                return start;
+            }
+
+            @Override
+            public long getRangeEnd() {
+                return end;
+            }
+
+            @Override
+            public DownloadSession<Void> createSession() throws IOException {
+                throw new IOException("The server doesn't support range requests");
+            }
+
+            @Override
+            public DownloadSession<Void> resumeSession(long offset, long length) throws IOException {
+                checkLength(length);
+                return new SegmentSession(index, start, end);
+            }
+
+            void checkLength(long length) throws IOException {
+                if (length != total) {
+                    throw new IOException("The length of the resource has changed, expected: " + total + ", actual: " + length);
+                }
+            }
+
+        }
+
+        private class ProbeTask extends SegmentTask {
+
+            ProbeTask() {
+                super(0, 0, segmentThreshold - 1);
+            }
+
+            @Override
+            public DownloadSession<Void> createSession() throws IOException {
+                return createStreamingSession(-1);
+            }
+
+            @Override
+            public DownloadSession<Void> createSession(long length) throws IOException {
+                return createStreamingSession(length);
+            }
+
+            @Override
+            public void setResumeValidator(String validator) throws IOException {
+                // the server sent the whole resource, which is streamed to the task
+                task.setResumeValidator(validator);
+            }
+
+            @Override
+            public DownloadSession<Void> resumeSession(long offset, long length) throws IOException {
+                if (length == -1) {
+                    throw new IOException("Unknown length of the resource");
+                }
+                if (session == null && length <= segmentThreshold) {
+                    // the response contains the whole resource, no segment is needed
+                    return createStreamingSession(length);
+                }
+                streaming = false;
+                if (session == null) {
+                    List<SegmentTask> segments = openSession(length);
+                    remainingSegments.addAndGet(segments.size());
+                    for (SegmentTask segment : segments) {
+                        submit(segment, new SegmentCallback());
+                    }
+                } else {
+                    checkLength(length);
+                }
+                return new SegmentSession(0, 0, Math.min(end, total - 1));
+            }
+
+            private DownloadSession<Void> createStreamingSession(long length) throws IOException {
+                if (session != null) {
+                    // the other segments have been started
+                    throw new IOException("The server doesn't support range requests");
+                }
+                streaming = true;
+
+                final DownloadSession<T> proxied = length == -1
+                        ? task.createSession()
+                        : task.createSession(length);
+
+                return new FlowControlledDownloadSession<Void>() {
+
+                    @Override
+                    public void receiveData(ByteBuffer data) throws IOException {
+                        proxied.receiveData(data);
+                    }
+
+                    @Override
+                    public boolean pauseIfBusy(Runnable resume) {
+                        return proxied instanceof FlowControlledDownloadSession && ((FlowControlledDownloadSession<T>) proxied).pauseIfBusy(resume);
+                    }
+
+                    @Override
+                    public Void completed() throws Exception {
+                        streamingResult = proxied.completed();
+                        return null;
+                    }
+
+                    @Override
+                    public void failed() throws Exception {
+                        proxied.failed();
+                    }
+                };
+            }
+
+        }
+
+        private class SegmentSession implements DownloadSession<Void> {
+
+            private final int index;
+            private final long start;
+            private final long end;
+            private long position;
+
+            SegmentSession(int index, long start, long end) {
+                this.index = index;
+                this.start = start;
+                this.end = end;
+                position = start;
+                progress[index].set(0);
+            }
+
+            @Override
+            public void receiveData(ByteBuffer data) throws IOException {
+                int length = data.remaining();
+                if (position + length > end + 1) {
+                    throw new IOException("Received more data than requested, range: " + start + "-" + end);
+                }
+                session.receiveData(position, data);
+                position += length;
+                progress[index].set(position - start);
+                updateProgress();
+            }
+
+            @Override
+            public Void completed() throws IOException {
+                if (position != end + 1) {
+                    throw new IOException("Incomplete segment, range: " + start + "-" + end + ", received: " + (position - start));
+                }
+                return null;
+            }
+
+            @Override
+            public void failed() {
+                // the segment will be downloaded again, or the whole download fails
+            }
+
+        }
+
+        private class SegmentCallback implements DownloadCallback<Void> {
+
+            @Override
+            public void done(Void result) {
+                segmentCompleted();
+            }
+
+            @Override
+            public void failed(Throwable e) {
+                future.failed(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancelled();
+            }
+
+            @Override
+            public void updateProgress(long done, long total) {
+                // the merged progress is reported by the segment sessions
+            }
+
+            @Override
+            public void retry(Throwable e, int current, int max) {
+                if (callback != null) {
+                    callback.retry(e, current, max);
+                }
+            }
+
+        }
+
+        private class ProbeCallback extends SegmentCallback {
+
+            @Override
+            public void done(Void result) {
+                if (streaming) {
+                    future.done(streamingResult);
+                } else {
+                    segmentCompleted();
+                }
+            }
+
+            @Override
+            public void updateProgress(long done, long total) {
+                if (streaming && callback != null) {
+                    callback.updateProgress(done, total);
+                }
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,165 @@
+package org.to2mbn.jmccc.mcdownloader.download;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A download task which keeps small data in memory, and spills large data to a
+ * temporary file.
+ * <p>
+ * The data is kept in memory until its length exceeds the threshold. If the
+ * length of the resource is known to exceed the threshold, the data is written
+ * to the temporary file from the beginning. Unlike {@link MemoryDownloadTask},
+ * large resources (such as forge installers) won't sit on the heap.
+ * <p>
+ * The consumer of the result should close the {@link DownloadedData} after use.
+ *
+ * @see DownloadedData
+ */
+public class SpillableDownloadTask extends DownloadTask<DownloadedData> {
+
+    public static final int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final int memoryThreshold;
+
+    /**
+     * Constructs a SpillableDownloadTask with the default threshold.
+     *
+     * @param uri the uri of resource to download
+     * @throws NullPointerException     if <code>uri==null</code>
+     * @throws IllegalArgumentException if <code>uri</code> is not in a valid
+     *                                  URI format
+     */
+    public SpillableDownloadTask(String uri) {
+        super(uri);
+        this.memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+    }
+
+    /**
+     * Constructs a SpillableDownloadTask with the default threshold.
+     *
+     * @param uri the uri of resource to download
+     * @throws NullPointerException if <code>uri==null</code>
+     */
+    public SpillableDownloadTask(URI uri) {
+        this(uri, DEFAULT_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * Constructs a SpillableDownloadTask.
+     *
+     * @param uri             the uri of resource to download
+     * @param memoryThreshold the max number of bytes to keep in memory
+     * @throws NullPointerException     if <code>uri==null</code>
+     * @throws IllegalArgumentException if <code>memoryThreshold &lt; 0</code>
+     */
+    public SpillableDownloadTask(URI uri, int memoryThreshold) {
+        super(uri);
+        if (memoryThreshold < 0)
+            throw new IllegalArgumentException("memoryThreshold < 0");
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    @Override
+    public DownloadSession<DownloadedData> createSession() throws IOException {
+        return createSession(-1);
+    }
+
+    @Override
+    public DownloadSession<DownloadedData> createSession(long length) throws IOException {
+        SpillableSession session = new SpillableSession();
+        if (length > memoryThreshold) {
+            session.spill();
+        } else {
+            session.buffer = new byte[length == -1 ? Math.min(INITIAL_BUFFER_SIZE, memoryThreshold) : (int) length];
+        }
+        return session;
+    }
+
+    private class SpillableSession implements DownloadSession<DownloadedData> {
+
+        byte[] buffer;
+        private int count;
+
+        private File file;
+        private FileChannel channel;
+        private long written;
+
+        @Override
+        public void receiveData(ByteBuffer data) throws IOException {
+            if (channel == null) {
+                int length = data.remaining();
+                if ((long) count + length <= memoryThreshold) {
+                    if (count + length > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, Math.min(memoryThreshold, Math.max(buffer.length * 2, count + length)));
+                    }
+                    data.get(buffer, count, length);
+                    count += length;
+                    return;
+                }
+                spill();
+            }
+            while (data.hasRemaining()) {
+                written += channel.write(data);
+            }
+        }
+
+        @Override
+        public DownloadedData completed() throws IOException {
+            if (channel == null) {
+                DownloadedData result = new DownloadedData(buffer, count);
+                buffer = null;
+                return result;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                file.delete();
+                throw e;
+            }
+            return new DownloadedData(file, written);
+        }
+
+        @Override
+        public void failed() throws IOException {
+            buffer = null;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } finally {
+                    file.delete();
+                }
+            }
+        }
+
+        void spill() throws IOException {
+            file = File.createTempFile("jmccc-download-", ".tmp");
+            try {
+                channel = new FileOutputStream(file).getChannel();
+                if (count > 0) {
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+                    while (data.hasRemaining()) {
+                        written += channel.write(data);
+                    }
+                }
+            } catch (IOException e) {
+                if (channel != null) {
+                    channel.close();
+                }
+                file.delete();
+                throw e;
+            }
+            buffer = null;
+            count = 0;
+        }
+
+    }
+
+}
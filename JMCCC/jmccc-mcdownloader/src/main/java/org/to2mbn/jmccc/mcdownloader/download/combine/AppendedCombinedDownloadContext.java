@@ -4,6 +4,7 @@ import org.to2mbn.jmccc.mcdownloader.download.DownloadCallback;
 import org.to2mbn.jmccc.mcdownloader.download.DownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.ResultProcessor;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
@@ -58,5 +59,10 @@ class AppendedCombinedDownloadContext<R, S> implements CombinedDownloadContext<R
         proxied.awaitAllTasks(callback);
     }
 
+    @Override
+    public Priority getPriority() {
+        return proxied.getPriority();
+    }
+
 
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package org.to2mbn.jmccc.mcdownloader.download.combine;
 
 import org.to2mbn.jmccc.mcdownloader.download.ResultProcessor;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
 
 class AppendedCombinedDownloadTask<R, S> extends CombinedDownloadTask<S> {
 
@@ -17,4 +18,9 @@ class AppendedCombinedDownloadTask<R, S> extends CombinedDownloadTask<S> {
         proxied.execute(new AppendedCombinedDownloadContext<R, S>(processor, context));
     }
 
+    @Override
+    public Priority getPriority() {
+        return proxied.getPriority();
+    }
+
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package org.to2mbn.jmccc.mcdownloader.download.combine;
 import org.to2mbn.jmccc.mcdownloader.download.DownloadCallback;
 import org.to2mbn.jmccc.mcdownloader.download.DownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
@@ -17,4 +18,12 @@ public interface CombinedDownloadContext<T> extends Callback<T> {
 
     void awaitAllTasks(Callable<Void> callback) throws InterruptedException;
 
+    /**
+     * Gets the priority of the current task, which is inherited by the
+     * subtasks without priorities.
+     *
+     * @return the priority of the current task
+     */
+    Priority getPriority();
+
 }
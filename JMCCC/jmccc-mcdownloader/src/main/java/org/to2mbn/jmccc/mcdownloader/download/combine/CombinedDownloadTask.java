@@ -2,6 +2,7 @@ package org.to2mbn.jmccc.mcdownloader.download.combine;
 
 import org.to2mbn.jmccc.mcdownloader.download.DownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.ResultProcessor;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
 
 import java.io.IOException;
 import java.util.Objects;
@@ -67,6 +68,31 @@ abstract public class CombinedDownloadTask<T> {
 
     abstract public void execute(CombinedDownloadContext<T> context) throws Exception;
 
+    /**
+     * Gets the priority of the task.
+     * <p>
+     * The subtasks which don't specify their priorities inherit the priority
+     * of this task.
+     *
+     * @return the priority, null to inherit the priority of the parent task
+     * @see CombinedDownloadContext#getPriority()
+     */
+    public Priority getPriority() {
+        return null;
+    }
+
+    /**
+     * Returns a task which has the given priority.
+     *
+     * @param priority the priority
+     * @return the task with the given priority
+     * @throws NullPointerException if <code>priority==null</code>
+     */
+    public CombinedDownloadTask<T> withPriority(Priority priority) {
+        Objects.requireNonNull(priority);
+        return new PrioritizedCombinedDownloadTask<>(this, priority);
+    }
+
     public <R> CombinedDownloadTask<R> andThen(ResultProcessor<T, R> processor) {
         return new AppendedCombinedDownloadTask<>(this, processor);
     }
@@ -6,25 +6,31 @@ import org.to2mbn.jmccc.mcdownloader.download.DownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.Downloader;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.*;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CombinedDownloaderImpl implements CombinedDownloader {
 
-    private final ReadWriteLock globalRwlock = new ReentrantReadWriteLock();
+    /*
+     * The state word:
+     * bit 0 - SHUTDOWN, no more submissions are accepted
+     * bit 1 - TERMINATED, the tasks have been cancelled
+     * the rest - the number of the submissions in progress
+     *
+     * The tasks are cancelled by whoever leaves the state SHUTDOWN with no submissions in progress,
+     * so a submission never races with the cleanup.
+     */
+    private static final int SHUTDOWN = 1;
+    private static final int TERMINATED = 2;
+    private static final int SUBMISSION = 4;
+
+    private final AtomicInteger state = new AtomicInteger();
     private final Set<Future<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
     private Executor executor;
     private Downloader downloader;
     private int defaultTries;
 
-    private volatile boolean shutdown;
     public CombinedDownloaderImpl(Executor executor, Downloader downloader, int defaultTries) {
         Objects.requireNonNull(executor);
         Objects.requireNonNull(downloader);
@@ -38,27 +44,25 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
 
     @Override
     public <T> Future<T> download(CombinedDownloadTask<T> downloadTask, CombinedDownloadCallback<T> callback, int tries) {
+        return download(downloadTask, callback, tries, Priority.NORMAL);
+    }
+
+    private <T> Future<T> download(CombinedDownloadTask<T> downloadTask, CombinedDownloadCallback<T> callback, int tries, Priority inheritedPriority) {
         Objects.requireNonNull(downloadTask);
         if (tries < 1)
             throw new IllegalArgumentException("tries < 1");
 
-        CombinedAsyncTask<T> task = new CombinedAsyncTask<>(downloadTask, callback == null ? new EmptyCallback<T>() : callback, tries);
-        Callback<T> statusCallback = Callbacks.whatever(new TaskInactiver(task));
-        if (callback != null) {
-            statusCallback = Callbacks.group(statusCallback, callback);
-        }
-        task.setCallback(callback);
+        Priority priority = downloadTask.getPriority() == null ? inheritedPriority : downloadTask.getPriority();
+        CombinedAsyncTask<T> task = new CombinedAsyncTask<>(downloadTask, callback == null ? new EmptyCallback<T>() : callback, tries, priority);
+        task.setCallback(new TaskInactiver<>(task, callback));
 
-        Lock lock = globalRwlock.readLock();
-        lock.lock();
+        if (!beginSubmission())
+            throw new RejectedExecutionException("The downloader has been shutdown.");
         try {
-            if (shutdown)
-                throw new RejectedExecutionException("The downloader has been shutdown.");
-
             tasks.add(task);
-            executor.execute(task);
+            executor.execute(new PrioritizedRunnable(task, priority));
         } finally {
-            lock.unlock();
+            endSubmission();
         }
 
         return task;
@@ -66,23 +70,17 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
 
     @Override
     public void shutdown() {
-        Lock lock = globalRwlock.writeLock();
-        lock.lock();
-        try {
-            if (shutdown) {
+        int s;
+        do {
+            s = state.get();
+            if ((s & SHUTDOWN) != 0) {
                 return;
             }
+        } while (!state.compareAndSet(s, s | SHUTDOWN));
 
-            shutdown = true;
-        } finally {
-            lock.unlock();
+        if (s == 0) {
+            terminate();
         }
-
-        for (Future<?> task : tasks)
-            task.cancel(true);
-
-        executor = null;
-        downloader = null;
     }
 
     @Override
@@ -92,7 +90,35 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
 
     @Override
     public boolean isShutdown() {
-        return shutdown;
+        return (state.get() & SHUTDOWN) != 0;
+    }
+
+    private boolean beginSubmission() {
+        for (; ; ) {
+            int s = state.get();
+            if ((s & SHUTDOWN) != 0) {
+                return false;
+            }
+            if (state.compareAndSet(s, s + SUBMISSION)) {
+                return true;
+            }
+        }
+    }
+
+    private void endSubmission() {
+        if (state.addAndGet(-SUBMISSION) == SHUTDOWN) {
+            terminate();
+        }
+    }
+
+    private void terminate() {
+        if (state.compareAndSet(SHUTDOWN, SHUTDOWN | TERMINATED)) {
+            for (Future<?> task : tasks)
+                task.cancel(true);
+
+            executor = null;
+            downloader = null;
+        }
     }
 
     private class CombinedAsyncTask<T> extends CallbackAsyncFutureTask<T> implements CombinedDownloadContext<T> {
@@ -100,10 +126,10 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
         private final CombinedDownloadTask<T> task;
         private final CombinedDownloadCallback<T> callback;
         private final int tries;
-        private final SubtaskCountdownAction countdownAction = new SubtaskCountdownAction();
+        private final Priority priority;
         private final SubtaskCounter subtaskCounter = new SubtaskCounter();
 
-        public CombinedAsyncTask(CombinedDownloadTask<T> task, CombinedDownloadCallback<T> callback, int tries) {
+        public CombinedAsyncTask(CombinedDownloadTask<T> task, CombinedDownloadCallback<T> callback, int tries, Priority priority) {
             Objects.requireNonNull(task);
             Objects.requireNonNull(callback);
             if (tries < 1)
@@ -112,6 +138,7 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
             this.task = task;
             this.callback = callback;
             this.tries = tries;
+            this.priority = priority;
         }
 
         @Override
@@ -119,33 +146,18 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
             Objects.requireNonNull(task);
 
             CallbackFutureTask<R> futureTask = new CallbackFutureTask<>(task);
-            List<Callback<R>> callbacks = new ArrayList<>();
-
-            FutureManager<R> futureManager = createFutureManager();
-            futureManager.setFuture(futureTask);
-            callbacks.add(wrapCallback(futureManager));
-
-            if (injectedCallback != null)
-                callbacks.add(wrapCallback(injectedCallback));
-
-            if (fatal)
-                callbacks.add(wrapCallback(new FatalSubtaskCallback<R>()));
-
-            /* TODO: Change to `callbacks.add(wrapCallback(Callbacks.whatever(countdownAction)));` in java 8 */
-            Callback<R> countdownCallback = Callbacks.whatever(countdownAction);
-            callbacks.add(wrapCallback(countdownCallback));
+            SubtaskCallback<R> subtaskCallback = new SubtaskCallback<>(injectedCallback, null, false, fatal);
+            subtaskCallback.setFuture(futureTask);
+            futureTask.setCallback(subtaskCallback);
 
-            futureTask.setCallback(Callbacks.group(callbacks));
-
-            Lock lock = globalRwlock.readLock();
-            lock.lock();
+            checkInterrupted();
+            if (!beginSubmission())
+                throw new InterruptedException();
             try {
-                checkInterrupted();
-
                 subtaskCounter.countUp();
-                executor.execute(futureTask);
+                executor.execute(new PrioritizedRunnable(futureTask, priority));
             } finally {
-                lock.unlock();
+                endSubmission();
             }
 
             return futureTask;
@@ -155,37 +167,22 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
         public <R> Future<R> submit(DownloadTask<R> task, DownloadCallback<R> injectedCallback, boolean fatal) throws InterruptedException {
             Objects.requireNonNull(task);
 
-            List<DownloadCallback<R>> callbacks = new ArrayList<>();
-
-            FutureManager<R> futureManager = createFutureManager();
-            callbacks.add(wrapDownloadCallback(DownloadCallbacks.fromCallback(futureManager)));
-
-            if (injectedCallback != null)
-                callbacks.add(wrapDownloadCallback(injectedCallback));
-
-            DownloadCallback<R> foreignCallback = callback.taskStart(task);
-            if (foreignCallback != null)
-                callbacks.add(wrapDownloadCallback(foreignCallback));
-
-            if (fatal)
-                callbacks.add(wrapDownloadCallback(DownloadCallbacks.fromCallback(new FatalSubtaskCallback<R>())));
-
-            /* TODO: Change to `callbacks.add(wrapDownloadCallback(DownloadCallbacks.whatever(countdownAction)));` in java 8 */
-            DownloadCallback<R> countdownCallback = DownloadCallbacks.whatever(countdownAction);
-            callbacks.add(wrapDownloadCallback(countdownCallback));
+            SubtaskCallback<R> subtaskCallback = new SubtaskCallback<>(injectedCallback, callback.taskStart(task), false, fatal);
 
             Future<R> future;
 
-            Lock lock = globalRwlock.readLock();
-            lock.lock();
+            checkInterrupted();
+            if (!beginSubmission())
+                throw new InterruptedException();
             try {
-                checkInterrupted();
-
                 subtaskCounter.countUp();
-                future = downloader.download(task, DownloadCallbacks.group(callbacks), tries);
-                futureManager.setFuture(future);
+                DownloadTask<R> prioritizedTask = task.getPriority() == null && priority != Priority.NORMAL
+                        ? task.withPriority(priority)
+                        : task;
+                future = downloader.download(prioritizedTask, subtaskCallback, tries);
+                subtaskCallback.setFuture(future);
             } finally {
-                lock.unlock();
+                endSubmission();
             }
 
             return future;
@@ -195,35 +192,19 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
         public <R> Future<R> submit(CombinedDownloadTask<R> task, CombinedDownloadCallback<R> injectedCallback, boolean fatal) throws InterruptedException {
             Objects.requireNonNull(task);
 
-            List<CombinedDownloadCallback<R>> callbacks = new ArrayList<>();
-
-            FutureManager<R> futureManager = createFutureManager();
-            callbacks.add(wrapCombinedDownloadCallback(CombinedDownloadCallbacks.fromCallback(futureManager)));
-
-            if (injectedCallback != null)
-                callbacks.add(wrapCombinedDownloadCallback(injectedCallback));
-
-            callbacks.add(wrapCombinedDownloadCallback(new SubDownloadTaskMapper<R>()));
-
-            if (fatal)
-                callbacks.add(wrapCombinedDownloadCallback(CombinedDownloadCallbacks.fromCallback(new FatalSubtaskCallback<R>())));
-
-            /* TODO: Change to `callbacks.add(wrapCombinedDownloadCallback(CombinedDownloadCallbacks.whatever(countdownAction)));` in java 8 */
-            CombinedDownloadCallback<R> countdownCallback = CombinedDownloadCallbacks.whatever(countdownAction);
-            callbacks.add(wrapCombinedDownloadCallback(countdownCallback));
+            SubtaskCallback<R> subtaskCallback = new SubtaskCallback<>(injectedCallback, null, true, fatal);
 
             Future<R> future;
 
-            Lock lock = globalRwlock.readLock();
-            lock.lock();
+            checkInterrupted();
+            if (!beginSubmission())
+                throw new InterruptedException();
             try {
-                checkInterrupted();
-
                 subtaskCounter.countUp();
-                future = CombinedDownloaderImpl.this.download(task, CombinedDownloadCallbacks.group(callbacks), tries);
-                futureManager.setFuture(future);
+                future = CombinedDownloaderImpl.this.download(task, subtaskCallback, tries, priority);
+                subtaskCallback.setFuture(future);
             } finally {
-                lock.unlock();
+                endSubmission();
             }
 
             return future;
@@ -235,6 +216,11 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
             subtaskCounter.awaitAllTasks(callback);
         }
 
+        @Override
+        public Priority getPriority() {
+            return priority;
+        }
+
         @Override
         protected void execute() throws Exception {
             task.execute(this);
@@ -256,94 +242,54 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
         }
 
         private void checkInterrupted() throws InterruptedException {
-            if (Thread.interrupted() || isExceptional() || shutdown) {
+            if (Thread.interrupted() || isExceptional() || isShutdown()) {
                 throw new InterruptedException();
             }
         }
 
-        @SuppressWarnings("unchecked")
-        private <R> R wrapExceptionHandler(Class<?> clazz, R obj) {
-            InvocationHandler handler = new ExceptionCatcher(obj);
-            return (R) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{clazz}, handler);
-        }
-
-        private <R> Callback<R> wrapCallback(Callback<R> callback) {
-            return wrapExceptionHandler(Callback.class, callback);
-        }
-
-        private <R> DownloadCallback<R> wrapDownloadCallback(DownloadCallback<R> callback) {
-            return wrapExceptionHandler(DownloadCallback.class, callback);
-        }
-
-        private <R> CombinedDownloadCallback<R> wrapCombinedDownloadCallback(CombinedDownloadCallback<R> callback) {
-            return wrapExceptionHandler(CombinedDownloadCallback.class, callback);
-        }
+        private class SubtaskCounter {
 
-        private class ExceptionCatcher implements InvocationHandler {
+            private final AtomicInteger count = new AtomicInteger();
 
-            private Object target;
+            // guarded by this
+            private List<Callable<?>> taskWaitNodes = new ArrayList<>();
 
-            public ExceptionCatcher(Object target) {
-                Objects.requireNonNull(target);
-                this.target = target;
+            public void countUp() {
+                if (count.incrementAndGet() < 1)
+                    throw new IllegalStateException("Invalid task count: " + count);
             }
 
-            @Override
-            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                try {
-                    return method.invoke(target, args);
-                } catch (Throwable e) {
-                    Throwable exception = e;
-                    if (e instanceof InvocationTargetException) {
-                        exception = e.getCause();
-                        if (exception == null)
-                            exception = e;
-                    }
-                    lifecycle().failed(exception);
+            public void countDown() {
+                int current = count.decrementAndGet();
+                if (current == 0) {
+                    notifyWaitNodes();
+                } else if (current < 0) {
+                    throw new IllegalStateException("Invalid task count: " + current);
                 }
-                return null;
             }
 
-        }
-
-        private class SubtaskCounter {
-
-            private final List<Callable<?>> taskWaitNodes = new Vector<>();
-            private volatile int count = 0;
-
-            public void countUp() {
+            public void awaitAllTasks(Callable<Void> callback) {
                 synchronized (this) {
-                    count++;
-                    if (count < 1)
-                        throw new IllegalStateException("Invalid task count: " + count);
+                    taskWaitNodes.add(callback);
                 }
-            }
-
-            public void countDown() {
-                List<Callable<?>> copiedWaitNodes = null;
-                synchronized (this) {
-                    count--;
-                    if (count == 0) {
-                        copiedWaitNodes = new Vector<>(taskWaitNodes);
-                        taskWaitNodes.clear();
-                    } else if (count < 0) {
-                        throw new IllegalStateException("Invalid task count: " + count);
-                    }
+                // if the count dropped to 0 before the node was added, nobody else will notify it
+                if (count.get() == 0) {
+                    notifyWaitNodes();
                 }
-
-                if (copiedWaitNodes != null)
-                    for (Callable<?> waitNode : copiedWaitNodes)
-                        doCallback(waitNode);
             }
 
-            public void awaitAllTasks(Callable<Void> callback) {
+            private void notifyWaitNodes() {
+                List<Callable<?>> copiedWaitNodes;
                 synchronized (this) {
-                    if (count > 0) {
-                        taskWaitNodes.add(callback);
+                    if (taskWaitNodes.isEmpty()) {
                         return;
                     }
+                    copiedWaitNodes = taskWaitNodes;
+                    taskWaitNodes = new ArrayList<>();
                 }
-                doCallback(callback);
+
+                for (Callable<?> waitNode : copiedWaitNodes)
+                    doCallback(waitNode);
             }
 
             private void doCallback(Callable<?> callback) {
@@ -356,51 +302,202 @@ public class CombinedDownloaderImpl implements CombinedDownloader {
 
         }
 
-        private class SubtaskCountdownAction implements Runnable {
+        /**
+         * Dispatches the events of a subtask.
+         * <p>
+         * One instance is created per subtask. It manages the future of the subtask, notifies the injected callbacks,
+         * fails the whole task if the subtask is fatal, and counts down the subtasks. The exceptions thrown by the
+         * injected callbacks fail the whole task.
+         */
+        private class SubtaskCallback<R> implements DownloadCallback<R>, CombinedDownloadCallback<R> {
+
+            private final Callback<R> injectedCallback;
+            private final DownloadCallback<R> foreignCallback;
+            private final boolean combined;
+            private final boolean fatal;
+
+            // guarded by this
+            private Future<?> subfuture;
+            private boolean terminated;
+
+            public SubtaskCallback(Callback<R> injectedCallback, DownloadCallback<R> foreignCallback, boolean combined, boolean fatal) {
+                this.injectedCallback = injectedCallback;
+                this.foreignCallback = foreignCallback;
+                this.combined = combined;
+                this.fatal = fatal;
+            }
+
+            public void setFuture(Future<?> future) {
+                Objects.requireNonNull(future);
+                synchronized (this) {
+                    if (!terminated) {
+                        subfuture = future;
+                        addCancelable(future);
+                    }
+                }
+            }
 
             @Override
-            public void run() {
+            public void done(R result) {
+                removeFuture();
+                try {
+                    if (injectedCallback != null)
+                        injectedCallback.done(result);
+                } catch (Throwable e) {
+                    lifecycle().failed(e);
+                }
+                try {
+                    if (foreignCallback != null)
+                        foreignCallback.done(result);
+                } catch (Throwable e) {
+                    lifecycle().failed(e);
+                }
                 subtaskCounter.countDown();
             }
-        }
-
-        private class FatalSubtaskCallback<R> extends CallbackAdapter<R> {
 
             @Override
             public void failed(Throwable e) {
-                lifecycle().failed(e);
+                removeFuture();
+                try {
+                    if (injectedCallback != null)
+                        injectedCallback.failed(e);
+                } catch (Throwable e1) {
+                    lifecycle().failed(e1);
+                }
+                try {
+                    if (foreignCallback != null)
+                        foreignCallback.failed(e);
+                } catch (Throwable e1) {
+                    lifecycle().failed(e1);
+                }
+                if (fatal)
+                    lifecycle().failed(e);
+                subtaskCounter.countDown();
             }
 
             @Override
             public void cancelled() {
-                lifecycle().cancelled();
+                removeFuture();
+                try {
+                    if (injectedCallback != null)
+                        injectedCallback.cancelled();
+                } catch (Throwable e) {
+                    lifecycle().failed(e);
+                }
+                try {
+                    if (foreignCallback != null)
+                        foreignCallback.cancelled();
+                } catch (Throwable e) {
+                    lifecycle().failed(e);
+                }
+                if (fatal)
+                    lifecycle().cancelled();
+                subtaskCounter.countDown();
             }
 
-        }
+            @Override
+            public void updateProgress(long done, long total) {
+                try {
+                    if (injectedCallback instanceof DownloadCallback)
+                        ((DownloadCallback<R>) injectedCallback).updateProgress(done, total);
+                } catch (Throwable e) {
+                    lifecycle().failed(e);
+                }
+                try {
+                    if (foreignCallback != null)
+                        foreignCallback.updateProgress(done, total);
+                } catch (Throwable e) {
+                    lifecycle().failed(e);
+                }
+            }
 
-        private class SubDownloadTaskMapper<R> extends CallbackAdapter<R> {
+            @Override
+            public void retry(Throwable e, int current, int max) {
+                try {
+                    if (injectedCallback instanceof DownloadCallback)
+                        ((DownloadCallback<R>) injectedCallback).retry(e, current, max);
+                } catch (Throwable e1) {
+                    lifecycle().failed(e1);
+                }
+                try {
+                    if (foreignCallback != null)
+                        foreignCallback.retry(e, current, max);
+                } catch (Throwable e1) {
+                    lifecycle().failed(e1);
+                }
+            }
 
             @Override
             public <S> DownloadCallback<S> taskStart(DownloadTask<S> subtask) {
-                return callback.taskStart(subtask);
+                DownloadCallback<S> injectedListener = null;
+                try {
+                    if (injectedCallback instanceof CombinedDownloadCallback)
+                        injectedListener = ((CombinedDownloadCallback<R>) injectedCallback).taskStart(subtask);
+                } catch (Throwable e) {
+                    lifecycle().failed(e);
+                }
+
+                DownloadCallback<S> mappedListener = null;
+                try {
+                    if (combined)
+                        mappedListener = callback.taskStart(subtask);
+                } catch (Throwable e) {
+                    lifecycle().failed(e);
+                }
+
+                if (injectedListener == null) {
+                    return mappedListener;
+                } else if (mappedListener == null) {
+                    return injectedListener;
+                } else {
+                    return DownloadCallbacks.group(injectedListener, mappedListener);
+                }
+            }
+
+            private void removeFuture() {
+                synchronized (this) {
+                    terminated = true;
+                    if (subfuture != null) {
+                        removeCancelable(subfuture);
+                        subfuture = null;
+                    }
+                }
             }
 
         }
 
     }
 
-    private class TaskInactiver implements Runnable {
+    private class TaskInactiver<T> implements Callback<T> {
 
         private final Future<?> future;
+        private final Callback<T> callback;
 
-        public TaskInactiver(Future<?> future) {
+        public TaskInactiver(Future<?> future, Callback<T> callback) {
             Objects.requireNonNull(future);
             this.future = future;
+            this.callback = callback;
         }
 
         @Override
-        public void run() {
+        public void done(T result) {
+            tasks.remove(future);
+            if (callback != null)
+                callback.done(result);
+        }
+
+        @Override
+        public void failed(Throwable e) {
+            tasks.remove(future);
+            if (callback != null)
+                callback.failed(e);
+        }
+
+        @Override
+        public void cancelled() {
             tasks.remove(future);
+            if (callback != null)
+                callback.cancelled();
         }
 
     }
@@ -0,0 +1,25 @@
+package org.to2mbn.jmccc.mcdownloader.download.combine;
+
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Priority;
+
+class PrioritizedCombinedDownloadTask<T> extends CombinedDownloadTask<T> {
+
+    private final CombinedDownloadTask<T> proxied;
+    private final Priority priority;
+
+    public PrioritizedCombinedDownloadTask(CombinedDownloadTask<T> proxied, Priority priority) {
+        this.proxied = proxied;
+        this.priority = priority;
+    }
+
+    @Override
+    public void execute(CombinedDownloadContext<T> context) throws Exception {
+        proxied.execute(context);
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+}
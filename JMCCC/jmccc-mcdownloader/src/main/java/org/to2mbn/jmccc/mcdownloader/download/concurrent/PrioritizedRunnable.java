@@ -0,0 +1,56 @@
+package org.to2mbn.jmccc.mcdownloader.download.concurrent;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A runnable with a priority. The runnables with the same priority are ordered
+ * by their creation.
+ *
+ * @see PriorityExecutorQueue
+ */
+public class PrioritizedRunnable implements Runnable, Comparable<PrioritizedRunnable> {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final Runnable runnable;
+    private final Priority priority;
+    private final long sequence = SEQUENCE.getAndIncrement();
+
+    /**
+     * Constructs a PrioritizedRunnable.
+     *
+     * @param runnable the runnable
+     * @param priority the priority, null for {@link Priority#NORMAL}
+     * @throws NullPointerException if <code>runnable==null</code>
+     */
+    public PrioritizedRunnable(Runnable runnable, Priority priority) {
+        Objects.requireNonNull(runnable);
+        this.runnable = runnable;
+        this.priority = priority == null ? Priority.NORMAL : priority;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    public void run() {
+        runnable.run();
+    }
+
+    @Override
+    public int compareTo(PrioritizedRunnable o) {
+        int result = priority.compareTo(o.priority);
+        if (result == 0) {
+            result = Long.compare(sequence, o.sequence);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return runnable + "[" + priority + "]";
+    }
+
+}
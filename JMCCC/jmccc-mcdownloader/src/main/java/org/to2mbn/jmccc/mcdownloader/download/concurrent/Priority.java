@@ -0,0 +1,44 @@
+package org.to2mbn.jmccc.mcdownloader.download.concurrent;
+
+/**
+ * The priority of a task. The tasks with higher priorities are started first.
+ * <p>
+ * The constants are declared in descending order of priority.
+ *
+ * @see PriorityExecutorQueue
+ */
+public enum Priority {
+
+    /**
+     * For the tasks which someone is waiting for, such as the files needed to
+     * launch the game. They jump the queue.
+     */
+    CRITICAL,
+    HIGH,
+    NORMAL,
+    LOW,
+    LOWEST;
+
+    /**
+     * Returns the higher one of the given priorities.
+     *
+     * @param a a priority
+     * @param b another priority
+     * @return the higher one
+     */
+    public static Priority higher(Priority a, Priority b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    /**
+     * Returns the lower one of the given priorities.
+     *
+     * @param a a priority
+     * @param b another priority
+     * @return the lower one
+     */
+    public static Priority lower(Priority a, Priority b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+}
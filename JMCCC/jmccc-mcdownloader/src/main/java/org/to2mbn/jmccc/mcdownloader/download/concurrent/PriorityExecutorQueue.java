@@ -0,0 +1,25 @@
+package org.to2mbn.jmccc.mcdownloader.download.concurrent;
+
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * An unbounded work queue for <code>ThreadPoolExecutor</code> which orders the
+ * runnables by priority.
+ * <p>
+ * The runnables which are not {@link PrioritizedRunnable}s are treated as
+ * {@link Priority#NORMAL}. The runnables with the same priority are executed in
+ * FIFO order.
+ */
+public class PriorityExecutorQueue extends PriorityBlockingQueue<Runnable> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public boolean offer(Runnable runnable) {
+        if (!(runnable instanceof PrioritizedRunnable)) {
+            runnable = new PrioritizedRunnable(runnable, Priority.NORMAL);
+        }
+        return super.offer(runnable);
+    }
+
+}
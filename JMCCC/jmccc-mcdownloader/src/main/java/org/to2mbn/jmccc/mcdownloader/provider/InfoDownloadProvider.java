@@ -6,11 +6,9 @@ import org.to2mbn.jmccc.mcdownloader.download.FileDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.ResultProcessor;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
-import org.to2mbn.jmccc.util.ChecksumUtils;
 import org.to2mbn.jmccc.version.*;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 
@@ -84,20 +82,11 @@ public class InfoDownloadProvider extends AbstractMinecraftDownloadProvider impl
         this.upstreamProvider = upstreamProvider;
     }
 
-    private CombinedDownloadTask<Void> download(final DownloadInfo info, final File target) {
+    private CombinedDownloadTask<Void> download(DownloadInfo info, File target) {
         if (info == null || info.getUrl() == null) {
             return null;
         }
-        return CombinedDownloadTask.single(new FileDownloadTask(info.getUrl(), target).andThen(new ResultProcessor<Void, Void>() {
-
-            @Override
-            public Void process(Void arg) throws Exception {
-                if (!ChecksumUtils.verify(target, info.getChecksum(), "SHA-1", info.getSize())) {
-                    throw new IOException("checksums mismatch");
-                }
-                return null;
-            }
-        }));
+        return CombinedDownloadTask.single(new FileDownloadTask(info.getUrl(), target).verifyChecksum("SHA-1", info.getChecksum(), info.getSize()));
     }
 
 }
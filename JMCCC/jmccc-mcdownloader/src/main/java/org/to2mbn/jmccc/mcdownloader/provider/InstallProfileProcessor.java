@@ -2,14 +2,16 @@ package org.to2mbn.jmccc.mcdownloader.provider;
 
 import org.json.JSONObject;
 import org.json.JSONTokener;
+import org.to2mbn.jmccc.mcdownloader.download.DownloadedData;
 import org.to2mbn.jmccc.mcdownloader.download.ResultProcessor;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
 
 import java.io.*;
+import java.util.Collections;
+import java.util.Map;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
-public class InstallProfileProcessor implements ResultProcessor<byte[], String> {
+public class InstallProfileProcessor implements ResultProcessor<DownloadedData, String> {
 
     private MinecraftDirectory mcdir;
 
@@ -18,25 +20,33 @@ public class InstallProfileProcessor implements ResultProcessor<byte[], String>
     }
 
     @Override
-    public String process(byte[] arg) throws Exception {
-        String version = null;
-        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(arg))) {
-            ZipEntry entry;
-            while ((entry = in.getNextEntry()) != null) {
-                if ("install_profile.json".equals(entry.getName())) {
-                    version = writeJson(processJson(new JSONObject(new JSONTokener(new InputStreamReader(in, "UTF-8")))));
-                    in.closeEntry();
-                    break;
-                }
-                in.closeEntry();
+    public String process(DownloadedData arg) throws Exception {
+        try (InstallerArchive installer = new InstallerArchive(arg)) {
+            ZipEntry entry = installer.findEntry("install_profile.json");
+            if (entry == null) {
+                throw new IllegalArgumentException("No install_profile.json has found");
             }
-        }
 
-        if (version == null) {
-            throw new IllegalArgumentException("No install_profile.json has found");
+            JSONObject installprofile;
+            try (Reader reader = new InputStreamReader(installer.openEntry(entry), "UTF-8")) {
+                installprofile = new JSONObject(new JSONTokener(reader));
+            }
+            String version = writeJson(processJson(installprofile));
+            installer.extract(entriesToExtract(installer, installprofile));
+            return version;
         }
+    }
 
-        return version;
+    /**
+     * Returns the entries of the installer to extract along with the version
+     * json, so the installer doesn't need to be read again.
+     *
+     * @param installer      the installer
+     * @param installprofile the install profile
+     * @return the entries to extract, and their target files
+     */
+    protected Map<ZipEntry, File> entriesToExtract(InstallerArchive installer, JSONObject installprofile) {
+        return Collections.emptyMap();
     }
 
     protected JSONObject processJson(JSONObject installprofile) {
@@ -0,0 +1,128 @@
+package org.to2mbn.jmccc.mcdownloader.provider;
+
+import org.to2mbn.jmccc.mcdownloader.download.DownloadedData;
+import org.to2mbn.jmccc.util.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Provides random access to the entries of a downloaded installer.
+ * <p>
+ * The entries are located with the central directory of the zip, so only the
+ * needed entries are read and inflated.
+ */
+public class InstallerArchive implements Closeable {
+
+    private final DownloadedData data;
+    private final ZipFile zip;
+
+    /**
+     * Opens the given installer.
+     * <p>
+     * The data will be closed when the archive is closed.
+     *
+     * @param data the downloaded installer
+     * @throws IOException          if an I/O error occurs
+     * @throws NullPointerException if <code>data==null</code>
+     */
+    public InstallerArchive(DownloadedData data) throws IOException {
+        Objects.requireNonNull(data);
+        this.data = data;
+        try {
+            zip = new ZipFile(data.toFile());
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds an entry whose name equals to any of the given names, ignoring
+     * case.
+     *
+     * @param names the names of the entry
+     * @return the entry, null if not found
+     */
+    public ZipEntry findEntry(String... names) {
+        for (String name : names) {
+            ZipEntry entry = zip.getEntry(name);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            for (String name : names) {
+                if (name.equalsIgnoreCase(entry.getName())) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens an input stream of the given entry.
+     *
+     * @param entry the entry
+     * @return an input stream of the entry
+     * @throws IOException if an I/O error occurs
+     */
+    public InputStream openEntry(ZipEntry entry) throws IOException {
+        return zip.getInputStream(entry);
+    }
+
+    /**
+     * Extracts the given entry to the target file.
+     *
+     * @param entry  the entry
+     * @param target the file to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void extract(ZipEntry entry, File target) throws IOException {
+        FileUtils.prepareWrite(target);
+        try (InputStream in = zip.getInputStream(entry); OutputStream out = new FileOutputStream(target)) {
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+        } catch (IOException e) {
+            target.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Extracts the given entries to their target files.
+     *
+     * @param entries the entries, and their target files
+     * @throws IOException if an I/O error occurs
+     */
+    public void extract(Map<ZipEntry, File> entries) throws IOException {
+        for (Map.Entry<ZipEntry, File> entry : entries.entrySet()) {
+            extract(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            zip.close();
+        } finally {
+            data.close();
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package org.to2mbn.jmccc.mcdownloader.provider;
 import org.to2mbn.jmccc.mcdownloader.download.DownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.FileDownloadTask;
 import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.LibraryInfo;
 
 import java.io.File;
 import java.net.URI;
@@ -11,7 +12,12 @@ public class JarLibraryDownloadHandler implements LibraryDownloadHandler {
 
     @Override
     public DownloadTask<Void> createDownloadTask(File target, Library library, URI libraryUri) {
-        return new FileDownloadTask(libraryUri, target);
+        DownloadTask<Void> task = new FileDownloadTask(libraryUri, target);
+        LibraryInfo info = library.getDownloadInfo();
+        if (info != null) {
+            task = task.verifyChecksum("SHA-1", info.getChecksum(), info.getSize());
+        }
+        return task;
     }
 
 }
@@ -0,0 +1,525 @@
+package org.to2mbn.jmccc.mcdownloader.provider;
+
+import org.to2mbn.jmccc.mcdownloader.download.DownloadSession;
+import org.to2mbn.jmccc.mcdownloader.download.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.FlowControlledDownloadSession;
+import org.to2mbn.jmccc.util.FileUtils;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Pack200;
+import java.util.zip.ZipEntry;
+
+import static org.to2mbn.jmccc.util.HexUtils.bytesToHex;
+import static org.to2mbn.jmccc.util.HexUtils.hexToBytes;
+
+/**
+ * Downloads a pack200 library (optionally xz-compressed), and unpacks it into
+ * a jar while it is being downloaded.
+ * <p>
+ * The received data is piped through the xz decompressor and the pack200
+ * unpacker into the jar on another thread, and the sha1 of each entry is
+ * computed as it is written. Neither the packed data nor the unpacked data is
+ * buffered as a whole. Only the tail of the unpacked stream is retained, which
+ * contains the checksums of the entries. If the unpacker falls behind, the
+ * session pauses the input of the non-blocking downloaders (see
+ * {@link FlowControlledDownloadSession}), and blocks the others.
+ * <p>
+ * The unpacked stream has the following layout:
+ * <code>[pack200 archive][checksums.sha1][checksums length (int32 LE)]["SIGN"]</code>
+ *
+ * @see PackProcessor
+ */
+public class PackDownloadTask extends DownloadTask<Void> {
+
+    private static final byte[] POSTFIX = {'S', 'I', 'G', 'N'};
+    private static final String CHECKSUMS_ENTRY = "checksums.sha1";
+
+    // max length of the retained tail of the unpacked stream
+    private static final int MAX_TAIL_LENGTH = 4 * 1024 * 1024;
+
+    // the number of the received buffers waiting to be unpacked, above which the session is busy
+    private static final int PIPE_CAPACITY = 64;
+
+    // the unpackers are CPU-bound, and the extra sessions wait in the queue
+    // with their input paused or blocked until an unpacker is free
+    private static final ExecutorService UNPACKERS = createUnpackers();
+
+    private final File target;
+    private final boolean xz;
+
+    /**
+     * Constructs a PackDownloadTask.
+     *
+     * @param uri    the uri of the packed library
+     * @param target the jar to write
+     * @param xz     true if the pack200 data is xz-compressed
+     * @throws NullPointerException if <code>target==null</code>
+     */
+    public PackDownloadTask(URI uri, File target, boolean xz) {
+        super(uri);
+        Objects.requireNonNull(target);
+        this.target = target;
+        this.xz = xz;
+    }
+
+    @Override
+    public DownloadSession<Void> createSession() throws IOException {
+        FileUtils.prepareWrite(target);
+        UnpackSession session = new UnpackSession();
+        UNPACKERS.execute(session.unpacking);
+        return session;
+    }
+
+    private static ExecutorService createUnpackers() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jmccc-pack-unpacker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private class UnpackSession implements FlowControlledDownloadSession<Void> {
+
+        final FutureTask<Void> unpacking;
+        private final PipeInputStream pipe = new PipeInputStream();
+        private volatile boolean flowControlled = false;
+
+        UnpackSession() {
+            unpacking = new FutureTask<Void>(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    unpack(pipe);
+                    return null;
+                }
+            }) {
+
+                @Override
+                protected void done() {
+                    pipe.terminate();
+                }
+            };
+        }
+
+        @Override
+        public void receiveData(ByteBuffer data) throws IOException {
+            byte[] chunk = new byte[data.remaining()];
+            data.get(chunk);
+            if (!flowControlled) {
+                // the unpacker is usually faster than the network
+                // so this blocks only if it falls behind
+                pipe.awaitSpace();
+            }
+            transfer(chunk);
+        }
+
+        @Override
+        public boolean pauseIfBusy(Runnable resume) {
+            flowControlled = true;
+            return pipe.pauseIfFull(resume);
+        }
+
+        @Override
+        public Void completed() throws Exception {
+            transfer(PipeInputStream.EOF);
+            try {
+                unpacking.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+            return null;
+        }
+
+        @Override
+        public void failed() throws Exception {
+            unpacking.cancel(true);
+            pipe.terminate();
+            target.delete();
+        }
+
+        private void transfer(byte[] chunk) throws IOException {
+            if (!pipe.write(chunk)) {
+                throw new IOException("The unpacker has terminated");
+            }
+        }
+
+    }
+
+    private void unpack(PipeInputStream pipe) throws IOException, NoSuchAlgorithmException {
+        try (TailRecordingInputStream unpacked = new TailRecordingInputStream(xz ? new XZInputStream(pipe) : pipe);
+             HashingJarOutputStream out = new HashingJarOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
+            // the unpacker closes the stream, but the rest of the stream is still needed
+            Pack200.newUnpacker().unpack(new UnclosableInputStream(unpacked), out);
+
+            // the unpacker may stop before the end, drain the rest to get the tail
+            byte[] buffer = new byte[8192];
+            while (unpacked.read(buffer) != -1) ;
+
+            byte[] checksumData = readChecksumData(unpacked);
+            verifyChecksums(readChecksums(checksumData), out.digests);
+
+            JarEntry checksumsEntry = new JarEntry(CHECKSUMS_ENTRY);
+            checksumsEntry.setTime(0);
+            out.putNextEntry(checksumsEntry);
+            out.write(checksumData);
+            out.closeEntry();
+        } catch (Throwable e) {
+            target.delete();
+            throw e;
+        }
+    }
+
+    private byte[] readChecksumData(TailRecordingInputStream unpacked) throws IOException {
+        long length = unpacked.getLength();
+        if (length < 4 + POSTFIX.length) {
+            throw new IOException("pack data too short: " + length);
+        }
+        byte[] trailer = unpacked.getTail(4 + POSTFIX.length);
+        if (!Arrays.equals(Arrays.copyOfRange(trailer, 4, trailer.length), POSTFIX)) {
+            throw new IOException("bad postfix");
+        }
+        int checksumsLength = trailer[0] & 0xff | (trailer[1] & 0xff) << 8 | (trailer[2] & 0xff) << 16 | (trailer[3] & 0xff) << 24;
+        if (checksumsLength < 0 || checksumsLength > length - trailer.length) {
+            throw new IOException("illegal checksums length: " + checksumsLength);
+        }
+        if (checksumsLength + trailer.length > MAX_TAIL_LENGTH) {
+            throw new IOException("checksums too long: " + checksumsLength);
+        }
+        byte[] tail = unpacked.getTail(checksumsLength + trailer.length);
+        return Arrays.copyOf(tail, checksumsLength);
+    }
+
+    private void verifyChecksums(Map<String, byte[]> expected, Map<String, byte[]> actual) throws IOException {
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            byte[] actualChecksum = actual.get(entry.getKey());
+            if (actualChecksum == null) {
+                // the entries which are not in the jar are ignored
+                continue;
+            }
+            if (!Arrays.equals(entry.getValue(), actualChecksum)) {
+                throw new IOException("illegal sha1 checksum for " + entry.getKey() + ": expected=" + bytesToHex(entry.getValue()) + ", actual=" + bytesToHex(actualChecksum));
+            }
+        }
+    }
+
+    private Map<String, byte[]> readChecksums(byte[] checksumData) throws IOException {
+        Map<String, byte[]> checksums = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(new String(checksumData, "UTF-8")))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    String[] splited = line.split(" ", 2);
+                    if (splited.length < 2) {
+                        throw new IOException("bad checksum format: " + line);
+                    }
+                    checksums.put(splited[1], hexToBytes(splited[0]));
+                }
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Reads the chunks received from the network.
+     * <p>
+     * The pipe is unbounded, so the network threads never block in it if they
+     * pause the input when it's full.
+     */
+    private static class PipeInputStream extends InputStream {
+
+        static final byte[] EOF = new byte[0];
+
+        // guarded by this
+        private final Deque<byte[]> chunks = new ArrayDeque<>();
+        private Runnable resume;
+        private boolean terminated;
+
+        private byte[] current;
+        private int position;
+        private boolean eof;
+
+        /**
+         * @return false if the unpacker has terminated
+         */
+        synchronized boolean write(byte[] chunk) {
+            if (terminated) {
+                return false;
+            }
+            chunks.addLast(chunk);
+            notifyAll();
+            return true;
+        }
+
+        synchronized void awaitSpace() throws IOException {
+            while (chunks.size() >= PIPE_CAPACITY && !terminated) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+
+        synchronized boolean pauseIfFull(Runnable resume) {
+            if (chunks.size() < PIPE_CAPACITY || terminated) {
+                return false;
+            }
+            this.resume = resume;
+            return true;
+        }
+
+        /**
+         * Discards the chunks, and resumes the input, so the next write
+         * fails.
+         */
+        void terminate() {
+            Runnable toResume;
+            synchronized (this) {
+                terminated = true;
+                chunks.clear();
+                toResume = resume;
+                resume = null;
+                notifyAll();
+            }
+            if (toResume != null) {
+                toResume.run();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (current == null || position == current.length) {
+                if (eof) {
+                    return -1;
+                }
+                current = take();
+                position = 0;
+                if (current == EOF) {
+                    eof = true;
+                }
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        private byte[] take() throws IOException {
+            byte[] chunk;
+            Runnable toResume = null;
+            synchronized (this) {
+                while (chunks.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                chunk = chunks.pollFirst();
+                if (resume != null && chunks.size() < PIPE_CAPACITY) {
+                    toResume = resume;
+                    resume = null;
+                }
+                notifyAll();
+            }
+            if (toResume != null) {
+                toResume.run();
+            }
+            return chunk;
+        }
+
+    }
+
+    private static class UnclosableInputStream extends FilterInputStream {
+
+        UnclosableInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    /**
+     * Retains the last {@link #MAX_TAIL_LENGTH} bytes of the stream.
+     */
+    private static class TailRecordingInputStream extends InputStream {
+
+        private static final int BLOCK_SIZE = 64 * 1024;
+
+        private final InputStream in;
+        private final Deque<byte[]> blocks = new ArrayDeque<>();
+        private int lastBlockUsed = BLOCK_SIZE;
+        private long retained;
+        private long length;
+
+        TailRecordingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                record(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                record(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        byte[] getTail(int n) {
+            byte[] tail = new byte[n];
+            int remaining = n;
+            int skip = BLOCK_SIZE - lastBlockUsed;
+            for (Iterator<byte[]> it = blocks.descendingIterator(); it.hasNext() && remaining > 0; ) {
+                byte[] block = it.next();
+                int available = BLOCK_SIZE - skip;
+                int count = Math.min(available, remaining);
+                System.arraycopy(block, available - count, tail, remaining - count, count);
+                remaining -= count;
+                skip = 0;
+            }
+            return tail;
+        }
+
+        private void record(byte[] b, int off, int len) {
+            length += len;
+            while (len > 0) {
+                if (lastBlockUsed == BLOCK_SIZE) {
+                    byte[] block = retained >= MAX_TAIL_LENGTH + BLOCK_SIZE
+                            ? blocks.pollFirst()
+                            : null;
+                    if (block == null) {
+                        block = new byte[BLOCK_SIZE];
+                    } else {
+                        retained -= BLOCK_SIZE;
+                    }
+                    blocks.addLast(block);
+                    retained += BLOCK_SIZE;
+                    lastBlockUsed = 0;
+                }
+                int count = Math.min(len, BLOCK_SIZE - lastBlockUsed);
+                System.arraycopy(b, off, blocks.peekLast(), lastBlockUsed, count);
+                lastBlockUsed += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+    }
+
+    /**
+     * Computes the sha1 of each entry as it is written.
+     */
+    private static class HashingJarOutputStream extends JarOutputStream {
+
+        final Map<String, byte[]> digests = new HashMap<>();
+        private final MessageDigest sha1;
+        private String currentEntry;
+
+        HashingJarOutputStream(OutputStream out) throws IOException, NoSuchAlgorithmException {
+            super(out);
+            sha1 = MessageDigest.getInstance("SHA-1");
+        }
+
+        @Override
+        public void putNextEntry(ZipEntry e) throws IOException {
+            super.putNextEntry(e);
+            currentEntry = e.getName();
+            sha1.reset();
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            if (currentEntry != null) {
+                sha1.update(b, off, len);
+            }
+        }
+
+        @Override
+        public void closeEntry() throws IOException {
+            super.closeEntry();
+            if (currentEntry != null) {
+                digests.put(currentEntry, sha1.digest());
+                currentEntry = null;
+            }
+        }
+
+    }
+
+}
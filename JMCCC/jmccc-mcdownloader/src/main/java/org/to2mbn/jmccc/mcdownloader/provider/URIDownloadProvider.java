@@ -1,6 +1,5 @@
 package org.to2mbn.jmccc.mcdownloader.provider;
 
-import org.json.JSONObject;
 import org.to2mbn.jmccc.mcdownloader.RemoteVersionList;
 import org.to2mbn.jmccc.mcdownloader.download.FileDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.MemoryDownloadTask;
@@ -12,7 +11,9 @@ import org.to2mbn.jmccc.version.Library;
 import org.to2mbn.jmccc.version.Version;
 import org.to2mbn.jmccc.version.Versions;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.util.Comparator;
 import java.util.Map;
@@ -79,7 +80,7 @@ abstract public class URIDownloadProvider implements MinecraftDownloadProvider {
 
             @Override
             public RemoteVersionList process(byte[] arg) throws Exception {
-                return RemoteVersionList.fromJson(new JSONObject(new String(arg, "UTF-8")));
+                return RemoteVersionList.fromJson(new InputStreamReader(new ByteArrayInputStream(arg), "UTF-8"));
             }
         }).cacheable());
     }
@@ -153,7 +154,7 @@ abstract public class URIDownloadProvider implements MinecraftDownloadProvider {
         if (uri == null) {
             return null;
         }
-        return CombinedDownloadTask.single(new FileDownloadTask(uri, mcdir.getAsset(asset)));
+        return CombinedDownloadTask.single(new FileDownloadTask(uri, mcdir.getAsset(asset)).verifyChecksum("SHA-1", asset.getHash(), asset.getSize()));
     }
 
     public void registerLibraryDownloadHandler(String postfix, LibraryDownloadHandler handler) {
@@ -3,13 +3,16 @@ package org.to2mbn.jmccc.mcdownloader.provider.forge;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONTokener;
+import org.to2mbn.jmccc.mcdownloader.download.DownloadedData;
 import org.to2mbn.jmccc.mcdownloader.download.FileDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.MemoryDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.ResultProcessor;
+import org.to2mbn.jmccc.mcdownloader.download.SpillableDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.provider.AbstractMinecraftDownloadProvider;
 import org.to2mbn.jmccc.mcdownloader.provider.ExtendedDownloadProvider;
 import org.to2mbn.jmccc.mcdownloader.provider.InstallProfileProcessor;
+import org.to2mbn.jmccc.mcdownloader.provider.InstallerArchive;
 import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
 import org.to2mbn.jmccc.util.FileUtils;
@@ -18,7 +21,9 @@ import org.to2mbn.jmccc.version.Version;
 import org.to2mbn.jmccc.version.Versions;
 
 import java.io.*;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.zip.ZipEntry;
@@ -34,7 +39,7 @@ public class ForgeDownloadProvider extends AbstractMinecraftDownloadProvider imp
 
             @Override
             public ForgeVersionList process(byte[] arg) throws IOException {
-                return ForgeVersionList.fromJson(new JSONObject(new String(arg, "UTF-8")));
+                return ForgeVersionList.fromJson(new InputStreamReader(new ByteArrayInputStream(arg), "UTF-8"));
             }
         }).cacheable());
     }
@@ -48,7 +53,14 @@ public class ForgeDownloadProvider extends AbstractMinecraftDownloadProvider imp
 
                 @Override
                 public CombinedDownloadTask<String> process(final ForgeVersion forgeVersion) throws Exception {
-                    return CombinedDownloadTask.any(installer(resolveFullVersion(forgeVersion)).andThen(new InstallProfileProcessor(mcdir)),
+                    return CombinedDownloadTask.any(installer(resolveFullVersion(forgeVersion)).andThen(new InstallProfileProcessor(mcdir) {
+
+                                // extract the universal jar as well, so it won't be downloaded again
+                                @Override
+                                protected Map<ZipEntry, File> entriesToExtract(InstallerArchive installer, JSONObject installprofile) {
+                                    return universalEntry(mcdir, installer, installprofile);
+                                }
+                            }),
                             upstreamProvider.gameVersionJson(mcdir, forgeVersion.getMinecraftVersion()).andThen(new ResultProcessor<String, String>() {
 
                                 // for old forge versions
@@ -215,8 +227,8 @@ public class ForgeDownloadProvider extends AbstractMinecraftDownloadProvider imp
         return "http://files.minecraftforge.net/maven/net/minecraftforge/forge/json";
     }
 
-    protected CombinedDownloadTask<byte[]> installer(String fullVersion) {
-        return CombinedDownloadTask.single(new MemoryDownloadTask("http://files.minecraftforge.net/maven/net/minecraftforge/forge/" + fullVersion + "/forge-" + fullVersion + "-installer.jar")
+    protected CombinedDownloadTask<DownloadedData> installer(String fullVersion) {
+        return CombinedDownloadTask.single(new SpillableDownloadTask("http://files.minecraftforge.net/maven/net/minecraftforge/forge/" + fullVersion + "/forge-" + fullVersion + "-installer.jar")
                 .cacheable());
     }
 
@@ -234,6 +246,28 @@ public class ForgeDownloadProvider extends AbstractMinecraftDownloadProvider imp
         }
     }
 
+    private Map<ZipEntry, File> universalEntry(MinecraftDirectory mcdir, InstallerArchive installer, JSONObject installprofile) {
+        JSONObject install = installprofile.optJSONObject("install");
+        if (install == null) {
+            return Collections.emptyMap();
+        }
+        String path = install.optString("path", null);
+        String filePath = install.optString("filePath", null);
+        if (path == null || filePath == null) {
+            return Collections.emptyMap();
+        }
+        String[] splited = path.split(":", 3);
+        if (splited.length < 3) {
+            return Collections.emptyMap();
+        }
+        File target = mcdir.getLibrary(new Library(splited[0], splited[1], splited[2], null));
+        ZipEntry entry = installer.findEntry(filePath);
+        if (entry == null || target.isFile()) {
+            return Collections.emptyMap();
+        }
+        return Collections.singletonMap(entry, target);
+    }
+
     private String resolveFullVersion(ForgeVersion forge) {
         String downloadname = forge.getMinecraftVersion() + "-" + forge.getForgeVersion();
         String branch = forge.getBranch();
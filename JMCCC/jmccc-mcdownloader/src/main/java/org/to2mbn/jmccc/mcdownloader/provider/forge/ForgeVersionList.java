@@ -2,7 +2,10 @@ package org.to2mbn.jmccc.mcdownloader.provider.forge;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.to2mbn.jmccc.util.JsonReader;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
 import java.util.*;
 import java.util.logging.Level;
@@ -79,6 +82,131 @@ public class ForgeVersionList implements Serializable {
                 recommended);
     }
 
+    /**
+     * Parses the forge version list from the given reader, without building
+     * the whole json in the memory.
+     * <p>
+     * The reader is not closed.
+     *
+     * @param in the reader to read the json from
+     * @return the forge version list
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the json is malformed
+     */
+    public static ForgeVersionList fromJson(Reader in) throws IOException, JSONException {
+        Map<Integer, ForgeVersion> versions = new TreeMap<>();
+        Map<String, ForgeVersion> latests = new TreeMap<>();
+        Map<String, ForgeVersion> recommendeds = new TreeMap<>();
+        Map<String, ForgeVersion> forgeVersionMapping = new TreeMap<>();
+        ForgeVersion latest = null;
+        ForgeVersion recommended = null;
+        boolean hasVersions = false;
+        // the promos may come before the versions they refer to
+        Map<String, Integer> promos = null;
+
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "number":
+                    hasVersions = true;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String strbuildnum = reader.nextName();
+                        ForgeVersion version = parseVersion(reader, strbuildnum);
+                        if (version != null) {
+                            versions.put(version.getBuildNumber(), version);
+                            forgeVersionMapping.put(version.getForgeVersion(), version);
+                        }
+                    }
+                    reader.endObject();
+                    break;
+
+                case "promos":
+                    promos = new LinkedHashMap<>();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String key = reader.nextName();
+                        promos.put(key, reader.nextInt());
+                    }
+                    reader.endObject();
+                    break;
+
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (!hasVersions) {
+            throw new JSONException("JSONObject[\"number\"] not found.");
+        }
+        if (promos == null) {
+            throw new JSONException("JSONObject[\"promos\"] not found.");
+        }
+        for (Map.Entry<String, Integer> promo : promos.entrySet()) {
+            String key = promo.getKey();
+            ForgeVersion version = versions.get(promo.getValue());
+            if ("latest".equals(key)) {
+                latest = version;
+            } else if ("recommended".equals(key)) {
+                recommended = version;
+            } else if (key.endsWith("-latest")) {
+                // 7 - length of "-latest"
+                latests.put(key.substring(0, key.length() - 7), version);
+            } else if (key.endsWith("-recommended")) {
+                // 12 - length of "-recommended"
+                recommendeds.put(key.substring(0, key.length() - 12), version);
+            }
+        }
+        return new ForgeVersionList(Collections.unmodifiableMap(versions),
+                Collections.unmodifiableMap(latests),
+                Collections.unmodifiableMap(recommendeds),
+                Collections.unmodifiableMap(forgeVersionMapping),
+                latest,
+                recommended);
+    }
+
+    private static ForgeVersion parseVersion(JsonReader reader, String strbuildnum) throws IOException, JSONException {
+        String mcversion = null;
+        String forgeversion = null;
+        Integer buildnum = null;
+        String branch = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "mcversion":
+                    mcversion = reader.nextStringOrNull();
+                    break;
+                case "version":
+                    forgeversion = reader.nextStringOrNull();
+                    break;
+                case "build":
+                    if (reader.peek() == JsonReader.Token.NULL) {
+                        reader.nextNull();
+                    } else {
+                        buildnum = reader.nextInt();
+                    }
+                    break;
+                case "branch":
+                    branch = reader.nextStringOrNull();
+                    break;
+                default:
+                    // such as the files, which make up most of the list
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (mcversion == null || forgeversion == null || buildnum == null) {
+            LOGGER.warning("Couldn't parse forge version, skipping: " + strbuildnum);
+            return null;
+        }
+        return new ForgeVersion(mcversion, forgeversion, buildnum, branch);
+    }
+
     /**
      * Gets all the forge versions.
      *
@@ -1,16 +1,13 @@
 package org.to2mbn.jmccc.mcdownloader.provider.forge;
 
+import org.to2mbn.jmccc.mcdownloader.download.DownloadedData;
 import org.to2mbn.jmccc.mcdownloader.download.ResultProcessor;
-import org.to2mbn.jmccc.util.FileUtils;
+import org.to2mbn.jmccc.mcdownloader.provider.InstallerArchive;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
-public class UniversalDecompressor implements ResultProcessor<byte[], Void> {
+public class UniversalDecompressor implements ResultProcessor<DownloadedData, Void> {
 
     private static final String NAME_TEMPLATE = "forge-%s-universal.jar";
     private static final String OLD_NAME_TEMPLATE = "minecraftforge-universal-%s.jar";
@@ -28,37 +25,15 @@ public class UniversalDecompressor implements ResultProcessor<byte[], Void> {
     }
 
     @Override
-    public Void process(byte[] arg) throws Exception {
-        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(arg))) {
-            ZipEntry entry;
-            while ((entry = in.getNextEntry()) != null) {
-                if (isUniversalJar(entry.getName())) {
-                    FileUtils.prepareWrite(target);
-                    try (OutputStream out = new FileOutputStream(target)) {
-                        byte[] buf = new byte[8192];
-                        int read;
-                        while ((read = in.read(buf)) != -1) {
-                            out.write(buf, 0, read);
-                        }
-                    }
-                    in.closeEntry();
-                    return null;
-                }
-
-                in.closeEntry();
-            }
-        }
-
-        throw new IllegalArgumentException("No universal jar found");
-    }
-
-    private boolean isUniversalJar(String name) {
-        for (String expectedName : names) {
-            if (expectedName.equalsIgnoreCase(name)) {
-                return true;
+    public Void process(DownloadedData arg) throws Exception {
+        try (InstallerArchive installer = new InstallerArchive(arg)) {
+            ZipEntry entry = installer.findEntry(names);
+            if (entry == null) {
+                throw new IllegalArgumentException("No universal jar found");
             }
+            installer.extract(entry, target);
+            return null;
         }
-        return false;
     }
 
 }
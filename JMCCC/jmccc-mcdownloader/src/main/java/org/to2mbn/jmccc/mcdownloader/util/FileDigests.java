@@ -0,0 +1,104 @@
+package org.to2mbn.jmccc.mcdownloader.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+/**
+ * Computes the digests of files through {@link FileChannel}s.
+ * <p>
+ * Unlike {@link org.to2mbn.jmccc.util.ChecksumUtils}, which copies the content
+ * into a small heap buffer, the small files are read into a direct buffer
+ * (one per thread), and the large files are mapped into the memory, so the
+ * content is passed to the digest without being copied into the heap.
+ * <p>
+ * A mapped file may not be deleted until the mapping is garbage-collected on
+ * some platforms (such as Windows), and a read error in a mapped region is
+ * thrown as an {@link InternalError}. The callers which are going to delete
+ * the files, or which are reading a damaged disk, should read the files
+ * without mapping them.
+ */
+public final class FileDigests {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The files not smaller than this are mapped into the memory.
+     */
+    private static final long MAPPING_THRESHOLD = 4 * 1024 * 1024;
+
+    /**
+     * The files are mapped in regions of this size, so the address space used
+     * by a thread is bounded.
+     */
+    private static final long MAPPING_REGION_SIZE = 64 * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private FileDigests() {
+    }
+
+    /**
+     * Computes the digest of the given file.
+     *
+     * @param file      the file
+     * @param algorithm the digest algorithm
+     * @return the digest of the file
+     * @throws IOException              if an I/O error occurs
+     * @throws NoSuchAlgorithmException if the algorithm doesn't exist
+     * @throws NullPointerException     if <code>file==null||algorithm==null</code>
+     */
+    public static byte[] digest(File file, String algorithm) throws IOException, NoSuchAlgorithmException {
+        return digest(file, algorithm, true);
+    }
+
+    /**
+     * Computes the digest of the given file.
+     *
+     * @param file          the file
+     * @param algorithm     the digest algorithm
+     * @param mapLargeFiles false to read the large files into the direct
+     *                      buffer instead of mapping them
+     * @return the digest of the file
+     * @throws IOException              if an I/O error occurs
+     * @throws NoSuchAlgorithmException if the algorithm doesn't exist
+     * @throws NullPointerException     if <code>file==null||algorithm==null</code>
+     */
+    public static byte[] digest(File file, String algorithm, boolean mapLargeFiles) throws IOException, NoSuchAlgorithmException {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(algorithm);
+
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (mapLargeFiles && size >= MAPPING_THRESHOLD) {
+                for (long position = 0; position < size; position += MAPPING_REGION_SIZE) {
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPING_REGION_SIZE, size - position));
+                    digest.update(region);
+                }
+            } else {
+                ByteBuffer buffer = BUFFERS.get();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        return digest.digest();
+    }
+
+}
@@ -0,0 +1,123 @@
+package org.to2mbn.jmccc.mcdownloader.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects the devices where the files are located.
+ */
+public final class StorageDevices {
+
+    private static final Logger LOGGER = Logger.getLogger(StorageDevices.class.getCanonicalName());
+
+    private static final int UNKNOWN = -1;
+    private static final int NON_ROTATIONAL = 0;
+    private static final int ROTATIONAL = 1;
+
+    private StorageDevices() {
+    }
+
+    /**
+     * Gets the device where the given file is, or will be located.
+     * <p>
+     * If the file doesn't exist, the device of its nearest existing ancestor
+     * is returned.
+     *
+     * @param file the file
+     * @return the device, null if it can't be detected
+     * @throws NullPointerException if <code>file==null</code>
+     */
+    public static FileStore deviceOf(File file) {
+        Objects.requireNonNull(file);
+        File existing = file.getAbsoluteFile();
+        while (existing != null && !existing.exists()) {
+            existing = existing.getParentFile();
+        }
+        if (existing == null) {
+            return null;
+        }
+        try {
+            return Files.getFileStore(existing.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Couldn't get the device of " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Detects whether the given device is rotational, such as an HDD.
+     * <p>
+     * Only works on Linux, where <code>FileStore.name()</code> is the block
+     * device.
+     *
+     * @param device the device
+     * @return true if the device is rotational, false if it is not or can't be
+     * detected
+     * @throws NullPointerException if <code>device==null</code>
+     * @see #isNonRotational(FileStore)
+     */
+    public static boolean isRotational(FileStore device) {
+        return detectRotational(device) == ROTATIONAL;
+    }
+
+    /**
+     * Detects whether the given device is known to be non-rotational, such as
+     * an SSD.
+     * <p>
+     * Only works on Linux, where <code>FileStore.name()</code> is the block
+     * device. On the other platforms (such as Windows) the device can't be
+     * detected, and this returns false.
+     *
+     * @param device the device
+     * @return true if the device is non-rotational, false if it is rotational
+     * or can't be detected
+     * @throws NullPointerException if <code>device==null</code>
+     * @see #isRotational(FileStore)
+     */
+    public static boolean isNonRotational(FileStore device) {
+        return detectRotational(device) == NON_ROTATIONAL;
+    }
+
+    private static int detectRotational(FileStore device) {
+        Objects.requireNonNull(device);
+        String name = device.name();
+        if (!name.startsWith("/dev/")) {
+            return UNKNOWN;
+        }
+        try {
+            // resolves the links such as /dev/mapper/xxx -> /dev/dm-0
+            Path blockDevice = new File(name).toPath().toRealPath();
+            File block = new File("/sys/class/block", blockDevice.getFileName().toString());
+            File rotational = new File(block, "queue/rotational");
+            if (!rotational.isFile()) {
+                // a partition, the queue belongs to the disk
+                rotational = new File(block.getCanonicalFile().getParentFile(), "queue/rotational");
+            }
+            if (!rotational.isFile()) {
+                return UNKNOWN;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(rotational), "US-ASCII"))) {
+                String line = reader.readLine();
+                if ("1".equals(line)) {
+                    return ROTATIONAL;
+                } else if ("0".equals(line)) {
+                    return NON_ROTATIONAL;
+                }
+                return UNKNOWN;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Couldn't detect whether " + name + " is rotational", e);
+            return UNKNOWN;
+        }
+    }
+
+}
@@ -0,0 +1,342 @@
+package org.to2mbn.jmccc.mcdownloader.util;
+
+import org.to2mbn.jmccc.util.FileUtils;
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the SHA-1 of the files under a directory.
+ * <p>
+ * Each entry records the size, the last modified time and the SHA-1 of a file.
+ * If the size and the last modified time of a file haven't changed since it was
+ * hashed, its SHA-1 is taken from the index, and the file won't be read again.
+ * <p>
+ * A file modified shortly before it was hashed may be modified again without
+ * changing its last modified time, so its entry is not trusted (the "racily
+ * clean" rule of git), and the file is hashed again when it's verified.
+ * <p>
+ * The index is saved to <code>${root}/.verified-index</code>. There is one
+ * index per directory, and it is shared in the JVM. The file downloaded to a
+ * directory which has an index is recorded with the SHA-1 it was verified
+ * against when the download completes, so it isn't hashed twice.
+ *
+ * @see #forDirectory(File)
+ */
+public class VerifiedFileIndex {
+
+    public static final String INDEX_FILE_NAME = ".verified-index";
+
+    public static final String HASH_ALGORITHM = "SHA-1";
+    private static final int MAGIC = 0x4a564649; // JVFI
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * The coarsest resolution of the last modified times, which is 2 seconds
+     * on FAT.
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private static final ConcurrentMap<Path, VerifiedFileIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the index of the given directory, loads it if necessary.
+     *
+     * @param root the directory
+     * @return the index of the directory
+     * @throws NullPointerException if <code>root==null</code>
+     */
+    public static VerifiedFileIndex forDirectory(File root) {
+        Objects.requireNonNull(root);
+        Path rootPath = toPath(root);
+        VerifiedFileIndex index = INDEXES.get(rootPath);
+        if (index == null) {
+            VerifiedFileIndex created = new VerifiedFileIndex(rootPath);
+            index = INDEXES.putIfAbsent(rootPath, created);
+            if (index == null) {
+                index = created;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Gets the index which the given file belongs to.
+     *
+     * @param file the file
+     * @return the index which the file belongs to, null if the file is not in a
+     * directory that has an index
+     */
+    public static VerifiedFileIndex lookup(File file) {
+        if (INDEXES.isEmpty()) {
+            return null;
+        }
+        Path path = toPath(file);
+        for (Map.Entry<Path, VerifiedFileIndex> entry : INDEXES.entrySet()) {
+            if (path.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static Path toPath(File file) {
+        return file.getAbsoluteFile().toPath().normalize();
+    }
+
+    private static class Entry {
+
+        final long size;
+        final long lastModified;
+        final byte[] hash;
+        final long recordedTime;
+
+        Entry(long size, long lastModified, byte[] hash, long recordedTime) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.recordedTime = recordedTime;
+        }
+
+        /**
+         * Returns true if the file has the same size and last modified time,
+         * and it hadn't been modified within the resolution of the last
+         * modified time before the entry was recorded.
+         */
+        boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified
+                    && lastModified + MODIFICATION_TIME_RESOLUTION <= recordedTime;
+        }
+
+    }
+
+    private final Path root;
+    private final File indexFile;
+    private final Object loadLock = new Object();
+    private final Object saveLock = new Object();
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded = false;
+    private volatile boolean dirty = false;
+
+    private VerifiedFileIndex(Path root) {
+        this.root = root;
+        this.indexFile = new File(root.toFile(), INDEX_FILE_NAME);
+    }
+
+    /**
+     * Gets the directory of the index.
+     *
+     * @return the directory of the index
+     */
+    public File getRoot() {
+        return root.toFile();
+    }
+
+    /**
+     * Checks the SHA-1 and the size of the file.
+     * <p>
+     * The file is read only if it has been modified since it was hashed last
+     * time.
+     *
+     * @param file the file to check
+     * @param hash the expected SHA-1
+     * @param size the expected size, -1 if unknown
+     * @return true if the file exists and matches the SHA-1 and the size
+     * @throws IOException              if an I/O error occurs
+     * @throws NoSuchAlgorithmException if the SHA-1 algorithm doesn't exist
+     */
+    public boolean verify(File file, String hash, long size) throws IOException, NoSuchAlgorithmException {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(hash);
+        ensureLoaded();
+
+        if (!file.isFile()) {
+            return false;
+        }
+
+        long actualSize = file.length();
+        if (size != -1 && actualSize != size) {
+            return false;
+        }
+
+        long lastModified = file.lastModified();
+        String key = keyOf(file);
+        Entry entry = key == null ? null : entries.get(key);
+        byte[] actualHash;
+        if (entry != null && entry.matches(actualSize, lastModified)) {
+            actualHash = entry.hash;
+        } else {
+            long hashedTime = System.currentTimeMillis();
+            actualHash = FileDigests.digest(file, HASH_ALGORITHM);
+            if (key != null) {
+                put(key, new Entry(actualSize, lastModified, actualHash, hashedTime));
+            }
+        }
+        return Arrays.equals(HexUtils.hexToBytes(hash), actualHash);
+    }
+
+    /**
+     * Checks whether the file has been verified to match the SHA-1, without
+     * reading it.
+     * <p>
+     * The size and the modification time are given by the caller, such as
+     * from a directory listing, so the file isn't accessed at all.
+     *
+     * @param file         the file to check
+     * @param hash         the expected SHA-1
+     * @param size         the current size of the file
+     * @param lastModified the current modification time of the file
+     * @return true if the file has been hashed with the same size and
+     * modification time, and matches the SHA-1; false if it doesn't match or
+     * needs to be hashed, such as when the entry is racily clean
+     */
+    public boolean isVerified(File file, String hash, long size, long lastModified) {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(hash);
+        ensureLoaded();
+
+        String key = keyOf(file);
+        Entry entry = key == null ? null : entries.get(key);
+        return entry != null && entry.matches(size, lastModified) && Arrays.equals(HexUtils.hexToBytes(hash), entry.hash);
+    }
+
+    /**
+     * Records the SHA-1 of the file.
+     * <p>
+     * The caller must ensure that <code>hash</code> is the SHA-1 of the current
+     * content of the file, and that the file won't be modified during
+     * recording.
+     * <p>
+     * The file has usually just been written, so its entry would be racily
+     * clean. Its last modified time is set back by the resolution of the last
+     * modified times, so that any later modification changes it.
+     *
+     * @param file the file
+     * @param hash the SHA-1 of the file
+     */
+    public void record(File file, byte[] hash) {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(hash);
+        ensureLoaded();
+
+        String key = keyOf(file);
+        if (key != null && file.isFile()) {
+            long recordedTime = System.currentTimeMillis();
+            if (file.lastModified() + MODIFICATION_TIME_RESOLUTION > recordedTime) {
+                // if it fails, the entry is racily clean, and the file is hashed again when it's verified
+                file.setLastModified(recordedTime - MODIFICATION_TIME_RESOLUTION);
+            }
+            put(key, new Entry(file.length(), file.lastModified(), hash.clone(), recordedTime));
+        }
+    }
+
+    /**
+     * Saves the index to the disk if it has been modified.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void save() throws IOException {
+        synchronized (saveLock) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+
+            File temp = new File(indexFile.getParentFile(), INDEX_FILE_NAME + ".tmp");
+            FileUtils.prepareWrite(temp);
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    // take a snapshot, the entries can be modified during saving
+                    Object[] snapshot = entries.entrySet().toArray();
+                    out.writeInt(snapshot.length);
+                    for (Object element : snapshot) {
+                        @SuppressWarnings("unchecked")
+                        Map.Entry<String, Entry> mapping = (Map.Entry<String, Entry>) element;
+                        Entry entry = mapping.getValue();
+                        out.writeUTF(mapping.getKey());
+                        out.writeLong(entry.size);
+                        out.writeLong(entry.lastModified);
+                        out.writeByte(entry.hash.length);
+                        out.write(entry.hash);
+                        out.writeLong(entry.recordedTime);
+                    }
+                }
+                Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                dirty = true;
+                temp.delete();
+                throw e;
+            }
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        entries.put(key, entry);
+        dirty = true;
+    }
+
+    private String keyOf(File file) {
+        Path path = toPath(file);
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (loadLock) {
+                if (!loaded) {
+                    try {
+                        load();
+                    } catch (IOException e) {
+                        // the index is broken, rebuild it
+                        entries.clear();
+                        dirty = true;
+                    }
+                    loaded = true;
+                }
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported index format: " + indexFile);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte[] hash = new byte[in.readUnsignedByte()];
+                in.readFully(hash);
+                entries.put(key, new Entry(size, lastModified, hash, in.readLong()));
+            }
+        } catch (FileNotFoundException e) {
+            // no index yet
+        }
+    }
+
+}
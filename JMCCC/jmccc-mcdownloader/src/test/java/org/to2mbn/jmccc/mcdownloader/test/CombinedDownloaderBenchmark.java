@@ -0,0 +1,237 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.download.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.MemoryDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadContext;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloaderImpl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Measures the submission path of {@link CombinedDownloaderImpl} under
+ * contention: many threads submit subtasks to one combined task at the same
+ * time, and the subtasks complete on other threads while the submissions are
+ * still in progress.
+ * <p>
+ * The time taken by each round and the bytes allocated by the submitting
+ * threads are printed. Only the correctness is asserted. It's not a part of
+ * the unit tests, run it with <code>mvn test -P benchmark</code>.
+ */
+public class CombinedDownloaderBenchmark {
+
+    private static final int THREADS = 16;
+    private static final int SUBTASKS_PER_THREAD = 3125;
+    private static final int SUBTASKS = THREADS * SUBTASKS_PER_THREAD;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private ExecutorService executor;
+    private ExecutorService completer;
+    private CombinedDownloaderImpl downloader;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(THREADS);
+        completer = Executors.newFixedThreadPool(4);
+        downloader = new CombinedDownloaderImpl(executor, new ImmediateDownloader(completer), 1);
+    }
+
+    @After
+    public void cleanup() {
+        downloader.shutdown();
+        executor.shutdownNow();
+        completer.shutdownNow();
+    }
+
+    @Test
+    public void benchmarkConcurrentSubmissions() throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runRound();
+        }
+
+        long[] times = new long[ROUNDS];
+        long[] allocations = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            ConcurrentSubmittingTask task = runRound();
+            times[i] = task.elapsedTime;
+            allocations[i] = task.allocatedBytes.get();
+        }
+        Arrays.sort(times);
+        Arrays.sort(allocations);
+
+        System.out.println(SUBTASKS + " subtasks from " + THREADS + " threads, median of " + ROUNDS + " rounds: "
+                + TimeUnit.NANOSECONDS.toMillis(times[ROUNDS / 2]) + " ms, "
+                + (allocations[ROUNDS / 2] < 0 ? "allocation not measurable on this JVM" : allocations[ROUNDS / 2] / SUBTASKS + " bytes allocated per subtask by the submitting threads"));
+    }
+
+    private ConcurrentSubmittingTask runRound() throws Exception {
+        CountingCallback callback = new CountingCallback();
+        ConcurrentSubmittingTask task = new ConcurrentSubmittingTask(callback);
+        int submitted = downloader.download(task, null).get(60, TimeUnit.SECONDS);
+
+        assertEquals(SUBTASKS, submitted);
+        assertEquals(SUBTASKS, callback.done.get());
+        assertEquals(0, callback.failed.get());
+        return task;
+    }
+
+    /**
+     * Gets the bytes allocated by the current thread.
+     *
+     * @return the bytes allocated, -1 if the JVM doesn't support it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Submits the subtasks from {@link #THREADS} threads which are released at
+     * once, and returns the number of the subtasks submitted.
+     */
+    private static class ConcurrentSubmittingTask extends CombinedDownloadTask<Integer> {
+
+        final AtomicLong allocatedBytes = new AtomicLong();
+        volatile long elapsedTime;
+
+        private final CountingCallback callback;
+
+        ConcurrentSubmittingTask(CountingCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void execute(final CombinedDownloadContext<Integer> context) throws Exception {
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicInteger submitted = new AtomicInteger();
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+            Thread[] threads = new Thread[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                // the subtasks are created in advance, so only the submissions are measured
+                final MemoryDownloadTask[] subtasks = new MemoryDownloadTask[SUBTASKS_PER_THREAD];
+                for (int j = 0; j < SUBTASKS_PER_THREAD; j++) {
+                    subtasks[j] = new MemoryDownloadTask("http://localhost/" + (i * SUBTASKS_PER_THREAD + j));
+                }
+                threads[i] = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            long allocatedBefore = allocatedBytes();
+                            for (MemoryDownloadTask subtask : subtasks) {
+                                context.submit(subtask, callback, true);
+                                submitted.incrementAndGet();
+                            }
+                            long allocatedAfter = allocatedBytes();
+                            allocatedBytes.addAndGet(allocatedBefore == -1 ? -1 : allocatedAfter - allocatedBefore);
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                }, "jmccc-benchmark-submitter-" + i);
+                threads[i].start();
+            }
+
+            final long startTime = System.nanoTime();
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull(failure.get());
+
+            context.awaitAllTasks(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    elapsedTime = System.nanoTime() - startTime;
+                    context.done(submitted.get());
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Completes every task on the given executor without any I/O, so only the
+     * overhead of the combined downloader is measured.
+     */
+    private static class ImmediateDownloader implements Downloader {
+
+        private final ExecutorService completer;
+
+        ImmediateDownloader(ExecutorService completer) {
+            this.completer = completer;
+        }
+
+        @Override
+        public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+            return download(task, callback, 1);
+        }
+
+        @Override
+        public <T> Future<T> download(DownloadTask<T> task, final DownloadCallback<T> callback, int tries) {
+            return completer.submit(new Callable<T>() {
+
+                @Override
+                public T call() throws Exception {
+                    callback.done(null);
+                    return null;
+                }
+            });
+        }
+    }
+
+    private static class CountingCallback implements DownloadCallback<byte[]> {
+
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        @Override
+        public void done(byte[] result) {
+            done.incrementAndGet();
+        }
+
+        @Override
+        public void failed(Throwable e) {
+            failed.incrementAndGet();
+        }
+
+        @Override
+        public void cancelled() {
+            failed.incrementAndGet();
+        }
+
+        @Override
+        public void updateProgress(long done, long total) {
+        }
+
+        @Override
+        public void retry(Throwable e, int current, int max) {
+        }
+    }
+
+}
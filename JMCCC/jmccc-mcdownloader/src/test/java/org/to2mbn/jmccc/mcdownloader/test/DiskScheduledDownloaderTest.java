@@ -0,0 +1,161 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.MinecraftDownloader;
+import org.to2mbn.jmccc.mcdownloader.MinecraftDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.DownloadSession;
+import org.to2mbn.jmccc.mcdownloader.download.FileDownloadTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DiskScheduledDownloaderTest {
+
+    private static final int SEGMENT_THRESHOLD = 1024 * 1024;
+
+    private StubHttpServer server;
+    private MinecraftDownloader downloader;
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubHttpServer();
+        // the ranges are supported by the server, so the requests go through the SegmentedDownloader
+        downloader = MinecraftDownloaderBuilder.create()
+                .disableEhcache()
+                .setSegmentThreshold(SEGMENT_THRESHOLD)
+                .setMaxSegmentsPerFile(4)
+                .build();
+        dir = Files.createTempDirectory("jmccc-disk-scheduled").toFile();
+    }
+
+    @After
+    public void cleanup() {
+        downloader.shutdown();
+        server.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testStreamedSessionScheduled() throws Exception {
+        // larger than a staging buffer, so the file is preallocated
+        byte[] content = randomBytes(300 * 1024);
+        server.put("/streamed", content);
+
+        RecordingTask task = new RecordingTask(server.uri("/streamed"), new File(dir, "streamed"));
+        downloader.download(task, null).get(30, TimeUnit.SECONDS);
+
+        assertEquals(content.length, task.sessionLength);
+        assertTrue(task.sessionThread, task.sessionThread.startsWith("jmccc-disk-writer-"));
+        assertArrayEquals(content, Files.readAllBytes(task.getTarget().toPath()));
+    }
+
+    @Test
+    public void testSegmentedSession() throws Exception {
+        byte[] content = randomBytes(SEGMENT_THRESHOLD * 3 + 7);
+        server.put("/segmented", content);
+
+        FileDownloadTask task = new FileDownloadTask(server.uri("/segmented"), new File(dir, "segmented"));
+        downloader.download(task, null).get(30, TimeUnit.SECONDS);
+
+        assertEquals(4, server.getRangeRequests());
+        assertArrayEquals(content, Files.readAllBytes(task.getTarget().toPath()));
+    }
+
+    @Test
+    public void testStalePartDiscarded() throws Exception {
+        byte[] content = randomBytes(1000);
+        server.put("/stale", content);
+
+        FileDownloadTask task = new FileDownloadTask(server.uri("/stale"), new File(dir, "stale"));
+        // longer than the resource, so the server responds 416 to the resuming request
+        Files.write(new File(dir, "stale.part").toPath(), randomBytes(2000));
+        Files.write(new File(dir, "stale.part.validator").toPath(), StubHttpServer.etagOf(content).getBytes("UTF-8"));
+        downloader.download(task, null).get(30, TimeUnit.SECONDS);
+
+        assertArrayEquals(content, Files.readAllBytes(task.getTarget().toPath()));
+        assertFalse(new File(dir, "stale.part.validator").exists());
+    }
+
+    @Test
+    public void testPartResumed() throws Exception {
+        byte[] content = randomBytes(1000);
+        server.put("/resumed", content);
+
+        FileDownloadTask task = new FileDownloadTask(server.uri("/resumed"), new File(dir, "resumed"));
+        // differs from the resource, so it can be told whether the part is resumed
+        byte[] part = randomBytes(400);
+        Files.write(new File(dir, "resumed.part").toPath(), part);
+        Files.write(new File(dir, "resumed.part.validator").toPath(), StubHttpServer.etagOf(content).getBytes("UTF-8"));
+        downloader.download(task, null).get(30, TimeUnit.SECONDS);
+
+        byte[] expected = content.clone();
+        System.arraycopy(part, 0, expected, 0, part.length);
+        assertArrayEquals(expected, Files.readAllBytes(task.getTarget().toPath()));
+        assertFalse(new File(dir, "resumed.part.validator").exists());
+    }
+
+    @Test
+    public void testChangedPartNotResumed() throws Exception {
+        byte[] content = randomBytes(1000);
+        server.put("/changed", content);
+
+        FileDownloadTask task = new FileDownloadTask(server.uri("/changed"), new File(dir, "changed"));
+        // received from an older version of the resource
+        Files.write(new File(dir, "changed.part").toPath(), randomBytes(400));
+        Files.write(new File(dir, "changed.part.validator").toPath(), "\"old\"".getBytes("UTF-8"));
+        downloader.download(task, null).get(30, TimeUnit.SECONDS);
+
+        assertArrayEquals(content, Files.readAllBytes(task.getTarget().toPath()));
+    }
+
+    @Test
+    public void testPartWithoutValidatorNotResumed() throws Exception {
+        byte[] content = randomBytes(1000);
+        server.put("/unvalidated", content);
+
+        FileDownloadTask task = new FileDownloadTask(server.uri("/unvalidated"), new File(dir, "unvalidated"));
+        Files.write(new File(dir, "unvalidated.part").toPath(), randomBytes(400));
+        downloader.download(task, null).get(30, TimeUnit.SECONDS);
+
+        assertArrayEquals(content, Files.readAllBytes(task.getTarget().toPath()));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class RecordingTask extends FileDownloadTask {
+
+        volatile long sessionLength = -2;
+        volatile String sessionThread;
+
+        RecordingTask(URI uri, File target) {
+            super(uri, target);
+        }
+
+        @Override
+        public DownloadSession<Void> createSession(long length) throws IOException {
+            sessionLength = length;
+            sessionThread = Thread.currentThread().getName();
+            return super.createSession(length);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.download.DownloaderService;
+import org.to2mbn.jmccc.mcdownloader.download.Http2Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.HttpAsyncDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.MemoryDownloadTask;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A busy session pauses the input of its response, rather than blocking the
+ * only I/O dispatcher.
+ */
+public class FlowControlTest {
+
+    private static final int LARGE_SIZE = 8 * 1024 * 1024;
+    private static final int PAUSE_AT = 256 * 1024;
+
+    private StubHttpServer server;
+    private ExecutorService executor;
+    private byte[] large;
+    private byte[] small;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubHttpServer();
+        executor = Executors.newFixedThreadPool(4);
+        large = randomBytes(LARGE_SIZE);
+        small = randomBytes(1000);
+        server.put("/large", large);
+        server.put("/small", small);
+    }
+
+    @After
+    public void cleanup() {
+        executor.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testHttpAsyncDownloader() throws Exception {
+        DownloaderService downloader = new HttpAsyncDownloader(HttpAsyncClientBuilder.create()
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(1)
+                        .build()),
+                executor);
+        try {
+            downloadWhilePaused(downloader);
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    @Test
+    public void testHttp2DownloaderOverHttp1() throws Exception {
+        DownloaderService downloader = new Http2Downloader(
+                H2AsyncClientBuilder.create(),
+                HttpAsyncClients.custom()
+                        .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_1)
+                        .setIOReactorConfig(org.apache.hc.core5.reactor.IOReactorConfig.custom()
+                                .setIoThreadCount(1)
+                                .build()),
+                executor);
+        try {
+            downloadWhilePaused(downloader);
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    private void downloadWhilePaused(DownloaderService downloader) throws Exception {
+        PausingTask task = new PausingTask(server.uri("/large"), PAUSE_AT);
+        Future<byte[]> paused = downloader.download(task, null);
+        assertTrue(task.paused.await(30, TimeUnit.SECONDS));
+
+        // the I/O dispatcher isn't blocked
+        assertArrayEquals(small, downloader.download(new MemoryDownloadTask(server.uri("/small")), null).get(30, TimeUnit.SECONDS));
+
+        // and the response isn't read while the session is busy
+        Thread.sleep(200);
+        assertTrue(String.valueOf(task.getReceived()), task.getReceived() < LARGE_SIZE / 2);
+
+        task.release();
+        assertArrayEquals(large, paused.get(30, TimeUnit.SECONDS));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,260 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.core5.function.Decorator;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.entity.NoopEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncResponseBuilder;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http.nio.ssl.SecurePortStrategy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.http2.ssl.H2ClientTlsStrategy;
+import org.apache.hc.core5.http2.ssl.H2ServerTlsStrategy;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.MinecraftDownloader;
+import org.to2mbn.jmccc.mcdownloader.MinecraftDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.DownloaderService;
+import org.to2mbn.jmccc.mcdownloader.download.FileDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.Http2Downloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Http2DownloaderTest {
+
+    private static final int FILES = 64;
+
+    private static final String LARGE_PATH = "/large";
+    private static final byte[] LARGE_CONTENT = new byte[8 * 1024 * 1024];
+
+    static {
+        new Random(0).nextBytes(LARGE_CONTENT);
+    }
+
+    // a self-signed certificate for 127.0.0.1
+    private static final String KEYSTORE = "/stub-server.jks";
+    private static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+
+    private File dir;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("jmccc-http2").toFile();
+    }
+
+    @After
+    public void deleteDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testMultiplexed() throws Exception {
+        Set<SocketAddress> connections = Collections.newSetFromMap(new ConcurrentHashMap<SocketAddress, Boolean>());
+        HttpAsyncServer server = createH2Server(connections);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        DownloaderService downloader = null;
+        try {
+            ListenerEndpoint endpoint = server.listen(new InetSocketAddress("127.0.0.1", 0)).get();
+            int port = ((InetSocketAddress) endpoint.getAddress()).getPort();
+
+            downloader = createH2Downloader(executor);
+            downloadAll(downloader, "https", port);
+
+            // all the requests are multiplexed over one connection
+            assertEquals(1, connections.size());
+        } finally {
+            if (downloader != null) {
+                downloader.shutdown();
+            }
+            executor.shutdown();
+            server.initiateShutdown();
+            server.awaitShutdown(TimeValue.ofSeconds(5));
+        }
+    }
+
+    @Test
+    public void testPausedStream() throws Exception {
+        Set<SocketAddress> connections = Collections.newSetFromMap(new ConcurrentHashMap<SocketAddress, Boolean>());
+        HttpAsyncServer server = createH2Server(connections);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        DownloaderService downloader = null;
+        try {
+            ListenerEndpoint endpoint = server.listen(new InetSocketAddress("127.0.0.1", 0)).get();
+            int port = ((InetSocketAddress) endpoint.getAddress()).getPort();
+            downloader = createH2Downloader(executor);
+
+            PausingTask task = new PausingTask(URI.create("https://127.0.0.1:" + port + LARGE_PATH), 256 * 1024);
+            Future<byte[]> paused = downloader.download(task, null);
+            assertTrue(task.paused.await(30, TimeUnit.SECONDS));
+
+            // the other streams over the connection aren't blocked by the paused one
+            downloadAll(downloader, "https", port);
+            assertEquals(1, connections.size());
+            assertTrue(String.valueOf(task.getReceived()), task.getReceived() < LARGE_CONTENT.length / 2);
+
+            task.release();
+            assertArrayEquals(LARGE_CONTENT, paused.get(30, TimeUnit.SECONDS));
+        } finally {
+            if (downloader != null) {
+                downloader.shutdown();
+            }
+            executor.shutdown();
+            server.initiateShutdown();
+            server.awaitShutdown(TimeValue.ofSeconds(5));
+        }
+    }
+
+    private HttpAsyncServer createH2Server(final Set<SocketAddress> connections) throws Exception {
+        URL keystore = getClass().getResource(KEYSTORE);
+        SSLContext serverContext = SSLContexts.custom().loadKeyMaterial(keystore, KEYSTORE_PASSWORD, KEYSTORE_PASSWORD).build();
+        HttpAsyncServer server = H2ServerBootstrap.bootstrap()
+                .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_2)
+                .setTlsStrategy(new H2ServerTlsStrategy(serverContext, new SecurePortStrategy() {
+
+                    @Override
+                    public boolean isSecure(SocketAddress localAddress) {
+                        return true;
+                    }
+                }))
+                .setIOSessionDecorator(new Decorator<IOSession>() {
+
+                    @Override
+                    public IOSession decorate(IOSession session) {
+                        // invoked again when the TLS session starts
+                        connections.add(session.getRemoteAddress());
+                        return session;
+                    }
+                })
+                .register("*", new StubHandler())
+                .create();
+        server.start();
+        return server;
+    }
+
+    private DownloaderService createH2Downloader(ExecutorService executor) throws Exception {
+        URL keystore = getClass().getResource(KEYSTORE);
+        SSLContext clientContext = SSLContexts.custom().loadTrustMaterial(keystore, KEYSTORE_PASSWORD).build();
+        return new Http2Downloader(
+                H2AsyncClientBuilder.create().setTlsStrategy(new H2ClientTlsStrategy(clientContext)),
+                HttpAsyncClients.custom(),
+                executor);
+    }
+
+    @Test
+    public void testHttp1OnlyServer() throws Exception {
+        // resources.download.minecraft.net serves plain http, and doesn't support h2c
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] content = contentOf(exchange.getRequestURI().getPath());
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        MinecraftDownloader downloader = MinecraftDownloaderBuilder.create()
+                .enableHttp2()
+                .disableEhcache()
+                .build();
+        try {
+            downloadAll(downloader, "http", server.getAddress().getPort());
+        } finally {
+            downloader.shutdown();
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdown();
+        }
+    }
+
+    private void downloadAll(DownloaderService downloader, String scheme, int port) throws Exception {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            futures.add(downloader.download(new FileDownloadTask(URI.create(scheme + "://127.0.0.1:" + port + "/" + i), new File(dir, String.valueOf(i))), null));
+        }
+        for (Future<Void> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        for (int i = 0; i < FILES; i++) {
+            assertArrayEquals(contentOf("/" + i), Files.readAllBytes(new File(dir, String.valueOf(i)).toPath()));
+        }
+    }
+
+    private static byte[] contentOf(String path) {
+        if (LARGE_PATH.equals(path)) {
+            return LARGE_CONTENT;
+        }
+        byte[] content = new byte[1024 + path.hashCode() % 1024];
+        Arrays.fill(content, (byte) path.hashCode());
+        return content;
+    }
+
+    private static class StubHandler implements AsyncServerRequestHandler<Message<HttpRequest, Void>> {
+
+        @Override
+        public AsyncRequestConsumer<Message<HttpRequest, Void>> prepare(HttpRequest request, EntityDetails entityDetails, HttpContext context) {
+            return new BasicRequestConsumer<>(entityDetails == null ? null : new NoopEntityConsumer());
+        }
+
+        @Override
+        public void handle(Message<HttpRequest, Void> request, ResponseTrigger responseTrigger, HttpContext context) throws HttpException, IOException {
+            byte[] content = contentOf(request.getHead().getPath());
+            responseTrigger.submitResponse(AsyncResponseBuilder.create(200)
+                    .setEntity(AsyncEntityProducers.create(content, ContentType.APPLICATION_OCTET_STREAM))
+                    .build(), context);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.ArtifactCategory;
+import org.to2mbn.jmccc.mcdownloader.InstallJournal;
+import org.to2mbn.jmccc.mcdownloader.InstallPlan;
+import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+import org.to2mbn.jmccc.version.Versions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class InstallJournalTest {
+
+    private File root;
+    private MinecraftDirectory mcdir;
+
+    @Before
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("jmccc-journal").toFile();
+        mcdir = new MinecraftDirectory(root);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        InstallJournal journal = begin();
+        journal.done(ArtifactCategory.GAME_JAR, 0);
+        journal.close();
+
+        InstallPlan restored = new InstallJournal(mcdir, Collections.singleton("child")).restore();
+
+        assertNotNull(restored);
+        // the game jar doesn't exist, so it's not done
+        assertEquals(1, restored.getGameJars().size());
+    }
+
+    @Test
+    public void testIntermediateVersionModified() throws Exception {
+        InstallJournal journal = begin();
+        journal.close();
+
+        // neither the leaf nor the root of the hierarchy, and its size changes
+        createVersion("middle", "{\"id\":\"middle\",\"inheritsFrom\":\"root\",\"mainClass\":\"Modified\"}");
+
+        assertNull(new InstallJournal(mcdir, Collections.singleton("child")).restore());
+    }
+
+    private InstallJournal begin() throws Exception {
+        createVersion("root", "{\"id\":\"root\",\"mainClass\":\"Main\",\"minecraftArguments\":\"\",\"libraries\":[]}");
+        createVersion("middle", "{\"id\":\"middle\",\"inheritsFrom\":\"root\"}");
+        createVersion("child", "{\"id\":\"child\",\"inheritsFrom\":\"middle\"}");
+        Version version = Versions.resolveVersion(mcdir, "child");
+
+        InstallPlan plan = new InstallPlan(Collections.singletonMap("child", version), Collections.singleton(version),
+                Collections.<Library>emptySet(), Collections.<Asset>emptySet(),
+                new EnumMap<ArtifactCategory, Set<MinecraftDownloadProvider>>(ArtifactCategory.class));
+        InstallJournal journal = new InstallJournal(mcdir, Collections.singleton("child"));
+        journal.begin(plan);
+        return journal;
+    }
+
+    private void createVersion(String version, String json) throws IOException {
+        File file = mcdir.getVersionJson(version);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), json.getBytes("UTF-8"));
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.IntegrityReport;
+import org.to2mbn.jmccc.mcdownloader.IntegrityReport.Problem;
+import org.to2mbn.jmccc.mcdownloader.IntegrityReport.ProblemType;
+import org.to2mbn.jmccc.mcdownloader.IntegrityScanner;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.to2mbn.jmccc.util.HexUtils.bytesToHex;
+
+public class IntegrityScannerTest {
+
+    private static final byte[] JAR = "not really a jar".getBytes();
+
+    private File root;
+    private MinecraftDirectory mcdir;
+
+    @Before
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("jmccc-integrity").toFile();
+        mcdir = new MinecraftDirectory(root);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void testHealthy() throws Exception {
+        createVersion("healthy", sha1Hex(JAR));
+
+        IntegrityReport report = new IntegrityScanner(mcdir).scan();
+
+        assertTrue(report.isHealthy());
+        assertEquals(1, report.getCheckedFiles());
+    }
+
+    @Test
+    public void testCheckErrorNotHealthy() throws Exception {
+        // the malformed hash fails the check, and the files after it are still checked
+        createVersion("a-malformed", "not a sha1");
+        createVersion("b-corrupted", sha1Hex(new byte[0]));
+
+        IntegrityReport report = new IntegrityScanner(mcdir)
+                .setIoScheduling(IntegrityScanner.IoScheduling.SEQUENTIAL)
+                .scan();
+
+        assertFalse(report.isHealthy());
+        Map<String, ProblemType> problems = new HashMap<>();
+        for (Problem problem : report.getProblems()) {
+            problems.put(problem.getFile().getName(), problem.getType());
+        }
+        assertEquals(ProblemType.UNREADABLE, problems.get("a-malformed.jar"));
+        assertEquals(ProblemType.CORRUPTED, problems.get("b-corrupted.jar"));
+    }
+
+    private void createVersion(String version, String hash) throws IOException {
+        File dir = mcdir.getVersion(version);
+        dir.mkdirs();
+        String json = "{\"id\":\"" + version + "\",\"mainClass\":\"Main\",\"minecraftArguments\":\"\",\"libraries\":[],"
+                + "\"downloads\":{\"client\":{\"sha1\":\"" + hash + "\",\"url\":\"http://localhost/" + version + ".jar\",\"size\":" + JAR.length + "}}}";
+        Files.write(mcdir.getVersionJson(version).toPath(), json.getBytes("UTF-8"));
+        Files.write(mcdir.getVersionJar(version).toPath(), JAR);
+    }
+
+    private static String sha1Hex(byte[] data) throws Exception {
+        return bytesToHex(MessageDigest.getInstance("SHA-1").digest(data));
+    }
+
+}
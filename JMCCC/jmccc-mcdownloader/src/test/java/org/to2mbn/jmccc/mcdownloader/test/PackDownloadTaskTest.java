@@ -0,0 +1,162 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.download.DownloaderService;
+import org.to2mbn.jmccc.mcdownloader.download.JdkHttpDownloader;
+import org.to2mbn.jmccc.mcdownloader.provider.PackDownloadTask;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Proxy;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import static org.to2mbn.jmccc.util.HexUtils.bytesToHex;
+
+/**
+ * Unpacks the fixtures in <code>/pack</code>, which contain a jar with the
+ * entries below, followed by their checksums.
+ */
+public class PackDownloadTaskTest {
+
+    private static final String HELLO = "Hello, pack200!\n";
+
+    private StubHttpServer server;
+    private DownloaderService downloader;
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        // pack200 has been removed since java 14
+        assumeTrue(isPack200Available());
+        server = new StubHttpServer();
+        downloader = new JdkHttpDownloader(2, 10000, 10000, 1000, Proxy.NO_PROXY);
+        dir = Files.createTempDirectory("jmccc-pack").toFile();
+    }
+
+    @After
+    public void cleanup() {
+        if (server == null) {
+            return;
+        }
+        downloader.shutdown();
+        server.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testPack() throws Exception {
+        File target = download("/library.jar.pack", readFixture("library.jar.pack"), false);
+        verifyJar(target);
+    }
+
+    @Test
+    public void testXZPack() throws Exception {
+        File target = download("/library.jar.pack.xz", readFixture("library.jar.pack.xz"), true);
+        verifyJar(target);
+    }
+
+    @Test
+    public void testBadChecksum() throws Exception {
+        byte[] pack = readFixture("library.jar.pack");
+        String data = new String(pack, "ISO-8859-1");
+        String checksum = sha1Hex(HELLO.getBytes("UTF-8"));
+        int index = data.lastIndexOf(checksum);
+        assertFalse(index == -1);
+        byte[] badChecksum = sha1Hex(new byte[0]).getBytes("ISO-8859-1");
+        System.arraycopy(badChecksum, 0, pack, index, badChecksum.length);
+
+        try {
+            download("/bad.jar.pack", pack, false);
+            fail();
+        } catch (ExecutionException e) {
+            // expected
+        }
+        assertFalse(new File(dir, "library.jar").exists());
+    }
+
+    private File download(String path, byte[] content, boolean xz) throws Exception {
+        server.put(path, content);
+        File target = new File(dir, "library.jar");
+        downloader.download(new PackDownloadTask(server.uri(path), target, xz), null).get(30, TimeUnit.SECONDS);
+        return target;
+    }
+
+    private void verifyJar(File target) throws Exception {
+        Map<String, byte[]> entries = new HashMap<>();
+        entries.put("hello.txt", HELLO.getBytes("UTF-8"));
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            lines.append("line ").append(i).append('\n');
+        }
+        entries.put("dir/lines.txt", lines.toString().getBytes("UTF-8"));
+
+        try (JarFile jar = new JarFile(target)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                JarEntry jarEntry = jar.getJarEntry(entry.getKey());
+                assertNotNull(entry.getKey(), jarEntry);
+                try (InputStream in = jar.getInputStream(jarEntry)) {
+                    assertArrayEquals(entry.getValue(), readFully(in));
+                }
+            }
+
+            JarEntry checksumsEntry = jar.getJarEntry("checksums.sha1");
+            assertNotNull(checksumsEntry);
+            String checksums;
+            try (InputStream in = jar.getInputStream(checksumsEntry)) {
+                checksums = new String(readFully(in), "UTF-8");
+            }
+            assertEquals(sha1Hex(entries.get("hello.txt")) + " hello.txt\n"
+                    + sha1Hex(entries.get("dir/lines.txt")) + " dir/lines.txt\n", checksums);
+        }
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/pack/" + name)) {
+            return readFully(in);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha1Hex(byte[] data) throws Exception {
+        return bytesToHex(MessageDigest.getInstance("SHA-1").digest(data));
+    }
+
+    private static boolean isPack200Available() {
+        try {
+            Class.forName("java.util.jar.Pack200");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.to2mbn.jmccc.mcdownloader.download.DownloadSession;
+import org.to2mbn.jmccc.mcdownloader.download.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.FlowControlledDownloadSession;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Downloads into memory, and keeps the session busy once the given number of
+ * bytes are received, until it's released.
+ */
+class PausingTask extends DownloadTask<byte[]> {
+
+    final CountDownLatch paused = new CountDownLatch(1);
+
+    private final long pauseAt;
+
+    // guarded by this
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private boolean released = false;
+    private Runnable resume;
+
+    PausingTask(URI uri, long pauseAt) {
+        super(uri);
+        this.pauseAt = pauseAt;
+    }
+
+    synchronized int getReceived() {
+        return received.size();
+    }
+
+    void release() {
+        Runnable toResume;
+        synchronized (this) {
+            released = true;
+            toResume = resume;
+            resume = null;
+        }
+        if (toResume != null) {
+            toResume.run();
+        }
+    }
+
+    @Override
+    public DownloadSession<byte[]> createSession() {
+        return new FlowControlledDownloadSession<byte[]>() {
+
+            @Override
+            public void receiveData(ByteBuffer data) {
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                synchronized (PausingTask.this) {
+                    received.write(bytes, 0, bytes.length);
+                }
+            }
+
+            @Override
+            public boolean pauseIfBusy(Runnable resume) {
+                synchronized (PausingTask.this) {
+                    if (released || received.size() < pauseAt) {
+                        return false;
+                    }
+                    PausingTask.this.resume = resume;
+                }
+                paused.countDown();
+                return true;
+            }
+
+            @Override
+            public byte[] completed() {
+                synchronized (PausingTask.this) {
+                    return received.toByteArray();
+                }
+            }
+
+            @Override
+            public void failed() {
+            }
+        };
+    }
+
+}
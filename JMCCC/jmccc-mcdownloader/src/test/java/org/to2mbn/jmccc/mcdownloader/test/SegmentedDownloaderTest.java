@@ -0,0 +1,96 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.download.DownloaderService;
+import org.to2mbn.jmccc.mcdownloader.download.FileDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.JdkHttpDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.SegmentedDownloadSession;
+import org.to2mbn.jmccc.mcdownloader.download.SegmentedDownloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Proxy;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SegmentedDownloaderTest {
+
+    private static final int SEGMENT_THRESHOLD = 16 * 1024;
+
+    private StubHttpServer server;
+    private DownloaderService downloader;
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubHttpServer();
+        downloader = new SegmentedDownloader(new JdkHttpDownloader(4, 10000, 10000, 1000, Proxy.NO_PROXY), SEGMENT_THRESHOLD, 4);
+        dir = Files.createTempDirectory("jmccc-segmented").toFile();
+    }
+
+    @After
+    public void cleanup() {
+        downloader.shutdown();
+        server.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testSmallFileStreamed() throws Exception {
+        byte[] content = randomBytes(SEGMENT_THRESHOLD);
+        server.put("/small", content);
+
+        CountingTask task = new CountingTask(server.uri("/small"), new File(dir, "small"));
+        downloader.download(task, null).get(30, TimeUnit.SECONDS);
+
+        assertEquals(0, task.segmentedSessions.get());
+        assertEquals(1, server.getRequests());
+        assertArrayEquals(content, Files.readAllBytes(task.getTarget().toPath()));
+    }
+
+    @Test
+    public void testLargeFileSegmented() throws Exception {
+        byte[] content = randomBytes(SEGMENT_THRESHOLD * 5 + 7);
+        server.put("/large", content);
+
+        CountingTask task = new CountingTask(server.uri("/large"), new File(dir, "large"));
+        downloader.download(task, null).get(30, TimeUnit.SECONDS);
+
+        assertEquals(1, task.segmentedSessions.get());
+        assertEquals(4, server.getRangeRequests());
+        assertArrayEquals(content, Files.readAllBytes(task.getTarget().toPath()));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class CountingTask extends FileDownloadTask {
+
+        final AtomicInteger segmentedSessions = new AtomicInteger();
+
+        CountingTask(URI uri, File target) {
+            super(uri, target);
+        }
+
+        @Override
+        public SegmentedDownloadSession<Void> createSegmentedSession(long length) throws IOException {
+            segmentedSessions.incrementAndGet();
+            return super.createSegmentedSession(length);
+        }
+    }
+
+}
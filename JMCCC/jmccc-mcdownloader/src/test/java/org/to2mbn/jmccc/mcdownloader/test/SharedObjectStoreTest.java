@@ -0,0 +1,86 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.SharedObjectStore;
+import org.to2mbn.jmccc.mcdownloader.util.VerifiedFileIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.to2mbn.jmccc.util.HexUtils.bytesToHex;
+
+public class SharedObjectStoreTest {
+
+    private static final byte[] CONTENT = "shared object".getBytes();
+
+    private File root;
+    private SharedObjectStore store;
+    private String hash;
+
+    @Before
+    public void setup() throws Exception {
+        root = Files.createTempDirectory("jmccc-store").toFile();
+        store = new SharedObjectStore(new File(root, "store"));
+        hash = bytesToHex(MessageDigest.getInstance("SHA-1").digest(CONTENT));
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void testStoredRecorded() throws Exception {
+        File file = new File(root, "file");
+        Files.write(file.toPath(), CONTENT);
+        store.store(hash, file);
+
+        File object = store.getObject(hash);
+        assertTrue(VerifiedFileIndex.forDirectory(store.getRoot()).isVerified(object, hash, object.length(), object.lastModified()));
+
+        File target = new File(root, "target");
+        assertTrue(store.retrieve(hash, CONTENT.length, target, true));
+        assertArrayEquals(CONTENT, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testModifiedObjectRemoved() throws Exception {
+        File file = new File(root, "file");
+        Files.write(file.toPath(), CONTENT);
+        store.store(hash, file);
+
+        // modified in place through the hard link, and the size is kept
+        File object = store.getObject(hash);
+        byte[] modified = CONTENT.clone();
+        modified[0] = 'S';
+        Files.write(object.toPath(), modified);
+
+        assertFalse(store.retrieve(hash, CONTENT.length, new File(root, "target"), true));
+        assertFalse(object.exists());
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local HTTP/1.1 server which serves the given contents, and supports the
+ * single range requests and <code>If-Range</code> with the <code>ETag</code>.
+ */
+class StubHttpServer implements AutoCloseable {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d+)-(\\d*)$");
+
+    private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    StubHttpServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    void put(String path, byte[] content) {
+        contents.put(path, content);
+    }
+
+    URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    static String etagOf(byte[] content) {
+        return "\"" + Integer.toHexString(Arrays.hashCode(content)) + "\"";
+    }
+
+    int getRequests() {
+        return requests.get();
+    }
+
+    int getRangeRequests() {
+        return rangeRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        byte[] content = contents.get(exchange.getRequestURI().getPath());
+        if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        String etag = etagOf(content);
+        exchange.getResponseHeaders().set("ETag", etag);
+
+        int start = 0;
+        int end = content.length - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (range != null && ifRange != null && !ifRange.equals(etag)) {
+            // the resource has changed, send the whole of it
+            range = null;
+        }
+        if (range != null) {
+            rangeRequests.incrementAndGet();
+            Matcher matcher = RANGE_PATTERN.matcher(range.trim());
+            if (!matcher.matches() || Long.parseLong(matcher.group(1)) >= content.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            start = Integer.parseInt(matcher.group(1));
+            if (!matcher.group(2).isEmpty()) {
+                end = (int) Math.min(end, Long.parseLong(matcher.group(2)));
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        }
+        exchange.sendResponseHeaders(range == null ? 200 : 206, end - start + 1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, start, end - start + 1);
+        }
+    }
+
+}
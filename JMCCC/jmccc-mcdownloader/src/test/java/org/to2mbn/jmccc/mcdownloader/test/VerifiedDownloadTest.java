@@ -0,0 +1,93 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.download.DownloaderService;
+import org.to2mbn.jmccc.mcdownloader.download.FileDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.JdkHttpDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.SegmentedDownloader;
+import org.to2mbn.jmccc.mcdownloader.util.VerifiedFileIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Proxy;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.to2mbn.jmccc.util.HexUtils.bytesToHex;
+
+public class VerifiedDownloadTest {
+
+    private static final int SEGMENT_THRESHOLD = 16 * 1024;
+
+    private StubHttpServer server;
+    private DownloaderService downloader;
+    private File dir;
+    private VerifiedFileIndex index;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubHttpServer();
+        downloader = new SegmentedDownloader(new JdkHttpDownloader(4, 10000, 10000, 1000, Proxy.NO_PROXY), SEGMENT_THRESHOLD, 4);
+        dir = Files.createTempDirectory("jmccc-verified").toFile();
+        index = VerifiedFileIndex.forDirectory(dir);
+    }
+
+    @After
+    public void cleanup() {
+        downloader.shutdown();
+        server.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testStreamedRecorded() throws Exception {
+        testRecorded("/small", SEGMENT_THRESHOLD);
+    }
+
+    @Test
+    public void testSegmentedRecorded() throws Exception {
+        testRecorded("/large", SEGMENT_THRESHOLD * 5 + 7);
+    }
+
+    @Test
+    public void testUnverifiedNotRecorded() throws Exception {
+        byte[] content = randomBytes(SEGMENT_THRESHOLD);
+        server.put("/unverified", content);
+        File target = new File(dir, "unverified");
+
+        downloader.download(new FileDownloadTask(server.uri("/unverified"), target), null).get(30, TimeUnit.SECONDS);
+
+        assertFalse(index.isVerified(target, sha1Hex(content), target.length(), target.lastModified()));
+    }
+
+    private void testRecorded(String path, int length) throws Exception {
+        byte[] content = randomBytes(length);
+        server.put(path, content);
+        File target = new File(dir, path.substring(1));
+        String hash = sha1Hex(content);
+
+        downloader.download(new FileDownloadTask(server.uri(path), target).verifyChecksum("SHA-1", hash, length), null).get(30, TimeUnit.SECONDS);
+
+        assertTrue(index.isVerified(target, hash, target.length(), target.lastModified()));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha1Hex(byte[] data) throws Exception {
+        return bytesToHex(MessageDigest.getInstance("SHA-1").digest(data));
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.util.VerifiedFileIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.to2mbn.jmccc.util.HexUtils.bytesToHex;
+
+public class VerifiedFileIndexTest {
+
+    private static final byte[] CONTENT = "original".getBytes();
+    private static final byte[] MODIFIED = "modified".getBytes();
+
+    private File dir;
+    private File file;
+    private VerifiedFileIndex index;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("jmccc-index").toFile();
+        file = new File(dir, "file");
+        index = VerifiedFileIndex.forDirectory(dir);
+    }
+
+    @After
+    public void cleanup() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testVerified() throws Exception {
+        Files.write(file.toPath(), CONTENT);
+        // modified long before it's hashed
+        file.setLastModified(System.currentTimeMillis() - 60000);
+
+        assertTrue(index.verify(file, sha1Hex(CONTENT), CONTENT.length));
+        assertTrue(index.isVerified(file, sha1Hex(CONTENT), file.length(), file.lastModified()));
+    }
+
+    @Test
+    public void testRacilyModified() throws Exception {
+        Files.write(file.toPath(), CONTENT);
+        long lastModified = file.lastModified();
+        assertTrue(index.verify(file, sha1Hex(CONTENT), CONTENT.length));
+
+        // modified again within the resolution of the last modified time, and the size is kept
+        Files.write(file.toPath(), MODIFIED);
+        file.setLastModified(lastModified);
+
+        assertFalse(index.isVerified(file, sha1Hex(CONTENT), file.length(), file.lastModified()));
+        assertFalse(index.verify(file, sha1Hex(CONTENT), CONTENT.length));
+    }
+
+    @Test
+    public void testRecordedThenModified() throws Exception {
+        Files.write(file.toPath(), CONTENT);
+        index.record(file, MessageDigest.getInstance("SHA-1").digest(CONTENT));
+        assertTrue(index.isVerified(file, sha1Hex(CONTENT), file.length(), file.lastModified()));
+
+        // modified right after recording, and the size is kept
+        Files.write(file.toPath(), MODIFIED);
+
+        assertFalse(index.isVerified(file, sha1Hex(CONTENT), file.length(), file.lastModified()));
+        assertFalse(index.verify(file, sha1Hex(CONTENT), CONTENT.length));
+    }
+
+    private static String sha1Hex(byte[] data) throws Exception {
+        return bytesToHex(MessageDigest.getInstance("SHA-1").digest(data));
+    }
+
+}
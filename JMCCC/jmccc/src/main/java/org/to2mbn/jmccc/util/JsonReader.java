@@ -0,0 +1,517 @@
+package org.to2mbn.jmccc.util;
+
+import org.json.JSONException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reads a json document as a stream of tokens.
+ * <p>
+ * Unlike <code>new JSONObject(new JSONTokener(reader))</code>, which builds
+ * the whole document in the memory before any field can be read, this reads
+ * one token at a time, so a large document (such as an asset index or the
+ * forge version list) can be turned into the domain objects in one pass, with
+ * the memory bounded by the objects built.
+ * <p>
+ * A malformed document causes a {@link JSONException}, the same as the
+ * org.json parser does.
+ */
+public class JsonReader implements Closeable {
+
+    /**
+     * The types of the tokens.
+     */
+    public static enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+    private long bufferStart = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+
+    private Token peeked;
+    // the text of the peeked name, string, number or boolean
+    private String peekedText;
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Constructs a JsonReader.
+     *
+     * @param in the reader to read the json from
+     * @throws NullPointerException if <code>in==null</code>
+     */
+    public JsonReader(Reader in) {
+        Objects.requireNonNull(in);
+        this.in = in;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Gets the type of the next token without consuming it.
+     *
+     * @return the type of the next token
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the json is malformed
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int c;
+        switch (stack[stackSize - 1]) {
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return peekValue(nextNonWhitespace(true));
+
+            case NONEMPTY_DOCUMENT:
+                c = nextNonWhitespace(false);
+                if (c != -1) {
+                    throw syntaxError("Unexpected character after the document: " + (char) c);
+                }
+                return peeked = Token.END_DOCUMENT;
+
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace(true);
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                return peekValue(c);
+
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace(true);
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                return peekValue(nextNonWhitespace(true));
+
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                boolean empty = stack[stackSize - 1] == EMPTY_OBJECT;
+                c = nextNonWhitespace(true);
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (!empty) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace(true);
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                peekedText = readString();
+                return peeked = Token.NAME;
+
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace(true) != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                return peekValue(nextNonWhitespace(true));
+
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Consumes the beginning of an object.
+     *
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not the beginning of an object
+     */
+    public void beginObject() throws IOException {
+        consume(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    /**
+     * Consumes the end of the current object.
+     *
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not the end of an object
+     */
+    public void endObject() throws IOException {
+        consume(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    /**
+     * Consumes the beginning of an array.
+     *
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not the beginning of an array
+     */
+    public void beginArray() throws IOException {
+        consume(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    /**
+     * Consumes the end of the current array.
+     *
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not the end of an array
+     */
+    public void endArray() throws IOException {
+        consume(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    /**
+     * Returns true if the current object or array has more elements.
+     *
+     * @return true if the current object or array has more elements
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the json is malformed
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consumes the name of the next property.
+     *
+     * @return the name
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not a name
+     */
+    public String nextName() throws IOException {
+        consume(Token.NAME);
+        return peekedText;
+    }
+
+    /**
+     * Consumes a string. A number is returned in its literal form.
+     *
+     * @return the string
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not a string or a number
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.NUMBER) {
+            throw syntaxError("Expected a string but was " + token);
+        }
+        peeked = null;
+        return peekedText;
+    }
+
+    /**
+     * Consumes a string, or a null.
+     *
+     * @return the string, null if the next token is a null
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not a string, a number or a
+     *                       null
+     */
+    public String nextStringOrNull() throws IOException {
+        if (peek() == Token.NULL) {
+            peeked = null;
+            return null;
+        }
+        return nextString();
+    }
+
+    /**
+     * Consumes an int. A string containing an int is also accepted.
+     *
+     * @return the int
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not an int
+     */
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw syntaxError("Expected an int but was " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Consumes a long. A string containing a long is also accepted.
+     *
+     * @return the long
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not a long
+     */
+    public long nextLong() throws IOException {
+        String number = nextString();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            double value;
+            try {
+                value = Double.parseDouble(number);
+            } catch (NumberFormatException e1) {
+                throw syntaxError("Expected a number but was " + number);
+            }
+            if (value != (long) value) {
+                throw syntaxError("Expected a long but was " + number);
+            }
+            return (long) value;
+        }
+    }
+
+    /**
+     * Consumes a boolean.
+     *
+     * @return the boolean
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not a boolean
+     */
+    public boolean nextBoolean() throws IOException {
+        consume(Token.BOOLEAN);
+        return "true".equals(peekedText);
+    }
+
+    /**
+     * Consumes a null.
+     *
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the next token is not a null
+     */
+    public void nextNull() throws IOException {
+        consume(Token.NULL);
+    }
+
+    /**
+     * Skips the next value, including all the nested elements if it's an
+     * object or an array.
+     *
+     * @throws IOException   if an I/O error occurs
+     * @throws JSONException if the json is malformed
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of the document");
+                default:
+                    peeked = null;
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void consume(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private Token peekValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case '"':
+                peekedText = readString();
+                return peeked = Token.STRING;
+            case 't':
+                readLiteral("rue");
+                peekedText = "true";
+                return peeked = Token.BOOLEAN;
+            case 'f':
+                readLiteral("alse");
+                peekedText = "false";
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                readLiteral("ull");
+                peekedText = null;
+                return peeked = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    peekedText = readNumber((char) c);
+                    return peeked = Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character: " + (char) c);
+        }
+    }
+
+    private String readString() throws IOException {
+        text.setLength(0);
+        for (; ; ) {
+            // copy the runs without escapes at once
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"') {
+                    text.append(buffer, start, pos - start);
+                    pos++;
+                    return text.toString();
+                }
+                if (c == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            text.append(buffer, start, pos - start);
+
+            if (pos < limit) {
+                // an escape
+                pos++;
+                text.append(readEscape());
+            } else if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw syntaxError("Invalid escape");
+        }
+    }
+
+    private String readNumber(char first) throws IOException {
+        text.setLength(0);
+        text.append(first);
+        for (; ; ) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            char c = buffer[pos];
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                text.append(c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return text.toString();
+    }
+
+    private void readLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of the document");
+        }
+        return buffer[pos++];
+    }
+
+    private int nextNonWhitespace(boolean required) throws IOException {
+        for (; ; ) {
+            if (pos == limit && !fill()) {
+                if (required) {
+                    throw syntaxError("Unexpected end of the document");
+                }
+                return -1;
+            }
+            char c = buffer[pos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        bufferStart += limit;
+        pos = 0;
+        limit = 0;
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) == 0)
+            ;
+        if (read == -1) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + (bufferStart + pos));
+    }
+
+}
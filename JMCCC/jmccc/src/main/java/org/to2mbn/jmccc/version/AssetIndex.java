@@ -0,0 +1,295 @@
+package org.to2mbn.jmccc.version;
+
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A compact, immutable asset index.
+ * <p>
+ * The assets are stored in primitive arrays: the SHA-1 hashes are packed
+ * into a byte array (20 bytes each), the sizes into an int array, and the
+ * virtual paths into one char array. The {@link Asset} objects are created
+ * only when they are accessed, so a modern asset index with thousands of
+ * assets costs a few arrays instead of thousands of objects.
+ * <p>
+ * This class is a read-only view of the assets as a <code>Set&lt;Asset&gt;</code>,
+ * so it can be used wherever an asset index used to be a set.
+ *
+ * @see Versions#resolveAssets(org.to2mbn.jmccc.option.MinecraftDirectory, String)
+ */
+public final class AssetIndex extends AbstractSet<Asset> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int HASH_LENGTH = 20;
+
+    /**
+     * Builds an {@link AssetIndex}.
+     */
+    static final class Builder {
+
+        private int count;
+        private byte[] hashes = new byte[HASH_LENGTH * 16];
+        private int[] sizes = new int[16];
+        private int[] pathOffsets = new int[17];
+        private char[] paths = new char[256];
+
+        /**
+         * Adds an asset.
+         *
+         * @throws NullPointerException     if <code>virtualPath==null||hash==null</code>
+         * @throws IllegalArgumentException if <code>size&lt;0</code>, or the
+         *                                  hash is not a SHA-1 in hex
+         */
+        Builder add(String virtualPath, String hash, int size) {
+            Objects.requireNonNull(virtualPath);
+            Objects.requireNonNull(hash);
+            if (size < 0) {
+                throw new IllegalArgumentException("size<0");
+            }
+            if (hash.length() != HASH_LENGTH * 2) {
+                throw new IllegalArgumentException("invalid SHA-1: " + hash);
+            }
+
+            if (count == sizes.length) {
+                int capacity = count * 2;
+                hashes = Arrays.copyOf(hashes, capacity * HASH_LENGTH);
+                sizes = Arrays.copyOf(sizes, capacity);
+                pathOffsets = Arrays.copyOf(pathOffsets, capacity + 1);
+            }
+            int pathStart = pathOffsets[count];
+            int pathEnd = pathStart + virtualPath.length();
+            if (pathEnd > paths.length) {
+                paths = Arrays.copyOf(paths, Math.max(paths.length * 2, pathEnd));
+            }
+
+            System.arraycopy(HexUtils.hexToBytes(hash), 0, hashes, count * HASH_LENGTH, HASH_LENGTH);
+            sizes[count] = size;
+            virtualPath.getChars(0, virtualPath.length(), paths, pathStart);
+            pathOffsets[count + 1] = pathEnd;
+            count++;
+            return this;
+        }
+
+        AssetIndex build() {
+            return new AssetIndex(count,
+                    Arrays.copyOf(hashes, count * HASH_LENGTH),
+                    Arrays.copyOf(sizes, count),
+                    Arrays.copyOf(pathOffsets, count + 1),
+                    Arrays.copyOf(paths, pathOffsets[count]));
+        }
+    }
+
+    private final int count;
+    private final byte[] hashes;
+    private final int[] sizes;
+    private final int[] pathOffsets;
+    private final char[] paths;
+
+    // the indexes of the first assets of the distinct hashes, computed lazily
+    private transient volatile int[] uniqueIndexes;
+
+    private AssetIndex(int count, byte[] hashes, int[] sizes, int[] pathOffsets, char[] paths) {
+        this.count = count;
+        this.hashes = hashes;
+        this.sizes = sizes;
+        this.pathOffsets = pathOffsets;
+        this.paths = paths;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the asset at the given index.
+     * <p>
+     * A new {@link Asset} object is created on each call.
+     *
+     * @param index the index of the asset
+     * @return the asset
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public Asset get(int index) {
+        return new Asset(getVirtualPath(index), getHash(index), getSize(index));
+    }
+
+    /**
+     * Gets the virtual path of the asset at the given index.
+     *
+     * @param index the index of the asset
+     * @return the virtual path of the asset
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public String getVirtualPath(int index) {
+        checkIndex(index);
+        return new String(paths, pathOffsets[index], pathOffsets[index + 1] - pathOffsets[index]);
+    }
+
+    /**
+     * Gets the SHA-1 of the asset at the given index in hex.
+     *
+     * @param index the index of the asset
+     * @return the SHA-1 of the asset
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public String getHash(int index) {
+        checkIndex(index);
+        return HexUtils.bytesToHex(Arrays.copyOfRange(hashes, index * HASH_LENGTH, (index + 1) * HASH_LENGTH));
+    }
+
+    /**
+     * Gets the size of the asset at the given index.
+     *
+     * @param index the index of the asset
+     * @return the size of the asset
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int getSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+
+    /**
+     * Gets the assets whose hashes are distinct.
+     * <p>
+     * The assets of the same hash share one object file, so only one of them
+     * needs to be downloaded or checked. The first one of each hash is kept.
+     *
+     * @return the assets whose hashes are distinct, created when they are
+     * accessed
+     */
+    public List<Asset> getUniqueAssets() {
+        final int[] indexes = uniqueIndexes();
+        return new AbstractList<Asset>() {
+
+            @Override
+            public Asset get(int index) {
+                return AssetIndex.this.get(indexes[index]);
+            }
+
+            @Override
+            public int size() {
+                return indexes.length;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Asset> iterator() {
+        return new Iterator<Asset>() {
+
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public Asset next() {
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Asset)) {
+            return false;
+        }
+        Asset asset = (Asset) o;
+        String virtualPath = asset.getVirtualPath();
+        for (int i = 0; i < count; i++) {
+            if (sizes[i] == asset.getSize() && pathEquals(i, virtualPath) && getHash(i).equals(asset.getHash())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean pathEquals(int index, String virtualPath) {
+        int start = pathOffsets[index];
+        int length = pathOffsets[index + 1] - start;
+        if (length != virtualPath.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (paths[start + i] != virtualPath.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] uniqueIndexes() {
+        int[] result = uniqueIndexes;
+        if (result == null) {
+            // open addressing on the hashes, the first 4 bytes of a SHA-1 are well distributed
+            int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+            int mask = capacity - 1;
+            int[] table = new int[capacity];
+            Arrays.fill(table, -1);
+            int[] unique = new int[count];
+            int uniqueCount = 0;
+            for (int i = 0; i < count; i++) {
+                int slot = hashPrefix(i) & mask;
+                boolean duplicate = false;
+                while (table[slot] != -1) {
+                    if (hashEquals(table[slot], i)) {
+                        duplicate = true;
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                if (!duplicate) {
+                    table[slot] = i;
+                    unique[uniqueCount++] = i;
+                }
+            }
+            result = Arrays.copyOf(unique, uniqueCount);
+            uniqueIndexes = result;
+        }
+        return result;
+    }
+
+    private int hashPrefix(int index) {
+        int offset = index * HASH_LENGTH;
+        return (hashes[offset] & 0xff) << 24 | (hashes[offset + 1] & 0xff) << 16 | (hashes[offset + 2] & 0xff) << 8 | (hashes[offset + 3] & 0xff);
+    }
+
+    private boolean hashEquals(int a, int b) {
+        int offsetA = a * HASH_LENGTH;
+        int offsetB = b * HASH_LENGTH;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            if (hashes[offsetA + i] != hashes[offsetB + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+    }
+
+}
@@ -0,0 +1,378 @@
+package org.to2mbn.jmccc.version;
+
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.Platform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the resolved versions, so the jsons of a version hierarchy needn't
+ * be parsed again unless they are modified.
+ * <p>
+ * The resolved versions are kept in an in-process LRU cache, and saved as
+ * compact binary snapshots in the version directories. A snapshot records the
+ * size and the modification time of each json in the hierarchy, and it's used
+ * only if all of them are unchanged. A json modified shortly before it was
+ * stamped may be modified again without changing its modification time, so
+ * such a stamp is never trusted (the "racily clean" rule of git), and the
+ * version is parsed and stamped again. The platform is also recorded, since the
+ * rules and the natives of the libraries are resolved for the current
+ * platform.
+ * <p>
+ * Any failure of reading or writing a snapshot is ignored, and the version is
+ * parsed from the jsons.
+ */
+final class VersionCache {
+
+    static final String SNAPSHOT_FILE_NAME = ".resolved-version";
+
+    private static final int MAGIC = 0x4a4d5256; // "JMRV"
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int MEMORY_CAPACITY = 64;
+
+    private static final String PLATFORM_KEY = Platform.CURRENT.name() + "/" + (Platform.isX64() ? "64" : "32") + "/" + System.getProperty("os.version");
+
+    /**
+     * The coarsest resolution of the modification times, which is 2 seconds on
+     * FAT.
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    /**
+     * The size and the modification time of a json in a version hierarchy.
+     */
+    static final class Stamp {
+
+        final String id;
+        final long size;
+        final long lastModified;
+        final long stampedTime;
+
+        Stamp(String id, long size, long lastModified, long stampedTime) {
+            this.id = id;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.stampedTime = stampedTime;
+        }
+
+        static Stamp of(MinecraftDirectory mcdir, String id) {
+            File json = mcdir.getVersionJson(id);
+            long stampedTime = System.currentTimeMillis();
+            return new Stamp(id, json.length(), json.lastModified(), stampedTime);
+        }
+
+        boolean isCurrent(MinecraftDirectory mcdir) {
+            File json = mcdir.getVersionJson(id);
+            // lastModified() is 0 if the file doesn't exist
+            return json.lastModified() == lastModified && json.length() == size && lastModified != 0
+                    // racily clean: a modification after stamping may have kept the modification time
+                    && lastModified + MODIFICATION_TIME_RESOLUTION <= stampedTime;
+        }
+    }
+
+    private static final class CachedVersion {
+
+        final Version version;
+        final List<Stamp> hierarchy;
+
+        CachedVersion(Version version, List<Stamp> hierarchy) {
+            this.version = version;
+            this.hierarchy = hierarchy;
+        }
+
+        boolean isCurrent(MinecraftDirectory mcdir) {
+            for (Stamp stamp : hierarchy) {
+                if (!stamp.isCurrent(mcdir)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // guarded by itself
+    private final Map<File, CachedVersion> memory = new LinkedHashMap<File, CachedVersion>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, CachedVersion> eldest) {
+            return size() > MEMORY_CAPACITY;
+        }
+    };
+
+    /**
+     * Gets the cached version if none of the jsons in its hierarchy has been
+     * modified.
+     *
+     * @return the cached version, null if it's not cached or out of date
+     */
+    Version get(MinecraftDirectory mcdir, String id) {
+        File snapshotFile = getSnapshotFile(mcdir, id);
+        CachedVersion entry;
+        synchronized (memory) {
+            entry = memory.get(snapshotFile);
+        }
+        if (entry == null || !entry.isCurrent(mcdir)) {
+            entry = readSnapshot(snapshotFile);
+            if (entry == null || !entry.isCurrent(mcdir)) {
+                return null;
+            }
+            synchronized (memory) {
+                memory.put(snapshotFile, entry);
+            }
+        }
+        return entry.version;
+    }
+
+    /**
+     * Caches the version.
+     *
+     * @param hierarchy the stamps of the jsons in the hierarchy, taken before
+     *                  they were read
+     */
+    void put(MinecraftDirectory mcdir, String id, Version version, List<Stamp> hierarchy) {
+        File snapshotFile = getSnapshotFile(mcdir, id);
+        CachedVersion entry = new CachedVersion(version, new ArrayList<>(hierarchy));
+        synchronized (memory) {
+            memory.put(snapshotFile, entry);
+        }
+        writeSnapshot(snapshotFile, entry);
+    }
+
+    private File getSnapshotFile(MinecraftDirectory mcdir, String id) {
+        return new File(mcdir.getVersion(id), SNAPSHOT_FILE_NAME).getAbsoluteFile();
+    }
+
+    private CachedVersion readSnapshot(File snapshotFile) {
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !PLATFORM_KEY.equals(in.readUTF())) {
+                return null;
+            }
+            int hierarchySize = in.readInt();
+            List<Stamp> hierarchy = new ArrayList<>(hierarchySize);
+            for (int i = 0; i < hierarchySize; i++) {
+                hierarchy.add(new Stamp(in.readUTF(), in.readLong(), in.readLong(), in.readLong()));
+            }
+            return new CachedVersion(readVersion(in), hierarchy);
+        } catch (IOException | RuntimeException e) {
+            // a broken or incompatible snapshot, parse the jsons again
+            return null;
+        }
+    }
+
+    private void writeSnapshot(File snapshotFile, CachedVersion entry) {
+        File temp = null;
+        try {
+            // unique, since the same version may be resolved by several threads at the same time
+            temp = Files.createTempFile(snapshotFile.getParentFile().toPath(), SNAPSHOT_FILE_NAME, ".tmp").toFile();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(PLATFORM_KEY);
+                out.writeInt(entry.hierarchy.size());
+                for (Stamp stamp : entry.hierarchy) {
+                    out.writeUTF(stamp.id);
+                    out.writeLong(stamp.size);
+                    out.writeLong(stamp.lastModified);
+                    out.writeLong(stamp.stampedTime);
+                }
+                writeVersion(out, entry.version);
+            }
+            Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // the cache only speeds up resolving, such as when the directory is read-only
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static void writeVersion(DataOutputStream out, Version version) throws IOException {
+        writeString(out, version.getVersion());
+        writeString(out, version.getType());
+        writeString(out, version.getMainClass());
+        writeString(out, version.getAssets());
+        writeString(out, version.getLaunchArgs());
+        writeString(out, version.getRoot());
+        out.writeBoolean(version.isLegacy());
+
+        AssetIndexInfo assetIndex = version.getAssetIndexDownloadInfo();
+        out.writeBoolean(assetIndex != null);
+        if (assetIndex != null) {
+            writeDownloadInfo(out, assetIndex);
+            writeString(out, assetIndex.getId());
+            out.writeLong(assetIndex.getTotalSize());
+        }
+
+        Map<String, DownloadInfo> downloads = version.getDownloads();
+        out.writeInt(downloads == null ? -1 : downloads.size());
+        if (downloads != null) {
+            for (Map.Entry<String, DownloadInfo> download : downloads.entrySet()) {
+                writeString(out, download.getKey());
+                writeDownloadInfo(out, download.getValue());
+            }
+        }
+
+        Set<Library> libraries = version.getLibraries();
+        out.writeInt(libraries.size());
+        for (Library library : libraries) {
+            writeLibrary(out, library);
+        }
+    }
+
+    private static Version readVersion(DataInputStream in) throws IOException {
+        String version = readString(in);
+        String type = readString(in);
+        String mainClass = readString(in);
+        String assets = readString(in);
+        String launchArgs = readString(in);
+        String root = readString(in);
+        boolean legacy = in.readBoolean();
+
+        AssetIndexInfo assetIndex = null;
+        if (in.readBoolean()) {
+            DownloadInfo base = readDownloadInfo(in);
+            assetIndex = new AssetIndexInfo(base.getUrl(), base.getChecksum(), base.getSize(), readString(in), in.readLong());
+        }
+
+        Map<String, DownloadInfo> downloads = null;
+        int downloadsSize = in.readInt();
+        if (downloadsSize != -1) {
+            downloads = new HashMap<>();
+            for (int i = 0; i < downloadsSize; i++) {
+                downloads.put(readString(in), readDownloadInfo(in));
+            }
+            downloads = Collections.unmodifiableMap(downloads);
+        }
+
+        int librariesSize = in.readInt();
+        Set<Library> libraries = new HashSet<>();
+        for (int i = 0; i < librariesSize; i++) {
+            libraries.add(readLibrary(in));
+        }
+
+        return new Version(version, type, mainClass, assets, launchArgs, root, Collections.unmodifiableSet(libraries), legacy, assetIndex, downloads);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void writeLibrary(DataOutputStream out, Library library) throws IOException {
+        boolean isNative = library instanceof Native;
+        out.writeBoolean(isNative);
+        writeString(out, library.getDomain());
+        writeString(out, library.getName());
+        writeString(out, library.getVersion());
+
+        LibraryInfo info = library.getDownloadInfo();
+        out.writeBoolean(info != null);
+        if (info != null) {
+            writeDownloadInfo(out, info);
+            writeString(out, info.getPath());
+        }
+
+        writeString(out, library.getCustomUrl());
+        writeStrings(out, library.getChecksums());
+
+        if (isNative) {
+            Native nativeLibrary = (Native) library;
+            writeString(out, nativeLibrary.getArch());
+            Set<String> excludes = nativeLibrary.getExtractExcludes();
+            writeStrings(out, excludes == null ? null : excludes.toArray(new String[excludes.size()]));
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Library readLibrary(DataInputStream in) throws IOException {
+        boolean isNative = in.readBoolean();
+        String domain = readString(in);
+        String name = readString(in);
+        String version = readString(in);
+
+        LibraryInfo info = null;
+        if (in.readBoolean()) {
+            DownloadInfo base = readDownloadInfo(in);
+            info = new LibraryInfo(base.getUrl(), base.getChecksum(), base.getSize(), readString(in));
+        }
+
+        String customUrl = readString(in);
+        String[] checksums = readStrings(in);
+
+        if (isNative) {
+            String arch = readString(in);
+            String[] excludes = readStrings(in);
+            Set<String> extractExcludes = null;
+            if (excludes != null) {
+                extractExcludes = new HashSet<>();
+                Collections.addAll(extractExcludes, excludes);
+                extractExcludes = Collections.unmodifiableSet(extractExcludes);
+            }
+            return new Native(domain, name, version, info, arch, extractExcludes, customUrl, checksums);
+        } else {
+            return new Library(domain, name, version, info, customUrl, checksums);
+        }
+    }
+
+    private static void writeDownloadInfo(DataOutputStream out, DownloadInfo info) throws IOException {
+        writeString(out, info.getUrl());
+        writeString(out, info.getChecksum());
+        out.writeLong(info.getSize());
+    }
+
+    private static DownloadInfo readDownloadInfo(DataInputStream in) throws IOException {
+        return new DownloadInfo(readString(in), readString(in), in.readLong());
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        out.writeInt(strings == null ? -1 : strings.length);
+        if (strings != null) {
+            for (String string : strings) {
+                writeString(out, string);
+            }
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        String[] strings = new String[length];
+        for (int i = 0; i < length; i++) {
+            strings[i] = readString(in);
+        }
+        return strings;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+}
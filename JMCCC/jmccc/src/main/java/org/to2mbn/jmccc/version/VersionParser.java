@@ -5,6 +5,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.JsonReader;
 import org.to2mbn.jmccc.util.Platform;
 
 import java.io.*;
@@ -26,6 +27,14 @@ class VersionParser {
     }
 
     public Version parseVersion(MinecraftDirectory mcdir, String id) throws IOException, JSONException {
+        return parseVersion(mcdir, id, null);
+    }
+
+    /**
+     * Parses the version, and adds the stamps of the jsons in the hierarchy
+     * to <code>hierarchyStamps</code> if it's not null.
+     */
+    public Version parseVersion(MinecraftDirectory mcdir, String id, List<VersionCache.Stamp> hierarchyStamps) throws IOException, JSONException {
         String version;
         String root;
 
@@ -37,7 +46,7 @@ class VersionParser {
         Map<String, DownloadInfo> downloads = new HashMap<>();
         AssetIndexInfo assetIndexInfo = null;
 
-        Stack<JSONObject> hierarchy = parseVersionHierarchy(mcdir, id);
+        Stack<JSONObject> hierarchy = parseVersionHierarchy(mcdir, id, hierarchyStamps);
         root = hierarchy.peek().getString("id");
         version = hierarchy.get(0).getString("id");
 
@@ -77,21 +86,61 @@ class VersionParser {
                 Collections.unmodifiableMap(downloads));
     }
 
-    public Set<Asset> parseAssets(MinecraftDirectory minecraftDir, String name) throws IOException, JSONException {
-        JSONObject json = readJson(minecraftDir.getAssetIndex(name));
-        JSONObject objects = json.getJSONObject("objects");
-        Set<Asset> assets = new HashSet<>();
-        for (Object rawVirtualPath : objects.keySet()) {
-            String virtualPath = (String) rawVirtualPath;
-            JSONObject object = objects.getJSONObject(virtualPath);
-            String hash = object.getString("hash");
-            int size = object.getInt("size");
-            assets.add(new Asset(virtualPath, hash, size));
+    public AssetIndex parseAssets(MinecraftDirectory minecraftDir, String name) throws IOException, JSONException {
+        // asset indexes are large, so they are streamed into the compact form without building the json
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(minecraftDir.getAssetIndex(name)), "UTF-8"))) {
+            AssetIndex assets = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("objects".equals(reader.nextName()))
+                    assets = parseAssetObjects(reader);
+                else
+                    reader.skipValue();
+            }
+            reader.endObject();
+
+            if (assets == null)
+                throw new JSONException("JSONObject[\"objects\"] not found.");
+            return assets;
         }
-        return Collections.unmodifiableSet(assets);
     }
 
-    private Stack<JSONObject> parseVersionHierarchy(MinecraftDirectory mcdir, String id) throws IOException {
+    private AssetIndex parseAssetObjects(JsonReader reader) throws IOException, JSONException {
+        AssetIndex.Builder assets = new AssetIndex.Builder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String virtualPath = reader.nextName();
+            String hash = null;
+            int size = -1;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "hash":
+                        hash = reader.nextString();
+                        break;
+                    case "size":
+                        size = reader.nextInt();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            if (hash == null || size == -1)
+                throw new JSONException("Incomplete asset: " + virtualPath);
+            try {
+                assets.add(virtualPath, hash, size);
+            } catch (IllegalArgumentException e) {
+                throw new JSONException("Invalid asset " + virtualPath + ": " + e.getMessage());
+            }
+        }
+        reader.endObject();
+        return assets.build();
+    }
+
+    private Stack<JSONObject> parseVersionHierarchy(MinecraftDirectory mcdir, String id, List<VersionCache.Stamp> hierarchyStamps) throws IOException {
 
         /*
          * The structure of the stack:
@@ -106,6 +155,10 @@ class VersionParser {
         Stack<JSONObject> hierarchy = new Stack<>();
         String currentId = id;
         do {
+            if (hierarchyStamps != null) {
+                // taken before reading, so a json modified during parsing invalidates the cache
+                hierarchyStamps.add(VersionCache.Stamp.of(mcdir, currentId));
+            }
             JSONObject json = readJson(mcdir.getVersionJson(currentId));
             hierarchy.push(json);
             currentId = json.optString("inheritsFrom", null);
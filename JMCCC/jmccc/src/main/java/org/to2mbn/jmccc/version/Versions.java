@@ -5,7 +5,9 @@ import org.to2mbn.jmccc.option.MinecraftDirectory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -17,12 +19,17 @@ import java.util.Set;
 public final class Versions {
 
     private static final VersionParser PARSER = new VersionParser();
+    private static final VersionCache CACHE = new VersionCache();
 
     private Versions() {
     }
 
     /**
      * Resolves the version.
+     * <p>
+     * The resolved versions are cached in the memory and in the version
+     * directories (as <code>.resolved-version</code>), and the cache is used
+     * until any json in the version hierarchy is modified.
      *
      * @param minecraftDir the minecraft directory
      * @param version      the version name
@@ -36,8 +43,16 @@ public final class Versions {
         Objects.requireNonNull(version);
 
         if (doesVersionExist(minecraftDir, version)) {
+            Version cached = CACHE.get(minecraftDir, version);
+            if (cached != null) {
+                return cached;
+            }
+
+            List<VersionCache.Stamp> hierarchy = new ArrayList<>();
             try {
-                return PARSER.parseVersion(minecraftDir, version);
+                Version resolved = PARSER.parseVersion(minecraftDir, version, hierarchy);
+                CACHE.put(minecraftDir, version, resolved, hierarchy);
+                return resolved;
             } catch (JSONException e) {
                 throw new IOException("unable to resolve json", e);
             }
@@ -73,6 +88,8 @@ public final class Versions {
 
     /**
      * Resolves the asset index.
+     * <p>
+     * The returned set is an {@link AssetIndex}.
      *
      * @param minecraftDir the minecraft directory
      * @param version      the owner version of the asset index
@@ -80,13 +97,16 @@ public final class Versions {
      * @throws IOException          if an I/O error occurs during resolving asset index
      * @throws NullPointerException if
      *                              <code>minecraftDir==null || version==null</code>
+     * @see #resolveAssetIndex(MinecraftDirectory, Version)
      */
     public static Set<Asset> resolveAssets(MinecraftDirectory minecraftDir, Version version) throws IOException {
-        return resolveAssets(minecraftDir, version.getAssets());
+        return resolveAssetIndex(minecraftDir, version);
     }
 
     /**
      * Resolves the asset index.
+     * <p>
+     * The returned set is an {@link AssetIndex}.
      *
      * @param minecraftDir the minecraft directory
      * @param assets       the name of the asset index, you can get this via
@@ -96,8 +116,39 @@ public final class Versions {
      *                              index
      * @throws NullPointerException if
      *                              <code>minecraftDir==null || assets==null</code>
+     * @see #resolveAssetIndex(MinecraftDirectory, String)
      */
     public static Set<Asset> resolveAssets(MinecraftDirectory minecraftDir, String assets) throws IOException {
+        return resolveAssetIndex(minecraftDir, assets);
+    }
+
+    /**
+     * Resolves the asset index into the compact form.
+     *
+     * @param minecraftDir the minecraft directory
+     * @param version      the owner version of the asset index
+     * @return the asset index, null if the asset index does not exist
+     * @throws IOException          if an I/O error occurs during resolving asset index
+     * @throws NullPointerException if
+     *                              <code>minecraftDir==null || version==null</code>
+     */
+    public static AssetIndex resolveAssetIndex(MinecraftDirectory minecraftDir, Version version) throws IOException {
+        return resolveAssetIndex(minecraftDir, version.getAssets());
+    }
+
+    /**
+     * Resolves the asset index into the compact form.
+     *
+     * @param minecraftDir the minecraft directory
+     * @param assets       the name of the asset index, you can get this via
+     *                     {@link Version#getAssets()}
+     * @return the asset index, null if the asset index does not exist
+     * @throws IOException          if an I/O error has occurred during resolving asset
+     *                              index
+     * @throws NullPointerException if
+     *                              <code>minecraftDir==null || assets==null</code>
+     */
+    public static AssetIndex resolveAssetIndex(MinecraftDirectory minecraftDir, String assets) throws IOException {
         Objects.requireNonNull(minecraftDir);
         Objects.requireNonNull(assets);
         if (!minecraftDir.getAssetIndex(assets).isFile()) {
@@ -0,0 +1,71 @@
+package org.to2mbn.jmccc.test;
+
+import org.junit.Test;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.AssetIndex;
+import org.to2mbn.jmccc.version.Versions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AssetIndexTest extends MinecraftEnvironmentTest {
+
+    @Override
+    protected void copyFiles() throws IOException {
+        new File("mcdir/assets/indexes").mkdirs();
+        copyFromJar("/mcdir/assets/indexes/test.json", new File("mcdir/assets/indexes/test.json"));
+        copyFromJar("/mcdir/assets/indexes/duplicated.json", new File("mcdir/assets/indexes/duplicated.json"));
+    }
+
+    @Test
+    public void testAccessors() throws IOException {
+        AssetIndex index = Versions.resolveAssetIndex(mcdir(), "test");
+        assertEquals(3, index.size());
+        Set<Asset> assets = new HashSet<>();
+        for (int i = 0; i < index.size(); i++) {
+            Asset asset = index.get(i);
+            assertEquals(asset.getVirtualPath(), index.getVirtualPath(i));
+            assertEquals(asset.getHash(), index.getHash(i));
+            assertEquals(asset.getSize(), index.getSize(i));
+            assets.add(asset);
+        }
+        assertEquals(assets, index);
+    }
+
+    @Test
+    public void testContains() throws IOException {
+        AssetIndex index = Versions.resolveAssetIndex(mcdir(), "test");
+        assertTrue(index.contains(new Asset("test/test2", "14cfb2f24e7d91dbc22a2a0e3b880d9829320243", 7347)));
+        assertFalse(index.contains(new Asset("test/test2", "14cfb2f24e7d91dbc22a2a0e3b880d9829320243", 7348)));
+        assertFalse(index.contains(new Asset("test/test3", "14cfb2f24e7d91dbc22a2a0e3b880d9829320243", 7347)));
+        assertFalse(index.contains(new Asset("test/test2", "bf7fadaf64945f6b31c803d086ac6a652aabef9b", 7347)));
+    }
+
+    @Test
+    public void testUniqueAssets() throws IOException {
+        AssetIndex index = Versions.resolveAssetIndex(mcdir(), "duplicated");
+        assertEquals(3, index.size());
+        List<Asset> unique = index.getUniqueAssets();
+        assertEquals(2, unique.size());
+        Set<String> hashes = new HashSet<>();
+        for (Asset asset : unique) {
+            hashes.add(asset.getHash());
+        }
+        assertEquals(2, hashes.size());
+        assertTrue(hashes.contains("10a54fc66c8f479bb65c8d39c3b62265ac82e742"));
+        assertTrue(hashes.contains("14cfb2f24e7d91dbc22a2a0e3b880d9829320243"));
+    }
+
+    @Test
+    public void testNotExisting() throws IOException {
+        assertEquals(null, Versions.resolveAssetIndex(mcdir(), "notexisting"));
+    }
+
+}
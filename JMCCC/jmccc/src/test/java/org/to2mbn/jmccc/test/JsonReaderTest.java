@@ -0,0 +1,81 @@
+package org.to2mbn.jmccc.test;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.to2mbn.jmccc.util.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonReaderTest {
+
+    @Test
+    public void testRead() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("{\"a\": \"x\\ty\\u0041\", \"b\": [1, -2.0e1, true, null], \"c\": {}, \"d\": \"42\"}"));
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        assertEquals("x\tyA", reader.nextString());
+        assertEquals("b", reader.nextName());
+        reader.beginArray();
+        assertEquals(1, reader.nextInt());
+        assertEquals(-20L, reader.nextLong());
+        assertTrue(reader.nextBoolean());
+        reader.nextNull();
+        assertFalse(reader.hasNext());
+        reader.endArray();
+        assertEquals("c", reader.nextName());
+        reader.beginObject();
+        assertFalse(reader.hasNext());
+        reader.endObject();
+        assertEquals("d", reader.nextName());
+        assertEquals(42, reader.nextInt());
+        reader.endObject();
+        assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void testSkipValue() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("{\"skipped\": {\"x\": [[1, 2], {\"y\": null}]}, \"kept\": \"z\"}"));
+        reader.beginObject();
+        assertEquals("skipped", reader.nextName());
+        reader.skipValue();
+        assertEquals("kept", reader.nextName());
+        assertEquals("z", reader.nextString());
+        reader.endObject();
+    }
+
+    @Test
+    public void testNextStringOrNull() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[null, \"a\"]"));
+        reader.beginArray();
+        assertEquals(null, reader.nextStringOrNull());
+        assertEquals("a", reader.nextStringOrNull());
+        reader.endArray();
+    }
+
+    @Test(expected = JSONException.class)
+    public void testMissingComma() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[1 2]"));
+        reader.beginArray();
+        reader.nextInt();
+        reader.nextInt();
+    }
+
+    @Test(expected = JSONException.class)
+    public void testUnterminatedString() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[\"abc"));
+        reader.beginArray();
+        reader.nextString();
+    }
+
+    @Test(expected = JSONException.class)
+    public void testUnexpectedToken() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("{\"a\": 1}"));
+        reader.beginArray();
+    }
+
+}
@@ -0,0 +1,61 @@
+package org.to2mbn.jmccc.test;
+
+import org.junit.Test;
+import org.to2mbn.jmccc.version.Version;
+import org.to2mbn.jmccc.version.Versions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VersionCacheTest extends MinecraftEnvironmentTest {
+
+    private static final String CHILD = "1.8-forge1.8-11.14.3.1514";
+
+    @Override
+    protected void copyFiles() throws IOException {
+        new File("mcdir/versions/1.8").mkdirs();
+        new File("mcdir/versions/" + CHILD).mkdirs();
+        copyFromJar("/mcdir/versions/1.8/1.8.json", new File("mcdir/versions/1.8/1.8.json"));
+        copyFromJar("/mcdir/versions/" + CHILD + "/" + CHILD + ".json", new File("mcdir/versions/" + CHILD + "/" + CHILD + ".json"));
+    }
+
+    @Test
+    public void testCached() throws IOException {
+        Version version = Versions.resolveVersion(mcdir(), CHILD);
+        assertTrue(new File("mcdir/versions/" + CHILD + "/.resolved-version").isFile());
+        assertEquals(version, Versions.resolveVersion(mcdir(), CHILD));
+    }
+
+    @Test
+    public void testParentModified() throws IOException {
+        int libraries = Versions.resolveVersion(mcdir(), CHILD).getLibraries().size();
+
+        File parent = new File("mcdir/versions/1.8/1.8.json");
+        String json = new String(Files.readAllBytes(parent.toPath()), "UTF-8");
+        json = json.replaceFirst("\"libraries\"\\s*:\\s*\\[", "\"libraries\": [{\"name\": \"test:test:1.0\"},");
+        Files.write(parent.toPath(), json.getBytes("UTF-8"));
+
+        assertEquals(libraries + 1, Versions.resolveVersion(mcdir(), CHILD).getLibraries().size());
+    }
+
+    @Test
+    public void testRacilyModified() throws IOException {
+        File child = new File("mcdir/versions/" + CHILD + "/" + CHILD + ".json");
+        String mainClass = Versions.resolveVersion(mcdir(), CHILD).getMainClass();
+
+        // just copied, so the json is modified again within the resolution of the modification time,
+        // and its size is kept
+        long lastModified = child.lastModified();
+        String modifiedMainClass = mainClass.substring(0, mainClass.length() - 1) + "X";
+        String json = new String(Files.readAllBytes(child.toPath()), "UTF-8");
+        Files.write(child.toPath(), json.replace(mainClass, modifiedMainClass).getBytes("UTF-8"));
+        child.setLastModified(lastModified);
+
+        assertEquals(modifiedMainClass, Versions.resolveVersion(mcdir(), CHILD).getMainClass());
+    }
+
+}